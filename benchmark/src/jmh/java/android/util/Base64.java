@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package android.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JVM stub of the Android Base64 utility, backed by the JDK encoder. Only the flags used by the SDK are supported.
+ */
+@SuppressWarnings("unused")
+public final class Base64 {
+
+    public static final int DEFAULT = 0;
+
+    public static final int NO_WRAP = 2;
+
+    private Base64() {
+    }
+
+    public static String encodeToString(byte[] input, int flags) {
+        if ((flags & NO_WRAP) != 0) {
+            return java.util.Base64.getEncoder().encodeToString(input);
+        }
+        return java.util.Base64.getMimeEncoder().encodeToString(input) + "\n";
+    }
+
+    public static byte[] decode(String str, int flags) {
+        return java.util.Base64.getMimeDecoder().decode(str.getBytes(StandardCharsets.US_ASCII));
+    }
+}
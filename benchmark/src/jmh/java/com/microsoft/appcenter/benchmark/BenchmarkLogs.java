@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.benchmark;
+
+import com.microsoft.appcenter.analytics.ingestion.models.EventLog;
+import com.microsoft.appcenter.analytics.ingestion.models.PageLog;
+import com.microsoft.appcenter.analytics.ingestion.models.StartSessionLog;
+import com.microsoft.appcenter.analytics.ingestion.models.json.EventLogFactory;
+import com.microsoft.appcenter.analytics.ingestion.models.json.PageLogFactory;
+import com.microsoft.appcenter.analytics.ingestion.models.json.StartSessionLogFactory;
+import com.microsoft.appcenter.analytics.ingestion.models.one.CommonSchemaEventLog;
+import com.microsoft.appcenter.analytics.ingestion.models.one.json.CommonSchemaEventLogFactory;
+import com.microsoft.appcenter.crashes.ingestion.models.ErrorAttachmentLog;
+import com.microsoft.appcenter.crashes.ingestion.models.HandledErrorLog;
+import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
+import com.microsoft.appcenter.crashes.ingestion.models.json.ErrorAttachmentLogFactory;
+import com.microsoft.appcenter.crashes.ingestion.models.json.HandledErrorLogFactory;
+import com.microsoft.appcenter.crashes.ingestion.models.json.ManagedErrorLogFactory;
+import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
+import com.microsoft.appcenter.distribute.ingestion.models.DistributionStartSessionLog;
+import com.microsoft.appcenter.distribute.ingestion.models.json.DistributionStartSessionLogFactory;
+import com.microsoft.appcenter.ingestion.models.CustomPropertiesLog;
+import com.microsoft.appcenter.ingestion.models.Device;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.StartServiceLog;
+import com.microsoft.appcenter.ingestion.models.json.CustomPropertiesLogFactory;
+import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.LogFactory;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.StartServiceLogFactory;
+import com.microsoft.appcenter.ingestion.models.one.CommonSchemaDataUtils;
+import com.microsoft.appcenter.ingestion.models.one.PartAUtils;
+import com.microsoft.appcenter.ingestion.models.properties.BooleanTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.DateTimeTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.DoubleTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.LongTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+import com.microsoft.appcenter.push.ingestion.models.PushInstallationLog;
+import com.microsoft.appcenter.push.ingestion.models.json.PushInstallationLogFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Representative logs and serializer shared by benchmarks.
+ */
+final class BenchmarkLogs {
+
+    /**
+     * Transmission target token used for Common Schema logs.
+     */
+    static final String TARGET_TOKEN = "4dacd24d0b1b42db9894926d0db2f4c7-39311d37-fb55-479c-b7b6-9893b53d0186-7306";
+
+    /**
+     * Number of properties per log, the maximum accepted by the SDK.
+     */
+    private static final int PROPERTY_COUNT = 20;
+
+    private BenchmarkLogs() {
+    }
+
+    /**
+     * Create the log factories registered by the SDK modules.
+     */
+    static Map<String, LogFactory> createLogFactories() {
+        Map<String, LogFactory> logFactories = new HashMap<>();
+        logFactories.put(StartServiceLog.TYPE, new StartServiceLogFactory());
+        logFactories.put(CustomPropertiesLog.TYPE, new CustomPropertiesLogFactory());
+        logFactories.put(StartSessionLog.TYPE, new StartSessionLogFactory());
+        logFactories.put(PageLog.TYPE, new PageLogFactory());
+        logFactories.put(EventLog.TYPE, new EventLogFactory());
+        logFactories.put(CommonSchemaEventLog.TYPE, new CommonSchemaEventLogFactory());
+        logFactories.put(ManagedErrorLog.TYPE, ManagedErrorLogFactory.getInstance());
+        logFactories.put(HandledErrorLog.TYPE, HandledErrorLogFactory.getInstance());
+        logFactories.put(ErrorAttachmentLog.TYPE, ErrorAttachmentLogFactory.getInstance());
+        logFactories.put(DistributionStartSessionLog.TYPE, new DistributionStartSessionLogFactory());
+        logFactories.put(PushInstallationLog.TYPE, new PushInstallationLogFactory());
+        return logFactories;
+    }
+
+    /**
+     * Create a serializer with all the log types registered by the SDK modules.
+     */
+    static LogSerializer createSerializer() {
+        LogSerializer serializer = new DefaultLogSerializer();
+        for (Map.Entry<String, LogFactory> logFactory : createLogFactories().entrySet()) {
+            serializer.addLogFactory(logFactory.getKey(), logFactory.getValue());
+        }
+        return serializer;
+    }
+
+    static Device createDevice() {
+        Device device = new Device();
+        device.setSdkName("appcenter.android");
+        device.setSdkVersion("2.3.1");
+        device.setModel("Pixel 3");
+        device.setOemName("Google");
+        device.setOsName("Android");
+        device.setOsVersion("10");
+        device.setOsBuild("QP1A.190711.020");
+        device.setOsApiLevel(29);
+        device.setLocale("en_US");
+        device.setTimeZoneOffset(-420);
+        device.setScreenSize("1080x2160");
+        device.setAppVersion("1.0.0");
+        device.setAppBuild("42");
+        device.setAppNamespace("com.microsoft.appcenter.benchmark");
+        device.setCarrierName("Carrier");
+        device.setCarrierCountry("us");
+        return device;
+    }
+
+    /**
+     * Create a log of the given type with representative content.
+     */
+    static Log createLog(String type) {
+        Log log;
+        switch (type) {
+            case StartServiceLog.TYPE:
+                StartServiceLog startServiceLog = new StartServiceLog();
+                startServiceLog.setServices(Arrays.asList("Analytics", "Crashes", "Distribute", "Push"));
+                log = startServiceLog;
+                break;
+
+            case CustomPropertiesLog.TYPE:
+                CustomPropertiesLog customPropertiesLog = new CustomPropertiesLog();
+                Map<String, Object> customProperties = new HashMap<>();
+                for (int i = 0; i < PROPERTY_COUNT; i++) {
+                    customProperties.put("key" + i, i % 2 == 0 ? "value" + i : i);
+                }
+                customPropertiesLog.setProperties(customProperties);
+                log = customPropertiesLog;
+                break;
+
+            case StartSessionLog.TYPE:
+                log = new StartSessionLog();
+                break;
+
+            case PageLog.TYPE:
+                PageLog pageLog = new PageLog();
+                pageLog.setName("page");
+                pageLog.setProperties(createProperties());
+                log = pageLog;
+                break;
+
+            case EventLog.TYPE:
+                log = createEventLog(createTypedProperties(false));
+                break;
+
+            case CommonSchemaEventLog.TYPE:
+                log = createCommonSchemaEventLog(createEventLog(createTypedProperties(true)));
+                break;
+
+            case ManagedErrorLog.TYPE:
+                ManagedErrorLog managedErrorLog = new ManagedErrorLog();
+                managedErrorLog.setId(UUID.randomUUID());
+                managedErrorLog.setProcessId(1234);
+                managedErrorLog.setProcessName("com.microsoft.appcenter.benchmark");
+                managedErrorLog.setErrorThreadId(1L);
+                managedErrorLog.setErrorThreadName("main");
+                managedErrorLog.setFatal(true);
+                managedErrorLog.setAppLaunchTimestamp(new Date());
+                managedErrorLog.setArchitecture("arm64-v8a");
+                managedErrorLog.setException(ErrorLogHelper.getModelExceptionFromThrowable(createThrowable(64, 2)));
+                log = managedErrorLog;
+                break;
+
+            case HandledErrorLog.TYPE:
+                HandledErrorLog handledErrorLog = new HandledErrorLog();
+                handledErrorLog.setId(UUID.randomUUID());
+                handledErrorLog.setProperties(createProperties());
+                handledErrorLog.setException(ErrorLogHelper.getModelExceptionFromThrowable(createThrowable(32, 1)));
+                log = handledErrorLog;
+                break;
+
+            case ErrorAttachmentLog.TYPE:
+                ErrorAttachmentLog errorAttachmentLog = ErrorAttachmentLog.attachmentWithBinary(new byte[4096], "binary.bin", "application/octet-stream");
+                errorAttachmentLog.setId(UUID.randomUUID());
+                errorAttachmentLog.setErrorId(UUID.randomUUID());
+                log = errorAttachmentLog;
+                break;
+
+            case DistributionStartSessionLog.TYPE:
+                log = new DistributionStartSessionLog();
+                break;
+
+            case PushInstallationLog.TYPE:
+                PushInstallationLog pushInstallationLog = new PushInstallationLog();
+                pushInstallationLog.setPushToken("fz5q5Nk-SHQ:APA91bGNgW8qBJpkNoUYgRaKKv8GrZBP1f4ttz3KNIS3ZRnhiWfq8rhRnA4OZFm");
+                log = pushInstallationLog;
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unknown log type: " + type);
+        }
+        if (!(log instanceof CommonSchemaEventLog)) {
+            log.setTimestamp(new Date());
+            log.setSid(UUID.randomUUID());
+            log.setUserId("user");
+            log.setDevice(createDevice());
+        }
+        return log;
+    }
+
+    static Map<String, String> createProperties() {
+        Map<String, String> properties = new HashMap<>();
+        for (int i = 0; i < PROPERTY_COUNT; i++) {
+            properties.put("key" + i, "value" + i);
+        }
+        return properties;
+    }
+
+    /**
+     * Create typed properties of every type.
+     *
+     * @param nested true to use dotted keys nesting properties in Common Schema data.
+     */
+    static List<TypedProperty> createTypedProperties(boolean nested) {
+        List<TypedProperty> properties = new ArrayList<>();
+        for (int i = 0; i < PROPERTY_COUNT; i++) {
+            String name = nested ? "level" + (i % 3) + ".group" + (i % 5) + ".key" + i : "key" + i;
+            TypedProperty property;
+            switch (i % 5) {
+                case 0:
+                    StringTypedProperty stringTypedProperty = new StringTypedProperty();
+                    stringTypedProperty.setValue("value" + i);
+                    property = stringTypedProperty;
+                    break;
+
+                case 1:
+                    LongTypedProperty longTypedProperty = new LongTypedProperty();
+                    longTypedProperty.setValue(10000000000L + i);
+                    property = longTypedProperty;
+                    break;
+
+                case 2:
+                    DoubleTypedProperty doubleTypedProperty = new DoubleTypedProperty();
+                    doubleTypedProperty.setValue(i + 0.5);
+                    property = doubleTypedProperty;
+                    break;
+
+                case 3:
+                    BooleanTypedProperty booleanTypedProperty = new BooleanTypedProperty();
+                    booleanTypedProperty.setValue(i % 2 == 0);
+                    property = booleanTypedProperty;
+                    break;
+
+                default:
+                    DateTimeTypedProperty dateTimeTypedProperty = new DateTimeTypedProperty();
+                    dateTimeTypedProperty.setValue(new Date());
+                    property = dateTimeTypedProperty;
+                    break;
+            }
+            property.setName(name);
+            properties.add(property);
+        }
+        return properties;
+    }
+
+    static EventLog createEventLog(List<TypedProperty> typedProperties) {
+        EventLog eventLog = new EventLog();
+        eventLog.setId(UUID.randomUUID());
+        eventLog.setName("event");
+        eventLog.setTypedProperties(typedProperties);
+        eventLog.setTimestamp(new Date());
+        eventLog.setSid(UUID.randomUUID());
+        eventLog.setUserId("user");
+        eventLog.setDevice(createDevice());
+        return eventLog;
+    }
+
+    /**
+     * Convert an event log the way analytics does before sending to One Collector.
+     */
+    static CommonSchemaEventLog createCommonSchemaEventLog(EventLog eventLog) {
+        CommonSchemaEventLog log = new CommonSchemaEventLog();
+        PartAUtils.addPartAFromLog(eventLog, log, TARGET_TOKEN);
+        log.setName(eventLog.getName());
+        CommonSchemaDataUtils.addCommonSchemaData(eventLog.getTypedProperties(), log);
+        return log;
+    }
+
+    /**
+     * Create a throwable with a chain of causes.
+     *
+     * @param depth  number of stack frames of each throwable.
+     * @param causes number of throwables in the chain.
+     */
+    static Throwable createThrowable(int depth, int causes) {
+        Throwable throwable = null;
+        for (int i = 0; i < causes; i++) {
+            throwable = new RuntimeException("Cause " + i, throwable);
+            throwable.setStackTrace(createStackTrace(depth));
+        }
+        return throwable;
+    }
+
+    static StackTraceElement[] createStackTrace(int depth) {
+        StackTraceElement[] stackTrace = new StackTraceElement[depth];
+        for (int i = 0; i < depth; i++) {
+            stackTrace[i] = new StackTraceElement("com.microsoft.appcenter.benchmark.Class" + i, "method" + i, "Class" + i + ".java", i + 1);
+        }
+        return stackTrace;
+    }
+}
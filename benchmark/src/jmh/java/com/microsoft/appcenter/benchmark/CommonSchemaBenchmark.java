@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.benchmark;
+
+import com.microsoft.appcenter.analytics.ingestion.models.EventLog;
+import com.microsoft.appcenter.analytics.ingestion.models.one.CommonSchemaEventLog;
+import com.microsoft.appcenter.ingestion.models.one.CommonSchemaDataUtils;
+import com.microsoft.appcenter.ingestion.models.one.Extensions;
+import com.microsoft.appcenter.ingestion.models.one.PartAUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of an event log to a Common Schema log, split in part A and data conversions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommonSchemaBenchmark {
+
+    /**
+     * Whether property names have dotted keys creating nested objects.
+     */
+    @Param({"false", "true"})
+    public boolean nested;
+
+    private EventLog mEventLog;
+
+    @Setup
+    public void setUp() {
+        mEventLog = BenchmarkLogs.createEventLog(BenchmarkLogs.createTypedProperties(nested));
+    }
+
+    @Benchmark
+    public CommonSchemaEventLog addPartAFromLog() {
+        CommonSchemaEventLog log = new CommonSchemaEventLog();
+        PartAUtils.addPartAFromLog(mEventLog, log, BenchmarkLogs.TARGET_TOKEN);
+        return log;
+    }
+
+    @Benchmark
+    public CommonSchemaEventLog addCommonSchemaData() {
+        CommonSchemaEventLog log = new CommonSchemaEventLog();
+        log.setExt(new Extensions());
+        CommonSchemaDataUtils.addCommonSchemaData(mEventLog.getTypedProperties(), log);
+        return log;
+    }
+
+    @Benchmark
+    public CommonSchemaEventLog toCommonSchemaLog() {
+        return BenchmarkLogs.createCommonSchemaEventLog(mEventLog);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.benchmark;
+
+import com.microsoft.appcenter.crashes.ingestion.models.Exception;
+import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of a throwable to the crash model, including frame and cause truncation on deep stacks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ErrorLogHelperBenchmark {
+
+    /**
+     * Stack depth of each throwable, above {@link ErrorLogHelper#FRAME_LIMIT} frames are truncated.
+     */
+    @Param({"32", "256", "1024"})
+    public int depth;
+
+    /**
+     * Number of throwables in the cause chain.
+     */
+    @Param({"1", "4", "32"})
+    public int causes;
+
+    private StackTraceElement[] mStackTrace;
+
+    private Throwable[] mCauseChain;
+
+    @Setup
+    public void setUp() {
+        mStackTrace = BenchmarkLogs.createStackTrace(depth);
+        mCauseChain = new Throwable[causes];
+        Throwable throwable = BenchmarkLogs.createThrowable(depth, causes);
+        for (int i = 0; i < causes; i++) {
+            mCauseChain[i] = throwable;
+            throwable = throwable.getCause();
+        }
+    }
+
+    @Benchmark
+    public Exception getModelExceptionFromThrowable() {
+
+        /* Truncation replaces stack traces, restore them so that every call does the same work. */
+        if (depth > ErrorLogHelper.FRAME_LIMIT) {
+            for (Throwable throwable : mCauseChain) {
+                throwable.setStackTrace(mStackTrace);
+            }
+        }
+        return ErrorLogHelper.getModelExceptionFromThrowable(mCauseChain[0]);
+    }
+}
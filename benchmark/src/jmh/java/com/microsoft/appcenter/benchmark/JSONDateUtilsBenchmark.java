@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.benchmark;
+
+import com.microsoft.appcenter.ingestion.models.json.JSONDateUtils;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Date formatting and parsing, done for every log timestamp and date time property.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JSONDateUtilsBenchmark {
+
+    private Date mDate;
+
+    private String mDateString;
+
+    @Setup
+    public void setUp() throws JSONException {
+        mDate = new Date();
+        mDateString = JSONDateUtils.toString(mDate);
+    }
+
+    @Benchmark
+    public String toDateString() throws JSONException {
+        return JSONDateUtils.toString(mDate);
+    }
+
+    @Benchmark
+    public Date toDate() throws JSONException {
+        return JSONDateUtils.toDate(mDateString);
+    }
+}
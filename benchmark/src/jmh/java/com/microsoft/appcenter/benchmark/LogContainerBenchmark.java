@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.benchmark;
+
+import com.microsoft.appcenter.analytics.ingestion.models.EventLog;
+import com.microsoft.appcenter.analytics.ingestion.models.PageLog;
+import com.microsoft.appcenter.analytics.ingestion.models.StartSessionLog;
+import com.microsoft.appcenter.crashes.ingestion.models.HandledErrorLog;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of a batch of logs into an ingestion request body.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogContainerBenchmark {
+
+    /**
+     * Mix of log types in a batch, typical of analytics traffic.
+     */
+    private static final String[] LOG_TYPES = {
+            StartSessionLog.TYPE,
+            PageLog.TYPE,
+            EventLog.TYPE,
+            EventLog.TYPE,
+            EventLog.TYPE,
+            HandledErrorLog.TYPE
+    };
+
+    @Param({"1", "50", "100"})
+    public int batchSize;
+
+    private LogSerializer mLogSerializer;
+
+    private LogContainer mLogContainer;
+
+    @Setup
+    public void setUp() {
+        mLogSerializer = BenchmarkLogs.createSerializer();
+        List<Log> logs = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            logs.add(BenchmarkLogs.createLog(LOG_TYPES[i % LOG_TYPES.length]));
+        }
+        mLogContainer = new LogContainer();
+        mLogContainer.setLogs(logs);
+    }
+
+    @Benchmark
+    public String serializeContainer() throws JSONException {
+        return mLogSerializer.serializeContainer(mLogContainer);
+    }
+
+    @Benchmark
+    public long serializeContainerToWriter() throws JSONException, IOException {
+        CountingWriter writer = new CountingWriter();
+        mLogSerializer.serializeContainer(mLogContainer, writer);
+        return writer.mCount;
+    }
+
+    /**
+     * Writer discarding characters, to measure streaming serialization without the request body.
+     */
+    private static class CountingWriter extends Writer {
+
+        private long mCount;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            mCount += length;
+        }
+
+        @Override
+        public void write(String string, int offset, int length) {
+            mCount += length;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
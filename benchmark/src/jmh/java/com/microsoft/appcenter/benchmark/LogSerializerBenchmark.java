@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.benchmark;
+
+import com.microsoft.appcenter.analytics.ingestion.models.EventLog;
+import com.microsoft.appcenter.analytics.ingestion.models.PageLog;
+import com.microsoft.appcenter.analytics.ingestion.models.StartSessionLog;
+import com.microsoft.appcenter.analytics.ingestion.models.one.CommonSchemaEventLog;
+import com.microsoft.appcenter.crashes.ingestion.models.ErrorAttachmentLog;
+import com.microsoft.appcenter.crashes.ingestion.models.HandledErrorLog;
+import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
+import com.microsoft.appcenter.distribute.ingestion.models.DistributionStartSessionLog;
+import com.microsoft.appcenter.ingestion.models.CustomPropertiesLog;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.StartServiceLog;
+import com.microsoft.appcenter.ingestion.models.json.LogFactory;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.push.ingestion.models.PushInstallationLog;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of a single log, as done when storing a log, and deserialization with its stored
+ * type, as done when reading logs back from storage.
+ * Deserialization streams the models that support it, such as event, managed error and Common Schema logs,
+ * and is compared with reading the same payload into a {@link JSONObject} first.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogSerializerBenchmark {
+
+    @Param({
+            StartServiceLog.TYPE,
+            CustomPropertiesLog.TYPE,
+            StartSessionLog.TYPE,
+            PageLog.TYPE,
+            EventLog.TYPE,
+            CommonSchemaEventLog.TYPE,
+            ManagedErrorLog.TYPE,
+            HandledErrorLog.TYPE,
+            ErrorAttachmentLog.TYPE,
+            DistributionStartSessionLog.TYPE,
+            PushInstallationLog.TYPE
+    })
+    public String logType;
+
+    private LogSerializer mLogSerializer;
+
+    private Log mLog;
+
+    private String mPayload;
+
+    private LogFactory mLogFactory;
+
+    @Setup
+    public void setUp() throws JSONException {
+        mLogSerializer = BenchmarkLogs.createSerializer();
+        mLog = BenchmarkLogs.createLog(logType);
+        mPayload = mLogSerializer.serializeLog(mLog);
+        mLogFactory = BenchmarkLogs.createLogFactories().get(logType);
+    }
+
+    @Benchmark
+    public String serializeLog() throws JSONException {
+        return mLogSerializer.serializeLog(mLog);
+    }
+
+    @Benchmark
+    public Log deserializeLog() throws JSONException {
+        return mLogSerializer.deserializeLog(mPayload, logType);
+    }
+
+    /**
+     * Path used before streaming, and still used for the models that don't stream.
+     */
+    @Benchmark
+    public Log deserializeLogFromJSONObject() throws JSONException {
+        Log log = mLogFactory.create();
+        log.read(new JSONObject(mPayload));
+        return log;
+    }
+}
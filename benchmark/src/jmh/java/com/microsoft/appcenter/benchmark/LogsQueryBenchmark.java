@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queries of the logs database on a large backlog, with the indexes of schema version 8
+ * (priority and batch identifier) or with the group and timestamp indexes of version 9.
+ * SQLite runs through JDBC: absolute numbers differ from devices, query plans do not.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogsQueryBenchmark {
+
+    /**
+     * Group with most of the logs.
+     */
+    private static final String ANALYTICS_GROUP = "group_analytics";
+
+    /**
+     * Group with few logs, most expensive to find without an index.
+     */
+    private static final String CRASHES_GROUP = "group_errors";
+
+    /**
+     * Page size used by the channel.
+     */
+    private static final int PAGE_SIZE = 50;
+
+    /**
+     * Payload stored in each row.
+     */
+    private static final String PAYLOAD = new String(new char[512]).replace('\0', 'x');
+
+    @Param({"false", "true"})
+    public boolean groupIndexes;
+
+    @Param({"100000"})
+    public int rows;
+
+    @Param({ANALYTICS_GROUP, CRASHES_GROUP})
+    public String group;
+
+    private File mFile;
+
+    private Connection mConnection;
+
+    private PreparedStatement mGetLogs;
+
+    private PreparedStatement mGetLogsWithPausedTarget;
+
+    private PreparedStatement mCountLogsForGroup;
+
+    private PreparedStatement mCountLogsForDate;
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        mFile = File.createTempFile("logs", ".db");
+        mConnection = DriverManager.getConnection("jdbc:sqlite:" + mFile.getAbsolutePath());
+        try (Statement statement = mConnection.createStatement()) {
+            statement.execute("CREATE TABLE `logs` (`oid` INTEGER PRIMARY KEY AUTOINCREMENT, `persistence_group` TEXT, `log` TEXT,"
+                    + " `target_token` TEXT, `type` TEXT, `target_key` TEXT, `priority` INTEGER, `timestamp` INTEGER,"
+                    + " `batch_id` TEXT, `device_id` INTEGER, `log_data` BLOB)");
+            statement.execute("CREATE INDEX `ix_logs_priority` ON logs (`priority`)");
+            statement.execute("CREATE INDEX `ix_logs_batch_id` ON logs (`batch_id`)");
+            if (groupIndexes) {
+                statement.execute("CREATE INDEX `ix_logs_persistence_group` ON logs (`persistence_group`, `batch_id`, `priority` DESC)");
+                statement.execute("CREATE INDEX `ix_logs_timestamp` ON logs (`timestamp`)");
+            }
+        }
+
+        /* 1% of logs are errors, 10% are critical, 20% are part of a batch being sent. */
+        mConnection.setAutoCommit(false);
+        try (PreparedStatement insert = mConnection.prepareStatement("INSERT INTO logs (`persistence_group`, `log`, `type`,"
+                + " `target_key`, `priority`, `timestamp`, `batch_id`) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < rows; i++) {
+                boolean error = i % 100 == 0;
+                insert.setString(1, error ? CRASHES_GROUP : ANALYTICS_GROUP);
+                insert.setString(2, PAYLOAD);
+                insert.setString(3, error ? "handledError" : "event");
+                insert.setString(4, error ? null : "key" + i % 5);
+                insert.setInt(5, i % 10 == 0 ? 2 : 1);
+                insert.setLong(6, i);
+                insert.setString(7, i % 5 == 1 ? "batch" : null);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+        mConnection.commit();
+        mConnection.setAutoCommit(true);
+        try (Statement statement = mConnection.createStatement()) {
+            statement.execute("ANALYZE");
+        }
+
+        /* Same statements as DatabasePersistence. */
+        String getLogs = "SELECT * FROM logs WHERE persistence_group = ? AND batch_id IS NULL%s ORDER BY priority DESC, oid LIMIT " + PAGE_SIZE;
+        mGetLogs = mConnection.prepareStatement(String.format(getLogs, ""));
+        mGetLogsWithPausedTarget = mConnection.prepareStatement(String.format(getLogs, " AND target_key NOT IN (?)"));
+        mCountLogsForGroup = mConnection.prepareStatement("SELECT COUNT(*) FROM logs WHERE persistence_group = ?");
+        mCountLogsForDate = mConnection.prepareStatement("SELECT COUNT(*) FROM logs WHERE timestamp < ?");
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        mConnection.close();
+
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    @Benchmark
+    public int getLogs() throws SQLException {
+        mGetLogs.setString(1, group);
+        return readPage(mGetLogs);
+    }
+
+    @Benchmark
+    public int getLogsWithPausedTarget() throws SQLException {
+        mGetLogsWithPausedTarget.setString(1, group);
+        mGetLogsWithPausedTarget.setString(2, "key0");
+        return readPage(mGetLogsWithPausedTarget);
+    }
+
+    @Benchmark
+    public int countLogsForGroup() throws SQLException {
+        mCountLogsForGroup.setString(1, group);
+        return count(mCountLogsForGroup);
+    }
+
+    @Benchmark
+    public int countLogsForDate() throws SQLException {
+
+        /* The channel checks whether logs older than a time range remain, most logs are newer. */
+        mCountLogsForDate.setLong(1, rows / 10);
+        return count(mCountLogsForDate);
+    }
+
+    private static int readPage(PreparedStatement statement) throws SQLException {
+        int length = 0;
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                length += resultSet.getString("log").length();
+            }
+        }
+        return length;
+    }
+
+    private static int count(PreparedStatement statement) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery()) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs database throughput with the default rollback journal and full sync, as before,
+ * or with write-ahead logging and normal sync as configured by the SDK.
+ * Each stored log is its own commit; the read/write group measures a reader running
+ * concurrently with a writer, like sending and storing logs on different threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageJournalBenchmark {
+
+    /**
+     * Payload stored in each row.
+     */
+    private static final String PAYLOAD = new String(new char[512]).replace('\0', 'x');
+
+    /**
+     * Database file shared by the connections of a trial.
+     */
+    @State(Scope.Benchmark)
+    public static class Database {
+
+        @Param({"rollback", "wal"})
+        public String journal;
+
+        File mFile;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException, SQLException {
+            mFile = File.createTempFile("logs", ".db");
+            try (Connection connection = open(); Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE `logs` (`oid` INTEGER PRIMARY KEY AUTOINCREMENT, `persistence_group` TEXT, `log` TEXT, `priority` INTEGER)");
+                statement.execute("CREATE INDEX `ix_logs_priority` ON logs (`priority`)");
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            for (String suffix : new String[]{"", "-wal", "-shm", "-journal"}) {
+
+                //noinspection ResultOfMethodCallIgnored
+                new File(mFile.getPath() + suffix).delete();
+            }
+        }
+
+        Connection open() throws SQLException {
+            Connection connection = DriverManager.getConnection("jdbc:sqlite:" + mFile.getAbsolutePath());
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA busy_timeout = 10000");
+                if ("wal".equals(journal)) {
+                    statement.execute("PRAGMA journal_mode = WAL");
+                    statement.execute("PRAGMA synchronous = NORMAL");
+                } else {
+                    statement.execute("PRAGMA journal_mode = DELETE");
+                    statement.execute("PRAGMA synchronous = FULL");
+                }
+            }
+            return connection;
+        }
+    }
+
+    /**
+     * Connection of a benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Session {
+
+        Connection mConnection;
+
+        PreparedStatement mInsert;
+
+        PreparedStatement mSelect;
+
+        @Setup(Level.Trial)
+        public void setUp(Database database) throws SQLException {
+            mConnection = database.open();
+            mInsert = mConnection.prepareStatement("INSERT INTO logs (`persistence_group`, `log`, `priority`) VALUES ('group', ?, 1)");
+            mInsert.setString(1, PAYLOAD);
+            mSelect = mConnection.prepareStatement("SELECT * FROM logs ORDER BY priority DESC, oid LIMIT 50");
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws SQLException {
+            mConnection.close();
+        }
+    }
+
+    @Benchmark
+    public int storeLog(Session session) throws SQLException {
+        return session.mInsert.executeUpdate();
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public int readWhileStoring(Session session) throws SQLException {
+        int length = 0;
+        try (ResultSet resultSet = session.mSelect.executeQuery()) {
+            while (resultSet.next()) {
+                length += resultSet.getString("log").length();
+            }
+        }
+        return length;
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public int storeWhileReading(Session session) throws SQLException {
+        return session.mInsert.executeUpdate();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.benchmark;
+
+import com.microsoft.appcenter.analytics.ingestion.models.EventLog;
+import com.microsoft.appcenter.analytics.ingestion.models.PageLog;
+import com.microsoft.appcenter.analytics.ingestion.models.StartSessionLog;
+import com.microsoft.appcenter.analytics.ingestion.models.one.CommonSchemaEventLog;
+import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.utils.storage.CompressionUtils;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Log payload as written to and read from a logs database row, as text or compressed.
+ * SQLite itself is not part of the measure: the rows per megabyte printed at setup show
+ * how many logs fit in the maximum storage size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StoragePayloadBenchmark {
+
+    /**
+     * Same marker as the logs database uses for compressed rows.
+     */
+    private static final byte PAYLOAD_FORMAT_DEFLATE = 1;
+
+    @Param({
+            StartSessionLog.TYPE,
+            PageLog.TYPE,
+            EventLog.TYPE,
+            CommonSchemaEventLog.TYPE,
+            ManagedErrorLog.TYPE
+    })
+    public String logType;
+
+    @Param({"false", "true"})
+    public boolean compressed;
+
+    private final Deflater mDeflater = new Deflater();
+
+    private final Inflater mInflater = new Inflater();
+
+    private LogSerializer mLogSerializer;
+
+    private Log mLog;
+
+    private byte[] mRow;
+
+    @Setup
+    public void setUp() throws JSONException, UnsupportedEncodingException {
+        mLogSerializer = BenchmarkLogs.createSerializer();
+        mLog = BenchmarkLogs.createLog(logType);
+        mRow = storeLog();
+        System.out.println(String.format(Locale.US, "%n%s compressed=%s: %d bytes per row, %d rows per MB",
+                logType, compressed, mRow.length, 1024 * 1024 / mRow.length));
+    }
+
+    @TearDown
+    public void tearDown() {
+        mDeflater.end();
+        mInflater.end();
+    }
+
+    @Benchmark
+    public byte[] storeLog() throws JSONException, UnsupportedEncodingException {
+        byte[] payload = mLogSerializer.serializeLog(mLog).getBytes("UTF-8");
+        return compressed ? CompressionUtils.deflate(mDeflater, payload, PAYLOAD_FORMAT_DEFLATE) : payload;
+    }
+
+    @Benchmark
+    public Log readLog() throws JSONException, UnsupportedEncodingException, DataFormatException {
+        byte[] payload = compressed ? CompressionUtils.inflate(mInflater, mRow, 1) : mRow;
+        return mLogSerializer.deserializeLog(new String(payload, "UTF-8"), logType);
+    }
+}
@@ -138,5 +138,22 @@ public class AnalyticsSerializerTest {
         android.util.Log.v(TAG, payload);
         LogContainer actualContainer = serializer.deserializeContainer(payload, null);
         Assert.assertEquals(expectedContainer, actualContainer);
+
+        /* Logs are read one by one from storage, with a streaming reader. */
+        for (Log log : logs) {
+            Assert.assertEquals(log, serializer.deserializeLog(serializer.serializeLog(log), null));
+            Assert.assertEquals(log, serializer.deserializeLog(serializer.serializeLog(log), log.getType()));
+        }
+    }
+
+    @Test(expected = JSONException.class)
+    public void deserializeEventWithoutName() throws JSONException {
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(EventLog.TYPE, new EventLogFactory());
+        serializer.deserializeLog("{" +
+                "\"type\": \"event\"," +
+                "\"timestamp\": \"2017-07-08T00:32:58.123Z\"," +
+                "\"id\": \"" + UUID.randomUUID() + "\"" +
+                "}", null);
     }
 }
\ No newline at end of file
@@ -28,6 +28,7 @@ import com.microsoft.appcenter.analytics.ingestion.models.json.StartSessionLogFa
 import com.microsoft.appcenter.analytics.ingestion.models.one.CommonSchemaEventLog;
 import com.microsoft.appcenter.analytics.ingestion.models.one.json.CommonSchemaEventLogFactory;
 import com.microsoft.appcenter.channel.Channel;
+import com.microsoft.appcenter.channel.NetworkPolicy;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.json.LogFactory;
 import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
@@ -94,6 +95,12 @@ public class Analytics extends AbstractAppCenterService {
     @VisibleForTesting
     static final int MAXIMUM_TRANSMISSION_INTERVAL_IN_SECONDS = 24 * 60 * 60;
 
+    /**
+     * Default age after which events waiting for an unmetered network are sent on a metered one.
+     */
+    @VisibleForTesting
+    static final int DEFAULT_METERED_NETWORK_MAX_AGE_IN_SECONDS = 60 * 60;
+
     /**
      * Log factories managed by this service.
      */
@@ -150,6 +157,11 @@ public class Analytics extends AbstractAppCenterService {
      */
     private long mTransmissionInterval;
 
+    /**
+     * Age in milliseconds after which events waiting for an unmetered network are sent on a metered one.
+     */
+    private long mMeteredNetworkMaxAge;
+
     /**
      * Automatic page tracking flag.
      * TODO the backend does not support pages yet so the default value would be true after the service becomes public.
@@ -167,6 +179,7 @@ public class Analytics extends AbstractAppCenterService {
         mFactories.put(CommonSchemaEventLog.TYPE, new CommonSchemaEventLogFactory());
         mTransmissionTargets = new HashMap<>();
         mTransmissionInterval = TimeUnit.SECONDS.toMillis(MINIMUM_TRANSMISSION_INTERVAL_IN_SECONDS);
+        mMeteredNetworkMaxAge = TimeUnit.SECONDS.toMillis(DEFAULT_METERED_NETWORK_MAX_AGE_IN_SECONDS);
     }
 
     /**
@@ -220,6 +233,18 @@ public class Analytics extends AbstractAppCenterService {
         return getInstance().setInstanceTransmissionInterval(seconds);
     }
 
+    /**
+     * Set how long events wait for an unmetered network such as Wi-Fi before being sent on a metered or roaming one,
+     * 1 hour by default. Events tracked with critical persistence flag are sent on any network.
+     * Should be called before the service is started.
+     *
+     * @param seconds the maximum delay in seconds, 0 to send events on any network.
+     * @return <code>true</code> if the delay is set, <code>false</code> otherwise.
+     */
+    public static boolean setMeteredNetworkMaxAge(int seconds) {
+        return getInstance().setInstanceMeteredNetworkMaxAge(seconds);
+    }
+
     /**
      * Pauses log transmission. This API cannot be used if the service is disabled.
      * Transmission is resumed:
@@ -626,6 +651,11 @@ public class Analytics extends AbstractAppCenterService {
         return mTransmissionInterval;
     }
 
+    @Override
+    protected NetworkPolicy getNetworkPolicy() {
+        return NetworkPolicy.unmeteredPreferred(mMeteredNetworkMaxAge);
+    }
+
     /**
      * On an activity being resumed, start a new session if needed
      * and track current page automatically if that mode is enabled.
@@ -664,7 +694,14 @@ public class Analytics extends AbstractAppCenterService {
 
     @Override
     protected Channel.GroupListener getChannelListener() {
-        return new Channel.GroupListener() {
+        return new Channel.FilteredGroupListener() {
+
+            @Override
+            public boolean needsLog(@NonNull String type) {
+
+                /* Logs are sent as stored unless the application listens to them. */
+                return mAnalyticsListener != null;
+            }
 
             @Override
             public void onBeforeSending(Log log) {
@@ -938,6 +975,25 @@ public class Analytics extends AbstractAppCenterService {
         return true;
     }
 
+    /**
+     * Set how long events wait for an unmetered network. Should be called before the service is started.
+     *
+     * @param seconds the maximum delay in seconds, 0 to send events on any network.
+     * @return <code>true</code> if the delay is set, <code>false</code> otherwise.
+     */
+    private boolean setInstanceMeteredNetworkMaxAge(int seconds) {
+        if (mChannel != null) {
+            AppCenterLog.error(LOG_TAG, "Metered network maximum age should be set before the service is started.");
+            return false;
+        }
+        if (seconds < 0) {
+            AppCenterLog.error(LOG_TAG, "Metered network maximum age may not be negative.");
+            return false;
+        }
+        mMeteredNetworkMaxAge = TimeUnit.SECONDS.toMillis(seconds);
+        return true;
+    }
+
     /**
      * Post a command.
      *
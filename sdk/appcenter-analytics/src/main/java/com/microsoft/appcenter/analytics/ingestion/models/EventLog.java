@@ -5,6 +5,10 @@
 
 package com.microsoft.appcenter.analytics.ingestion.models;
 
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
+import com.microsoft.appcenter.ingestion.models.json.JSONStreamUtils;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.TypedPropertyUtils;
@@ -13,6 +17,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.UUID;
 
@@ -22,7 +27,7 @@ import static com.microsoft.appcenter.ingestion.models.CommonProperties.TYPED_PR
 /**
  * Event log.
  */
-public class EventLog extends LogWithNameAndProperties {
+public class EventLog extends LogWithNameAndProperties implements StreamingModel {
 
     public static final String TYPE = "event";
 
@@ -85,6 +90,25 @@ public class EventLog extends LogWithNameAndProperties {
         setTypedProperties(TypedPropertyUtils.read(object));
     }
 
+    @Override
+    public boolean readProperty(JsonReader reader, String key) throws IOException, JSONException {
+        if (ID.equals(key)) {
+            setId(UUID.fromString(reader.nextString()));
+            return true;
+        }
+        if (TYPED_PROPERTIES.equals(key)) {
+            setTypedProperties(TypedPropertyUtils.read(reader));
+            return true;
+        }
+        return super.readProperty(reader, key);
+    }
+
+    @Override
+    public void validate() throws JSONException {
+        super.validate();
+        JSONStreamUtils.checkRequired(getId(), ID);
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
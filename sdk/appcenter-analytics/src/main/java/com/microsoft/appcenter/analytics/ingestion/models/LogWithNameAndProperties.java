@@ -5,12 +5,17 @@
 
 package com.microsoft.appcenter.analytics.ingestion.models;
 
+import android.util.JsonReader;
+
 import com.microsoft.appcenter.ingestion.models.LogWithProperties;
+import com.microsoft.appcenter.ingestion.models.json.JSONStreamUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 import static com.microsoft.appcenter.ingestion.models.CommonProperties.NAME;
 
 public abstract class LogWithNameAndProperties extends LogWithProperties {
@@ -44,6 +49,21 @@ public abstract class LogWithNameAndProperties extends LogWithProperties {
         setName(object.getString(NAME));
     }
 
+    @Override
+    public boolean readProperty(JsonReader reader, String key) throws IOException, JSONException {
+        if (NAME.equals(key)) {
+            setName(reader.nextString());
+            return true;
+        }
+        return super.readProperty(reader, key);
+    }
+
+    @Override
+    public void validate() throws JSONException {
+        super.validate();
+        JSONStreamUtils.checkRequired(getName(), NAME);
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
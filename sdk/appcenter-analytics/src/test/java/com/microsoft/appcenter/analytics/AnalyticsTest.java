@@ -21,6 +21,7 @@ import com.microsoft.appcenter.analytics.ingestion.models.json.StartSessionLogFa
 import com.microsoft.appcenter.analytics.ingestion.models.one.CommonSchemaEventLog;
 import com.microsoft.appcenter.analytics.ingestion.models.one.json.CommonSchemaEventLogFactory;
 import com.microsoft.appcenter.channel.Channel;
+import com.microsoft.appcenter.channel.NetworkPolicy;
 import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.json.LogFactory;
@@ -56,6 +57,7 @@ import static com.microsoft.appcenter.Flags.CRITICAL;
 import static com.microsoft.appcenter.Flags.NORMAL;
 import static com.microsoft.appcenter.analytics.Analytics.ANALYTICS_CRITICAL_GROUP;
 import static com.microsoft.appcenter.analytics.Analytics.ANALYTICS_GROUP;
+import static com.microsoft.appcenter.analytics.Analytics.DEFAULT_METERED_NETWORK_MAX_AGE_IN_SECONDS;
 import static com.microsoft.appcenter.analytics.Analytics.MAXIMUM_TRANSMISSION_INTERVAL_IN_SECONDS;
 import static com.microsoft.appcenter.analytics.Analytics.MINIMUM_TRANSMISSION_INTERVAL_IN_SECONDS;
 import static org.junit.Assert.assertEquals;
@@ -789,6 +791,24 @@ public class AnalyticsTest extends AbstractAnalyticsTest {
         verify(analyticsListener, never()).onSendingFailed(any(EventLog.class), any(Exception.class));
     }
 
+    @Test
+    public void channelListenerNeedsLogsOnlyWithAnalyticsListener() {
+        Channel.GroupListener listener = Analytics.getInstance().getChannelListener();
+        assertTrue(listener instanceof Channel.FilteredGroupListener);
+        Channel.FilteredGroupListener filteredListener = (Channel.FilteredGroupListener) listener;
+
+        /* Stored logs are sent without rebuilding models. */
+        assertFalse(filteredListener.needsLog(EventLog.TYPE));
+        assertFalse(filteredListener.needsLog(StartSessionLog.TYPE));
+
+        /* Models are needed for the application listener. */
+        Analytics.setListener(mock(AnalyticsListener.class));
+        assertTrue(filteredListener.needsLog(EventLog.TYPE));
+        assertTrue(filteredListener.needsLog(PageLog.TYPE));
+        Analytics.setListener(null);
+        assertFalse(filteredListener.needsLog(EventLog.TYPE));
+    }
+
     @Test
     public void appOnlyFeatures() {
 
@@ -897,6 +917,35 @@ public class AnalyticsTest extends AbstractAnalyticsTest {
         assertFalse(result);
     }
 
+    @Test
+    public void meteredNetworkMaxAge() {
+        Analytics analytics = Analytics.getInstance();
+        assertFalse(Analytics.setMeteredNetworkMaxAge(-1));
+        assertTrue(Analytics.setMeteredNetworkMaxAge(DEFAULT_METERED_NETWORK_MAX_AGE_IN_SECONDS * 2));
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, null, null, true);
+
+        /* Events wait for unmetered networks, the critical ones do not. */
+        ArgumentCaptor<NetworkPolicy> networkPolicy = ArgumentCaptor.forClass(NetworkPolicy.class);
+        verify(channel).setNetworkPolicy(eq(ANALYTICS_GROUP), networkPolicy.capture());
+        assertEquals(TimeUnit.SECONDS.toMillis(DEFAULT_METERED_NETWORK_MAX_AGE_IN_SECONDS * 2), networkPolicy.getValue().getMaxAge());
+        verify(channel, never()).setNetworkPolicy(eq(ANALYTICS_CRITICAL_GROUP), any(NetworkPolicy.class));
+
+        /* Cannot be changed after start. */
+        assertFalse(Analytics.setMeteredNetworkMaxAge(0));
+    }
+
+    @Test
+    public void meteredNetworkMaxAgeDisabled() {
+        Analytics analytics = Analytics.getInstance();
+        assertTrue(Analytics.setMeteredNetworkMaxAge(0));
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, null, null, true);
+        verify(channel, never()).setNetworkPolicy(anyString(), any(NetworkPolicy.class));
+    }
+
     /**
      * Activity with page name automatically resolving to "My" (no "Activity" suffix).
      */
@@ -18,6 +18,7 @@ import com.microsoft.appcenter.AbstractAppCenterService;
 import com.microsoft.appcenter.Constants;
 import com.microsoft.appcenter.Flags;
 import com.microsoft.appcenter.channel.Channel;
+import com.microsoft.appcenter.channel.NetworkPolicy;
 import com.microsoft.appcenter.crashes.ingestion.models.ErrorAttachmentLog;
 import com.microsoft.appcenter.crashes.ingestion.models.Exception;
 import com.microsoft.appcenter.crashes.ingestion.models.HandledErrorLog;
@@ -100,6 +101,18 @@ public class Crashes extends AbstractAppCenterService {
     @VisibleForTesting
     static final String ERROR_GROUP = "groupErrors";
 
+    /**
+     * Group for sending large attachments, only on unmetered networks.
+     */
+    @VisibleForTesting
+    static final String ERROR_ATTACHMENT_GROUP = "groupErrorAttachments";
+
+    /**
+     * Size from which an attachment waits for an unmetered network, in bytes.
+     */
+    @VisibleForTesting
+    static final int LARGE_ATTACHMENT_SIZE = 64 * 1024;
+
     /**
      * Name of the service.
      */
@@ -406,6 +419,15 @@ public class Crashes extends AbstractAppCenterService {
     @Override
     protected synchronized void applyEnabledState(boolean enabled) {
         initialize();
+
+        /* Crash reports are sent on any network, large attachments such as minidumps wait for an unmetered one. */
+        if (enabled) {
+            mChannel.setNetworkPolicy(ERROR_ATTACHMENT_GROUP, NetworkPolicy.UNMETERED);
+            mChannel.addGroup(ERROR_ATTACHMENT_GROUP, getTriggerCount(), getTriggerInterval(), getTriggerMaxParallelRequests(), null, getChannelListener());
+        } else {
+            mChannel.clear(ERROR_ATTACHMENT_GROUP);
+            mChannel.removeGroup(ERROR_ATTACHMENT_GROUP);
+        }
         if (enabled) {
             mMemoryWarningListener = new ComponentCallbacks2() {
 
@@ -480,7 +502,14 @@ public class Crashes extends AbstractAppCenterService {
 
     @Override
     protected Channel.GroupListener getChannelListener() {
-        return new Channel.GroupListener() {
+        return new Channel.FilteredGroupListener() {
+
+            @Override
+            public boolean needsLog(@NonNull String type) {
+
+                /* Only crash reports are passed to the crashes listener. */
+                return ManagedErrorLog.TYPE.equals(type);
+            }
 
             /** Process callback (template method) */
             private void processCallback(final Log log, final CallbackProcessor callbackProcessor) {
@@ -993,7 +1022,9 @@ public class Crashes extends AbstractAppCenterService {
                     attachment.setErrorId(errorId);
                     if (attachment.isValid()) {
                         ++totalErrorAttachments;
-                        mChannel.enqueue(attachment, ERROR_GROUP, Flags.DEFAULTS);
+                        byte[] data = attachment.getData();
+                        boolean large = data != null && data.length >= LARGE_ATTACHMENT_SIZE;
+                        mChannel.enqueue(attachment, large ? ERROR_ATTACHMENT_GROUP : ERROR_GROUP, Flags.DEFAULTS);
                     } else {
                         AppCenterLog.error(LOG_TAG, "Not all required fields are present in ErrorAttachmentLog.");
                     }
@@ -5,14 +5,18 @@
 
 package com.microsoft.appcenter.crashes.ingestion.models;
 
+import android.util.JsonReader;
+
 import com.microsoft.appcenter.ingestion.models.AbstractLog;
 import com.microsoft.appcenter.ingestion.models.json.JSONDateUtils;
+import com.microsoft.appcenter.ingestion.models.json.JSONStreamUtils;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.Date;
 import java.util.UUID;
 
@@ -288,6 +292,41 @@ public abstract class AbstractErrorLog extends AbstractLog {
         setArchitecture(object.optString(ARCHITECTURE, null));
     }
 
+    @Override
+    public boolean readProperty(JsonReader reader, String key) throws IOException, JSONException {
+        if (ID.equals(key)) {
+            setId(UUID.fromString(reader.nextString()));
+        } else if (PROCESS_ID.equals(key)) {
+            setProcessId(JSONStreamUtils.readInteger(reader));
+        } else if (PROCESS_NAME.equals(key)) {
+            setProcessName(JSONStreamUtils.readString(reader));
+        } else if (PARENT_PROCESS_ID.equals(key)) {
+            setParentProcessId(JSONStreamUtils.readInteger(reader));
+        } else if (PARENT_PROCESS_NAME.equals(key)) {
+            setParentProcessName(JSONStreamUtils.readString(reader));
+        } else if (ERROR_THREAD_ID.equals(key)) {
+            setErrorThreadId(JSONStreamUtils.readLong(reader));
+        } else if (ERROR_THREAD_NAME.equals(key)) {
+            setErrorThreadName(JSONStreamUtils.readString(reader));
+        } else if (FATAL.equals(key)) {
+            setFatal(JSONStreamUtils.readBoolean(reader));
+        } else if (APP_LAUNCH_TIMESTAMP.equals(key)) {
+            setAppLaunchTimestamp(JSONDateUtils.toDate(reader.nextString()));
+        } else if (ARCHITECTURE.equals(key)) {
+            setArchitecture(JSONStreamUtils.readString(reader));
+        } else {
+            return super.readProperty(reader, key);
+        }
+        return true;
+    }
+
+    @Override
+    public void validate() throws JSONException {
+        super.validate();
+        JSONStreamUtils.checkRequired(getId(), ID);
+        JSONStreamUtils.checkRequired(getAppLaunchTimestamp(), APP_LAUNCH_TIMESTAMP);
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
@@ -5,15 +5,19 @@
 
 package com.microsoft.appcenter.crashes.ingestion.models;
 
+import android.util.JsonReader;
+
 import com.microsoft.appcenter.crashes.ingestion.models.json.ExceptionFactory;
 import com.microsoft.appcenter.crashes.ingestion.models.json.StackFrameFactory;
-import com.microsoft.appcenter.ingestion.models.Model;
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
+import com.microsoft.appcenter.ingestion.models.json.JSONStreamUtils;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.List;
 
 import static com.microsoft.appcenter.ingestion.models.CommonProperties.FRAMES;
@@ -22,7 +26,7 @@ import static com.microsoft.appcenter.ingestion.models.CommonProperties.TYPE;
 /**
  * The Exception model.
  */
-public class Exception implements Model {
+public class Exception implements StreamingModel {
 
     private static final String MESSAGE = "message";
 
@@ -211,6 +215,32 @@ public class Exception implements Model {
         setMinidumpFilePath(object.optString(MINIDUMP_FILE_PATH, null));
     }
 
+    @Override
+    public boolean readProperty(JsonReader reader, String key) throws IOException, JSONException {
+        if (TYPE.equals(key)) {
+            setType(JSONStreamUtils.readString(reader));
+        } else if (MESSAGE.equals(key)) {
+            setMessage(JSONStreamUtils.readString(reader));
+        } else if (STACK_TRACE.equals(key)) {
+            setStackTrace(JSONStreamUtils.readString(reader));
+        } else if (FRAMES.equals(key)) {
+            setFrames(JSONStreamUtils.readArray(reader, StackFrameFactory.getInstance()));
+        } else if (INNER_EXCEPTIONS.equals(key)) {
+            setInnerExceptions(JSONStreamUtils.readArray(reader, ExceptionFactory.getInstance()));
+        } else if (WRAPPER_SDK_NAME.equals(key)) {
+            setWrapperSdkName(JSONStreamUtils.readString(reader));
+        } else if (MINIDUMP_FILE_PATH.equals(key)) {
+            setMinidumpFilePath(JSONStreamUtils.readString(reader));
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void validate() {
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         JSONUtils.write(writer, TYPE, getType());
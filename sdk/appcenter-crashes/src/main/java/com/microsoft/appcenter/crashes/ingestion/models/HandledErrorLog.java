@@ -5,12 +5,17 @@
 
 package com.microsoft.appcenter.crashes.ingestion.models;
 
+import android.util.JsonReader;
+
 import com.microsoft.appcenter.ingestion.models.LogWithProperties;
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
+import com.microsoft.appcenter.ingestion.models.json.JSONStreamUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.UUID;
 
 import static com.microsoft.appcenter.ingestion.models.CommonProperties.ID;
@@ -18,7 +23,7 @@ import static com.microsoft.appcenter.ingestion.models.CommonProperties.ID;
 /**
  * Handled Error log for managed platforms (such as Xamarin, Unity, Android Dalvik/ART).
  */
-public class HandledErrorLog extends LogWithProperties {
+public class HandledErrorLog extends LogWithProperties implements StreamingModel {
 
     /**
      * Log type.
@@ -94,6 +99,26 @@ public class HandledErrorLog extends LogWithProperties {
         }
     }
 
+    @Override
+    public boolean readProperty(JsonReader reader, String key) throws IOException, JSONException {
+        if (ID.equals(key)) {
+            setId(UUID.fromString(reader.nextString()));
+        } else if (EXCEPTION.equals(key)) {
+            Exception exception = new Exception();
+            JSONStreamUtils.readModel(reader, exception);
+            setException(exception);
+        } else {
+            return super.readProperty(reader, key);
+        }
+        return true;
+    }
+
+    @Override
+    public void validate() throws JSONException {
+        super.validate();
+        JSONStreamUtils.checkRequired(getId(), ID);
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
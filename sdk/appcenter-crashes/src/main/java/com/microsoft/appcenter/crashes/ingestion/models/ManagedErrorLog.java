@@ -5,19 +5,24 @@
 
 package com.microsoft.appcenter.crashes.ingestion.models;
 
+import android.util.JsonReader;
+
 import com.microsoft.appcenter.crashes.ingestion.models.json.ThreadFactory;
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
+import com.microsoft.appcenter.ingestion.models.json.JSONStreamUtils;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
  * Error log for managed platforms (such as Android Dalvik).
  */
-public class ManagedErrorLog extends AbstractErrorLog {
+public class ManagedErrorLog extends AbstractErrorLog implements StreamingModel {
 
     /**
      * Log type.
@@ -91,6 +96,20 @@ public class ManagedErrorLog extends AbstractErrorLog {
         setThreads(JSONUtils.readArray(object, THREADS, ThreadFactory.getInstance()));
     }
 
+    @Override
+    public boolean readProperty(JsonReader reader, String key) throws IOException, JSONException {
+        if (EXCEPTION.equals(key)) {
+            Exception exception = new Exception();
+            JSONStreamUtils.readModel(reader, exception);
+            setException(exception);
+        } else if (THREADS.equals(key)) {
+            setThreads(JSONStreamUtils.readArray(reader, ThreadFactory.getInstance()));
+        } else {
+            return super.readProperty(reader, key);
+        }
+        return true;
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
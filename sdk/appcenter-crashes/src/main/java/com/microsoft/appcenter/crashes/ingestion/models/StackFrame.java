@@ -5,17 +5,22 @@
 
 package com.microsoft.appcenter.crashes.ingestion.models;
 
-import com.microsoft.appcenter.ingestion.models.Model;
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
+import com.microsoft.appcenter.ingestion.models.json.JSONStreamUtils;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 /**
  * The StackFrame model.
  */
-public class StackFrame implements Model {
+public class StackFrame implements StreamingModel {
 
     private static final String CLASS_NAME = "className";
 
@@ -129,6 +134,26 @@ public class StackFrame implements Model {
         setFileName(object.optString(FILE_NAME, null));
     }
 
+    @Override
+    public boolean readProperty(JsonReader reader, String key) throws IOException {
+        if (CLASS_NAME.equals(key)) {
+            setClassName(JSONStreamUtils.readString(reader));
+        } else if (METHOD_NAME.equals(key)) {
+            setMethodName(JSONStreamUtils.readString(reader));
+        } else if (LINE_NUMBER.equals(key)) {
+            setLineNumber(JSONStreamUtils.readInteger(reader));
+        } else if (FILE_NAME.equals(key)) {
+            setFileName(JSONStreamUtils.readString(reader));
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void validate() {
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         JSONUtils.write(writer, CLASS_NAME, getClassName());
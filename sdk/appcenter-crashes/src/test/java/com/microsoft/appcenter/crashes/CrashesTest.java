@@ -15,6 +15,7 @@ import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.AppCenterHandler;
 import com.microsoft.appcenter.Constants;
 import com.microsoft.appcenter.channel.Channel;
+import com.microsoft.appcenter.channel.NetworkPolicy;
 import com.microsoft.appcenter.crashes.ingestion.models.ErrorAttachmentLog;
 import com.microsoft.appcenter.crashes.ingestion.models.HandledErrorLog;
 import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
@@ -292,6 +293,8 @@ public class CrashesTest {
         crashes.onStarted(mock(Context.class), mockChannel, "", null, true);
         verify(mockChannel).removeGroup(eq(crashes.getGroupName()));
         verify(mockChannel).addGroup(eq(crashes.getGroupName()), anyInt(), anyInt(), anyInt(), isNull(Ingestion.class), any(Channel.GroupListener.class));
+        verify(mockChannel).setNetworkPolicy(Crashes.ERROR_ATTACHMENT_GROUP, NetworkPolicy.UNMETERED);
+        verify(mockChannel).addGroup(eq(Crashes.ERROR_ATTACHMENT_GROUP), anyInt(), anyInt(), anyInt(), isNull(Ingestion.class), any(Channel.GroupListener.class));
 
         /* Test. */
         assertTrue(Crashes.isEnabled().get());
@@ -302,6 +305,8 @@ public class CrashesTest {
         assertFalse(Crashes.isEnabled().get());
         verify(mockChannel).clear(crashes.getGroupName());
         verify(mockChannel, times(2)).removeGroup(eq(crashes.getGroupName()));
+        verify(mockChannel).clear(Crashes.ERROR_ATTACHMENT_GROUP);
+        verify(mockChannel).removeGroup(Crashes.ERROR_ATTACHMENT_GROUP);
         assertEquals(crashes.getInitializeTimestamp(), -1);
         assertFalse(Thread.getDefaultUncaughtExceptionHandler() instanceof UncaughtExceptionHandler);
         assertFalse(verify(file1).delete());
@@ -639,6 +644,12 @@ public class CrashesTest {
         CrashesListener mockListener = mock(CrashesListener.class);
         crashes.setInstanceListener(mockListener);
 
+        /* Only crash reports need log models for callbacks. */
+        Channel.FilteredGroupListener filteredListener = (Channel.FilteredGroupListener) crashes.getChannelListener();
+        assertTrue(filteredListener.needsLog(ManagedErrorLog.TYPE));
+        assertFalse(filteredListener.needsLog(HandledErrorLog.TYPE));
+        assertFalse(filteredListener.needsLog(ErrorAttachmentLog.TYPE));
+
         /* Crashes callback test for trackException. */
         crashes.getChannelListener().onBeforeSending(mockLog);
         verify(mockListener, never()).onBeforeSending(any(ErrorReport.class));
@@ -1330,6 +1341,15 @@ public class CrashesTest {
         WrapperSdkExceptionManager.sendErrorAttachments(report1.getId(), Collections.singletonList(mockAttachment));
         verify(mockChannel).enqueue(eq(mockAttachment), eq(crashes.getGroupName()), eq(DEFAULTS));
 
+        /* Large attachments wait for an unmetered network. */
+        mockAttachment = mock(ErrorAttachmentLog.class);
+        when(mockAttachment.getId()).thenReturn(UUID.randomUUID());
+        when(mockAttachment.getData()).thenReturn(new byte[Crashes.LARGE_ATTACHMENT_SIZE]);
+        when(mockAttachment.isValid()).thenReturn(true);
+        WrapperSdkExceptionManager.sendErrorAttachments(report1.getId(), Collections.singletonList(mockAttachment));
+        verify(mockChannel).enqueue(eq(mockAttachment), eq(Crashes.ERROR_ATTACHMENT_GROUP), eq(DEFAULTS));
+        verify(mockChannel, never()).enqueue(eq(mockAttachment), eq(crashes.getGroupName()), anyInt());
+
         /* Send attachment with invalid UUID format for report identifier. */
         mockAttachment = mock(ErrorAttachmentLog.class);
         when(mockAttachment.getId()).thenReturn(UUID.randomUUID());
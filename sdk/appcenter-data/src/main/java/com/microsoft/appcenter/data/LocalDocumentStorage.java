@@ -96,6 +96,39 @@ class LocalDocumentStorage {
     private static final String BY_PARTITION_AND_DOCUMENT_ID_WHERE_CLAUSE =
             String.format("%s = ? AND %s = ?", PARTITION_COLUMN_NAME, DOCUMENT_ID_COLUMN_NAME);
 
+    /**
+     * Columns read from a document table, each row being read by the column indexes below.
+     */
+    private static final String[] DOCUMENT_COLUMNS = {
+            DatabaseManager.PRIMARY_KEY,
+            PARTITION_COLUMN_NAME,
+            DOCUMENT_ID_COLUMN_NAME,
+            DOCUMENT_COLUMN_NAME,
+            ETAG_COLUMN_NAME,
+            EXPIRATION_TIME_COLUMN_NAME,
+            DOWNLOAD_TIME_COLUMN_NAME,
+            OPERATION_TIME_COLUMN_NAME,
+            PENDING_OPERATION_COLUMN_NAME
+    };
+
+    private static final int INDEX_ID = 0;
+
+    private static final int INDEX_PARTITION = 1;
+
+    private static final int INDEX_DOCUMENT_ID = 2;
+
+    private static final int INDEX_DOCUMENT = 3;
+
+    private static final int INDEX_ETAG = 4;
+
+    private static final int INDEX_EXPIRATION_TIME = 5;
+
+    private static final int INDEX_DOWNLOAD_TIME = 6;
+
+    private static final int INDEX_OPERATION_TIME = 7;
+
+    private static final int INDEX_PENDING_OPERATION = 8;
+
     /**
      * Current schema.
      */
@@ -112,6 +145,9 @@ class LocalDocumentStorage {
                 VERSION,
                 SCHEMA,
                 new LocalDocumentStorageDatabaseListener(userTable));
+
+        /* Cache reads from callbacks do not wait for writes of other operations. */
+        mDatabaseManager.setWriteAheadLoggingEnabled(true);
         if (userTable != null) {
             createTableIfDoesNotExist(userTable);
         }
@@ -274,23 +310,22 @@ class LocalDocumentStorage {
         }
         SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
         builder.appendWhere(whereClause);
-        Cursor cursor = mDatabaseManager.getCursor(table, builder, null, selectionArgs, null);
+        Cursor cursor = mDatabaseManager.getCursor(table, builder, DOCUMENT_COLUMNS, selectionArgs, null);
 
         //noinspection TryFinallyCanBeTryWithResources
         try {
             while (cursor.moveToNext()) {
-                ContentValues values = mDatabaseManager.buildValues(cursor);
-                String pendingOperation = values.getAsString(PENDING_OPERATION_COLUMN_NAME);
-                Long expirationTime = values.getAsLong(EXPIRATION_TIME_COLUMN_NAME);
+
+                /* Map columns by index, rows are not converted to content values. */
                 result.add(new LocalDocument(
                         table,
-                        pendingOperation,
-                        values.getAsString(PARTITION_COLUMN_NAME),
-                        values.getAsString(DOCUMENT_ID_COLUMN_NAME),
-                        values.getAsString(DOCUMENT_COLUMN_NAME),
-                        expirationTime,
-                        values.getAsLong(DOWNLOAD_TIME_COLUMN_NAME),
-                        values.getAsLong(OPERATION_TIME_COLUMN_NAME)));
+                        cursor.getString(INDEX_PENDING_OPERATION),
+                        cursor.getString(INDEX_PARTITION),
+                        cursor.getString(INDEX_DOCUMENT_ID),
+                        cursor.getString(INDEX_DOCUMENT),
+                        cursor.getLong(INDEX_EXPIRATION_TIME),
+                        cursor.getLong(INDEX_DOWNLOAD_TIME),
+                        cursor.getLong(INDEX_OPERATION_TIME)));
             }
         } finally {
             cursor.close();
@@ -376,12 +411,11 @@ class LocalDocumentStorage {
     <T> DocumentWrapper<T> read(String table, String partition, String documentId, Class<T> documentType, ReadOptions readOptions) {
         AppCenterLog.debug(LOG_TAG, String.format("Trying to read %s:%s document from cache", partition, documentId));
         Cursor cursor;
-        ContentValues values;
         try {
             cursor = mDatabaseManager.getCursor(
                     table,
                     getPartitionAndDocumentIdQueryBuilder(),
-                    null,
+                    DOCUMENT_COLUMNS,
                     new String[]{partition, documentId},
                     EXPIRATION_TIME_COLUMN_NAME + " DESC");
         } catch (RuntimeException e) {
@@ -390,21 +424,38 @@ class LocalDocumentStorage {
         }
 
         /* We only expect one value as we do upserts in the `write` method. */
-        values = mDatabaseManager.nextValues(cursor);
-        cursor.close();
-        if (values != null) {
-            if (ReadOptions.isExpired(values.getAsLong(EXPIRATION_TIME_COLUMN_NAME))) {
-                mDatabaseManager.delete(table, values.getAsLong(DatabaseManager.PRIMARY_KEY));
+        boolean found = false;
+        long id = 0;
+        long expirationTime = 0;
+        String document = null;
+        String eTag = null;
+        long operationTime = 0;
+        String pendingOperation = null;
+        try {
+            if (mDatabaseManager.moveToNext(cursor)) {
+                id = cursor.getLong(INDEX_ID);
+                expirationTime = cursor.getLong(INDEX_EXPIRATION_TIME);
+                document = cursor.getString(INDEX_DOCUMENT);
+                eTag = cursor.getString(INDEX_ETAG);
+                operationTime = cursor.getLong(INDEX_OPERATION_TIME);
+                pendingOperation = cursor.getString(INDEX_PENDING_OPERATION);
+                found = true;
+            }
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to read from cache: ", e);
+        } finally {
+            cursor.close();
+        }
+        if (found) {
+            if (ReadOptions.isExpired(expirationTime)) {
+                mDatabaseManager.delete(table, id);
                 String errorMessage = "Document was found in the cache, but it was expired. The cached document has been invalidated.";
                 AppCenterLog.debug(LOG_TAG, errorMessage);
                 return new DocumentWrapper<>(new DataException(errorMessage));
             }
-            String document = values.getAsString(DOCUMENT_COLUMN_NAME);
-            String eTag = values.getAsString(ETAG_COLUMN_NAME);
-            long operationTime = values.getAsLong(OPERATION_TIME_COLUMN_NAME);
             DocumentWrapper<T> documentWrapper = Utils.parseDocument(document, partition, documentId, eTag, operationTime / 1000L, documentType);
             documentWrapper.setFromCache(true);
-            documentWrapper.setPendingOperation(values.getAsString(PENDING_OPERATION_COLUMN_NAME));
+            documentWrapper.setPendingOperation(pendingOperation);
             /*
              * Update the expiredAt time only when the readOptions is not null, otherwise keep updating it.
              */
@@ -412,11 +463,11 @@ class LocalDocumentStorage {
                 if (readOptions.getDeviceTimeToLive() == TimeToLive.NO_CACHE) {
 
                     /* Delete the document since no cache was requested. */
-                    mDatabaseManager.delete(table, values.getAsLong(DatabaseManager.PRIMARY_KEY));
+                    mDatabaseManager.delete(table, id);
                 } else if (!documentWrapper.hasFailed()) {
 
                     /* We update cache timestamp only if no serialization issue, otherwise that would corrupt cache in payload. */
-                    write(table, documentWrapper, new WriteOptions(readOptions.getDeviceTimeToLive()), values.getAsString(PENDING_OPERATION_COLUMN_NAME));
+                    write(table, documentWrapper, new WriteOptions(readOptions.getDeviceTimeToLive()), pendingOperation);
                 }
             }
             return documentWrapper;
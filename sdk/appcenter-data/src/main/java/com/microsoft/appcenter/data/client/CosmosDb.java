@@ -164,7 +164,7 @@ public class CosmosDb {
     }
 
     private static ServiceCall callApi(
-            String httpVerb,
+            final String httpVerb,
             String url,
             Map<String, String> headers,
             final String body,
@@ -174,7 +174,7 @@ public class CosmosDb {
                 url,
                 httpVerb,
                 headers,
-                new HttpClient.CallTemplate() {
+                new HttpClient.PrioritizedCallTemplate() {
 
                     @Override
                     public String buildRequestBody() {
@@ -184,6 +184,13 @@ public class CosmosDb {
                     @Override
                     public void onBeforeCalling(URL url, Map<String, String> headers) {
                     }
+
+                    @Override
+                    public int getPriority() {
+
+                        /* Reads are waited for by the application. */
+                        return METHOD_GET.equals(httpVerb) ? HttpClient.PRIORITY_HIGH : HttpClient.PRIORITY_NORMAL;
+                    }
                 },
                 serviceCallback);
     }
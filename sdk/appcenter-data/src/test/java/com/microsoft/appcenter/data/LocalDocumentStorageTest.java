@@ -42,6 +42,7 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
@@ -79,8 +80,6 @@ public class LocalDocumentStorageTest {
 
     private Cursor mCursor;
 
-    private ContentValues mCurrentValue;
-
     @Mock
     private AuthTokenContext mAuthTokenContext;
 
@@ -92,7 +91,6 @@ public class LocalDocumentStorageTest {
         mockStatic(AppCenterLog.class);
         mDatabaseManager = mock(DatabaseManager.class);
         mCursor = mock(Cursor.class);
-        mCurrentValue = mock(ContentValues.class);
         whenNew(DatabaseManager.class).withAnyArguments().thenReturn(mDatabaseManager);
 
         mLocalDocumentStorage = new LocalDocumentStorage(mock(Context.class), null);
@@ -149,13 +147,13 @@ public class LocalDocumentStorageTest {
     @Test
     public void readWithNoCacheDiscardsPreviousWriteWithCache() {
         when(mDatabaseManager.getCursor(anyString(), any(SQLiteQueryBuilder.class), any(String[].class), any(String[].class), anyString())).thenReturn(mCursor);
-        when(mDatabaseManager.nextValues(mCursor)).thenReturn(mCurrentValue);
-        when(mCurrentValue.getAsLong(anyString())).thenReturn(-1L);
-        when(mCurrentValue.getAsString(anyString())).thenReturn("\"Test value\"");
+        when(mDatabaseManager.moveToNext(mCursor)).thenReturn(true);
+        when(mCursor.getLong(anyInt())).thenReturn(-1L);
+        when(mCursor.getString(anyInt())).thenReturn("\"Test value\"");
         DocumentWrapper<String> doc = mLocalDocumentStorage.read(mUserTableName, PARTITION, DOCUMENT_ID, String.class, ReadOptions.createNoCacheOptions());
 
-        /* Verify that we delete the written document because readOptions are set to NoCache. */
-        verify(mDatabaseManager).delete(anyString(), any(ContentValues.class));
+        /* Verify that we delete the written document by its identifier because readOptions are set to NoCache. */
+        verify(mDatabaseManager).delete(mUserTableName, -1L);
         assertNotNull(doc);
         assertNotNull(doc.getDeserializedValue());
         assertFalse(doc.hasFailed());
@@ -208,7 +206,7 @@ public class LocalDocumentStorageTest {
     @Test
     public void createOrUpdateFailedToWriteException() {
         when(mDatabaseManager.getCursor(anyString(), any(SQLiteQueryBuilder.class), any(String[].class), any(String[].class), anyString())).thenReturn(mCursor);
-        when(mDatabaseManager.nextValues(mCursor)).thenReturn(null);
+        when(mDatabaseManager.moveToNext(mCursor)).thenReturn(false);
         when(mDatabaseManager.replace(anyString(), any(ContentValues.class), eq(PARTITION_COLUMN_NAME), eq(DOCUMENT_ID_COLUMN_NAME))).thenReturn(-1L);
         DocumentWrapper<String> doc = mLocalDocumentStorage.createOrUpdateOffline(mUserTableName, PARTITION, DOCUMENT_ID, "test", String.class, new WriteOptions());
         assertNotNull(doc);
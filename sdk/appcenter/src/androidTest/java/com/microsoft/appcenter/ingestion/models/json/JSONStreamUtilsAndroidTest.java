@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.ingestion.models.json;
+
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.ingestion.models.StartServiceLog;
+import com.microsoft.appcenter.ingestion.models.WrapperSdk;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@SuppressWarnings("unused")
+public class JSONStreamUtilsAndroidTest {
+
+    private static JsonReader reader(String json) {
+        return new JsonReader(new StringReader(json));
+    }
+
+    @Test
+    public void utilsCoverage() {
+        new JSONStreamUtils();
+    }
+
+    @Test
+    public void readValues() throws IOException {
+        JsonReader reader = reader("[\"a\", 1, 1000000000000, 1.5, true, null, null, null, null, null]");
+        reader.beginArray();
+        assertEquals("a", JSONStreamUtils.readString(reader));
+        assertEquals(Integer.valueOf(1), JSONStreamUtils.readInteger(reader));
+        assertEquals(Long.valueOf(1000000000000L), JSONStreamUtils.readLong(reader));
+        assertEquals(Double.valueOf(1.5), JSONStreamUtils.readDouble(reader));
+        assertEquals(Boolean.TRUE, JSONStreamUtils.readBoolean(reader));
+        assertNull(JSONStreamUtils.readString(reader));
+        assertNull(JSONStreamUtils.readInteger(reader));
+        assertNull(JSONStreamUtils.readLong(reader));
+        assertNull(JSONStreamUtils.readDouble(reader));
+        assertNull(JSONStreamUtils.readBoolean(reader));
+        reader.endArray();
+    }
+
+    @Test
+    public void readCollections() throws IOException {
+        JsonReader reader = reader("[{\"a\":\"b\"}, [\"c\", \"d\"], null, null]");
+        reader.beginArray();
+        Map<String, String> map = JSONStreamUtils.readMap(reader);
+        assertEquals(1, map.size());
+        assertEquals("b", map.get("a"));
+        assertEquals(Arrays.asList("c", "d"), JSONStreamUtils.readStringArray(reader));
+        assertNull(JSONStreamUtils.readMap(reader));
+        assertNull(JSONStreamUtils.readStringArray(reader));
+        reader.endArray();
+    }
+
+    @Test
+    public void readObjectLikeJSONObject() throws IOException, JSONException {
+        String json = "{\"s\":\"v\",\"i\":1,\"l\":1000000000000,\"d\":1.5,\"b\":false,\"n\":null," +
+                "\"o\":{\"a\":[1,\"x\",{\"y\":2}]}}";
+        JSONObject expected = new JSONObject(json);
+        JSONObject actual = JSONStreamUtils.readObject(reader(json));
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(expected.get("i").getClass(), actual.get("i").getClass());
+        assertEquals(expected.get("l").getClass(), actual.get("l").getClass());
+        assertEquals(expected.get("d").getClass(), actual.get("d").getClass());
+        assertEquals(JSONObject.NULL, actual.get("n"));
+        JSONArray array = actual.getJSONObject("o").getJSONArray("a");
+        assertEquals(2, array.getJSONObject(2).getInt("y"));
+    }
+
+    @Test
+    public void readModelSkipsUnknownProperties() throws IOException, JSONException {
+        WrapperSdk wrapperSdk = new WrapperSdk();
+        JSONStreamUtils.readModel(reader("{\"unknown\":{\"nested\":[1,2]},\"wrapperSdkName\":\"name\"}"), wrapperSdk);
+        assertEquals("name", wrapperSdk.getWrapperSdkName());
+    }
+
+    @Test
+    public void readModelFallsBackToJSONObject() throws IOException, JSONException {
+        MockLog log = new MockLog();
+        Date timestamp = new Date(1000);
+        JSONStreamUtils.readModel(reader("{\"type\":\"mockLog\",\"timestamp\":\"" + JSONDateUtils.toString(timestamp) + "\"}"), log);
+        assertEquals(timestamp, log.getTimestamp());
+    }
+
+    @Test(expected = JSONException.class)
+    public void readModelMissingRequiredProperty() throws IOException, JSONException {
+        JSONStreamUtils.readModel(reader("{\"services\":[\"A\"]}"), new StartServiceLog());
+    }
+
+    @Test
+    public void streamLogSkipsUnknownProperties() throws JSONException {
+        DefaultLogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(StartServiceLog.TYPE, new StartServiceLogFactory());
+        StartServiceLog expected = new StartServiceLog();
+        expected.setTimestamp(new Date(1000));
+        expected.setSid(UUID.randomUUID());
+        expected.setServices(Arrays.asList("A", "B"));
+        String json = "{\"type\":\"startService\",\"unknown\":{\"a\":[true]}," +
+                "\"sid\":\"" + expected.getSid() + "\",\"services\":[\"A\",\"B\"]," +
+                "\"timestamp\":\"" + JSONDateUtils.toString(expected.getTimestamp()) + "\"}";
+        assertEquals(expected, serializer.deserializeLog(json, null));
+        assertEquals(expected, serializer.deserializeLog(json, StartServiceLog.TYPE));
+    }
+
+    @Test(expected = JSONException.class)
+    public void streamLogWithoutTypeFallsBackAndFails() throws JSONException {
+        DefaultLogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(StartServiceLog.TYPE, new StartServiceLogFactory());
+        serializer.deserializeLog("{\"timestamp\":\"2017-07-08T00:32:58.123Z\",\"services\":[\"A\"]}", StartServiceLog.TYPE);
+    }
+
+    @Test(expected = JSONException.class)
+    public void streamLogWithWrongTypeFallsBackAndFails() throws JSONException {
+        DefaultLogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(StartServiceLog.TYPE, new StartServiceLogFactory());
+        serializer.deserializeLog("{\"type\":\"other\",\"timestamp\":\"2017-07-08T00:32:58.123Z\"}", StartServiceLog.TYPE);
+    }
+}
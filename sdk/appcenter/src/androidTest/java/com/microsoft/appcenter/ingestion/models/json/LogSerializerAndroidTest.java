@@ -9,11 +9,14 @@ import com.microsoft.appcenter.AndroidTestUtils;
 import com.microsoft.appcenter.ingestion.models.CustomPropertiesLog;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.SerializedLog;
 import com.microsoft.appcenter.ingestion.models.StartServiceLog;
 
 import org.json.JSONException;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
@@ -54,6 +57,35 @@ public class LogSerializerAndroidTest {
         assertEquals(expectedContainer.hashCode(), actualContainer.hashCode());
     }
 
+    @Test
+    public void streamContainer() throws JSONException, IOException {
+        LogContainer container = AndroidTestUtils.generateMockLogContainer();
+        container.getLogs().add(AndroidTestUtils.generateMockLog());
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        StringWriter writer = new StringWriter();
+        serializer.serializeContainer(container, writer);
+        assertEquals(serializer.serializeContainer(container), writer.toString());
+
+        /* Same with stored payloads. */
+        List<SerializedLog> serializedLogs = new ArrayList<>();
+        for (Log log : container.getLogs()) {
+            serializedLogs.add(new SerializedLog(serializer.serializeLog(log), MOCK_LOG_TYPE, null, serializer));
+        }
+        LogContainer serializedContainer = new LogContainer();
+        serializedContainer.setSerializedLogs(serializedLogs);
+        writer = new StringWriter();
+        serializer.serializeContainer(serializedContainer, writer);
+        assertEquals(serializer.serializeContainer(container), writer.toString());
+
+        /* Empty container. */
+        LogContainer emptyContainer = new LogContainer();
+        emptyContainer.setLogs(Collections.<Log>emptyList());
+        writer = new StringWriter();
+        serializer.serializeContainer(emptyContainer, writer);
+        assertEquals(serializer.serializeContainer(emptyContainer), writer.toString());
+    }
+
     @Test(expected = JSONException.class)
     public void deserializeUnknownType() throws JSONException {
         MockLog log = AndroidTestUtils.generateMockLog();
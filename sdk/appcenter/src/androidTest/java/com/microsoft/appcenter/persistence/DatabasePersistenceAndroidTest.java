@@ -21,6 +21,7 @@ import com.microsoft.appcenter.Constants;
 import com.microsoft.appcenter.Flags;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogWithProperties;
+import com.microsoft.appcenter.ingestion.models.SerializedLog;
 import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.ingestion.models.json.MockLog;
@@ -30,6 +31,7 @@ import com.microsoft.appcenter.ingestion.models.one.Data;
 import com.microsoft.appcenter.ingestion.models.one.MockCommonSchemaLog;
 import com.microsoft.appcenter.ingestion.models.one.MockCommonSchemaLogFactory;
 import com.microsoft.appcenter.persistence.Persistence.PersistenceException;
+import com.microsoft.appcenter.utils.StringUtils;
 import com.microsoft.appcenter.utils.crypto.CryptoUtils;
 import com.microsoft.appcenter.utils.storage.DatabaseManager;
 import com.microsoft.appcenter.utils.storage.FileManager;
@@ -317,6 +319,48 @@ public class DatabasePersistenceAndroidTest {
         }
     }
 
+    @Test
+    public void truncatedLargeLogIsNotSentAsStored() throws PersistenceException, IOException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+
+        /* Set a mock log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Generate a large log and persist. */
+            LogWithProperties log = AndroidTestUtils.generateMockLog();
+            int size = 2 * 1024 * 1024;
+            StringBuilder largeValue = new StringBuilder(size);
+            for (int i = 0; i < size; i++) {
+                largeValue.append("x");
+            }
+            Map<String, String> properties = new HashMap<>();
+            properties.put("key", largeValue.toString());
+            log.setProperties(properties);
+            long id = persistence.putLog(log, "test-p1", NORMAL);
+            assertEquals(1, persistence.countLogs("test-p1"));
+
+            /* Cut the file as if the process was killed while writing it. */
+            File file = persistence.getLargePayloadFile(persistence.getLargePayloadGroupDirectory("test-p1"), id);
+            String fileLog = FileManager.read(file);
+            assertNotNull(fileLog);
+            FileManager.write(file, fileLog.substring(0, fileLog.length() / 2));
+
+            /* The log is deleted rather than sent as stored. */
+            List<SerializedLog> outputLogs = new ArrayList<>();
+            assertNull(persistence.getSerializedLogs("test-p1", Collections.<String>emptyList(), 1, outputLogs, null, null));
+            assertEquals(0, outputLogs.size());
+            assertEquals(0, persistence.countLogs("test-p1"));
+            assertFalse(file.exists());
+        } finally {
+            persistence.close();
+        }
+    }
+
     @Test
     public void putLargeLogNotSupportedOnCommonSchema() throws JSONException {
 
@@ -801,14 +845,9 @@ public class DatabasePersistenceAndroidTest {
             persistence.getLogs("test-p3", Collections.<String>emptyList(), 5, outputLogs, null, null);
 
             /* Verify. */
-            Map<String, List<Long>> pendingGroups = persistence.mPendingDbIdentifiersGroups;
-            assertNull(pendingGroups.get("test-p1" + id1));
-            List<Long> p2Logs = pendingGroups.get("test-p2" + id2);
-            assertNotNull(p2Logs);
-            assertEquals(1, p2Logs.size());
-            assertEquals(1, pendingGroups.size());
             assertEquals(0, outputLogs.size());
             assertEquals(1, persistence.mDatabaseManager.getRowCount());
+            assertEquals(id2, getContentValues(persistence, "test-p2").getAsString(DatabasePersistence.COLUMN_BATCH_ID));
 
             /* Verify one log still persists in the database. */
             persistence.clearPendingLogState();
@@ -870,6 +909,81 @@ public class DatabasePersistenceAndroidTest {
         }
     }
 
+    @Test
+    public void clearPendingLogStateOfBatch() throws PersistenceException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+
+        /* Set a mock log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Get 2 batches. */
+            Log log1 = AndroidTestUtils.generateMockLog();
+            Log log2 = AndroidTestUtils.generateMockLog();
+            persistence.putLog(log1, "test", NORMAL);
+            persistence.putLog(log2, "test", NORMAL);
+            List<Log> outputLogs = new ArrayList<>();
+            String id1 = persistence.getLogs("test", Collections.<String>emptyList(), 1, outputLogs, null, null);
+            String id2 = persistence.getLogs("test", Collections.<String>emptyList(), 1, outputLogs, null, null);
+            assertNotNull(id1);
+            assertNotNull(id2);
+            outputLogs.clear();
+
+            /* Only the logs of the cleared batch can be read again. */
+            persistence.clearPendingLogState("test", id1);
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), 2, outputLogs, null, null));
+            assertEquals(Collections.singletonList(log1), outputLogs);
+            outputLogs.clear();
+            assertNull(persistence.getLogs("test", Collections.<String>emptyList(), 2, outputLogs, null, null));
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void getLogsWithinByteBudget() throws PersistenceException, JSONException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+
+        /* Set a mock log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Put 3 logs. */
+            List<Log> logs = new ArrayList<>();
+            long twoLogsSize = 0;
+            for (int i = 0; i < 3; i++) {
+                Log log = AndroidTestUtils.generateMockLog();
+                persistence.putLog(log, "test", NORMAL);
+                logs.add(log);
+                if (i < 2) {
+                    twoLogsSize += StringUtils.getUtf8Length(logSerializer.serializeLog(log));
+                }
+            }
+
+            /* Only the first 2 fit. */
+            List<Log> outputLogs = new ArrayList<>();
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), 3, twoLogsSize, outputLogs, null, null));
+            assertEquals(logs.subList(0, 2), outputLogs);
+
+            /* A log larger than the budget is sent alone. */
+            outputLogs.clear();
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), 3, 1, outputLogs, null, null));
+            assertEquals(logs.subList(2, 3), outputLogs);
+            outputLogs.clear();
+            assertNull(persistence.getLogs("test", Collections.<String>emptyList(), 3, 1, outputLogs, null, null));
+        } finally {
+            persistence.close();
+        }
+    }
+
     private void getAllLogs(DatabasePersistence persistence, int numberOfLogs, int sizeForGetLogs) {
         List<Log> outputLogs = new ArrayList<>();
         int expected = 0;
@@ -1247,6 +1361,11 @@ public class DatabasePersistenceAndroidTest {
         oldSchema.remove(DatabasePersistence.COLUMN_TARGET_KEY);
         oldSchema.remove(DatabasePersistence.COLUMN_PRIORITY);
         oldSchema.remove(DatabasePersistence.COLUMN_TIMESTAMP);
+        oldSchema.remove(DatabasePersistence.COLUMN_BATCH_ID);
+        oldSchema.remove(DatabasePersistence.COLUMN_DEVICE_ID);
+        oldSchema.remove(DatabasePersistence.COLUMN_LOG_DATA);
+        oldSchema.remove(DatabasePersistence.COLUMN_TARGET_TOKEN_ID);
+        oldSchema.remove(DatabasePersistence.COLUMN_PAYLOAD_SIZE);
         DatabaseManager databaseManager = new DatabaseManager(sContext, DatabasePersistence.DATABASE, DatabasePersistence.TABLE, 1, oldSchema, mock(DatabaseManager.Listener.class));
 
         /* Init log serializer. */
@@ -1311,7 +1430,7 @@ public class DatabasePersistenceAndroidTest {
 
             /* Verify target token is encrypted. */
             ContentValues values = getContentValues(persistence, "test/one");
-            String token = values.getAsString(DatabasePersistence.COLUMN_TARGET_TOKEN);
+            String token = getEncryptedTargetToken(persistence, values);
             assertNotNull(token);
             assertNotEquals("test-guid", token);
             assertEquals("test-guid", CryptoUtils.getInstance(sContext).decrypt(token, false).getDecryptedData());
@@ -1335,6 +1454,11 @@ public class DatabasePersistenceAndroidTest {
         oldSchema.remove(DatabasePersistence.COLUMN_TARGET_KEY);
         oldSchema.remove(DatabasePersistence.COLUMN_PRIORITY);
         oldSchema.remove(DatabasePersistence.COLUMN_TIMESTAMP);
+        oldSchema.remove(DatabasePersistence.COLUMN_BATCH_ID);
+        oldSchema.remove(DatabasePersistence.COLUMN_DEVICE_ID);
+        oldSchema.remove(DatabasePersistence.COLUMN_LOG_DATA);
+        oldSchema.remove(DatabasePersistence.COLUMN_TARGET_TOKEN_ID);
+        oldSchema.remove(DatabasePersistence.COLUMN_PAYLOAD_SIZE);
         DatabaseManager databaseManager = new DatabaseManager(sContext, DatabasePersistence.DATABASE, DatabasePersistence.TABLE, DatabasePersistence.VERSION_TYPE_API_KEY, oldSchema, mock(DatabaseManager.Listener.class));
 
         /* Init log serializer. */
@@ -1401,7 +1525,7 @@ public class DatabasePersistenceAndroidTest {
 
             /* Verify target token is encrypted. */
             ContentValues values = getContentValues(persistence, "test/one");
-            String token = values.getAsString(DatabasePersistence.COLUMN_TARGET_TOKEN);
+            String token = getEncryptedTargetToken(persistence, values);
             assertNotNull(token);
             assertNotEquals("test-guid", token);
             assertEquals("test-guid", CryptoUtils.getInstance(sContext).decrypt(token, false).getDecryptedData());
@@ -1427,6 +1551,11 @@ public class DatabasePersistenceAndroidTest {
         ContentValues oldSchema = new ContentValues(SCHEMA);
         oldSchema.remove(DatabasePersistence.COLUMN_PRIORITY);
         oldSchema.remove(DatabasePersistence.COLUMN_TIMESTAMP);
+        oldSchema.remove(DatabasePersistence.COLUMN_BATCH_ID);
+        oldSchema.remove(DatabasePersistence.COLUMN_DEVICE_ID);
+        oldSchema.remove(DatabasePersistence.COLUMN_LOG_DATA);
+        oldSchema.remove(DatabasePersistence.COLUMN_TARGET_TOKEN_ID);
+        oldSchema.remove(DatabasePersistence.COLUMN_PAYLOAD_SIZE);
         DatabaseManager databaseManager = new DatabaseManager(sContext, DatabasePersistence.DATABASE, DatabasePersistence.TABLE, DatabasePersistence.VERSION_TARGET_KEY, oldSchema, mock(DatabaseManager.Listener.class));
 
         /* Init log serializer. */
@@ -1493,7 +1622,7 @@ public class DatabasePersistenceAndroidTest {
 
             /* Verify target token is encrypted. */
             ContentValues values = getContentValues(persistence, "test/one");
-            String token = values.getAsString(DatabasePersistence.COLUMN_TARGET_TOKEN);
+            String token = getEncryptedTargetToken(persistence, values);
             assertNotNull(token);
             assertNotEquals("test-guid", token);
             assertEquals("test-guid", CryptoUtils.getInstance(sContext).decrypt(token, false).getDecryptedData());
@@ -1518,6 +1647,11 @@ public class DatabasePersistenceAndroidTest {
         /* Initialize database persistence with old schema. */
         ContentValues oldSchema = new ContentValues(SCHEMA);
         oldSchema.remove(DatabasePersistence.COLUMN_TIMESTAMP);
+        oldSchema.remove(DatabasePersistence.COLUMN_BATCH_ID);
+        oldSchema.remove(DatabasePersistence.COLUMN_DEVICE_ID);
+        oldSchema.remove(DatabasePersistence.COLUMN_LOG_DATA);
+        oldSchema.remove(DatabasePersistence.COLUMN_TARGET_TOKEN_ID);
+        oldSchema.remove(DatabasePersistence.COLUMN_PAYLOAD_SIZE);
         DatabaseManager databaseManager = new DatabaseManager(sContext, DatabasePersistence.DATABASE, DatabasePersistence.TABLE, DatabasePersistence.VERSION_PRIORITY_KEY, oldSchema, mock(DatabaseManager.Listener.class));
 
         /* Init log serializer. */
@@ -1585,7 +1719,7 @@ public class DatabasePersistenceAndroidTest {
 
             /* Verify target token is encrypted. */
             ContentValues values = getContentValues(persistence, "test/one");
-            String token = values.getAsString(DatabasePersistence.COLUMN_TARGET_TOKEN);
+            String token = getEncryptedTargetToken(persistence, values);
             assertNotNull(token);
             assertNotEquals("test-guid", token);
             assertEquals("test-guid", CryptoUtils.getInstance(sContext).decrypt(token, false).getDecryptedData());
@@ -1603,4 +1737,596 @@ public class DatabasePersistenceAndroidTest {
             persistence.close();
         }
     }
+
+    @Test
+    public void upgradeFromVersion5to6() throws PersistenceException, JSONException {
+
+        /* Initialize database persistence with old schema. */
+        ContentValues oldSchema = new ContentValues(SCHEMA);
+        oldSchema.remove(DatabasePersistence.COLUMN_BATCH_ID);
+        oldSchema.remove(DatabasePersistence.COLUMN_DEVICE_ID);
+        oldSchema.remove(DatabasePersistence.COLUMN_LOG_DATA);
+        oldSchema.remove(DatabasePersistence.COLUMN_TARGET_TOKEN_ID);
+        oldSchema.remove(DatabasePersistence.COLUMN_PAYLOAD_SIZE);
+        DatabaseManager databaseManager = new DatabaseManager(sContext, DatabasePersistence.DATABASE, DatabasePersistence.TABLE, DatabasePersistence.VERSION_TIMESTAMP_KEY, oldSchema, mock(DatabaseManager.Listener.class));
+
+        /* Init log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+
+        /* Insert old data before upgrade. */
+        Log oldLog = AndroidTestUtils.generateMockLog();
+        try {
+            ContentValues contentValues = new ContentValues();
+            contentValues.put(DatabasePersistence.COLUMN_GROUP, "test");
+            contentValues.put(DatabasePersistence.COLUMN_LOG, logSerializer.serializeLog(oldLog));
+            contentValues.put(DatabasePersistence.COLUMN_DATA_TYPE, MOCK_LOG_TYPE);
+            contentValues.put(DatabasePersistence.COLUMN_PRIORITY, NORMAL);
+            contentValues.put(DatabasePersistence.COLUMN_TIMESTAMP, oldLog.getTimestamp().getTime());
+            databaseManager.put(contentValues, DatabasePersistence.COLUMN_PRIORITY);
+        } finally {
+            databaseManager.close();
+        }
+
+        /* Upgrade. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Get old data, it's now assigned to the returned batch. */
+            List<Log> outputLogs = new ArrayList<>();
+            String id = persistence.getLogs("test", Collections.<String>emptyList(), 1, outputLogs, null, null);
+            assertNotNull(id);
+            assertEquals(1, outputLogs.size());
+            assertEquals(oldLog, outputLogs.get(0));
+            assertEquals(id, getContentValues(persistence, "test").getAsString(DatabasePersistence.COLUMN_BATCH_ID));
+
+            /* Delete the batch. */
+            persistence.deleteLogs("test", id);
+            assertEquals(0, persistence.countLogs("test"));
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void upgradeFromVersion6to7() throws PersistenceException, JSONException {
+
+        /* Initialize database persistence with old schema. */
+        ContentValues oldSchema = new ContentValues(SCHEMA);
+        oldSchema.remove(DatabasePersistence.COLUMN_DEVICE_ID);
+        oldSchema.remove(DatabasePersistence.COLUMN_LOG_DATA);
+        oldSchema.remove(DatabasePersistence.COLUMN_TARGET_TOKEN_ID);
+        oldSchema.remove(DatabasePersistence.COLUMN_PAYLOAD_SIZE);
+        DatabaseManager databaseManager = new DatabaseManager(sContext, DatabasePersistence.DATABASE, DatabasePersistence.TABLE, DatabasePersistence.VERSION_BATCH_ID_KEY, oldSchema, mock(DatabaseManager.Listener.class));
+
+        /* Init log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+
+        /* Insert old data before upgrade, device is part of the payload. */
+        Log oldLog = AndroidTestUtils.generateMockLog();
+        try {
+            ContentValues contentValues = new ContentValues();
+            contentValues.put(DatabasePersistence.COLUMN_GROUP, "test");
+            contentValues.put(DatabasePersistence.COLUMN_LOG, logSerializer.serializeLog(oldLog));
+            contentValues.put(DatabasePersistence.COLUMN_DATA_TYPE, MOCK_LOG_TYPE);
+            contentValues.put(DatabasePersistence.COLUMN_PRIORITY, NORMAL);
+            contentValues.put(DatabasePersistence.COLUMN_TIMESTAMP, oldLog.getTimestamp().getTime());
+            databaseManager.put(contentValues, DatabasePersistence.COLUMN_PRIORITY);
+        } finally {
+            databaseManager.close();
+        }
+
+        /* Upgrade. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Put a new log with the same device. */
+            Log newLog = AndroidTestUtils.generateMockLog();
+            newLog.setDevice(oldLog.getDevice());
+            persistence.putLog(newLog, "test", NORMAL);
+            assertEquals(1, countDevices(persistence));
+
+            /* Get old and new data. */
+            List<Log> outputLogs = new ArrayList<>();
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), 2, outputLogs, null, null));
+            assertEquals(2, outputLogs.size());
+            assertEquals(oldLog, outputLogs.get(0));
+            assertEquals(newLog, outputLogs.get(1));
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void pendingLogsAreAvailableAfterRestart() throws PersistenceException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        Log log = AndroidTestUtils.generateMockLog();
+        try {
+
+            /* Put a log and get it as part of a batch that is never completed. */
+            persistence.putLog(log, "test", NORMAL);
+            List<Log> outputLogs = new ArrayList<>();
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), 1, outputLogs, null, null));
+            assertEquals(1, outputLogs.size());
+
+            /* Log is pending. */
+            outputLogs.clear();
+            assertNull(persistence.getLogs("test", Collections.<String>emptyList(), 1, outputLogs, null, null));
+        } finally {
+            persistence.close();
+        }
+
+        /* Restart: the log can be sent again. */
+        persistence = new DatabasePersistence(sContext);
+        persistence.setLogSerializer(logSerializer);
+        try {
+            List<Log> outputLogs = new ArrayList<>();
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), 1, outputLogs, null, null));
+            assertEquals(1, outputLogs.size());
+            assertEquals(log, outputLogs.get(0));
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void putLogsInTransaction() throws PersistenceException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Put logs in a single transaction. */
+            persistence.beginTransaction();
+            Log log1 = AndroidTestUtils.generateMockLog();
+            Log log2 = AndroidTestUtils.generateMockLog();
+            persistence.putLog(log1, "test", NORMAL);
+            persistence.putLog(log2, "test", NORMAL);
+            assertTrue(persistence.endTransaction());
+
+            /* Logs are stored in order. */
+            List<Log> outputLogs = new ArrayList<>();
+            persistence.getLogs("test", Collections.<String>emptyList(), 2, outputLogs, null, null);
+            assertEquals(2, outputLogs.size());
+            assertEquals(log1, outputLogs.get(0));
+            assertEquals(log2, outputLogs.get(1));
+
+            /* Ending without a transaction is a no-op. */
+            assertTrue(persistence.endTransaction());
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void deviceSnapshotsAreStoredOnce() throws PersistenceException, JSONException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Put logs sharing a device and one with another device. */
+            Log log1 = AndroidTestUtils.generateMockLog();
+            Log log2 = AndroidTestUtils.generateMockLog();
+            log2.setDevice(log1.getDevice());
+            Log log3 = AndroidTestUtils.generateMockLog();
+            persistence.putLog(log1, "test", NORMAL);
+            persistence.putLog(log2, "test", NORMAL);
+            persistence.putLog(log3, "test", NORMAL);
+            assertEquals(2, countDevices(persistence));
+
+            /* Device is not in the stored payload. */
+            assertFalse(getContentValues(persistence, "test").getAsString(DatabasePersistence.COLUMN_LOG).contains("\"device\""));
+            assertNotNull(getContentValues(persistence, "test").getAsLong(DatabasePersistence.COLUMN_DEVICE_ID));
+
+            /* Logs are restored with their device, including pass-through payloads. */
+            List<Log> outputLogs = new ArrayList<>();
+            String id = persistence.getLogs("test", Collections.<String>emptyList(), 2, outputLogs, null, null);
+            assertEquals(Arrays.asList(log1, log2), outputLogs);
+            List<SerializedLog> serializedLogs = new ArrayList<>();
+            assertNotNull(persistence.getSerializedLogs("test", Collections.<String>emptyList(), 1, serializedLogs, null, null));
+            assertEquals(log3, logSerializer.deserializeLog(serializedLogs.get(0).getPayload(), MOCK_LOG_TYPE));
+
+            /* Snapshots no longer referenced are deleted by the next process. */
+            persistence.deleteLogs("test", id);
+            persistence.close();
+            persistence = new DatabasePersistence(sContext);
+            persistence.setLogSerializer(logSerializer);
+            persistence.putLog(log3, "test", NORMAL);
+            assertEquals(1, countDevices(persistence));
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void putCompressedLogs() throws PersistenceException, JSONException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Put a text log, then compressed logs. */
+            LogWithProperties log1 = AndroidTestUtils.generateMockLog();
+            persistence.putLog(log1, "test", NORMAL);
+            assertTrue(persistence.setCompressionEnabled(true));
+            LogWithProperties log2 = AndroidTestUtils.generateMockLog();
+            Map<String, String> properties = new HashMap<>();
+            properties.put("key", generateString(10 * 1024, 'x'));
+            log2.setProperties(properties);
+            persistence.putLog(log2, "test", NORMAL);
+            persistence.putLog(log2, "compressed", NORMAL);
+
+            /* Verify storage format. */
+            ContentValues values = getContentValues(persistence, "compressed");
+            assertNull(values.getAsString(DatabasePersistence.COLUMN_LOG));
+            byte[] logData = values.getAsByteArray(DatabasePersistence.COLUMN_LOG_DATA);
+            assertNotNull(logData);
+            assertEquals(DatabasePersistence.PAYLOAD_FORMAT_DEFLATE, logData[0]);
+            assertTrue(logData.length < 1024);
+
+            /* Both formats are read, including after disabling compression. */
+            assertTrue(persistence.setCompressionEnabled(false));
+            List<Log> outputLogs = new ArrayList<>();
+            String id = persistence.getLogs("test", Collections.<String>emptyList(), 2, outputLogs, null, null);
+            assertNotNull(id);
+            assertEquals(Arrays.<Log>asList(log1, log2), outputLogs);
+            List<SerializedLog> serializedLogs = new ArrayList<>();
+            assertNotNull(persistence.getSerializedLogs("compressed", Collections.<String>emptyList(), 1, serializedLogs, null, null));
+            assertEquals(1, serializedLogs.size());
+            assertEquals(log2, serializedLogs.get(0).getLog());
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void getCorruptedCompressedLog() throws PersistenceException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        persistence.setCompressionEnabled(true);
+        try {
+
+            /* Corrupt first log, then one with an unknown format. */
+            Log log = AndroidTestUtils.generateMockLog();
+            long corruptedId = persistence.putLog(AndroidTestUtils.generateMockLog(), "test", NORMAL);
+            long unknownFormatId = persistence.putLog(AndroidTestUtils.generateMockLog(), "test", NORMAL);
+            persistence.putLog(log, "test", NORMAL);
+            ContentValues values = new ContentValues();
+            values.put(DatabasePersistence.COLUMN_LOG_DATA, new byte[]{DatabasePersistence.PAYLOAD_FORMAT_DEFLATE, 1, 2, 3});
+            persistence.mDatabaseManager.update(values, DatabaseManager.PRIMARY_KEY + " = " + corruptedId, null);
+            values.put(DatabasePersistence.COLUMN_LOG_DATA, new byte[]{42});
+            persistence.mDatabaseManager.update(values, DatabaseManager.PRIMARY_KEY + " = " + unknownFormatId, null);
+
+            /* Corrupted logs are deleted. */
+            List<Log> outputLogs = new ArrayList<>();
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), 3, outputLogs, null, null));
+            assertEquals(Collections.singletonList(log), outputLogs);
+            assertEquals(1, persistence.countLogs("test"));
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void upgradeFromVersion7to8() throws PersistenceException, JSONException {
+
+        /* Initialize database persistence with old schema. */
+        ContentValues oldSchema = new ContentValues(SCHEMA);
+        oldSchema.remove(DatabasePersistence.COLUMN_LOG_DATA);
+        oldSchema.remove(DatabasePersistence.COLUMN_TARGET_TOKEN_ID);
+        oldSchema.remove(DatabasePersistence.COLUMN_PAYLOAD_SIZE);
+        DatabaseManager databaseManager = new DatabaseManager(sContext, DatabasePersistence.DATABASE, DatabasePersistence.TABLE, DatabasePersistence.VERSION_DEVICE_KEY, oldSchema, mock(DatabaseManager.Listener.class));
+
+        /* Init log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+
+        /* Insert old data before upgrade. */
+        Log oldLog = AndroidTestUtils.generateMockLog();
+        try {
+            ContentValues contentValues = new ContentValues();
+            contentValues.put(DatabasePersistence.COLUMN_GROUP, "test");
+            contentValues.put(DatabasePersistence.COLUMN_LOG, logSerializer.serializeLog(oldLog));
+            contentValues.put(DatabasePersistence.COLUMN_DATA_TYPE, MOCK_LOG_TYPE);
+            contentValues.put(DatabasePersistence.COLUMN_PRIORITY, NORMAL);
+            contentValues.put(DatabasePersistence.COLUMN_TIMESTAMP, oldLog.getTimestamp().getTime());
+            databaseManager.put(contentValues, DatabasePersistence.COLUMN_PRIORITY);
+        } finally {
+            databaseManager.close();
+        }
+
+        /* Upgrade and put a compressed log. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        persistence.setLogSerializer(logSerializer);
+        persistence.setCompressionEnabled(true);
+        try {
+            Log newLog = AndroidTestUtils.generateMockLog();
+            persistence.putLog(newLog, "test", NORMAL);
+
+            /* Get old and new data, then delete the batch. */
+            List<Log> outputLogs = new ArrayList<>();
+            String id = persistence.getLogs("test", Collections.<String>emptyList(), 2, outputLogs, null, null);
+            assertNotNull(id);
+            assertEquals(Arrays.asList(oldLog, newLog), outputLogs);
+            persistence.deleteLogs("test", id);
+            assertEquals(0, persistence.countLogs("test"));
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void upgradeFromVersion8to9() throws PersistenceException, JSONException {
+
+        /* Initialize database persistence with old schema. */
+        ContentValues oldSchema = new ContentValues(SCHEMA);
+        oldSchema.remove(DatabasePersistence.COLUMN_TARGET_TOKEN_ID);
+        oldSchema.remove(DatabasePersistence.COLUMN_PAYLOAD_SIZE);
+        DatabaseManager databaseManager = new DatabaseManager(sContext, DatabasePersistence.DATABASE, DatabasePersistence.TABLE, DatabasePersistence.VERSION_LOG_DATA_KEY, oldSchema, mock(DatabaseManager.Listener.class));
+
+        /* Init log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+
+        /* Insert old data before upgrade. */
+        Log oldLog = AndroidTestUtils.generateMockLog();
+        try {
+            ContentValues contentValues = new ContentValues();
+            contentValues.put(DatabasePersistence.COLUMN_GROUP, "test");
+            contentValues.put(DatabasePersistence.COLUMN_LOG, logSerializer.serializeLog(oldLog));
+            contentValues.put(DatabasePersistence.COLUMN_DATA_TYPE, MOCK_LOG_TYPE);
+            contentValues.put(DatabasePersistence.COLUMN_PRIORITY, NORMAL);
+            contentValues.put(DatabasePersistence.COLUMN_TIMESTAMP, oldLog.getTimestamp().getTime());
+            databaseManager.put(contentValues, DatabasePersistence.COLUMN_PRIORITY);
+        } finally {
+            databaseManager.close();
+        }
+
+        /* Upgrade: indexes are created and old data can be read with them. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        persistence.setLogSerializer(logSerializer);
+        try {
+            assertThat(getIndexes(persistence), hasItems(DatabasePersistence.INDEX_GROUP, DatabasePersistence.INDEX_TIMESTAMP));
+            Log newLog = AndroidTestUtils.generateMockLog();
+            persistence.putLog(newLog, "test", CRITICAL);
+            assertEquals(2, persistence.countLogs("test"));
+            assertEquals(2, persistence.countLogs(new Date(Long.MAX_VALUE)));
+            List<Log> outputLogs = new ArrayList<>();
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), 2, outputLogs, null, null));
+            assertEquals(Arrays.asList(newLog, oldLog), outputLogs);
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void upgradeFromVersion9to10() throws PersistenceException, JSONException {
+
+        /* Initialize database persistence with old schema. */
+        ContentValues oldSchema = new ContentValues(SCHEMA);
+        oldSchema.remove(DatabasePersistence.COLUMN_TARGET_TOKEN_ID);
+        oldSchema.remove(DatabasePersistence.COLUMN_PAYLOAD_SIZE);
+        DatabaseManager databaseManager = new DatabaseManager(sContext, DatabasePersistence.DATABASE, DatabasePersistence.TABLE, DatabasePersistence.VERSION_GROUP_INDEX_KEY, oldSchema, mock(DatabaseManager.Listener.class));
+
+        /* Init log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MockCommonSchemaLog.TYPE, new MockCommonSchemaLogFactory());
+
+        /* Insert old data with an inline encrypted token before upgrade. */
+        MockCommonSchemaLog oldLog = new MockCommonSchemaLog();
+        oldLog.setName("test");
+        oldLog.setIKey("o:test");
+        oldLog.setTimestamp(new Date());
+        oldLog.setVer("3.0");
+        oldLog.addTransmissionTarget("test-guid");
+        try {
+            ContentValues contentValues = new ContentValues();
+            contentValues.put(DatabasePersistence.COLUMN_GROUP, "test");
+            contentValues.put(DatabasePersistence.COLUMN_LOG, logSerializer.serializeLog(oldLog));
+            contentValues.put(DatabasePersistence.COLUMN_TARGET_TOKEN, CryptoUtils.getInstance(sContext).encrypt("test-guid"));
+            contentValues.put(DatabasePersistence.COLUMN_DATA_TYPE, MockCommonSchemaLog.TYPE);
+            contentValues.put(DatabasePersistence.COLUMN_TARGET_KEY, "test");
+            contentValues.put(DatabasePersistence.COLUMN_PRIORITY, NORMAL);
+            contentValues.put(DatabasePersistence.COLUMN_TIMESTAMP, oldLog.getTimestamp().getTime());
+            databaseManager.put(contentValues, DatabasePersistence.COLUMN_PRIORITY);
+        } finally {
+            databaseManager.close();
+        }
+
+        /* Upgrade: old token stays inline while new logs reference the tokens table. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        persistence.setLogSerializer(logSerializer);
+        try {
+            persistence.putLog(oldLog, "test", NORMAL);
+            assertEquals(1, countTargetTokens(persistence));
+            List<SerializedLog> outputLogs = new ArrayList<>();
+            assertNotNull(persistence.getSerializedLogs("test", Collections.<String>emptyList(), 2, outputLogs, null, null));
+            assertEquals(2, outputLogs.size());
+            for (SerializedLog log : outputLogs) {
+                assertEquals(Collections.singleton("test-guid"), log.getTransmissionTargetTokens());
+            }
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void upgradeFromVersion10to11() throws PersistenceException, JSONException {
+
+        /* Initialize database persistence with old schema. */
+        ContentValues oldSchema = new ContentValues(SCHEMA);
+        oldSchema.remove(DatabasePersistence.COLUMN_PAYLOAD_SIZE);
+        DatabaseManager databaseManager = new DatabaseManager(sContext, DatabasePersistence.DATABASE, DatabasePersistence.TABLE, DatabasePersistence.VERSION_TARGET_TOKEN_KEY, oldSchema, mock(DatabaseManager.Listener.class));
+
+        /* Init log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+
+        /* Insert old data without payload size before upgrade. */
+        Log oldLog = AndroidTestUtils.generateMockLog();
+        try {
+            ContentValues contentValues = new ContentValues();
+            contentValues.put(DatabasePersistence.COLUMN_GROUP, "test");
+            contentValues.put(DatabasePersistence.COLUMN_LOG, logSerializer.serializeLog(oldLog));
+            contentValues.put(DatabasePersistence.COLUMN_DATA_TYPE, MOCK_LOG_TYPE);
+            contentValues.put(DatabasePersistence.COLUMN_PRIORITY, NORMAL);
+            contentValues.put(DatabasePersistence.COLUMN_TIMESTAMP, oldLog.getTimestamp().getTime());
+            databaseManager.put(contentValues, DatabasePersistence.COLUMN_PRIORITY);
+        } finally {
+            databaseManager.close();
+        }
+
+        /* Upgrade: old logs are measured once read and count in the byte budget. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        persistence.setLogSerializer(logSerializer);
+        try {
+            Log newLog = AndroidTestUtils.generateMockLog();
+            persistence.putLog(newLog, "test", NORMAL);
+            long oldLogSize = StringUtils.getUtf8Length(logSerializer.serializeLog(oldLog));
+            List<Log> outputLogs = new ArrayList<>();
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), 2, oldLogSize, outputLogs, null, null));
+            assertEquals(Collections.singletonList(oldLog), outputLogs);
+            outputLogs.clear();
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), 2, oldLogSize, outputLogs, null, null));
+            assertEquals(Collections.singletonList(newLog), outputLogs);
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void targetTokensAreStoredOnce() throws PersistenceException, JSONException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MockCommonSchemaLog.TYPE, new MockCommonSchemaLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Put logs sharing a token and one with another token. */
+            List<Log> logs = new ArrayList<>();
+            for (String token : new String[]{"test-guid", "test-guid", "other-guid"}) {
+                MockCommonSchemaLog log = new MockCommonSchemaLog();
+                log.setName("test");
+                log.setIKey("o:" + token);
+                log.setTimestamp(new Date());
+                log.setVer("3.0");
+                log.addTransmissionTarget(token);
+                persistence.putLog(log, "test", NORMAL);
+                logs.add(log);
+            }
+            assertEquals(2, countTargetTokens(persistence));
+
+            /* Token is not stored inline. */
+            ContentValues values = getContentValues(persistence, "test");
+            assertNull(values.getAsString(DatabasePersistence.COLUMN_TARGET_TOKEN));
+            assertEquals("test-guid", CryptoUtils.getInstance(sContext).decrypt(getEncryptedTargetToken(persistence, values), false).getDecryptedData());
+
+            /* Logs are restored with their token. */
+            List<SerializedLog> outputLogs = new ArrayList<>();
+            String id = persistence.getSerializedLogs("test", Collections.<String>emptyList(), 2, outputLogs, null, null);
+            assertNotNull(id);
+            assertEquals(Collections.singleton("test-guid"), outputLogs.get(0).getTransmissionTargetTokens());
+            assertEquals(Collections.singleton("test-guid"), outputLogs.get(1).getTransmissionTargetTokens());
+
+            /* A new process decrypts stored tokens. */
+            persistence.close();
+            persistence = new DatabasePersistence(sContext);
+            persistence.setLogSerializer(logSerializer);
+            outputLogs.clear();
+            assertNotNull(persistence.getSerializedLogs("test", Collections.<String>emptyList(), 3, outputLogs, null, null));
+            assertEquals(3, outputLogs.size());
+            assertEquals(Collections.singleton("other-guid"), outputLogs.get(2).getTransmissionTargetTokens());
+
+            /* Tokens no longer referenced are deleted by the next process. */
+            persistence.deleteLogs("test");
+            persistence.close();
+            persistence = new DatabasePersistence(sContext);
+            persistence.setLogSerializer(logSerializer);
+            persistence.putLog(logs.get(2), "test", NORMAL);
+            assertEquals(1, countTargetTokens(persistence));
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void indexesOnCreate() {
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        try {
+            assertThat(getIndexes(persistence), hasItems(DatabasePersistence.INDEX_GROUP, DatabasePersistence.INDEX_TIMESTAMP));
+        } finally {
+            persistence.close();
+        }
+    }
+
+    private static List<String> getIndexes(DatabasePersistence persistence) {
+        SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
+        builder.appendWhere("type = 'index'");
+        Cursor cursor = persistence.mDatabaseManager.getCursor("sqlite_master", builder, new String[]{"name"}, null, null);
+        try {
+            List<String> indexes = new ArrayList<>();
+            while (cursor.moveToNext()) {
+                indexes.add(cursor.getString(0));
+            }
+            return indexes;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static int countDevices(DatabasePersistence persistence) {
+        Cursor cursor = persistence.mDatabaseManager.getCursor(DatabasePersistence.TABLE_DEVICES, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static int countTargetTokens(DatabasePersistence persistence) {
+        Cursor cursor = persistence.mDatabaseManager.getCursor(DatabasePersistence.TABLE_TARGET_TOKENS, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static String getEncryptedTargetToken(DatabasePersistence persistence, ContentValues values) {
+        Long targetTokenId = values.getAsLong(DatabasePersistence.COLUMN_TARGET_TOKEN_ID);
+        assertNotNull(targetTokenId);
+        SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
+        builder.appendWhere(DatabaseManager.PRIMARY_KEY + " = ?");
+        Cursor cursor = persistence.mDatabaseManager.getCursor(DatabasePersistence.TABLE_TARGET_TOKENS, builder, new String[]{DatabasePersistence.COLUMN_TARGET_TOKEN}, new String[]{String.valueOf(targetTokenId)}, null);
+        try {
+            assertTrue(cursor.moveToNext());
+            return cursor.getString(0);
+        } finally {
+            cursor.close();
+        }
+    }
 }
@@ -0,0 +1,372 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.persistence;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.MediumTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.microsoft.appcenter.AndroidTestUtils;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.SerializedLog;
+import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.MockLogFactory;
+import com.microsoft.appcenter.ingestion.models.one.MockCommonSchemaLog;
+import com.microsoft.appcenter.ingestion.models.one.MockCommonSchemaLogFactory;
+import com.microsoft.appcenter.persistence.Persistence.PersistenceException;
+import com.microsoft.appcenter.utils.StringUtils;
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
+
+import org.json.JSONException;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static com.microsoft.appcenter.Flags.CRITICAL;
+import static com.microsoft.appcenter.Flags.NORMAL;
+import static com.microsoft.appcenter.ingestion.models.json.MockLog.MOCK_LOG_TYPE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("TryFinallyCanBeTryWithResources")
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class JournalPersistenceAndroidTest {
+
+    /**
+     * Context instance.
+     */
+    @SuppressLint("StaticFieldLeak")
+    private static Context sContext;
+
+    /**
+     * Journal directory.
+     */
+    private static File sDirectory;
+
+    /**
+     * Log serializer.
+     */
+    private LogSerializer mLogSerializer;
+
+    @BeforeClass
+    public static void setUpClass() {
+        sContext = InstrumentationRegistry.getTargetContext();
+        SharedPreferencesManager.initialize(sContext);
+        sDirectory = new File(sContext.getCacheDir(), "journal-test");
+    }
+
+    @Before
+    public void setUp() {
+        delete(sDirectory);
+        mLogSerializer = new DefaultLogSerializer();
+        mLogSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        mLogSerializer.addLogFactory(MockCommonSchemaLog.TYPE, new MockCommonSchemaLogFactory());
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    private JournalPersistence newPersistence() {
+        JournalPersistence persistence = new JournalPersistence(sContext, sDirectory);
+        persistence.setLogSerializer(mLogSerializer);
+        return persistence;
+    }
+
+    private static int countFiles(String extension) {
+        int count = 0;
+        File[] groups = sDirectory.listFiles();
+        if (groups != null) {
+            for (File group : groups) {
+                File[] lanes = group.listFiles();
+                if (lanes != null) {
+                    for (File lane : lanes) {
+                        File[] files = lane.listFiles();
+                        if (files != null) {
+                            for (File file : files) {
+                                if (file.getName().endsWith(extension)) {
+                                    count++;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void putGetDelete() throws PersistenceException {
+        JournalPersistence persistence = newPersistence();
+        try {
+
+            /* Put logs in 2 groups, the group name is not a valid file name. */
+            Log log1 = AndroidTestUtils.generateMockLog();
+            Log log2 = AndroidTestUtils.generateMockLog();
+            Log log3 = AndroidTestUtils.generateMockLog();
+            persistence.putLog(log1, "test/one", NORMAL);
+            persistence.putLog(log2, "test/one", NORMAL);
+            persistence.putLog(log3, "other", NORMAL);
+            assertEquals(2, persistence.countLogs("test/one"));
+            assertEquals(1, persistence.countLogs("other"));
+            assertEquals(3, persistence.countLogs(new Date(Long.MAX_VALUE)));
+
+            /* Get logs in storage order, batched logs are excluded from next query. */
+            List<Log> outputLogs = new ArrayList<>();
+            String id = persistence.getLogs("test/one", Collections.<String>emptyList(), 1, outputLogs, null, null);
+            assertNotNull(id);
+            assertEquals(Collections.singletonList(log1), outputLogs);
+            outputLogs.clear();
+            String id2 = persistence.getLogs("test/one", Collections.<String>emptyList(), 2, outputLogs, null, null);
+            assertNotNull(id2);
+            assertEquals(Collections.singletonList(log2), outputLogs);
+            outputLogs.clear();
+            assertNull(persistence.getLogs("test/one", Collections.<String>emptyList(), 2, outputLogs, null, null));
+
+            /* Clearing pending state makes logs available again. */
+            persistence.clearPendingLogState();
+            id = persistence.getLogs("test/one", Collections.<String>emptyList(), 2, outputLogs, null, null);
+            assertEquals(Arrays.asList(log1, log2), outputLogs);
+
+            /* Deleting the batch retires the segment. */
+            persistence.deleteLogs("test/one", id);
+            assertEquals(0, persistence.countLogs("test/one"));
+            assertEquals(1, countFiles(JournalPersistence.SEGMENT_FILE_EXTENSION));
+
+            /* Delete a whole group. */
+            persistence.deleteLogs("other");
+            assertEquals(0, persistence.countLogs("other"));
+            assertEquals(0, countFiles(JournalPersistence.SEGMENT_FILE_EXTENSION));
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void clearPendingLogStateOfBatch() throws PersistenceException {
+        JournalPersistence persistence = newPersistence();
+        try {
+
+            /* Get 2 batches. */
+            Log log1 = AndroidTestUtils.generateMockLog();
+            Log log2 = AndroidTestUtils.generateMockLog();
+            persistence.putLog(log1, "test", NORMAL);
+            persistence.putLog(log2, "test", NORMAL);
+            List<Log> outputLogs = new ArrayList<>();
+            String id1 = persistence.getLogs("test", Collections.<String>emptyList(), 1, outputLogs, null, null);
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), 1, outputLogs, null, null));
+            assertNotNull(id1);
+            outputLogs.clear();
+
+            /* Only the logs of the cleared batch can be read again. */
+            persistence.clearPendingLogState("test", id1);
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), 2, outputLogs, null, null));
+            assertEquals(Collections.singletonList(log1), outputLogs);
+            outputLogs.clear();
+            assertNull(persistence.getLogs("test", Collections.<String>emptyList(), 2, outputLogs, null, null));
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void getLogsWithinByteBudget() throws PersistenceException, JSONException {
+        List<Log> logs = new ArrayList<>();
+        long twoLogsSize = 0;
+        JournalPersistence persistence = newPersistence();
+        try {
+            for (int i = 0; i < 3; i++) {
+                Log log = AndroidTestUtils.generateMockLog();
+                persistence.putLog(log, "test", NORMAL);
+                logs.add(log);
+                if (i < 2) {
+                    twoLogsSize += StringUtils.getUtf8Length(mLogSerializer.serializeLog(log));
+                }
+            }
+
+            /* Only the first 2 fit. */
+            List<Log> outputLogs = new ArrayList<>();
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), 3, twoLogsSize, outputLogs, null, null));
+            assertEquals(logs.subList(0, 2), outputLogs);
+        } finally {
+            persistence.close();
+        }
+
+        /* Sizes of logs loaded from segment files are measured once read, a log larger than the budget is sent alone. */
+        persistence = newPersistence();
+        try {
+            List<Log> outputLogs = new ArrayList<>();
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), 3, 1, outputLogs, null, null));
+            assertEquals(logs.subList(0, 1), outputLogs);
+            outputLogs.clear();
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), 3, Long.MAX_VALUE, outputLogs, null, null));
+            assertEquals(logs.subList(1, 3), outputLogs);
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void priorityLanesAndFilters() throws PersistenceException, JSONException {
+        JournalPersistence persistence = newPersistence();
+        try {
+
+            /* Critical logs are read first. */
+            Log normal = AndroidTestUtils.generateMockLog();
+            normal.setTimestamp(new Date(1000));
+            Log critical = AndroidTestUtils.generateMockLog();
+            critical.setTimestamp(new Date(2000));
+            MockCommonSchemaLog commonSchemaLog = new MockCommonSchemaLog();
+            commonSchemaLog.setName("test");
+            commonSchemaLog.setIKey("o:test");
+            commonSchemaLog.setTimestamp(new Date(3000));
+            commonSchemaLog.setVer("3.0");
+            commonSchemaLog.addTransmissionTarget("test-guid");
+            persistence.putLog(normal, "test", NORMAL);
+            persistence.putLog(commonSchemaLog, "test", NORMAL);
+            persistence.putLog(critical, "test", CRITICAL);
+
+            /* Paused target keys and time range are filtered. */
+            List<SerializedLog> outputLogs = new ArrayList<>();
+            assertNotNull(persistence.getSerializedLogs("test", Collections.singletonList("test"), 3, outputLogs, new Date(1001), null));
+            assertEquals(1, outputLogs.size());
+            assertEquals(critical, outputLogs.get(0).getLog());
+            assertEquals(CRITICAL, outputLogs.get(0).getPriority());
+            outputLogs.clear();
+            assertNotNull(persistence.getSerializedLogs("test", Collections.<String>emptyList(), 3, outputLogs, null, null));
+            assertEquals(2, outputLogs.size());
+            assertEquals(normal, outputLogs.get(0).getLog());
+            assertEquals(commonSchemaLog, outputLogs.get(1).getLog());
+            assertEquals(Collections.singleton("test-guid"), outputLogs.get(1).getTransmissionTargetTokens());
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void acknowledgementsSurviveRestart() throws PersistenceException {
+        JournalPersistence persistence = newPersistence();
+        Log log1 = AndroidTestUtils.generateMockLog();
+        Log log2 = AndroidTestUtils.generateMockLog();
+        Log log3 = AndroidTestUtils.generateMockLog();
+        try {
+            persistence.setCompressionEnabled(true);
+            persistence.putLog(log1, "test", NORMAL);
+            persistence.putLog(log2, "test", NORMAL);
+            persistence.putLog(log3, "test", NORMAL);
+
+            /* Send the second log only. */
+            List<Log> outputLogs = new ArrayList<>();
+            persistence.getLogs("test", Collections.<String>emptyList(), 1, outputLogs, null, null);
+            String id = persistence.getLogs("test", Collections.<String>emptyList(), 1, outputLogs, null, null);
+            assertNotNull(id);
+            persistence.deleteLogs("test", id);
+            assertEquals(1, countFiles(JournalPersistence.ACK_FILE_EXTENSION));
+        } finally {
+            persistence.close();
+        }
+
+        /* The next process gets the other logs, including the one in a batch that was not deleted. */
+        persistence = newPersistence();
+        try {
+            assertEquals(2, persistence.countLogs("test"));
+            List<Log> outputLogs = new ArrayList<>();
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), 3, outputLogs, null, null));
+            assertEquals(Arrays.asList(log1, log3), outputLogs);
+
+            /* New logs start a new segment. */
+            persistence.putLog(AndroidTestUtils.generateMockLog(), "test", NORMAL);
+            assertEquals(2, countFiles(JournalPersistence.SEGMENT_FILE_EXTENSION));
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void truncatedFrameIsIgnored() throws PersistenceException, IOException {
+        JournalPersistence persistence = newPersistence();
+        Log log = AndroidTestUtils.generateMockLog();
+        try {
+            persistence.putLog(log, "test", NORMAL);
+            persistence.putLog(AndroidTestUtils.generateMockLog(), "test", NORMAL);
+        } finally {
+            persistence.close();
+        }
+
+        /* Simulate a process killed while writing the second log. */
+        File segment = sDirectory.listFiles()[0].listFiles()[0].listFiles()[0];
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            file.setLength(file.length() - 10);
+        } finally {
+            file.close();
+        }
+        persistence = newPersistence();
+        try {
+            assertEquals(1, persistence.countLogs("test"));
+            List<Log> outputLogs = new ArrayList<>();
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), 2, outputLogs, null, null));
+            assertEquals(Collections.singletonList(log), outputLogs);
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void evictOldestSegments() throws PersistenceException {
+        JournalPersistence persistence = newPersistence();
+        try {
+
+            /* Segments are an eighth of storage at most. */
+            assertTrue(persistence.setMaxStorageSize(32 * 1024));
+            Log critical = AndroidTestUtils.generateMockLog();
+            persistence.putLog(critical, "critical", CRITICAL);
+            for (int i = 0; i < 200; i++) {
+                persistence.putLog(AndroidTestUtils.generateMockLog(), "test", NORMAL);
+            }
+
+            /* Oldest normal segments were dropped as a whole while the critical log was kept. */
+            assertEquals(1, persistence.countLogs("critical"));
+            int count = persistence.countLogs("test");
+            assertTrue(count < 200);
+            assertEquals(200 - count, (long) persistence.getEvictedLogCounts().get("test"));
+            assertFalse(persistence.getEvictedLogCounts().containsKey("critical"));
+
+            /* The newest log is still there. */
+            List<Log> outputLogs = new ArrayList<>();
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), count, outputLogs, null, null));
+            assertEquals(count, outputLogs.size());
+        } finally {
+            persistence.close();
+        }
+    }
+}
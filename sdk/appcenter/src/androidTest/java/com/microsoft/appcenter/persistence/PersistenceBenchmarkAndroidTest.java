@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.persistence;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.microsoft.appcenter.AndroidTestUtils;
+import com.microsoft.appcenter.Constants;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.SerializedLog;
+import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.MockLog;
+import com.microsoft.appcenter.ingestion.models.json.MockLogFactory;
+import com.microsoft.appcenter.persistence.Persistence.PersistenceException;
+import com.microsoft.appcenter.utils.storage.FileManager;
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static com.microsoft.appcenter.Flags.NORMAL;
+import static com.microsoft.appcenter.ingestion.models.json.MockLog.MOCK_LOG_TYPE;
+import static com.microsoft.appcenter.test.TestUtils.generateString;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares persistence implementations on the channel workload: store logs, then read and delete them by batch.
+ * Timings are printed to logcat, only the number of logs is checked.
+ */
+@SuppressWarnings("TryFinallyCanBeTryWithResources")
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class PersistenceBenchmarkAndroidTest {
+
+    private static final String TAG = "PersistenceBenchmark";
+
+    private static final int LOG_COUNT = 2000;
+
+    private static final int BATCH_SIZE = 50;
+
+    @SuppressLint("StaticFieldLeak")
+    private static Context sContext;
+
+    @BeforeClass
+    public static void setUpClass() {
+        sContext = InstrumentationRegistry.getTargetContext();
+        FileManager.initialize(sContext);
+        SharedPreferencesManager.initialize(sContext);
+        Constants.loadFromContext(sContext);
+    }
+
+    @Test
+    public void database() throws PersistenceException {
+        sContext.deleteDatabase(DatabasePersistence.DATABASE);
+        run("database", new DatabasePersistence(sContext));
+    }
+
+    @Test
+    public void journal() throws PersistenceException {
+        File directory = new File(sContext.getCacheDir(), "journal-benchmark");
+        run("journal", new JournalPersistence(sContext, directory));
+    }
+
+    @Test
+    public void databasePutLog() throws PersistenceException {
+        sContext.deleteDatabase(DatabasePersistence.DATABASE);
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Small logs are the common case, large ones are stored in files. */
+            putLogs(persistence, "small", 0, LOG_COUNT);
+            putLogs(persistence, "medium", 16 * 1024, LOG_COUNT / 10);
+            putLogs(persistence, "large", 2 * 1024 * 1024, 10);
+        } finally {
+            persistence.close();
+        }
+    }
+
+    private static void putLogs(Persistence persistence, String name, int propertySize, int count) throws PersistenceException {
+        List<Log> logs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            MockLog log = AndroidTestUtils.generateMockLog();
+            if (propertySize > 0) {
+                Map<String, String> properties = new HashMap<>();
+                properties.put("key", generateString(propertySize, 'x'));
+                log.setProperties(properties);
+            }
+            logs.add(log);
+        }
+        persistence.deleteLogs(name);
+        long start = System.nanoTime();
+        for (Log log : logs) {
+            persistence.putLog(log, name, NORMAL);
+        }
+        long putTime = System.nanoTime() - start;
+        assertEquals(count, persistence.countLogs(name));
+        android.util.Log.i(TAG, String.format(Locale.ENGLISH, "database putLog %s: %.1f us/log",
+                name, putTime / 1000.0 / count));
+        persistence.deleteLogs(name);
+    }
+
+    private static void run(String name, Persistence persistence) throws PersistenceException {
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        List<Log> logs = new ArrayList<>();
+        for (int i = 0; i < LOG_COUNT; i++) {
+            logs.add(AndroidTestUtils.generateMockLog());
+        }
+        try {
+            persistence.deleteLogs("benchmark");
+
+            /* Store logs one by one as the channel does. */
+            long start = System.nanoTime();
+            for (Log log : logs) {
+                persistence.putLog(log, "benchmark", NORMAL);
+            }
+            long putTime = System.nanoTime() - start;
+
+            /* Read and delete them by batch. */
+            int count = 0;
+            start = System.nanoTime();
+            while (true) {
+                List<SerializedLog> batch = new ArrayList<>();
+                String id = persistence.getSerializedLogs("benchmark", Collections.<String>emptyList(), BATCH_SIZE, batch, null, null);
+                if (id == null) {
+                    break;
+                }
+                count += batch.size();
+                persistence.deleteLogs("benchmark", id);
+            }
+            long sendTime = System.nanoTime() - start;
+            assertEquals(LOG_COUNT, count);
+            android.util.Log.i(TAG, String.format(Locale.ENGLISH, "%s: put %.1f us/log, get and delete %.1f us/log",
+                    name, putTime / 1000.0 / LOG_COUNT, sendTime / 1000.0 / LOG_COUNT));
+        } finally {
+            persistence.close();
+        }
+    }
+}
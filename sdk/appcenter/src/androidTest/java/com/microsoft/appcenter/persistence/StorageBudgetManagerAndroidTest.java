@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.persistence;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.MediumTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.microsoft.appcenter.AndroidTestUtils;
+import com.microsoft.appcenter.Constants;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogWithProperties;
+import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.MockLogFactory;
+import com.microsoft.appcenter.persistence.Persistence.PersistenceException;
+import com.microsoft.appcenter.utils.storage.FileManager;
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static com.microsoft.appcenter.Flags.CRITICAL;
+import static com.microsoft.appcenter.Flags.NORMAL;
+import static com.microsoft.appcenter.ingestion.models.json.MockLog.MOCK_LOG_TYPE;
+import static com.microsoft.appcenter.test.TestUtils.generateString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+@SuppressWarnings("TryFinallyCanBeTryWithResources")
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class StorageBudgetManagerAndroidTest {
+
+    /**
+     * Context instance.
+     */
+    @SuppressLint("StaticFieldLeak")
+    private static Context sContext;
+
+    @BeforeClass
+    public static void setUpClass() {
+        sContext = InstrumentationRegistry.getTargetContext();
+        FileManager.initialize(sContext);
+        SharedPreferencesManager.initialize(sContext);
+        Constants.loadFromContext(sContext);
+    }
+
+    @Before
+    public void setUp() {
+
+        /* Clean up database. */
+        sContext.deleteDatabase(DatabasePersistence.DATABASE);
+    }
+
+    @NonNull
+    private static DatabasePersistence createPersistence() {
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        return persistence;
+    }
+
+    @NonNull
+    private static StorageBudgetManager createStorageBudget(DatabasePersistence persistence) {
+        return new StorageBudgetManager(persistence.mDatabaseManager, mock(StorageBudgetManager.Listener.class), new Executor() {
+
+            @Override
+            public void execute(@NonNull Runnable command) {
+                command.run();
+            }
+        });
+    }
+
+    @NonNull
+    private static Log putLog(DatabasePersistence persistence, String group, int flags) throws PersistenceException {
+        LogWithProperties log = AndroidTestUtils.generateMockLog();
+        Map<String, String> properties = new HashMap<>();
+        properties.put("key", generateString(1024, 'x'));
+        log.setProperties(properties);
+        persistence.putLog(log, group, flags);
+        return log;
+    }
+
+    @Test
+    public void evictLowestPriorityAndOldestFirst() throws PersistenceException {
+        DatabasePersistence persistence = createPersistence();
+        try {
+
+            /* Put critical logs first, then normal logs in 2 groups. */
+            List<Log> criticalLogs = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                criticalLogs.add(putLog(persistence, "a", CRITICAL));
+            }
+            List<Log> normalLogs = new ArrayList<>();
+            for (int i = 0; i < 60; i++) {
+                normalLogs.add(putLog(persistence, i % 2 == 0 ? "a" : "b", NORMAL));
+            }
+
+            /* Evict half of the storage. */
+            StorageBudgetManager storageBudget = createStorageBudget(persistence);
+            long usedSize = persistence.mDatabaseManager.getUsedSize();
+            int evictedCount = storageBudget.evict(null, usedSize / 2);
+            assertTrue(evictedCount > 0);
+            assertTrue(evictedCount < normalLogs.size());
+            assertTrue(persistence.mDatabaseManager.getUsedSize() < usedSize);
+
+            /* Counts by group match. */
+            Map<String, Long> counts = storageBudget.getEvictedLogCounts();
+            assertEquals(2, counts.size());
+            assertEquals(evictedCount, counts.get("a") + counts.get("b"));
+            assertEquals(62 - evictedCount, persistence.countLogs("a") + persistence.countLogs("b"));
+
+            /* Critical logs and most recent normal logs are kept. */
+            List<Log> expectedLogs = new ArrayList<>();
+            for (int i = evictedCount; i < normalLogs.size(); i++) {
+                if (i % 2 == 1) {
+                    expectedLogs.add(normalLogs.get(i));
+                }
+            }
+            List<Log> actualLogs = new ArrayList<>();
+            persistence.getLogs("b", Collections.<String>emptyList(), 100, actualLogs, null, null);
+            assertEquals(expectedLogs, actualLogs);
+            actualLogs.clear();
+            persistence.getLogs("a", Collections.<String>emptyList(), 2, actualLogs, null, null);
+            assertEquals(criticalLogs, actualLogs);
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void evictGroup() throws PersistenceException {
+        DatabasePersistence persistence = createPersistence();
+        try {
+            for (int i = 0; i < 20; i++) {
+                putLog(persistence, i % 2 == 0 ? "a" : "b", NORMAL);
+            }
+
+            /* Target cannot be reached: all logs of the group are evicted, only them. */
+            StorageBudgetManager storageBudget = createStorageBudget(persistence);
+            assertEquals(10, storageBudget.evict("a", 0));
+            assertEquals(0, persistence.countLogs("a"));
+            assertEquals(10, persistence.countLogs("b"));
+            Map<String, Long> counts = storageBudget.getEvictedLogCounts();
+            assertEquals(1, counts.size());
+            assertEquals(Long.valueOf(10), counts.get("a"));
+            assertNull(counts.get("b"));
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void checkUnderHighWatermark() throws PersistenceException {
+        DatabasePersistence persistence = createPersistence();
+        try {
+            putLog(persistence, "a", NORMAL);
+            StorageBudgetManager storageBudget = createStorageBudget(persistence);
+            storageBudget.check();
+            assertEquals(1, persistence.countLogs("a"));
+            assertTrue(storageBudget.getEvictedLogCounts().isEmpty());
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void checkOverHighWatermark() throws PersistenceException {
+        DatabasePersistence persistence = createPersistence();
+        try {
+            for (int i = 0; i < 40; i++) {
+                putLog(persistence, "a", NORMAL);
+            }
+
+            /* Shrink to the used size so that the check sees a database over its high watermark. */
+            long usedSize = persistence.mDatabaseManager.getUsedSize();
+            assertTrue(persistence.mDatabaseManager.setMaxSize(usedSize));
+            StorageBudgetManager storageBudget = createStorageBudget(persistence);
+            storageBudget.check();
+            long maxSize = persistence.mDatabaseManager.getMaxSize();
+            assertTrue(persistence.mDatabaseManager.getUsedSize() <= maxSize * StorageBudgetManager.HIGH_WATERMARK);
+            assertFalse(storageBudget.getEvictedLogCounts().isEmpty());
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void evictOverQuota() throws PersistenceException {
+        DatabasePersistence persistence = createPersistence();
+        try {
+            for (int i = 0; i < 20; i++) {
+                putLog(persistence, i % 2 == 0 ? "a" : "b", NORMAL);
+            }
+
+            /* Setting the quota checks it right away with a direct executor. */
+            StorageBudgetManager storageBudget = createStorageBudget(persistence);
+            storageBudget.setQuota("a", null, 5000);
+            int count = persistence.countLogs("a");
+            assertTrue(count > 0);
+            assertTrue(count < 10);
+            assertEquals(10, persistence.countLogs("b"));
+            Map<String, Long> counts = storageBudget.getQuotaEvictedLogCounts();
+            assertEquals(1, counts.size());
+            assertEquals(Long.valueOf(10 - count), counts.get("a"));
+            assertTrue(storageBudget.getEvictedLogCounts().isEmpty());
+        } finally {
+            persistence.close();
+        }
+    }
+}
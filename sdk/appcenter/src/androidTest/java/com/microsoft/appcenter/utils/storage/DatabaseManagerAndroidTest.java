@@ -9,9 +9,11 @@ import android.annotation.SuppressLint;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.filters.SmallTest;
 import android.support.test.runner.AndroidJUnit4;
@@ -28,6 +30,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
@@ -399,6 +402,127 @@ public class DatabaseManagerAndroidTest {
         }
     }
 
+    @Test
+    public void getUsedSize() {
+
+        /* Get instance to access database. */
+        DatabaseManager databaseManager = new DatabaseManager(sContext, DATABASE_NAME, "test.getUsedSize", 1, mSchema, new DatabaseManager.DefaultListener());
+
+        //noinspection TryFinallyCanBeTryWithResources (try with resources statement is API >= 19)
+        try {
+
+            /* Used size grows with data. */
+            long emptySize = databaseManager.getUsedSize();
+            assertTrue(emptySize > 0);
+            for (int i = 0; i < 500; i++) {
+                databaseManager.put(generateContentValues(), "COL_INTEGER");
+            }
+            long usedSize = databaseManager.getUsedSize();
+            assertTrue(usedSize > emptySize);
+            assertTrue(usedSize <= databaseManager.getMaxSize());
+
+            /* Deleted pages are not counted. */
+            databaseManager.clear();
+            assertTrue(databaseManager.getUsedSize() < usedSize);
+        } finally {
+
+            /* Close. */
+            databaseManager.close();
+        }
+    }
+
+    @Test
+    public void writeAheadLogging() {
+
+        /* Get instance to access database. */
+        DatabaseManager databaseManager = new DatabaseManager(sContext, DATABASE_NAME, "test.writeAheadLogging", 1, mSchema, new DatabaseManager.DefaultListener());
+        databaseManager.setWriteAheadLoggingEnabled(true);
+        databaseManager.setPageSize(8192);
+        databaseManager.setCacheSize(512);
+
+        //noinspection TryFinallyCanBeTryWithResources (try with resources statement is API >= 19)
+        try {
+            SQLiteDatabase db = databaseManager.getDatabase();
+            assertEquals("wal", DatabaseUtils.stringForQuery(db, "PRAGMA journal_mode", null).toLowerCase());
+            assertEquals(8192, db.getPageSize());
+
+            /* Maximum size applies to the connection that writes: oldest rows are deleted when full. */
+            long maxSize = 8 * 8192;
+            assertTrue(databaseManager.setMaxSize(maxSize));
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(databaseManager.put(generateContentValues(), "COL_INTEGER") >= 0);
+            }
+            assertTrue(databaseManager.getRowCount() < 1000);
+            assertTrue(databaseManager.getUsedSize() <= maxSize);
+
+            /* Maximum size is applied again when reopening. */
+            databaseManager.close();
+            db = databaseManager.getDatabase();
+            db.beginTransaction();
+            try {
+                assertEquals(maxSize, db.getMaximumSize());
+            } finally {
+                db.endTransaction();
+            }
+            assertEquals(maxSize, databaseManager.getMaxSize());
+        } finally {
+
+            /* Close. */
+            databaseManager.close();
+        }
+    }
+
+    @Test
+    public void compiledStatements() {
+
+        /* Get instance to access database. */
+        DatabaseManager databaseManager = new DatabaseManager(sContext, DATABASE_NAME, "compiledStatements", 1, mSchema, new DatabaseManager.DefaultListener());
+
+        //noinspection TryFinallyCanBeTryWithResources (try with resources statement is API >= 19)
+        try {
+            String insert = "INSERT INTO compiledStatements (COL_STRING, COL_INTEGER) VALUES (?, ?)";
+            String count = "SELECT COUNT(*) FROM compiledStatements WHERE COL_STRING = ?";
+
+            /* Insert with the same compiled statement. */
+            SQLiteStatement statement = databaseManager.compileStatement(insert);
+            assertSame(statement, databaseManager.compileStatement(insert));
+            long[] ids = new long[3];
+            for (int i = 0; i < ids.length; i++) {
+                statement.bindString(1, i == 0 ? "a" : "b");
+                statement.bindLong(2, i);
+                ids[i] = databaseManager.put(statement, "COL_INTEGER", i);
+                assertTrue(ids[i] >= 0);
+            }
+            assertEquals(1, databaseManager.simpleQueryForLong(count, "a"));
+            assertEquals(2, databaseManager.simpleQueryForLong(count, "b"));
+
+            /* Read by column index. */
+            Cursor cursor = databaseManager.getCursor(null, new String[]{DatabaseManager.PRIMARY_KEY, "COL_STRING"}, null, DatabaseManager.PRIMARY_KEY);
+            try {
+                assertTrue(databaseManager.moveToNext(cursor));
+                assertEquals(ids[0], cursor.getLong(0));
+                assertEquals("a", cursor.getString(1));
+            } finally {
+                cursor.close();
+            }
+
+            /* Delete by identifier. */
+            databaseManager.delete(ids[1]);
+            assertEquals(1, databaseManager.simpleQueryForLong(count, "b"));
+            assertNull(get(databaseManager, ids[1]));
+
+            /* Statements are compiled again after reopening. */
+            databaseManager.close();
+            SQLiteStatement newStatement = databaseManager.compileStatement(insert);
+            assertFalse(statement == newStatement);
+            assertEquals(1, databaseManager.simpleQueryForLong(count, "a"));
+        } finally {
+
+            /* Close. */
+            databaseManager.close();
+        }
+    }
+
     @Test
     public void replace() {
 
@@ -11,6 +11,7 @@ import android.os.Bundle;
 import android.support.annotation.NonNull;
 
 import com.microsoft.appcenter.channel.Channel;
+import com.microsoft.appcenter.channel.NetworkPolicy;
 import com.microsoft.appcenter.ingestion.models.json.LogFactory;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.HandlerUtils;
@@ -192,6 +193,12 @@ public abstract class AbstractAppCenterService implements AppCenterService {
         if (groupName != null) {
             channel.removeGroup(groupName);
 
+            /* The channel keeps the policy when the group is removed and added again. */
+            NetworkPolicy networkPolicy = getNetworkPolicy();
+            if (networkPolicy != NetworkPolicy.ANY) {
+                channel.setNetworkPolicy(groupName, networkPolicy);
+            }
+
             /* Add a group to the channel if the service is enabled */
             if (enabled) {
                 channel.addGroup(groupName, getTriggerCount(), getTriggerInterval(), getTriggerMaxParallelRequests(), null, getChannelListener());
@@ -265,6 +272,15 @@ public abstract class AbstractAppCenterService implements AppCenterService {
         return DEFAULT_TRIGGER_MAX_PARALLEL_REQUESTS;
     }
 
+    /**
+     * Gets the networks the logs of the service are sent on.
+     *
+     * @return A network policy.
+     */
+    protected NetworkPolicy getNetworkPolicy() {
+        return NetworkPolicy.ANY;
+    }
+
     /**
      * Gets a listener which will be called when channel completes synchronization.
      *
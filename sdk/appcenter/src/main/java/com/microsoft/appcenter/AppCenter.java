@@ -20,6 +20,8 @@ import android.util.Log;
 import com.microsoft.appcenter.channel.Channel;
 import com.microsoft.appcenter.channel.DefaultChannel;
 import com.microsoft.appcenter.channel.OneCollectorChannelListener;
+import com.microsoft.appcenter.http.HttpUtils;
+import com.microsoft.appcenter.http.RetryPolicy;
 import com.microsoft.appcenter.ingestion.models.CustomPropertiesLog;
 import com.microsoft.appcenter.ingestion.models.StartServiceLog;
 import com.microsoft.appcenter.ingestion.models.WrapperSdk;
@@ -70,6 +72,12 @@ public class AppCenter {
     @VisibleForTesting
     static final long DEFAULT_MAX_STORAGE_SIZE_IN_BYTES = 10 * 1024 * 1024;
 
+    /**
+     * Default maximum total payload size of a batch.
+     */
+    @VisibleForTesting
+    static final long DEFAULT_MAX_BATCH_SIZE_IN_BYTES = 1024 * 1024;
+
     /**
      * Minimum size allowed for set maximum size (SQL limitation).
      */
@@ -210,6 +218,26 @@ public class AppCenter {
      */
     private DefaultAppCenterFuture<Boolean> mSetMaxStorageSizeFuture;
 
+    /**
+     * Whether logs are stored compressed.
+     */
+    private boolean mStorageCompressionEnabled;
+
+    /**
+     * Whether logs are stored in append-only segment files rather than in a database.
+     */
+    private boolean mStorageJournalEnabled;
+
+    /**
+     * Whether batch size and parallel batches adapt to the network and server conditions.
+     */
+    private boolean mAdaptiveBatchingEnabled;
+
+    /**
+     * Maximum total payload size of a batch.
+     */
+    private long mMaxBatchSizeInBytes = DEFAULT_MAX_BATCH_SIZE_IN_BYTES;
+
     /**
      * Redirect selected traffic to One Collector.
      */
@@ -447,6 +475,61 @@ public class AppCenter {
         return getInstance().setInstanceMaxStorageSizeAsync(storageSizeInBytes);
     }
 
+    /**
+     * Set whether logs are compressed before being stored, which lets more logs fit in the maximum
+     * storage size while offline at the cost of some CPU time. Disabled by default.
+     * Logs already stored are still read after changing this setting.
+     *
+     * @param enabled true to compress stored logs, false to store them as text.
+     */
+    public static void setStorageCompressionEnabled(boolean enabled) {
+        getInstance().setInstanceStorageCompressionEnabled(enabled);
+    }
+
+    /**
+     * Set whether logs are stored in append-only segment files rather than in a SQLite database.
+     * Can only be called before AppCenter.start(...), disabled by default.
+     * Logs stored by the other storage are not migrated and are left on disk.
+     *
+     * @param enabled true to store logs in segment files, false to use the database.
+     */
+    public static void setStorageJournalEnabled(boolean enabled) {
+        getInstance().setInstanceStorageJournalEnabled(enabled);
+    }
+
+    /**
+     * Set whether the number of logs per batch and of batches sent in parallel adapt to the latency,
+     * timeouts and throttling observed on each endpoint. Disabled by default.
+     * When enabled, the values configured by each service are used as maximums.
+     *
+     * @param enabled true to adapt batching, false to always use the values of the services.
+     */
+    public static void setAdaptiveBatchingEnabled(boolean enabled) {
+        getInstance().setInstanceAdaptiveBatchingEnabled(enabled);
+    }
+
+    /**
+     * Set the maximum total payload size of a batch of logs, 1 MB by default.
+     * Batches are limited by both this size and the number of logs configured by each service,
+     * a log larger than this size is sent alone.
+     *
+     * @param maxBatchSizeInBytes maximum batch size in bytes, 0 to only limit the number of logs.
+     */
+    public static void setMaxBatchSize(long maxBatchSizeInBytes) {
+        getInstance().setInstanceMaxBatchSize(maxBatchSizeInBytes);
+    }
+
+    /**
+     * Set the policy deciding when calls to App Center services are retried after a network or server error.
+     * Can only be called before AppCenter.start(...), by default there are up to 3 retries within about 25 minutes.
+     * A delay requested by the server still takes precedence over the delay of the policy.
+     *
+     * @param retryPolicy retry policy such as {@link com.microsoft.appcenter.http.ExponentialBackoffRetryPolicy}, null for the default one.
+     */
+    public static void setRetryPolicy(RetryPolicy retryPolicy) {
+        getInstance().setInstanceRetryPolicy(retryPolicy);
+    }
+
     /**
      * {@link #setUserId(String)} implementation at instance level.
      */
@@ -543,6 +626,88 @@ public class AppCenter {
         }
     }
 
+    /**
+     * {@link #setStorageCompressionEnabled(boolean)} implementation at instance level.
+     */
+    private synchronized void setInstanceStorageCompressionEnabled(final boolean enabled) {
+        mStorageCompressionEnabled = enabled;
+
+        /* If SDK already configured, apply now. */
+        if (mHandler != null) {
+
+            /* Every channel operation must be in background since it uses locks and accesses disks. */
+            mHandler.post(new Runnable() {
+
+                @Override
+                public void run() {
+                    mChannel.setStorageCompressionEnabled(enabled);
+                }
+            });
+        }
+    }
+
+    /**
+     * {@link #setAdaptiveBatchingEnabled(boolean)} implementation at instance level.
+     */
+    private synchronized void setInstanceAdaptiveBatchingEnabled(final boolean enabled) {
+        mAdaptiveBatchingEnabled = enabled;
+
+        /* If SDK already configured, apply now. */
+        if (mHandler != null) {
+            mHandler.post(new Runnable() {
+
+                @Override
+                public void run() {
+                    mChannel.setAdaptiveBatchingEnabled(enabled);
+                }
+            });
+        }
+    }
+
+    /**
+     * {@link #setMaxBatchSize(long)} implementation at instance level.
+     */
+    private synchronized void setInstanceMaxBatchSize(final long maxBatchSizeInBytes) {
+        if (maxBatchSizeInBytes < 0) {
+            AppCenterLog.error(LOG_TAG, "Maximum batch size may not be negative.");
+            return;
+        }
+        mMaxBatchSizeInBytes = maxBatchSizeInBytes;
+
+        /* If SDK already configured, apply now. */
+        if (mHandler != null) {
+            mHandler.post(new Runnable() {
+
+                @Override
+                public void run() {
+                    mChannel.setMaxBatchSize(maxBatchSizeInBytes);
+                }
+            });
+        }
+    }
+
+    /**
+     * {@link #setStorageJournalEnabled(boolean)} implementation at instance level.
+     */
+    private synchronized void setInstanceStorageJournalEnabled(boolean enabled) {
+        if (isInstanceConfigured()) {
+            AppCenterLog.error(LOG_TAG, "setStorageJournalEnabled may not be called after App Center has been configured.");
+            return;
+        }
+        mStorageJournalEnabled = enabled;
+    }
+
+    /**
+     * {@link #setRetryPolicy(RetryPolicy)} implementation at instance level.
+     */
+    private synchronized void setInstanceRetryPolicy(RetryPolicy retryPolicy) {
+        if (isInstanceConfigured()) {
+            AppCenterLog.error(LOG_TAG, "setRetryPolicy may not be called after App Center has been configured.");
+            return;
+        }
+        HttpUtils.setRetryPolicy(retryPolicy);
+    }
+
     /**
      * {@link #setCustomProperties(CustomProperties)} implementation at instance level.
      *
@@ -788,7 +953,7 @@ public class AppCenter {
         mLogSerializer = new DefaultLogSerializer();
         mLogSerializer.addLogFactory(StartServiceLog.TYPE, new StartServiceLogFactory());
         mLogSerializer.addLogFactory(CustomPropertiesLog.TYPE, new CustomPropertiesLogFactory());
-        mChannel = new DefaultChannel(mApplication, mAppSecret, mLogSerializer, mHandler);
+        mChannel = new DefaultChannel(mApplication, mAppSecret, mLogSerializer, mHandler, mStorageJournalEnabled);
 
         /* Complete set maximum storage size future if starting from app. */
         if (configureFromApp) {
@@ -798,6 +963,9 @@ public class AppCenter {
             /* If from library, we apply storage size only later, we have to try using the default value in the mean time. */
             mChannel.setMaxStorageSize(DEFAULT_MAX_STORAGE_SIZE_IN_BYTES);
         }
+        mChannel.setStorageCompressionEnabled(mStorageCompressionEnabled);
+        mChannel.setAdaptiveBatchingEnabled(mAdaptiveBatchingEnabled);
+        mChannel.setMaxBatchSize(mMaxBatchSizeInBytes);
         mChannel.setEnabled(enabled);
         mChannel.addGroup(CORE_GROUP, DEFAULT_TRIGGER_COUNT, DEFAULT_TRIGGER_INTERVAL, DEFAULT_TRIGGER_MAX_PARALLEL_REQUESTS, null, null);
         mOneCollectorChannelListener = new OneCollectorChannelListener(mApplication, mChannel, mLogSerializer, IdHelper.getInstallId());
@@ -35,6 +35,39 @@ public interface Channel {
      */
     boolean setMaxStorageSize(long maxStorageSizeInBytes);
 
+    /**
+     * Set whether new logs are stored compressed.
+     *
+     * @param enabled true to compress new logs, false to store them as text.
+     */
+    void setStorageCompressionEnabled(boolean enabled);
+
+    /**
+     * Set whether batch size and parallel batches adapt to the latency, timeouts and throttling observed
+     * on each endpoint. The values passed to {@link #addGroup} are then used as ceilings.
+     *
+     * @param enabled true to adapt batching, false to always use the group values.
+     */
+    void setAdaptiveBatchingEnabled(boolean enabled);
+
+    /**
+     * Set the maximum total payload size of a batch, in addition to the number of logs of each group.
+     * A log larger than this is sent alone.
+     *
+     * @param maxBatchSizeInBytes maximum batch size in bytes, 0 or less to only limit the number of logs.
+     */
+    void setMaxBatchSize(long maxBatchSizeInBytes);
+
+    /**
+     * Set the storage quota of a group, or of a transmission target of a group,
+     * so that its logs are evicted first once over the quota instead of evicting logs of other groups.
+     *
+     * @param groupName             the name of a group.
+     * @param targetToken           the target token, or null for the quota of the whole group.
+     * @param maxStorageSizeInBytes maximum size of stored logs in bytes, 0 or less to remove the quota.
+     */
+    void setStorageQuota(@NonNull String groupName, String targetToken, long maxStorageSizeInBytes);
+
     /**
      * Add a group for logs to be persisted and sent.
      *
@@ -54,6 +87,15 @@ public interface Channel {
      */
     void removeGroup(String groupName);
 
+    /**
+     * Set the networks a group sends its logs on, {@link NetworkPolicy#ANY} by default.
+     * Can be called before adding the group, the policy is kept when the group is removed and added again.
+     *
+     * @param groupName     the name of a group.
+     * @param networkPolicy the network policy.
+     */
+    void setNetworkPolicy(@NonNull String groupName, @NonNull NetworkPolicy networkPolicy);
+
     /**
      * Pauses the given group.
      *
@@ -241,4 +283,19 @@ public interface Channel {
          */
         void onFailure(Log log, Exception e);
     }
+
+    /**
+     * Group listener that is only called back for some log types.
+     * Stored logs of the other types are sent without rebuilding their models.
+     */
+    interface FilteredGroupListener extends GroupListener {
+
+        /**
+         * Check whether callbacks are needed for logs of a type.
+         *
+         * @param type The log type.
+         * @return true to be called back for logs of this type, false otherwise.
+         */
+        boolean needsLog(@NonNull String type);
+    }
 }
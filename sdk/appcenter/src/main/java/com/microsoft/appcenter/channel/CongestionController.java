@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+
+/**
+ * Adaptive batch size and number of parallel batches by endpoint, using additive increase and
+ * multiplicative decrease: every batch that the link carries fast enough grows the limits a little,
+ * a slow batch halves both, a timeout halves the batch size and sends one batch at a time,
+ * and a throttling response halves the number of parallel batches.
+ * After a throttling response, the number of parallel batches only probes slowly above the one that was throttled.
+ * The values configured for a group are ceilings, the limits are never above them.
+ */
+class CongestionController {
+
+    /**
+     * Batch size limit before any feedback from an endpoint.
+     */
+    @VisibleForTesting
+    static final int INITIAL_BATCH_SIZE = 10;
+
+    /**
+     * Batch size limit increase after a fast batch.
+     */
+    @VisibleForTesting
+    static final int BATCH_SIZE_INCREASE = 5;
+
+    /**
+     * Increase of the parallel batches the server accepts after each fast batch, once a throttling response happened.
+     */
+    @VisibleForTesting
+    static final double PARALLEL_PROBE_INCREASE = 0.02;
+
+    /**
+     * Factor applied to a limit after a congestion signal.
+     */
+    @VisibleForTesting
+    static final double DECREASE_FACTOR = 0.5;
+
+    /**
+     * Latency of a batch that is considered fast regardless of its size, in ms.
+     */
+    @VisibleForTesting
+    static final long BASE_LATENCY = 2000;
+
+    /**
+     * Slowest throughput considered fast, in bytes per second.
+     */
+    @VisibleForTesting
+    static final long MIN_THROUGHPUT = 16 * 1024;
+
+    /**
+     * Limits by endpoint.
+     */
+    private final Map<String, Limits> mLimits = new HashMap<>();
+
+    /**
+     * Get the maximum number of logs of the next batch sent to an endpoint.
+     *
+     * @param endpoint endpoint URL.
+     * @param ceiling  value configured for the group.
+     * @return batch size limit, between 1 and ceiling.
+     */
+    synchronized int getBatchSize(@NonNull String endpoint, int ceiling) {
+        return clamp(getLimits(endpoint).mBatchSize, ceiling);
+    }
+
+    /**
+     * Get the maximum number of batches sent in parallel to an endpoint.
+     *
+     * @param endpoint endpoint URL.
+     * @param ceiling  value configured for the group.
+     * @return parallel batches limit, between 1 and ceiling.
+     */
+    synchronized int getParallelBatches(@NonNull String endpoint, int ceiling) {
+        return clamp(getLimits(endpoint).mParallelBatches, ceiling);
+    }
+
+    /**
+     * Record a batch accepted by an endpoint.
+     *
+     * @param endpoint               endpoint URL.
+     * @param latency                duration of the attempt that got the batch accepted, without waiting before retries, in ms.
+     * @param bytes                  payload size of the batch, 0 if unknown.
+     * @param batchSizeCeiling       batch size configured for the group.
+     * @param parallelBatchesCeiling parallel batches configured for the group.
+     */
+    synchronized void onSuccess(@NonNull String endpoint, long latency, long bytes, int batchSizeCeiling, int parallelBatchesCeiling) {
+        Limits limits = getLimits(endpoint);
+
+        /* A batch is slow when the link carries it below the minimum throughput. */
+        if (latency > BASE_LATENCY + bytes * 1000 / MIN_THROUGHPUT) {
+            limits.mBatchSize = Math.max(limits.mBatchSize * DECREASE_FACTOR, 1);
+            limits.mParallelBatches = Math.max(limits.mParallelBatches * DECREASE_FACTOR, 1);
+            AppCenterLog.debug(LOG_TAG, "Slow batch to " + endpoint + " (" + bytes + " bytes in " + latency + " ms), batch size limit is now " + (int) limits.mBatchSize);
+        } else {
+
+            /*
+             * Grow one parallel batch per round of fast batches. A group only grows the limits up to its own ceilings,
+             * so that a group with small batches does not shrink the limits used by the other groups.
+             */
+            if (limits.mBatchSize < batchSizeCeiling) {
+                limits.mBatchSize = Math.min(limits.mBatchSize + BATCH_SIZE_INCREASE, batchSizeCeiling);
+            }
+            limits.mAcceptedParallelBatches += PARALLEL_PROBE_INCREASE;
+            double parallelBatchesLimit = Math.min(parallelBatchesCeiling, limits.mAcceptedParallelBatches);
+            if (limits.mParallelBatches < parallelBatchesLimit) {
+                limits.mParallelBatches = Math.min(limits.mParallelBatches + 1 / limits.mParallelBatches, parallelBatchesLimit);
+            }
+        }
+    }
+
+    /**
+     * Record an attempt to send a batch that timed out, even if the batch is retried.
+     *
+     * @param endpoint endpoint URL.
+     */
+    synchronized void onTimeout(@NonNull String endpoint) {
+        Limits limits = getLimits(endpoint);
+        limits.mBatchSize = Math.max(limits.mBatchSize * DECREASE_FACTOR, 1);
+        limits.mParallelBatches = 1;
+        AppCenterLog.debug(LOG_TAG, "Batch to " + endpoint + " timed out, batch size limit is now " + (int) limits.mBatchSize);
+    }
+
+    /**
+     * Record a throttling response.
+     *
+     * @param endpoint endpoint URL.
+     */
+    synchronized void onThrottled(@NonNull String endpoint) {
+        Limits limits = getLimits(endpoint);
+        limits.mAcceptedParallelBatches = Math.max(Math.floor(limits.mParallelBatches) - 1, 1);
+        limits.mParallelBatches = Math.max(limits.mParallelBatches * DECREASE_FACTOR, 1);
+    }
+
+    /**
+     * Get the current batch size limit of each endpoint, before applying group ceilings.
+     *
+     * @return batch size limit by endpoint URL.
+     */
+    @NonNull
+    synchronized Map<String, Integer> getBatchSizes() {
+        Map<String, Integer> batchSizes = new HashMap<>();
+        for (Map.Entry<String, Limits> entry : mLimits.entrySet()) {
+            batchSizes.put(entry.getKey(), (int) entry.getValue().mBatchSize);
+        }
+        return batchSizes;
+    }
+
+    /**
+     * Get the current parallel batches limit of each endpoint, before applying group ceilings.
+     *
+     * @return parallel batches limit by endpoint URL.
+     */
+    @NonNull
+    synchronized Map<String, Integer> getParallelBatches() {
+        Map<String, Integer> parallelBatches = new HashMap<>();
+        for (Map.Entry<String, Limits> entry : mLimits.entrySet()) {
+            parallelBatches.put(entry.getKey(), (int) entry.getValue().mParallelBatches);
+        }
+        return parallelBatches;
+    }
+
+    private Limits getLimits(String endpoint) {
+        Limits limits = mLimits.get(endpoint);
+        if (limits == null) {
+            limits = new Limits();
+            mLimits.put(endpoint, limits);
+        }
+        return limits;
+    }
+
+    private static int clamp(double limit, int ceiling) {
+        return Math.max(Math.min((int) limit, ceiling), 1);
+    }
+
+    /**
+     * Limits of an endpoint, fractional so that additive increase can be slower than one per batch.
+     */
+    private static class Limits {
+
+        /**
+         * Batch size limit.
+         */
+        double mBatchSize = INITIAL_BATCH_SIZE;
+
+        /**
+         * Parallel batches limit.
+         */
+        double mParallelBatches = 1;
+
+        /**
+         * Parallel batches the server is believed to accept without throttling.
+         */
+        double mAcceptedParallelBatches = Double.MAX_VALUE;
+    }
+}
@@ -7,32 +7,38 @@ package com.microsoft.appcenter.channel;
 
 import android.content.Context;
 import android.os.Handler;
-import android.support.annotation.MainThread;
 import android.support.annotation.NonNull;
 import android.support.annotation.VisibleForTesting;
 import android.support.annotation.WorkerThread;
 
 import com.microsoft.appcenter.CancellationException;
+import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.http.AttemptServiceCallback;
+import com.microsoft.appcenter.http.HttpException;
 import com.microsoft.appcenter.http.HttpUtils;
-import com.microsoft.appcenter.http.ServiceCallback;
 import com.microsoft.appcenter.ingestion.AppCenterIngestion;
 import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.SerializedLog;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.ingestion.models.one.PartAUtils;
 import com.microsoft.appcenter.persistence.DatabasePersistence;
+import com.microsoft.appcenter.persistence.JournalPersistence;
 import com.microsoft.appcenter.persistence.Persistence;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
-import com.microsoft.appcenter.utils.HandlerUtils;
 import com.microsoft.appcenter.utils.IdHelper;
+import com.microsoft.appcenter.utils.NetworkStateHelper;
+import com.microsoft.appcenter.utils.StringUtils;
 import com.microsoft.appcenter.utils.context.AbstractTokenContextListener;
 import com.microsoft.appcenter.utils.context.AuthTokenContext;
 import com.microsoft.appcenter.utils.context.AuthTokenInfo;
 import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
+import org.json.JSONException;
+
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -47,9 +53,22 @@ import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
 
 import static com.microsoft.appcenter.AppCenter.LOG_TAG;
 
+/**
+ * Default channel implementation.
+ * <p>
+ * Locking: the channel monitor only guards global state (enabled flag, state counter, ingestion set,
+ * group registration). Each {@link GroupState} is its own monitor and guards its counters, timer and batches,
+ * so that reading, sending and handling results of a group does not wait for the other groups.
+ * The intake queue has its own monitor that is never held while acquiring another lock, writing the queue to persistence
+ * is serialized by a separate flush lock so that enqueuing does not wait for the disk.
+ * Locks are always acquired in this order: channel, then flush lock, then group state.
+ */
 public class DefaultChannel implements Channel {
 
     /**
@@ -64,11 +83,23 @@ public class DefaultChannel implements Channel {
     @VisibleForTesting
     static final String START_TIMER_PREFIX = "startTimerPrefix.";
 
+    /**
+     * Maximum number of enqueued logs written to persistence in a single transaction.
+     */
+    @VisibleForTesting
+    static final int INTAKE_MAX_LOGS = 100;
+
     /**
      * Transmission interval minimum value, in ms.
      */
     private static final long MINIMUM_TRANSMISSION_INTERVAL = 3000;
 
+    /**
+     * Interval to check again for logs old enough to be sent on a metered network, in ms.
+     */
+    @VisibleForTesting
+    static final long NETWORK_POLICY_CHECK_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
     /**
      * Application context.
      */
@@ -77,7 +108,7 @@ public class DefaultChannel implements Channel {
     /**
      * The application secret for the ingestion service.
      */
-    private String mAppSecret;
+    private volatile String mAppSecret;
 
     /**
      * The installId that's required for forwarding to ingestion.
@@ -117,27 +148,112 @@ public class DefaultChannel implements Channel {
     /**
      * Is channel enabled?
      */
-    private boolean mEnabled;
+    private volatile boolean mEnabled;
 
     /**
      * Is channel disabled due to connectivity issues or was the problem fatal?
      * In that case we stop accepting new logs in database.
      */
-    private boolean mDiscardLogs;
+    private volatile boolean mDiscardLogs;
 
     /**
      * Device properties.
      */
-    private Device mDevice;
+    private volatile Device mDevice;
 
     /**
      * State checker. If this counter changes during an async call, we have to ignore the result in the callback.
      * Cancelling a database call would be unreliable, and if it's too fast you could still have the callback being called.
      */
-    private int mCurrentState;
+    private volatile int mCurrentState;
 
     /**
-     * Creates and initializes a new instance.
+     * Logs enqueued but not yet written to persistence, in enqueue order.
+     */
+    private final List<IntakeLog> mIntakeLogs = new ArrayList<>();
+
+    /**
+     * Is writing intake logs scheduled. Guarded by {@link #mIntakeLogs}.
+     */
+    private boolean mIntakeScheduled;
+
+    /**
+     * Lock held while writing intake logs to persistence, so that batches are written in enqueue order
+     * and that a flush returns only once the logs accepted before it are on disk.
+     */
+    private final Object mIntakeFlushLock = new Object();
+
+    /**
+     * Backpressure state of the endpoints, shared by all the groups sending to the same endpoint.
+     */
+    private final EndpointThrottle mEndpointThrottle = new EndpointThrottle();
+
+    /**
+     * Adaptive batching limits of the endpoints.
+     */
+    private final CongestionController mCongestionController = new CongestionController();
+
+    /**
+     * Whether batching limits adapt to the endpoint conditions.
+     */
+    private volatile boolean mAdaptiveBatchingEnabled;
+
+    /**
+     * Maximum total payload size of a batch in bytes, 0 when batches are only limited by number of logs.
+     */
+    private volatile long mMaxBatchSizeInBytes;
+
+    /**
+     * Network policies by group name, kept when a group is removed.
+     */
+    private final Map<String, NetworkPolicy> mNetworkPolicies = new ConcurrentHashMap<>();
+
+    /**
+     * Network state helper, only used once a group waits for unmetered networks.
+     */
+    private volatile NetworkStateHelper mNetworkStateHelper;
+
+    /**
+     * Resumes the groups waiting for an unmetered network.
+     */
+    private final NetworkStateHelper.NetworkTypeListener mNetworkTypeListener = new NetworkStateHelper.NetworkTypeListener() {
+
+        @Override
+        public void onNetworkTypeUpdated(boolean unmetered) {
+            if (unmetered) {
+                mAppCenterHandler.post(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        for (GroupState groupState : mGroupStates.values()) {
+                            if (groupState.mNetworkPolicy != NetworkPolicy.ANY) {
+                                stopWaitingForNetwork(groupState);
+                                checkPendingLogs(groupState);
+                            }
+                        }
+                    }
+                });
+            }
+        }
+    };
+
+    /**
+     * Runnable that writes intake logs to persistence, posted after logs already queued on
+     * the App Center handler so that a burst of logs is written in a single transaction.
+     */
+    private final Runnable mIntakeRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            synchronized (mIntakeLogs) {
+                mIntakeScheduled = false;
+            }
+            flushIntakeLogs();
+        }
+    };
+
+    /**
+     * Creates and initializes a new instance storing logs in a database.
      *
      * @param context          The context.
      * @param appSecret        The application secret.
@@ -145,7 +261,20 @@ public class DefaultChannel implements Channel {
      * @param appCenterHandler App Center looper thread handler.
      */
     public DefaultChannel(@NonNull Context context, String appSecret, @NonNull LogSerializer logSerializer, @NonNull Handler appCenterHandler) {
-        this(context, appSecret, buildDefaultPersistence(context, logSerializer), new AppCenterIngestion(context, logSerializer), appCenterHandler);
+        this(context, appSecret, logSerializer, appCenterHandler, false);
+    }
+
+    /**
+     * Creates and initializes a new instance.
+     *
+     * @param context          The context.
+     * @param appSecret        The application secret.
+     * @param logSerializer    The log serializer.
+     * @param appCenterHandler App Center looper thread handler.
+     * @param journalEnabled   true to store logs in append-only segment files rather than in a database.
+     */
+    public DefaultChannel(@NonNull Context context, String appSecret, @NonNull LogSerializer logSerializer, @NonNull Handler appCenterHandler, boolean journalEnabled) {
+        this(context, appSecret, buildDefaultPersistence(context, logSerializer, journalEnabled), new AppCenterIngestion(context, logSerializer), appCenterHandler);
     }
 
     /**
@@ -162,8 +291,8 @@ public class DefaultChannel implements Channel {
         mContext = context;
         mAppSecret = appSecret;
         mInstallId = IdHelper.getInstallId();
-        mGroupStates = new HashMap<>();
-        mListeners = new LinkedHashSet<>();
+        mGroupStates = new ConcurrentHashMap<>();
+        mListeners = new CopyOnWriteArraySet<>();
         mPersistence = persistence;
         mIngestion = ingestion;
         mIngestions = new HashSet<>();
@@ -175,8 +304,8 @@ public class DefaultChannel implements Channel {
     /**
      * Init Persistence for default constructor.
      */
-    private static Persistence buildDefaultPersistence(@NonNull Context context, @NonNull LogSerializer logSerializer) {
-        Persistence persistence = new DatabasePersistence(context);
+    private static Persistence buildDefaultPersistence(@NonNull Context context, @NonNull LogSerializer logSerializer, boolean journalEnabled) {
+        Persistence persistence = journalEnabled ? new JournalPersistence(context) : new DatabasePersistence(context);
         persistence.setLogSerializer(logSerializer);
         return persistence;
     }
@@ -186,6 +315,33 @@ public class DefaultChannel implements Channel {
         return mPersistence.setMaxStorageSize(maxStorageSizeInBytes);
     }
 
+    @Override
+    public void setStorageCompressionEnabled(boolean enabled) {
+        if (!mPersistence.setCompressionEnabled(enabled)) {
+            AppCenterLog.warn(LOG_TAG, "Storage compression is not supported by the persistence.");
+        }
+    }
+
+    @Override
+    public void setAdaptiveBatchingEnabled(boolean enabled) {
+        mAdaptiveBatchingEnabled = enabled;
+    }
+
+    @Override
+    public void setMaxBatchSize(long maxBatchSizeInBytes) {
+        mMaxBatchSizeInBytes = Math.max(maxBatchSizeInBytes, 0);
+    }
+
+    @Override
+    public void setStorageQuota(@NonNull String groupName, String targetToken, long maxStorageSizeInBytes) {
+        String targetKey = targetToken != null ? PartAUtils.getTargetKey(targetToken) : null;
+        if (mPersistence.setStorageQuota(groupName, targetKey, maxStorageSizeInBytes)) {
+            AppCenterLog.debug(LOG_TAG, "setStorageQuota(" + groupName + (targetKey != null ? ", " + targetKey : "") + ", " + maxStorageSizeInBytes + ")");
+        } else {
+            AppCenterLog.warn(LOG_TAG, "Storage quotas are not supported by the persistence.");
+        }
+    }
+
     /**
      * Call this after every async (such as database/ingestion) callback and stop processing if it returns false.
      * That means either the groupState was removed (or removed/added again),
@@ -196,7 +352,7 @@ public class DefaultChannel implements Channel {
      * @param stateSnapshot state as before the async call.
      * @return true if state did not change and code should proceed, false if state changed.
      */
-    private synchronized boolean checkStateDidNotChange(GroupState groupState, int stateSnapshot) {
+    private boolean checkStateDidNotChange(GroupState groupState, int stateSnapshot) {
         return stateSnapshot == mCurrentState && groupState == mGroupStates.get(groupState.mName);
     }
 
@@ -224,10 +380,14 @@ public class DefaultChannel implements Channel {
         ingestion = ingestion == null ? mIngestion : ingestion;
         mIngestions.add(ingestion);
         final GroupState groupState = new GroupState(groupName, maxLogsPerBatch, batchTimeInterval, maxParallelBatches, ingestion, groupListener);
-        mGroupStates.put(groupName, groupState);
+        NetworkPolicy networkPolicy = mNetworkPolicies.get(groupName);
+        if (networkPolicy != null) {
+            groupState.mNetworkPolicy = networkPolicy;
+        }
 
         /* Count pending logs. */
         groupState.mPendingLogCount = mPersistence.countLogs(groupName);
+        mGroupStates.put(groupName, groupState);
 
         /* Listen for token refreshed to unblock sending logs after waiting for the token update. */
         AuthTokenContext.getInstance().addListener(groupState);
@@ -249,9 +409,70 @@ public class DefaultChannel implements Channel {
         }
     }
 
+    @Override
+    public synchronized void setNetworkPolicy(@NonNull String groupName, @NonNull NetworkPolicy networkPolicy) {
+        AppCenterLog.debug(LOG_TAG, "setNetworkPolicy(" + groupName + ", maxAge=" + networkPolicy.getMaxAge() + ")");
+        mNetworkPolicies.put(groupName, networkPolicy);
+
+        /* Listen for unmetered networks to resume the groups waiting for one, as long as a group has such a policy. */
+        if (networkPolicy != NetworkPolicy.ANY && mNetworkStateHelper == null) {
+            mNetworkStateHelper = NetworkStateHelper.getSharedInstance(mContext);
+            mNetworkStateHelper.addNetworkTypeListener(mNetworkTypeListener);
+        } else if (networkPolicy == NetworkPolicy.ANY && mNetworkStateHelper != null && !hasNetworkRestriction()) {
+            stopListeningToNetworkType();
+        }
+        GroupState groupState = mGroupStates.get(groupName);
+        if (groupState != null) {
+            synchronized (groupState) {
+                groupState.mNetworkPolicy = networkPolicy;
+                stopWaitingForNetwork(groupState);
+            }
+            checkPendingLogs(groupState);
+        }
+    }
+
+    /**
+     * Check if a group is restricted to some networks.
+     *
+     * @return true if a network policy other than {@link NetworkPolicy#ANY} is set.
+     */
+    private boolean hasNetworkRestriction() {
+        for (NetworkPolicy networkPolicy : mNetworkPolicies.values()) {
+            if (networkPolicy != NetworkPolicy.ANY) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stop listening for network type changes.
+     */
+    private void stopListeningToNetworkType() {
+        NetworkStateHelper networkStateHelper = mNetworkStateHelper;
+        if (networkStateHelper != null) {
+            networkStateHelper.removeNetworkTypeListener(mNetworkTypeListener);
+            mNetworkStateHelper = null;
+        }
+    }
+
+    /**
+     * Let a group waiting for a network be triggered again, cancelling its network policy check.
+     *
+     * @param groupState the group state.
+     */
+    private void stopWaitingForNetwork(@NonNull GroupState groupState) {
+        synchronized (groupState) {
+            if (groupState.mWaitingForNetwork) {
+                cancelTimer(groupState);
+            }
+        }
+    }
+
     @Override
     public synchronized void removeGroup(String groupName) {
         AppCenterLog.debug(LOG_TAG, "removeGroup(" + groupName + ")");
+        flushIntakeLogs();
         GroupState groupState = mGroupStates.remove(groupName);
         if (groupState != null) {
             cancelTimer(groupState);
@@ -265,18 +486,20 @@ public class DefaultChannel implements Channel {
     }
 
     @Override
-    public synchronized void pauseGroup(String groupName, String targetToken) {
+    public void pauseGroup(String groupName, String targetToken) {
         GroupState groupState = mGroupStates.get(groupName);
         if (groupState != null) {
-            if (targetToken != null) {
-                String targetKey = PartAUtils.getTargetKey(targetToken);
-                if (groupState.mPausedTargetKeys.add(targetKey)) {
-                    AppCenterLog.debug(LOG_TAG, "pauseGroup(" + groupName + ", " + targetKey + ")");
+            synchronized (groupState) {
+                if (targetToken != null) {
+                    String targetKey = PartAUtils.getTargetKey(targetToken);
+                    if (groupState.mPausedTargetKeys.add(targetKey)) {
+                        AppCenterLog.debug(LOG_TAG, "pauseGroup(" + groupName + ", " + targetKey + ")");
+                    }
+                } else if (!groupState.mPaused) {
+                    AppCenterLog.debug(LOG_TAG, "pauseGroup(" + groupName + ")");
+                    groupState.mPaused = true;
+                    cancelTimer(groupState);
                 }
-            } else if (!groupState.mPaused) {
-                AppCenterLog.debug(LOG_TAG, "pauseGroup(" + groupName + ")");
-                groupState.mPaused = true;
-                cancelTimer(groupState);
             }
 
             /* Call listeners so that they can react on group resuming. */
@@ -287,28 +510,30 @@ public class DefaultChannel implements Channel {
     }
 
     @Override
-    public synchronized void resumeGroup(String groupName, String targetToken) {
+    public void resumeGroup(String groupName, String targetToken) {
         GroupState groupState = mGroupStates.get(groupName);
         if (groupState != null) {
-            if (targetToken != null) {
-                String targetKey = PartAUtils.getTargetKey(targetToken);
-                if (groupState.mPausedTargetKeys.remove(targetKey)) {
-
-                    /*
-                     * Log count can be 0 in memory because of the partial pause, but we might have
-                     * logs in storage for this key, a simple fix is to reevaluate log count and check
-                     * for logs again. This might create a batch with fewer logs than expected as
-                     * the log count does not exclude logs with paused keys, this would be an optimization
-                     * that does not seem necessary for now.
-                     */
-                    AppCenterLog.debug(LOG_TAG, "resumeGroup(" + groupName + ", " + targetKey + ")");
-                    groupState.mPendingLogCount = mPersistence.countLogs(groupName);
+            synchronized (groupState) {
+                if (targetToken != null) {
+                    String targetKey = PartAUtils.getTargetKey(targetToken);
+                    if (groupState.mPausedTargetKeys.remove(targetKey)) {
+
+                        /*
+                         * Log count can be 0 in memory because of the partial pause, but we might have
+                         * logs in storage for this key, a simple fix is to reevaluate log count and check
+                         * for logs again. This might create a batch with fewer logs than expected as
+                         * the log count does not exclude logs with paused keys, this would be an optimization
+                         * that does not seem necessary for now.
+                         */
+                        AppCenterLog.debug(LOG_TAG, "resumeGroup(" + groupName + ", " + targetKey + ")");
+                        groupState.mPendingLogCount = mPersistence.countLogs(groupName);
+                        checkPendingLogs(groupState);
+                    }
+                } else if (groupState.mPaused) {
+                    AppCenterLog.debug(LOG_TAG, "resumeGroup(" + groupName + ")");
+                    groupState.mPaused = false;
                     checkPendingLogs(groupState);
                 }
-            } else if (groupState.mPaused) {
-                AppCenterLog.debug(LOG_TAG, "resumeGroup(" + groupName + ")");
-                groupState.mPaused = false;
-                checkPendingLogs(groupState);
             }
 
             /* Call listeners so that they can react on group resuming. */
@@ -319,7 +544,7 @@ public class DefaultChannel implements Channel {
     }
 
     @Override
-    public synchronized boolean isEnabled() {
+    public boolean isEnabled() {
         return mEnabled;
     }
 
@@ -367,11 +592,15 @@ public class DefaultChannel implements Channel {
      */
     @Override
     public synchronized void clear(String groupName) {
-        if (!mGroupStates.containsKey(groupName)) {
+        GroupState groupState = mGroupStates.get(groupName);
+        if (groupState == null) {
             return;
         }
         AppCenterLog.debug(LOG_TAG, "clear(" + groupName + ")");
-        mPersistence.deleteLogs(groupName);
+        flushIntakeLogs();
+        synchronized (groupState) {
+            mPersistence.deleteLogs(groupName);
+        }
 
         /* Call listeners so that they can react on group clearing. */
         for (Listener listener : mListeners) {
@@ -394,18 +623,26 @@ public class DefaultChannel implements Channel {
         mEnabled = false;
         mDiscardLogs = deleteLogs;
         mCurrentState++;
+
+        /* Write logs that were already accepted so that they are handled like other stored logs. */
+        flushIntakeLogs();
         for (GroupState groupState : mGroupStates.values()) {
-            cancelTimer(groupState);
+            synchronized (groupState) {
+                cancelTimer(groupState);
 
-            /* Delete all other batches and call callback method that are currently in progress. */
-            for (Iterator<Map.Entry<String, List<Log>>> iterator = groupState.mSendingBatches.entrySet().iterator(); iterator.hasNext(); ) {
-                Map.Entry<String, List<Log>> entry = iterator.next();
-                iterator.remove();
-                if (deleteLogs) {
-                    GroupListener groupListener = groupState.mListener;
-                    if (groupListener != null) {
-                        for (Log log : entry.getValue()) {
-                            groupListener.onFailure(log, exception);
+                /* Delete all other batches and call callback method that are currently in progress. */
+                for (Iterator<Map.Entry<String, List<SerializedLog>>> iterator = groupState.mSendingBatches.entrySet().iterator(); iterator.hasNext(); ) {
+                    Map.Entry<String, List<SerializedLog>> entry = iterator.next();
+                    iterator.remove();
+                    if (deleteLogs) {
+                        GroupListener groupListener = groupState.mListener;
+                        if (groupListener != null) {
+                            for (SerializedLog serializedLog : entry.getValue()) {
+                                Log log = getLog(groupListener, serializedLog);
+                                if (log != null) {
+                                    groupListener.onFailure(log, exception);
+                                }
+                            }
                         }
                     }
                 }
@@ -420,7 +657,9 @@ public class DefaultChannel implements Channel {
         }
         if (deleteLogs) {
             for (GroupState groupState : mGroupStates.values()) {
-                deleteLogsOnSuspended(groupState);
+                synchronized (groupState) {
+                    deleteLogsOnSuspended(groupState);
+                }
             }
         } else {
             mPersistence.clearPendingLogState();
@@ -443,12 +682,53 @@ public class DefaultChannel implements Channel {
         }
     }
 
+    /**
+     * Get a batch of logs from persistence, as stored when the persistence supports it.
+     * The batch is also limited by payload size when a maximum batch size is set.
+     *
+     * @param groupState The group state.
+     * @param limit      The max number of logs to be returned.
+     * @param outLogs    A list to receive the logs.
+     * @param from       A time to select only logs with time after specified.
+     * @param to         A time to select only logs with time before specified.
+     * @return The batch ID or null if no logs.
+     */
+    private String getBatch(@NonNull GroupState groupState, int limit, @NonNull List<SerializedLog> outLogs, Date from, Date to) {
+        long maxBytes = mMaxBatchSizeInBytes;
+        if (maxBytes > 0) {
+            return mPersistence.getSerializedLogs(groupState.mName, groupState.mPausedTargetKeys, limit, maxBytes, outLogs, from, to);
+        }
+        return mPersistence.getSerializedLogs(groupState.mName, groupState.mPausedTargetKeys, limit, outLogs, from, to);
+    }
+
+    /**
+     * Get the log model for group listener callbacks, rebuilding it from the stored payload if needed.
+     *
+     * @param groupListener The group listener.
+     * @param serializedLog The stored log.
+     * @return The log model or null if the listener does not need it or it cannot be rebuilt.
+     */
+    private static Log getLog(@NonNull GroupListener groupListener, @NonNull SerializedLog serializedLog) {
+        if (groupListener instanceof FilteredGroupListener && !((FilteredGroupListener) groupListener).needsLog(serializedLog.getType())) {
+            return null;
+        }
+        try {
+            return serializedLog.getLog();
+        } catch (JSONException e) {
+            AppCenterLog.error(LOG_TAG, "Cannot deserialize a log for listener callback", e);
+            return null;
+        }
+    }
+
     @VisibleForTesting
     void cancelTimer(GroupState groupState) {
-        if (groupState.mScheduled) {
-            groupState.mScheduled = false;
-            mAppCenterHandler.removeCallbacks(groupState.mRunnable);
-            SharedPreferencesManager.remove(START_TIMER_PREFIX + groupState.mName);
+        synchronized (groupState) {
+            groupState.mWaitingForNetwork = false;
+            if (groupState.mScheduled) {
+                groupState.mScheduled = false;
+                mAppCenterHandler.removeCallbacks(groupState.mRunnable);
+                SharedPreferencesManager.remove(START_TIMER_PREFIX + groupState.mName);
+            }
         }
     }
 
@@ -460,96 +740,177 @@ public class DefaultChannel implements Channel {
      *
      * @param groupState the group state.
      */
-    private synchronized void triggerIngestion(final @NonNull GroupState groupState) {
-        if (!mEnabled) {
-            return;
-        }
-        int pendingLogCount = groupState.mPendingLogCount;
-        int maxFetch = Math.min(pendingLogCount, groupState.mMaxLogsPerBatch);
-        AppCenterLog.debug(LOG_TAG, "triggerIngestion(" + groupState.mName + ") pendingLogCount=" + pendingLogCount);
-        cancelTimer(groupState);
+    private void triggerIngestion(final @NonNull GroupState groupState) {
+        synchronized (groupState) {
+            if (!mEnabled) {
+                return;
+            }
 
-        /* Check if we have reached the maximum number of pending batches, log to LogCat and don't trigger another sending. */
-        if (groupState.mSendingBatches.size() == groupState.mMaxParallelBatches) {
-            AppCenterLog.debug(LOG_TAG, "Already sending " + groupState.mMaxParallelBatches + " batches of analytics data to the server.");
-            return;
-        }
+            /* Wait until the endpoint accepts calls again, the resume triggers all its groups. */
+            String endpoint = groupState.mIngestion.getLogUrl();
+            if (endpoint != null) {
+                long remainingTime = mEndpointThrottle.getRemainingTime(endpoint, System.currentTimeMillis());
+                if (remainingTime > 0) {
+                    AppCenterLog.debug(LOG_TAG, "triggerIngestion(" + groupState.mName + ") endpoint throttled for " + remainingTime + " ms");
+                    cancelTimer(groupState);
+                    scheduleEndpointResume(endpoint, remainingTime);
+                    return;
+                }
+            }
+            int pendingLogCount = groupState.mPendingLogCount;
+            int maxFetch = Math.min(pendingLogCount, getMaxLogsPerBatch(groupState));
+            AppCenterLog.debug(LOG_TAG, "triggerIngestion(" + groupState.mName + ") pendingLogCount=" + pendingLogCount);
+            cancelTimer(groupState);
 
-        /* Get auth token. */
-        AuthTokenContext authTokenContext = AuthTokenContext.getInstance();
-        List<AuthTokenInfo> authTokenHistory = authTokenContext.getAuthTokenValidityList();
-        ListIterator<AuthTokenInfo> iterator = authTokenHistory.listIterator();
-        while (iterator.hasNext()) {
-            AuthTokenInfo authTokenInfo = iterator.next();
-            final String authToken;
-            Date startTime = null;
-            Date endTime = null;
-            if (authTokenInfo != null) {
-                authToken = authTokenInfo.getAuthToken();
-                startTime = authTokenInfo.getStartTime();
-                endTime = authTokenInfo.getEndTime();
-
-                /* Check if token is about to expired or about to expire, and refresh it if necessary. */
-                authTokenContext.checkIfTokenNeedsToBeRefreshed(authTokenInfo);
-            } else {
-                authToken = null;
+            /* Check if we have reached the maximum number of pending batches, log to LogCat and don't trigger another sending. */
+            int maxParallelBatches = getMaxParallelBatches(groupState);
+            if (groupState.mSendingBatches.size() >= maxParallelBatches) {
+                AppCenterLog.debug(LOG_TAG, "Already sending " + maxParallelBatches + " batches of analytics data to the server.");
+                return;
             }
 
-            /* Get a batch from Persistence. */
-            final List<Log> batch = new ArrayList<>(maxFetch);
-            final int stateSnapshot = mCurrentState;
-            final String batchId = mPersistence.getLogs(groupState.mName, groupState.mPausedTargetKeys, maxFetch, batch, startTime, endTime);
+            /*
+             * Wait for an unmetered network if the group prefers one, the network listener triggers the group again.
+             * Only logs older than the policy maximum age are sent on other networks.
+             */
+            Date meteredEndTime = null;
+            long maxAge = groupState.mNetworkPolicy.getMaxAge();
+            NetworkStateHelper networkStateHelper = mNetworkStateHelper;
+            if (maxAge > 0 && networkStateHelper != null && !networkStateHelper.isNetworkUnmetered()) {
+                if (maxAge == Long.MAX_VALUE) {
+                    AppCenterLog.debug(LOG_TAG, "triggerIngestion(" + groupState.mName + ") waiting for an unmetered network");
+                    groupState.mWaitingForNetwork = true;
+                    return;
+                }
+                meteredEndTime = new Date(System.currentTimeMillis() - maxAge);
+            }
 
-            /* Decrement counter. */
-            groupState.mPendingLogCount -= batch.size();
+            /* Get auth token. */
+            AuthTokenContext authTokenContext = AuthTokenContext.getInstance();
+            List<AuthTokenInfo> authTokenHistory = authTokenContext.getAuthTokenValidityList();
+            ListIterator<AuthTokenInfo> iterator = authTokenHistory.listIterator();
+            while (iterator.hasNext()) {
+                AuthTokenInfo authTokenInfo = iterator.next();
+                final String authToken;
+                Date startTime = null;
+                Date endTime = null;
+                if (authTokenInfo != null) {
+                    authToken = authTokenInfo.getAuthToken();
+                    startTime = authTokenInfo.getStartTime();
+                    endTime = authTokenInfo.getEndTime();
+
+                    /* Check if token is about to expired or about to expire, and refresh it if necessary. */
+                    authTokenContext.checkIfTokenNeedsToBeRefreshed(authTokenInfo);
+                } else {
+                    authToken = null;
+                }
 
-            /* If there are no logs to send. */
-            if (batchId == null) {
+                /* Get a batch from Persistence. */
+                final List<SerializedLog> batch = new ArrayList<>(maxFetch);
+                final int stateSnapshot = mCurrentState;
+                Date to = endTime;
+                if (meteredEndTime != null && (to == null || meteredEndTime.before(to))) {
+                    to = meteredEndTime;
+                }
+                final String batchId = getBatch(groupState, maxFetch, batch, startTime, to);
 
-                /* Remove oldest token if there are no more logs. */
-                if (iterator.previousIndex() == 0 && endTime != null &&
-                        mPersistence.countLogs(endTime) == 0) {
-                    authTokenContext.removeOldestTokenIfMatching(authToken);
+                /* Decrement counter. */
+                groupState.mPendingLogCount -= batch.size();
+
+                /* If there are no logs to send. */
+                if (batchId == null) {
+
+                    /* Remove oldest token if there are no more logs. */
+                    if (iterator.previousIndex() == 0 && endTime != null &&
+                            mPersistence.countLogs(endTime) == 0) {
+                        authTokenContext.removeOldestTokenIfMatching(authToken);
+                    }
+                    continue;
                 }
-                continue;
-            }
-            AppCenterLog.debug(LOG_TAG, "ingestLogs(" + groupState.mName + "," + batchId + ") pendingLogCount=" + groupState.mPendingLogCount);
+                AppCenterLog.debug(LOG_TAG, "ingestLogs(" + groupState.mName + "," + batchId + ") pendingLogCount=" + groupState.mPendingLogCount);
 
-            /* Call group listener before sending logs to ingestion service. */
-            if (groupState.mListener != null) {
-                for (Log log : batch) {
-                    groupState.mListener.onBeforeSending(log);
+                /* Call group listener before sending logs to ingestion service, this rebuilds log models the listener needs. */
+                if (groupState.mListener != null) {
+                    for (SerializedLog serializedLog : batch) {
+                        Log log = getLog(groupState.mListener, serializedLog);
+                        if (log != null) {
+                            groupState.mListener.onBeforeSending(log);
+                        }
+                    }
                 }
+
+                /* Remember this batch. */
+                groupState.mSendingBatches.put(batchId, batch);
+
+                /* Send logs from this thread, the ingestion calls back on a background thread. */
+                sendLogs(groupState, stateSnapshot, batch, batchId, authToken);
+                return;
             }
 
-            /* Remember this batch. */
-            groupState.mSendingBatches.put(batchId, batch);
+            /* Some corrupted entries may be deleted, reset the counter to actual amount of logs pending to be sent. */
+            groupState.mPendingLogCount = mPersistence.countLogs(groupState.mName);
 
             /*
-             * Due to bug on old Android versions (verified on 4.0.4),
-             * if we start an async task from here, i.e. the async handler thread,
-             * we end up with AsyncTask configured with the wrong Handler to use for onPostExecute
-             * instead of using main thread as advertised in Javadoc (and its a static field there).
-             *
-             * Our SDK guards against an application that would make a first async task in non UI
-             * thread before SDK is initialized, but we should also avoid corrupting AsyncTask
-             * with our wrong handler to avoid creating bugs in the application code since we are
-             * a library.
-             *
-             * So make sure we execute the async task from UI thread to avoid any issue.
+             * Logs waiting for an unmetered network become old enough to use this one over time.
+             * New logs don't trigger the group until then, they would not be old enough either.
              */
-            HandlerUtils.runOnUiThread(new Runnable() {
+            if (meteredEndTime != null && groupState.mPendingLogCount > 0 && !groupState.mScheduled) {
+                groupState.mScheduled = true;
+                groupState.mWaitingForNetwork = true;
+                mAppCenterHandler.postDelayed(groupState.mRunnable, Math.min(NETWORK_POLICY_CHECK_INTERVAL, maxAge));
+            }
+        }
+    }
+
+    /**
+     * Get the maximum number of logs of the next batch of a group.
+     *
+     * @param groupState the group state.
+     * @return the group value, or the adaptive limit of its endpoint if lower.
+     */
+    private int getMaxLogsPerBatch(@NonNull GroupState groupState) {
+        String endpoint = mAdaptiveBatchingEnabled ? groupState.mIngestion.getLogUrl() : null;
+        if (endpoint == null) {
+            return groupState.mMaxLogsPerBatch;
+        }
+        return mCongestionController.getBatchSize(endpoint, groupState.mMaxLogsPerBatch);
+    }
+
+    /**
+     * Get the maximum number of batches of a group sent in parallel.
+     *
+     * @param groupState the group state.
+     * @return the group value, or the adaptive limit of its endpoint if lower.
+     */
+    private int getMaxParallelBatches(@NonNull GroupState groupState) {
+        String endpoint = mAdaptiveBatchingEnabled ? groupState.mIngestion.getLogUrl() : null;
+        if (endpoint == null) {
+            return groupState.mMaxParallelBatches;
+        }
+        return mCongestionController.getParallelBatches(endpoint, groupState.mMaxParallelBatches);
+    }
+
+    /**
+     * Check pending logs of all the groups sending to an endpoint once its throttling pause is over.
+     *
+     * @param endpoint endpoint URL.
+     * @param delay    time to wait in ms.
+     */
+    private void scheduleEndpointResume(@NonNull final String endpoint, long delay) {
+        if (mEndpointThrottle.setResumeScheduled(endpoint)) {
+            mAppCenterHandler.postDelayed(new Runnable() {
 
                 @Override
                 public void run() {
-                    sendLogs(groupState, stateSnapshot, batch, batchId, authToken);
+                    mEndpointThrottle.clearResumeScheduled(endpoint);
+                    for (GroupState groupState : mGroupStates.values()) {
+                        if (endpoint.equals(groupState.mIngestion.getLogUrl())) {
+                            checkPendingLogs(groupState);
+                        }
+                    }
                 }
-            });
-            return;
+            }, delay);
         }
-
-        /* Some corrupted entries may be deleted, reset the counter to actual amount of logs pending to be sent. */
-        groupState.mPendingLogCount = mPersistence.countLogs(groupState.mName);
     }
 
     /**
@@ -560,47 +921,78 @@ public class DefaultChannel implements Channel {
      * @param batch        The log batch.
      * @param batchId      The batch ID.
      */
-    @MainThread
-    private synchronized void sendLogs(final GroupState groupState, final int currentState, List<Log> batch, final String batchId, String authToken) {
-        if (checkStateDidNotChange(groupState, currentState)) {
+    private void sendLogs(final GroupState groupState, final int currentState, List<SerializedLog> batch, final String batchId, String authToken) {
+        synchronized (groupState) {
+            if (checkStateDidNotChange(groupState, currentState)) {
+
+                /* Send logs, stored payloads are spliced into the request as is. */
+                LogContainer logContainer = new LogContainer();
+                logContainer.setSerializedLogs(batch);
+                final long payloadSize = getPayloadSize(batch);
+                groupState.mIngestion.sendAsync(authToken, mAppSecret, mInstallId, logContainer, new AttemptServiceCallback() {
+
+                    @Override
+                    public void onCallAttempted(final long latency, final Exception exception) {
+                        mAppCenterHandler.post(new Runnable() {
+
+                            @Override
+                            public void run() {
+                                handleSendingAttempt(groupState, latency, payloadSize, exception);
+                            }
+                        });
+                    }
 
-            /* Send logs. */
-            LogContainer logContainer = new LogContainer();
-            logContainer.setLogs(batch);
-            groupState.mIngestion.sendAsync(authToken, mAppSecret, mInstallId, logContainer, new ServiceCallback() {
+                    @Override
+                    public void onCallSucceeded(String payload, Map<String, String> headers) {
+                        mAppCenterHandler.post(new Runnable() {
 
-                @Override
-                public void onCallSucceeded(String payload, Map<String, String> headers) {
-                    mAppCenterHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                handleSendingSuccess(groupState, batchId);
+                            }
+                        });
+                    }
 
-                        @Override
-                        public void run() {
-                            handleSendingSuccess(groupState, batchId);
-                        }
-                    });
-                }
+                    @Override
+                    public void onCallFailed(final Exception e) {
+                        mAppCenterHandler.post(new Runnable() {
 
-                @Override
-                public void onCallFailed(final Exception e) {
-                    mAppCenterHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                handleSendingFailure(groupState, batchId, e);
+                            }
+                        });
+                    }
+                });
 
-                        @Override
-                        public void run() {
-                            handleSendingFailure(groupState, batchId, e);
-                        }
-                    });
-                }
-            });
+                /* Check for more pending logs. */
+                mAppCenterHandler.post(new Runnable() {
 
-            /* Check for more pending logs. */
-            mAppCenterHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        checkPendingLogsAfterPost(groupState, currentState);
+                    }
+                });
+            }
+        }
+    }
 
-                @Override
-                public void run() {
-                    checkPendingLogsAfterPost(groupState, currentState);
-                }
-            });
+    /**
+     * Get the size of the stored payloads of a batch, in the same unit as the batch size budget.
+     *
+     * @param batch the log batch.
+     * @return payload size in UTF-8 bytes, not counting logs without stored payload.
+     */
+    @VisibleForTesting
+    static long getPayloadSize(@NonNull List<SerializedLog> batch) {
+        long size = 0;
+        for (SerializedLog serializedLog : batch) {
+            String payload = serializedLog.getPayload();
+            if (payload != null) {
+                size += StringUtils.getUtf8Length(payload);
+            }
         }
+        return size;
     }
 
     private void checkPendingLogsAfterPost(@NonNull final GroupState groupState, int currentState) {
@@ -609,29 +1001,65 @@ public class DefaultChannel implements Channel {
         }
     }
 
+    /**
+     * Adapt the batching limits of the endpoint to each attempt to send a batch, retries included,
+     * so that waiting for the network or before a retry is not mistaken for a slow link.
+     *
+     * @param groupState  The group state.
+     * @param latency     The duration of the attempt, in ms.
+     * @param payloadSize The size of the batch payloads.
+     * @param exception   The failure of the attempt, null if it succeeded.
+     */
+    private void handleSendingAttempt(@NonNull GroupState groupState, long latency, long payloadSize, Exception exception) {
+        if (!mAdaptiveBatchingEnabled) {
+            return;
+        }
+        synchronized (groupState) {
+            String endpoint = groupState.mIngestion.getLogUrl();
+            if (endpoint == null) {
+                return;
+            }
+            if (exception == null) {
+                mCongestionController.onSuccess(endpoint, latency, payloadSize, groupState.mMaxLogsPerBatch, groupState.mMaxParallelBatches);
+            } else if (HttpUtils.isTimeoutError(exception)) {
+                mCongestionController.onTimeout(endpoint);
+            }
+        }
+    }
+
     /**
      * The actual implementation to react to sending a batch to the server successfully.
      *
      * @param groupState The group state.
      * @param batchId    The batch ID.
      */
-    private synchronized void handleSendingSuccess(@NonNull GroupState groupState, @NonNull String batchId) {
-        List<Log> removedLogsForBatchId = groupState.mSendingBatches.remove(batchId);
-        if (removedLogsForBatchId != null) {
-            mPersistence.deleteLogs(groupState.mName, batchId);
-            GroupListener groupListener = groupState.mListener;
-            if (groupListener != null) {
-                for (Log log : removedLogsForBatchId) {
-                    groupListener.onSuccess(log);
+    private void handleSendingSuccess(@NonNull GroupState groupState, @NonNull String batchId) {
+        synchronized (groupState) {
+            List<SerializedLog> removedLogsForBatchId = groupState.mSendingBatches.remove(batchId);
+            if (removedLogsForBatchId != null) {
+                mPersistence.deleteLogs(groupState.mName, batchId);
+                String endpoint = groupState.mIngestion.getLogUrl();
+                if (endpoint != null) {
+                    mEndpointThrottle.onSuccess(endpoint);
+                }
+                GroupListener groupListener = groupState.mListener;
+                if (groupListener != null) {
+                    for (SerializedLog serializedLog : removedLogsForBatchId) {
+                        Log log = getLog(groupListener, serializedLog);
+                        if (log != null) {
+                            groupListener.onSuccess(log);
+                        }
+                    }
                 }
+                checkPendingLogs(groupState);
             }
-            checkPendingLogs(groupState);
         }
     }
 
     /**
      * The actual implementation to react to not being able to send a batch to the server.
-     * Will disable the sender in case of a recoverable error.
+     * Will pause all the groups sending to the same endpoint in case of a throttling response.
+     * Will disable the sender in case of another recoverable error.
      * Will delete batch of data in case of a non-recoverable error.
      *
      * @param groupState the group state
@@ -640,26 +1068,63 @@ public class DefaultChannel implements Channel {
      */
     private synchronized void handleSendingFailure(@NonNull GroupState groupState, @NonNull String batchId, @NonNull Exception e) {
         String groupName = groupState.mName;
-        List<Log> removedLogsForBatchId = groupState.mSendingBatches.remove(batchId);
-        if (removedLogsForBatchId != null) {
+        String endpoint = groupState.mIngestion.getLogUrl();
+        if (endpoint != null && HttpUtils.isThrottlingError(e)) {
+            handleThrottling(groupState, batchId, endpoint, (HttpException) e);
+            return;
+        }
+        boolean recoverableError = HttpUtils.isRecoverableError(e);
+        synchronized (groupState) {
+            List<SerializedLog> removedLogsForBatchId = groupState.mSendingBatches.remove(batchId);
+            if (removedLogsForBatchId == null) {
+                return;
+            }
             AppCenterLog.error(LOG_TAG, "Sending logs groupName=" + groupName + " id=" + batchId + " failed", e);
-            boolean recoverableError = HttpUtils.isRecoverableError(e);
             if (recoverableError) {
                 groupState.mPendingLogCount += removedLogsForBatchId.size();
             } else {
                 GroupListener groupListener = groupState.mListener;
                 if (groupListener != null) {
-                    for (Log log : removedLogsForBatchId) {
-                        groupListener.onFailure(log, e);
+                    for (SerializedLog serializedLog : removedLogsForBatchId) {
+                        Log log = getLog(groupListener, serializedLog);
+                        if (log != null) {
+                            groupListener.onFailure(log, e);
+                        }
                     }
                 }
             }
-            suspend(!recoverableError, e);
         }
+        suspend(!recoverableError, e);
+    }
+
+    /**
+     * React to a throttling response: the batch goes back to the pending logs
+     * and all the groups sending to the endpoint wait for the server to accept calls again.
+     *
+     * @param groupState the group state.
+     * @param batchId    the batch ID.
+     * @param endpoint   the endpoint URL.
+     * @param e          the throttling response.
+     */
+    private void handleThrottling(@NonNull GroupState groupState, @NonNull String batchId, @NonNull String endpoint, @NonNull HttpException e) {
+        synchronized (groupState) {
+            List<SerializedLog> removedLogsForBatchId = groupState.mSendingBatches.remove(batchId);
+            if (removedLogsForBatchId == null) {
+                return;
+            }
+            mPersistence.clearPendingLogState(groupState.mName, batchId);
+            groupState.mPendingLogCount += removedLogsForBatchId.size();
+        }
+        if (mAdaptiveBatchingEnabled) {
+            mCongestionController.onThrottled(endpoint);
+        }
+        long delay = mEndpointThrottle.onThrottled(endpoint, e.getHeaders(), System.currentTimeMillis());
+        AppCenterLog.warn(LOG_TAG, "Sending logs groupName=" + groupState.mName + " id=" + batchId + " throttled, retrying in " + delay + " ms");
+        scheduleEndpointResume(endpoint, delay);
     }
 
     @Override
-    public synchronized void enqueue(@NonNull Log log, @NonNull final String groupName, int flags) {
+    public void enqueue(@NonNull Log log, @NonNull final String groupName, int flags) {
 
         /* Check group name is registered. */
         GroupState groupState = mGroupStates.get(groupName);
@@ -670,11 +1135,7 @@ public class DefaultChannel implements Channel {
 
         /* Check if disabled with discarding logs. */
         if (mDiscardLogs) {
-            AppCenterLog.warn(LOG_TAG, "Channel is disabled, the log is discarded.");
-            if (groupState.mListener != null) {
-                groupState.mListener.onBeforeSending(log);
-                groupState.mListener.onFailure(log, new CancellationException());
-            }
+            discardLog(groupState, log);
             return;
         }
 
@@ -687,17 +1148,23 @@ public class DefaultChannel implements Channel {
         if (log.getDevice() == null) {
 
             /* Generate device properties only once per process life time. */
-            if (mDevice == null) {
-                try {
-                    mDevice = DeviceInfoHelper.getDeviceInfo(mContext);
-                } catch (DeviceInfoHelper.DeviceInfoException e) {
-                    AppCenterLog.error(LOG_TAG, "Device log cannot be generated", e);
-                    return;
+            Device device = mDevice;
+            if (device == null) {
+                synchronized (this) {
+                    if (mDevice == null) {
+                        try {
+                            mDevice = DeviceInfoHelper.getDeviceInfo(mContext);
+                        } catch (DeviceInfoHelper.DeviceInfoException e) {
+                            AppCenterLog.error(LOG_TAG, "Device log cannot be generated", e);
+                            return;
+                        }
+                    }
+                    device = mDevice;
                 }
             }
 
             /* Attach device properties. */
-            log.setDevice(mDevice);
+            log.setDevice(device);
         }
 
         /* Set date to current if not explicitly set in the past by a module (such as a crash). */
@@ -726,34 +1193,129 @@ public class DefaultChannel implements Channel {
                 AppCenterLog.debug(LOG_TAG, "Log of type '" + log.getType() + "' was not filtered out by listener(s) but no app secret was provided. Not persisting/sending the log.");
                 return;
             }
-            try {
 
-                /* Persist log. */
-                mPersistence.putLog(log, groupName, flags);
-            } catch (Persistence.PersistenceException e) {
-                AppCenterLog.error(LOG_TAG, "Error persisting log", e);
+            /*
+             * Queue log to persist it with the other logs of the burst in a single transaction.
+             * Critical logs are written right away (with logs queued before them) so that they survive a crash.
+             * Discarding is checked again under the queue lock as suspending flushes the queue before deleting logs.
+             */
+            boolean discard = false;
+            boolean flush = false;
+            boolean schedule = false;
+            synchronized (mIntakeLogs) {
+                if (mDiscardLogs) {
+                    discard = true;
+                } else {
+                    mIntakeLogs.add(new IntakeLog(log, groupState, flags));
+                    if (Flags.getPersistenceFlag(flags, false) == Flags.CRITICAL || mIntakeLogs.size() >= INTAKE_MAX_LOGS) {
+                        flush = true;
+                    } else if (!mIntakeScheduled) {
+                        mIntakeScheduled = schedule = true;
+                    }
+                }
+            }
+            if (discard) {
+                discardLog(groupState, log);
+            } else if (flush) {
+                flushIntakeLogs();
+            } else if (schedule) {
+                mAppCenterHandler.post(mIntakeRunnable);
+            }
+        }
+    }
+
+    /**
+     * Call group listener callbacks for a log that is not accepted because channel is disabled with discarding logs.
+     *
+     * @param groupState The group state.
+     * @param log        The discarded log.
+     */
+    private void discardLog(@NonNull GroupState groupState, @NonNull Log log) {
+        AppCenterLog.warn(LOG_TAG, "Channel is disabled, the log is discarded.");
+        if (groupState.mListener != null) {
+            groupState.mListener.onBeforeSending(log);
+            groupState.mListener.onFailure(log, new CancellationException());
+        }
+    }
+
+    /**
+     * Write queued logs to persistence in a single transaction,
+     * then update counters and call listeners for each log in enqueue order.
+     * The intake queue is only locked to take the logs, group states are locked only after releasing the flush lock.
+     */
+    private void flushIntakeLogs() {
+        List<IntakeLog> intakeLogs;
+        synchronized (mIntakeFlushLock) {
+            synchronized (mIntakeLogs) {
+                if (mIntakeLogs.isEmpty()) {
+                    return;
+                }
+                intakeLogs = new ArrayList<>(mIntakeLogs);
+                mIntakeLogs.clear();
+            }
+
+            /* Persist logs. */
+            boolean transaction = intakeLogs.size() > 1;
+            if (transaction) {
+                mPersistence.beginTransaction();
+            }
+            for (IntakeLog intakeLog : intakeLogs) {
+                try {
+                    mPersistence.putLog(intakeLog.mLog, intakeLog.mGroupState.mName, intakeLog.mFlags);
+                } catch (Persistence.PersistenceException e) {
+                    intakeLog.mException = e;
+                }
+            }
+
+            /* Logs of a transaction that could not be committed are not stored. */
+            if (transaction && !mPersistence.endTransaction()) {
+                Persistence.PersistenceException exception = new Persistence.PersistenceException("Failed to commit logs");
+                for (IntakeLog intakeLog : intakeLogs) {
+                    if (intakeLog.mException == null) {
+                        intakeLog.mException = exception;
+                    }
+                }
+            }
+        }
+
+        /* Update counters in enqueue order. */
+        Set<GroupState> updatedGroupStates = new LinkedHashSet<>();
+        for (IntakeLog intakeLog : intakeLogs) {
+            Log log = intakeLog.mLog;
+            GroupState groupState = intakeLog.mGroupState;
+            if (intakeLog.mException != null) {
+                AppCenterLog.error(LOG_TAG, "Error persisting log", intakeLog.mException);
                 if (groupState.mListener != null) {
                     groupState.mListener.onBeforeSending(log);
-                    groupState.mListener.onFailure(log, e);
+                    groupState.mListener.onFailure(log, intakeLog.mException);
                 }
-                return;
+                continue;
             }
 
             /* Nothing more to do if the log is from a paused transmission target. */
             Iterator<String> targetKeys = log.getTransmissionTargetTokens().iterator();
             String targetKey = targetKeys.hasNext() ? PartAUtils.getTargetKey(targetKeys.next()) : null;
-            if (groupState.mPausedTargetKeys.contains(targetKey)) {
-                AppCenterLog.debug(LOG_TAG, "Transmission target ikey=" + targetKey + " is paused.");
-                return;
+            synchronized (groupState) {
+                if (groupState.mPausedTargetKeys.contains(targetKey)) {
+                    AppCenterLog.debug(LOG_TAG, "Transmission target ikey=" + targetKey + " is paused.");
+                    continue;
+                }
+
+                /* Increment counters. */
+                groupState.mPendingLogCount++;
+                AppCenterLog.debug(LOG_TAG, "enqueue(" + groupState.mName + ") pendingLogCount=" + groupState.mPendingLogCount);
             }
+            updatedGroupStates.add(groupState);
+        }
 
-            /* Increment counters and schedule ingestion if we are enabled. */
-            groupState.mPendingLogCount++;
-            AppCenterLog.debug(LOG_TAG, "enqueue(" + groupState.mName + ") pendingLogCount=" + groupState.mPendingLogCount);
-            if (mEnabled) {
-                checkPendingLogs(groupState);
-            } else {
-                AppCenterLog.debug(LOG_TAG, "Channel is temporarily disabled, log was saved to disk.");
+        /* Schedule ingestion if we are enabled. */
+        for (GroupState groupState : updatedGroupStates) {
+            synchronized (groupState) {
+                if (mEnabled) {
+                    checkPendingLogs(groupState);
+                } else {
+                    AppCenterLog.debug(LOG_TAG, "Channel is temporarily disabled, log was saved to disk.");
+                }
             }
         }
     }
@@ -764,25 +1326,27 @@ public class DefaultChannel implements Channel {
      * @param groupState the group state.
      */
     @VisibleForTesting
-    synchronized void checkPendingLogs(@NonNull GroupState groupState) {
-        AppCenterLog.debug(LOG_TAG, String.format("checkPendingLogs(%s) pendingLogCount=%s batchTimeInterval=%s",
-                groupState.mName, groupState.mPendingLogCount, groupState.mBatchTimeInterval));
-        Long batchTimeInterval = resolveTriggerInterval(groupState);
-
-        /* Check if there is no need to trigger ingestion. */
-        if (batchTimeInterval == null || groupState.mPaused) {
-            return;
-        }
+    void checkPendingLogs(@NonNull GroupState groupState) {
+        synchronized (groupState) {
+            AppCenterLog.debug(LOG_TAG, String.format("checkPendingLogs(%s) pendingLogCount=%s batchTimeInterval=%s",
+                    groupState.mName, groupState.mPendingLogCount, groupState.mBatchTimeInterval));
+            Long batchTimeInterval = resolveTriggerInterval(groupState);
+
+            /* Check if there is no need to trigger ingestion, a group waiting for a network is triggered by the network check. */
+            if (batchTimeInterval == null || groupState.mPaused || groupState.mWaitingForNetwork) {
+                return;
+            }
 
-        /* Trigger immediately. */
-        if (batchTimeInterval == 0) {
-            triggerIngestion(groupState);
-        }
+            /* Trigger immediately. */
+            if (batchTimeInterval == 0) {
+                triggerIngestion(groupState);
+            }
 
-        /* Postpone triggering ingestion. */
-        else if (!groupState.mScheduled) {
-            groupState.mScheduled = true;
-            mAppCenterHandler.postDelayed(groupState.mRunnable, batchTimeInterval);
+            /* Postpone triggering ingestion. */
+            else if (!groupState.mScheduled) {
+                groupState.mScheduled = true;
+                mAppCenterHandler.postDelayed(groupState.mRunnable, batchTimeInterval);
+            }
         }
     }
 
@@ -830,12 +1394,62 @@ public class DefaultChannel implements Channel {
     }
 
     private Long resolveDefaultTriggerInterval(@NonNull GroupState groupState) {
-        if (groupState.mPendingLogCount >= groupState.mMaxLogsPerBatch) {
+        if (groupState.mPendingLogCount >= getMaxLogsPerBatch(groupState)) {
             return 0L;
         }
         return groupState.mPendingLogCount > 0 ? groupState.mBatchTimeInterval : null;
     }
 
+    /**
+     * Gets the endpoints that are currently throttled by the server.
+     *
+     * @return time until which sending is paused, by endpoint URL.
+     */
+    @NonNull
+    public Map<String, Long> getThrottledEndpoints() {
+        return mEndpointThrottle.getThrottledEndpoints(System.currentTimeMillis());
+    }
+
+    /**
+     * Gets the number of logs evicted to keep the storage under its maximum size.
+     *
+     * @return number of evicted logs by group, empty if the persistence does not track them.
+     */
+    @NonNull
+    public Map<String, Long> getEvictedLogCounts() {
+        return mPersistence.getEvictedLogCounts();
+    }
+
+    /**
+     * Gets the number of logs evicted to honor the quotas set by {@link #setStorageQuota(String, String, long)}.
+     *
+     * @return number of evicted logs by group, empty if the persistence does not track them.
+     */
+    @NonNull
+    public Map<String, Long> getQuotaEvictedLogCounts() {
+        return mPersistence.getQuotaEvictedLogCounts();
+    }
+
+    /**
+     * Gets the adaptive batch size limits, only tracked when adaptive batching is enabled.
+     *
+     * @return maximum number of logs per batch by endpoint URL, before applying group values.
+     */
+    @NonNull
+    public Map<String, Integer> getAdaptiveBatchSizes() {
+        return mCongestionController.getBatchSizes();
+    }
+
+    /**
+     * Gets the adaptive parallel batches limits, only tracked when adaptive batching is enabled.
+     *
+     * @return maximum number of batches sent in parallel by endpoint URL, before applying group values.
+     */
+    @NonNull
+    public Map<String, Integer> getAdaptiveParallelBatches() {
+        return mCongestionController.getParallelBatches();
+    }
+
     @VisibleForTesting
     GroupState getGroupState(@SuppressWarnings("SameParameterValue") String groupName) {
         return mGroupStates.get(groupName);
@@ -854,10 +1468,50 @@ public class DefaultChannel implements Channel {
     @Override
     public synchronized void shutdown() {
         suspend(false, new CancellationException());
+        stopListeningToNetworkType();
     }
 
     /**
-     * State for a specific log group.
+     * Log accepted by {@link #enqueue(Log, String, int)} and waiting to be written to persistence.
+     */
+    private static class IntakeLog {
+
+        /**
+         * Log.
+         */
+        final Log mLog;
+
+        /**
+         * State of the log group.
+         */
+        final GroupState mGroupState;
+
+        /**
+         * Persistence flags.
+         */
+        final int mFlags;
+
+        /**
+         * Error if the log could not be persisted.
+         */
+        Persistence.PersistenceException mException;
+
+        /**
+         * Init.
+         *
+         * @param log        log.
+         * @param groupState state of the log group.
+         * @param flags      persistence flags.
+         */
+        IntakeLog(Log log, GroupState groupState, int flags) {
+            mLog = log;
+            mGroupState = groupState;
+            mFlags = flags;
+        }
+    }
+
+    /**
+     * State for a specific log group, fields that are not final are guarded by the instance monitor.
      */
     @VisibleForTesting
     class GroupState extends AbstractTokenContextListener {
@@ -885,7 +1539,7 @@ public class DefaultChannel implements Channel {
         /**
          * Batches being currently sent to ingestion.
          */
-        final Map<String, List<Log>> mSendingBatches = new HashMap<>();
+        final Map<String, List<SerializedLog>> mSendingBatches = new HashMap<>();
 
         /**
          * Ingestion for the group state.
@@ -917,6 +1571,16 @@ public class DefaultChannel implements Channel {
          */
         final Collection<String> mPausedTargetKeys = new HashSet<>();
 
+        /**
+         * Networks the group sends its logs on.
+         */
+        NetworkPolicy mNetworkPolicy = NetworkPolicy.ANY;
+
+        /**
+         * Indicates if the group waits for an unmetered network or for its logs to get old enough to use this one.
+         */
+        boolean mWaitingForNetwork;
+
         /**
          * Runnable that triggers ingestion of this group data
          * and triggers itself in {@link #mBatchTimeInterval} ms.
@@ -925,8 +1589,10 @@ public class DefaultChannel implements Channel {
 
             @Override
             public void run() {
-                mScheduled = false;
-                triggerIngestion(GroupState.this);
+                synchronized (GroupState.this) {
+                    mScheduled = false;
+                    triggerIngestion(GroupState.this);
+                }
             }
         };
 
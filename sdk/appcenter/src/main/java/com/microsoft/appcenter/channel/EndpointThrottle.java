@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.http.HttpUtils;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+
+/**
+ * Backpressure state of the endpoints logs are sent to.
+ * When an endpoint answers with HTTP 429 or 503, all the groups sending to it pause
+ * for the time the server asked for, or for an exponential delay when it did not say,
+ * plus a random jitter so that devices don't all come back at the same time.
+ * The state is persisted so that a restart does not hit a throttled endpoint right away.
+ */
+class EndpointThrottle {
+
+    /**
+     * Preference key prefix for the state of an endpoint.
+     */
+    @VisibleForTesting
+    static final String THROTTLE_PREFIX = "endpointThrottle.";
+
+    /**
+     * Pause after the first throttling response without retry after hint.
+     */
+    @VisibleForTesting
+    static final long INITIAL_DELAY = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * Maximum pause without retry after hint.
+     */
+    @VisibleForTesting
+    static final long MAX_DELAY = TimeUnit.MINUTES.toMillis(30);
+
+    /**
+     * Maximum pause honored from a retry after hint.
+     */
+    @VisibleForTesting
+    static final long MAX_RETRY_AFTER = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * Maximum jitter added to a pause, as a ratio of the pause.
+     */
+    @VisibleForTesting
+    static final double JITTER_RATIO = 0.2;
+
+    /**
+     * State by endpoint, loaded from preferences on first use.
+     */
+    private final Map<String, State> mStates = new HashMap<>();
+
+    /**
+     * Random object for jitter.
+     */
+    private final Random mRandom;
+
+    /**
+     * Init.
+     */
+    EndpointThrottle() {
+        this(new Random());
+    }
+
+    /**
+     * Init with a random object.
+     *
+     * @param random random object for jitter.
+     */
+    @VisibleForTesting
+    EndpointThrottle(@NonNull Random random) {
+        mRandom = random;
+    }
+
+    /**
+     * Record a throttling response from an endpoint.
+     * Other throttling responses received while already paused only extend the pause if the server asks for more.
+     *
+     * @param endpoint endpoint URL.
+     * @param headers  response headers.
+     * @param now      current time.
+     * @return time to wait before sending to the endpoint again, in ms.
+     */
+    synchronized long onThrottled(@NonNull String endpoint, @NonNull Map<String, String> headers, long now) {
+        State state = getState(endpoint, now);
+        long retryAfter = Math.min(HttpUtils.getRetryAfter(headers, now), MAX_RETRY_AFTER);
+        long remainingTime = state.mThrottledUntil - now;
+        if (remainingTime > 0 && retryAfter <= remainingTime) {
+            return remainingTime;
+        }
+        long delay;
+        if (retryAfter > 0) {
+            delay = retryAfter;
+        } else {
+            delay = state.mCount >= 30 ? MAX_DELAY : Math.min(INITIAL_DELAY << state.mCount, MAX_DELAY);
+        }
+        delay += (long) (delay * JITTER_RATIO * mRandom.nextDouble());
+        state.mCount++;
+        state.mThrottledUntil = now + delay;
+        SharedPreferencesManager.putString(THROTTLE_PREFIX + endpoint, state.mThrottledUntil + "/" + state.mCount);
+        AppCenterLog.warn(LOG_TAG, "Endpoint " + endpoint + " is throttled for " + delay + " ms");
+        return delay;
+    }
+
+    /**
+     * Record a successful call to an endpoint, which ends the backoff.
+     *
+     * @param endpoint endpoint URL.
+     */
+    synchronized void onSuccess(@NonNull String endpoint) {
+        State state = getState(endpoint, System.currentTimeMillis());
+        if (state.mCount > 0 || state.mThrottledUntil > 0) {
+            state.mCount = 0;
+            state.mThrottledUntil = 0;
+            SharedPreferencesManager.remove(THROTTLE_PREFIX + endpoint);
+        }
+    }
+
+    /**
+     * Get the time to wait before sending to an endpoint.
+     *
+     * @param endpoint endpoint URL.
+     * @param now      current time.
+     * @return time to wait in ms, 0 if the endpoint is not throttled.
+     */
+    synchronized long getRemainingTime(@NonNull String endpoint, long now) {
+        return Math.max(getState(endpoint, now).mThrottledUntil - now, 0);
+    }
+
+    /**
+     * Mark a resume of the endpoint as scheduled.
+     *
+     * @param endpoint endpoint URL.
+     * @return true if the caller has to schedule the resume, false if one is already scheduled.
+     */
+    synchronized boolean setResumeScheduled(@NonNull String endpoint) {
+        State state = getState(endpoint, System.currentTimeMillis());
+        if (state.mResumeScheduled) {
+            return false;
+        }
+        state.mResumeScheduled = true;
+        return true;
+    }
+
+    /**
+     * Mark the scheduled resume of the endpoint as done.
+     *
+     * @param endpoint endpoint URL.
+     */
+    synchronized void clearResumeScheduled(@NonNull String endpoint) {
+        getState(endpoint, System.currentTimeMillis()).mResumeScheduled = false;
+    }
+
+    /**
+     * Get the endpoints that are currently throttled.
+     *
+     * @param now current time.
+     * @return time until which each throttled endpoint is paused, by endpoint URL.
+     */
+    @NonNull
+    synchronized Map<String, Long> getThrottledEndpoints(long now) {
+        Map<String, Long> throttledEndpoints = new HashMap<>();
+        for (Map.Entry<String, State> entry : mStates.entrySet()) {
+            long throttledUntil = entry.getValue().mThrottledUntil;
+            if (throttledUntil > now) {
+                throttledEndpoints.put(entry.getKey(), throttledUntil);
+            }
+        }
+        return throttledEndpoints;
+    }
+
+    /**
+     * Get the state of an endpoint, restoring it from preferences the first time.
+     */
+    private State getState(String endpoint, long now) {
+        State state = mStates.get(endpoint);
+        if (state == null) {
+            state = new State();
+            String key = THROTTLE_PREFIX + endpoint;
+            String value = SharedPreferencesManager.getString(key);
+            if (value != null) {
+                try {
+                    String[] values = value.split("/");
+                    state.mThrottledUntil = Long.parseLong(values[0]);
+                    state.mCount = Integer.parseInt(values[1]);
+
+                    /* A pause saved with a clock set in the future is ignored. */
+                    if (state.mThrottledUntil - now > MAX_RETRY_AFTER + (long) (MAX_RETRY_AFTER * JITTER_RATIO)) {
+                        state.mThrottledUntil = 0;
+                    }
+                } catch (RuntimeException e) {
+                    AppCenterLog.warn(LOG_TAG, "Ignoring invalid endpoint throttle state: " + value);
+                    state = new State();
+                    SharedPreferencesManager.remove(key);
+                }
+            }
+            mStates.put(endpoint, state);
+        }
+        return state;
+    }
+
+    /**
+     * State of an endpoint.
+     */
+    private static class State {
+
+        /**
+         * Time until which sending to the endpoint is paused.
+         */
+        long mThrottledUntil;
+
+        /**
+         * Number of consecutive throttling pauses.
+         */
+        int mCount;
+
+        /**
+         * Whether a resume of the groups sending to the endpoint is scheduled.
+         */
+        boolean mResumeScheduled;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+/**
+ * Networks a channel group sends its logs on.
+ * Metered and roaming networks may charge for data: logs of a group that prefers unmetered networks
+ * wait for one, and only the logs older than the policy maximum age are sent on other networks.
+ */
+public class NetworkPolicy {
+
+    /**
+     * Send on any network.
+     */
+    public static final NetworkPolicy ANY = new NetworkPolicy(0);
+
+    /**
+     * Send only on unmetered networks such as Wi-Fi, however long it takes.
+     */
+    public static final NetworkPolicy UNMETERED = new NetworkPolicy(Long.MAX_VALUE);
+
+    /**
+     * Age of logs after which they are sent on any network, in ms.
+     */
+    private final long mMaxAge;
+
+    private NetworkPolicy(long maxAge) {
+        mMaxAge = maxAge;
+    }
+
+    /**
+     * Get a policy that waits for unmetered networks, up to a maximum age.
+     *
+     * @param maxAge age of logs after which they are sent on any network, in ms.
+     * @return network policy.
+     */
+    public static NetworkPolicy unmeteredPreferred(long maxAge) {
+        return maxAge <= 0 ? ANY : new NetworkPolicy(maxAge);
+    }
+
+    /**
+     * Get the age of logs after which they are sent on any network.
+     *
+     * @return maximum age in ms, 0 if logs are sent on any network, {@link Long#MAX_VALUE} if they are never sent on metered networks.
+     */
+    public long getMaxAge() {
+        return mMaxAge;
+    }
+}
@@ -0,0 +1,23 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import android.support.annotation.Nullable;
+
+/**
+ * Callback that is also notified of every attempt of a call, including the ones that are retried.
+ */
+public interface AttemptServiceCallback extends ServiceCallback {
+
+    /**
+     * Called when an attempt is over, before {@link #onCallSucceeded} or {@link #onCallFailed} if it's the last one.
+     * The latency does not include waiting for a thread, for the network or before a retry.
+     *
+     * @param latency   time between connecting and the end of the response, in ms.
+     * @param exception null if the attempt succeeded, otherwise the failure.
+     */
+    void onCallAttempted(long latency, @Nullable Exception exception);
+}
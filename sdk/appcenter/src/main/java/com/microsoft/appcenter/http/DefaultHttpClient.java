@@ -5,7 +5,6 @@
 
 package com.microsoft.appcenter.http;
 
-import android.os.AsyncTask;
 import android.support.annotation.VisibleForTesting;
 
 import com.microsoft.appcenter.utils.AppCenterLog;
@@ -14,6 +13,7 @@ import com.microsoft.appcenter.utils.HandlerUtils;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
 
 import static com.microsoft.appcenter.AppCenter.LOG_TAG;
@@ -78,12 +78,40 @@ public class DefaultHttpClient implements HttpClient, DefaultHttpClientCallTask.
      */
     private final boolean mCompressionEnabled;
 
+    /**
+     * Indicates whether callbacks are called on the main thread, otherwise they are called on an SDK thread.
+     */
+    private final boolean mCallbackOnMainThread;
+
+    /**
+     * Executor running the calls.
+     */
+    private final HttpCallExecutor mHttpCallExecutor;
+
     public DefaultHttpClient() {
         this(true);
     }
 
     public DefaultHttpClient(boolean compressionEnabled) {
+        this(compressionEnabled, true);
+    }
+
+    /**
+     * Init.
+     *
+     * @param compressionEnabled   whether to compress large payloads.
+     * @param callbackOnMainThread if false, the callbacks are called on the SDK thread that ran the call
+     *                             instead of the main thread.
+     */
+    public DefaultHttpClient(boolean compressionEnabled, boolean callbackOnMainThread) {
+        this(compressionEnabled, callbackOnMainThread, HttpCallExecutor.getInstance());
+    }
+
+    @VisibleForTesting
+    DefaultHttpClient(boolean compressionEnabled, boolean callbackOnMainThread, HttpCallExecutor httpCallExecutor) {
         mCompressionEnabled = compressionEnabled;
+        mCallbackOnMainThread = callbackOnMainThread;
+        mHttpCallExecutor = httpCallExecutor;
     }
 
     @VisibleForTesting
@@ -94,23 +122,34 @@ public class DefaultHttpClient implements HttpClient, DefaultHttpClientCallTask.
     @Override
     public ServiceCall callAsync(String url, String method, Map<String, String> headers, CallTemplate callTemplate, final ServiceCallback serviceCallback) {
         final DefaultHttpClientCallTask task = new DefaultHttpClientCallTask(url, method, headers, callTemplate, serviceCallback, this, mCompressionEnabled);
+        int priority = callTemplate instanceof PrioritizedCallTemplate ? ((PrioritizedCallTemplate) callTemplate).getPriority() : PRIORITY_NORMAL;
+        Executor executor = mHttpCallExecutor.getExecutor(priority);
         try {
-            task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+            if (mCallbackOnMainThread) {
+                task.executeOnExecutor(executor);
+            } else {
+                task.executeInBackground(executor);
+            }
         } catch (final RejectedExecutionException e) {
 
             /*
-             * When executor saturated (shared with app), we should use the retry mechanism
+             * If the executor rejects the call, we should use the retry mechanism
              * rather than creating more threads to avoid putting too much pressure on the hosting app.
              * Also we need to return the method before calling the listener,
              * so we post the callback on handler to make sure of that.
              */
-            HandlerUtils.runOnUiThread(new Runnable() {
+            Runnable callback = new Runnable() {
 
                 @Override
                 public void run() {
                     serviceCallback.onCallFailed(e);
                 }
-            });
+            };
+            if (mCallbackOnMainThread) {
+                HandlerUtils.runOnUiThread(callback);
+            } else {
+                HttpUtils.getBackgroundHandler().post(callback);
+            }
         }
         return new ServiceCall() {
 
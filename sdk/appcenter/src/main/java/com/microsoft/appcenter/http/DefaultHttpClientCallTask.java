@@ -13,6 +13,7 @@ import android.util.Pair;
 
 import com.microsoft.appcenter.utils.AppCenterLog;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.ByteArrayOutputStream;
@@ -20,12 +21,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.Writer;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPOutputStream;
 
@@ -115,6 +119,11 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
 
     private final boolean mCompressionEnabled;
 
+    /**
+     * Duration of the HTTP call in ms, -1 if not run.
+     */
+    private volatile long mLatency = -1;
+
     DefaultHttpClientCallTask(String url, String method, Map<String, String> headers, HttpClient.CallTemplate callTemplate, ServiceCallback serviceCallback, Tracker tracker, boolean compressionEnabled) {
         mUrl = url;
         mMethod = method;
@@ -146,6 +155,23 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
         }
     }
 
+    /**
+     * Write payload to output stream as the call template produces it, the payload is never fully in memory.
+     */
+    private void writePayload(OutputStream out, HttpClient.StreamingCallTemplate callTemplate, boolean compress) throws IOException, JSONException {
+        if (compress) {
+            out = new PooledGzipOutputStream(out);
+        }
+        Writer writer = new OutputStreamWriter(out, CHARSET_NAME);
+
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            callTemplate.writeRequestBody(writer);
+        } finally {
+            writer.close();
+        }
+    }
+
     /**
      * Dump response stream to a string.
      */
@@ -193,6 +219,12 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
         } else {
             throw new IOException("App Center supports only HTTPS connection.");
         }
+
+        /*
+         * The connection is kept alive in the pool only when the response has been fully read
+         * and the stream closed without calling disconnect. Any other outcome releases the socket.
+         */
+        boolean keepAlive = false;
         try {
 
             /*
@@ -209,7 +241,7 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
              * See https://github.com/square/okhttp/issues/2372#issuecomment-244807676
              */
             if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.LOLLIPOP) {
-                httpsURLConnection.setSSLSocketFactory(new TLS1_2SocketFactory());
+                httpsURLConnection.setSSLSocketFactory(TLS1_2SocketFactory.getInstance());
             }
 
             /* Configure connection timeouts. */
@@ -220,14 +252,50 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
             httpsURLConnection.setRequestMethod(mMethod);
             String payload = null;
             byte[] binaryPayload = null;
+            HttpClient.StreamingCallTemplate streamingCallTemplate = null;
+            HttpClient.RetryableCallTemplate retryableCallTemplate = null;
             boolean shouldCompress = false;
+            boolean encoded = false;
             boolean isPost = mMethod.equals(METHOD_POST);
             if (isPost && mCallTemplate != null) {
+                if (mCallTemplate instanceof HttpClient.RetryableCallTemplate) {
+                    retryableCallTemplate = (HttpClient.RetryableCallTemplate) mCallTemplate;
+                    binaryPayload = retryableCallTemplate.getEncodedBody();
+                }
+
+                /* Send the same bytes as the previous attempt. */
+                if (binaryPayload != null) {
+                    shouldCompress = retryableCallTemplate.isEncodedBodyCompressed();
+                    encoded = true;
+                }
 
-                /* Get bytes, check if large enough to compress. */
-                payload = mCallTemplate.buildRequestBody();
-                binaryPayload = payload.getBytes(CHARSET_NAME);
-                shouldCompress = mCompressionEnabled && binaryPayload.length >= MIN_GZIP_LENGTH;
+                /*
+                 * Stream the body when supported: size is unknown in advance so compress whenever enabled.
+                 * Verbose logging needs the whole payload so build it in that case.
+                 */
+                else if (mCallTemplate instanceof HttpClient.StreamingCallTemplate && AppCenterLog.getLogLevel() > Log.VERBOSE) {
+                    streamingCallTemplate = (HttpClient.StreamingCallTemplate) mCallTemplate;
+                    shouldCompress = mCompressionEnabled;
+
+                    /*
+                     * Only the first attempt of an upload streams its body: once it failed,
+                     * the body is encoded in memory for the retries, compressed it's much smaller than the logs anyway.
+                     */
+                    if (retryableCallTemplate != null && !retryableCallTemplate.shouldStreamBody()) {
+                        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                        writePayload(buffer, streamingCallTemplate, shouldCompress);
+                        binaryPayload = buffer.toByteArray();
+                        retryableCallTemplate.setEncodedBody(binaryPayload, shouldCompress);
+                        streamingCallTemplate = null;
+                        encoded = true;
+                    }
+                } else {
+
+                    /* Get bytes, check if large enough to compress. */
+                    payload = mCallTemplate.buildRequestBody();
+                    binaryPayload = payload.getBytes(CHARSET_NAME);
+                    shouldCompress = mCompressionEnabled && binaryPayload.length >= MIN_GZIP_LENGTH;
+                }
 
                 /* If no content type specified, assume json. */
                 if (!mHeaders.containsKey(CONTENT_TYPE_KEY)) {
@@ -254,10 +322,14 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
             }
 
             /* Send payload. */
-            if (binaryPayload != null) {
+            if (streamingCallTemplate != null) {
+                httpsURLConnection.setDoOutput(true);
+                httpsURLConnection.setChunkedStreamingMode(0);
+                writePayload(httpsURLConnection.getOutputStream(), streamingCallTemplate, shouldCompress);
+            } else if (binaryPayload != null) {
 
                 /* Log payload. */
-                if (AppCenterLog.getLogLevel() <= Log.VERBOSE) {
+                if (AppCenterLog.getLogLevel() <= Log.VERBOSE && payload != null) {
                     if (payload.length() < MAX_PRETTIFY_LOG_LENGTH) {
                         payload = TOKEN_REGEX_URL_ENCODED.matcher(payload).replaceAll("token=***");
                         if (CONTENT_TYPE_VALUE.equals(mHeaders.get(CONTENT_TYPE_KEY))) {
@@ -268,13 +340,16 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
                 }
 
                 /* Compress payload if large enough to be worth it. */
-                if (shouldCompress) {
+                if (shouldCompress && !encoded) {
                     ByteArrayOutputStream gzipBuffer = new ByteArrayOutputStream(binaryPayload.length);
                     GZIPOutputStream gzipStream = new GZIPOutputStream(gzipBuffer);
                     gzipStream.write(binaryPayload);
                     gzipStream.close();
                     binaryPayload = gzipBuffer.toByteArray();
                 }
+                if (retryableCallTemplate != null && !encoded) {
+                    retryableCallTemplate.setEncodedBody(binaryPayload, shouldCompress);
+                }
 
                 /* Send payload on the wire. */
                 httpsURLConnection.setDoOutput(true);
@@ -311,8 +386,9 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
                 responseHeaders.put(header.getKey(), header.getValue().iterator().next());
             }
 
-            /* Accept all 2xx codes. */
+            /* Accept all 2xx codes, reuse the connection for next call unless the read was interrupted. */
             if (status >= 200 && status < 300) {
+                keepAlive = !isCancelled();
                 return new Pair<>(response, responseHeaders);
             }
 
@@ -320,21 +396,47 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
             throw new HttpException(status, response, responseHeaders);
         } finally {
 
-            /* Release connection. */
-            httpsURLConnection.disconnect();
+            /* Release connection unless it can go back to the pool. */
+            if (!keepAlive) {
+                httpsURLConnection.disconnect();
+            }
         }
     }
 
+    /**
+     * Run the call on the given executor rather than with {@link #executeOnExecutor(Executor, Object[])}.
+     * The callback is then called on the executor thread and the main thread is not used at all.
+     *
+     * @param executor executor running the call.
+     */
+    void executeInBackground(Executor executor) {
+        onPreExecute();
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                Object result = doInBackground();
+                if (isCancelled()) {
+                    onCancelled(result);
+                } else {
+                    onPostExecute(result);
+                }
+            }
+        });
+    }
+
     @Override
     protected Object doInBackground(Void... params) {
 
         /* Do tag socket to avoid strict mode issue. */
         TrafficStats.setThreadStatsTag(THREAD_STATS_TAG);
+        long startTime = System.currentTimeMillis();
         try {
             return doHttpCall();
         } catch (Exception e) {
             return e;
         } finally {
+            mLatency = System.currentTimeMillis() - startTime;
             TrafficStats.clearThreadStatsTag();
         }
     }
@@ -347,6 +449,9 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
     @Override
     protected void onPostExecute(Object result) {
         mTracker.onFinish(this);
+        if (mServiceCallback instanceof AttemptServiceCallback && mLatency >= 0) {
+            ((AttemptServiceCallback) mServiceCallback).onCallAttempted(mLatency, result instanceof Exception ? (Exception) result : null);
+        }
         if (result instanceof Exception) {
             mServiceCallback.onCallFailed((Exception) result);
         } else {
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import android.support.annotation.VisibleForTesting;
+
+import java.util.Random;
+
+/**
+ * Exponential backoff with decorrelated jitter: each delay is picked at random between the initial delay
+ * and 3 times the previous delay, bounded by a maximum delay. Clients that failed together don't retry together,
+ * and the delay still grows with consecutive failures.
+ * Retries stop once the maximum elapsed time since the first attempt is reached.
+ */
+public class ExponentialBackoffRetryPolicy implements RetryPolicy {
+
+    /**
+     * Minimum delay in milliseconds.
+     */
+    private final long mInitialDelay;
+
+    /**
+     * Maximum delay in milliseconds.
+     */
+    private final long mMaxDelay;
+
+    /**
+     * Time in milliseconds since the first attempt after which the call is no longer retried.
+     */
+    private final long mMaxElapsedTime;
+
+    /**
+     * Random object for jitter.
+     */
+    private final Random mRandom;
+
+    /**
+     * Init.
+     *
+     * @param initialDelay   minimum delay in milliseconds, must be positive.
+     * @param maxDelay       maximum delay in milliseconds, must not be less than initialDelay.
+     * @param maxElapsedTime time in milliseconds since the first attempt after which the call is no longer retried.
+     * @throws IllegalArgumentException if a parameter is out of range.
+     */
+    public ExponentialBackoffRetryPolicy(long initialDelay, long maxDelay, long maxElapsedTime) {
+        this(initialDelay, maxDelay, maxElapsedTime, new Random());
+    }
+
+    @VisibleForTesting
+    ExponentialBackoffRetryPolicy(long initialDelay, long maxDelay, long maxElapsedTime, Random random) {
+        if (initialDelay <= 0 || maxDelay < initialDelay || maxElapsedTime < 0) {
+            throw new IllegalArgumentException("Invalid retry policy: initialDelay=" + initialDelay +
+                    " maxDelay=" + maxDelay + " maxElapsedTime=" + maxElapsedTime);
+        }
+        mInitialDelay = initialDelay;
+        mMaxDelay = maxDelay;
+        mMaxElapsedTime = maxElapsedTime;
+        mRandom = random;
+    }
+
+    @Override
+    public long getRetryDelay(int retryCount, long previousDelay, long elapsedTime) {
+        if (elapsedTime >= mMaxElapsedTime) {
+            return -1;
+        }
+        long upperBound = Math.max(previousDelay, mInitialDelay) * 3;
+        long delay = mInitialDelay + (long) (mRandom.nextDouble() * (upperBound - mInitialDelay));
+        return Math.min(delay, mMaxDelay);
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+
+/**
+ * Executor owned by the SDK for HTTP calls, so that calls don't compete with the application for
+ * {@link android.os.AsyncTask} threads. A bounded number of threads runs queued calls by priority,
+ * then in submission order.
+ */
+public class HttpCallExecutor {
+
+    /**
+     * Default maximum number of calls running at the same time.
+     */
+    @VisibleForTesting
+    static final int DEFAULT_MAX_CONCURRENT_CALLS = 4;
+
+    /**
+     * Idle time before stopping a thread, in seconds.
+     */
+    private static final long KEEP_ALIVE_TIME = 30;
+
+    /**
+     * Shared instance.
+     */
+    private static HttpCallExecutor sInstance;
+
+    /**
+     * Thread pool consuming the priority queue.
+     */
+    private final ThreadPoolExecutor mThreadPoolExecutor;
+
+    /**
+     * Submission counter to run calls of the same priority in order.
+     */
+    private final AtomicLong mSequence = new AtomicLong();
+
+    /**
+     * Number of calls that started running.
+     */
+    private long mStartedCallCount;
+
+    /**
+     * Total time calls waited in queue, in ms.
+     */
+    private long mTotalQueueWaitTime;
+
+    /**
+     * Maximum time a call waited in queue, in ms.
+     */
+    private long mMaxQueueWaitTime;
+
+    /**
+     * Init.
+     *
+     * @param maxConcurrentCalls maximum number of calls running at the same time.
+     */
+    @VisibleForTesting
+    HttpCallExecutor(int maxConcurrentCalls) {
+        mThreadPoolExecutor = new ThreadPoolExecutor(maxConcurrentCalls, maxConcurrentCalls, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            private final AtomicInteger mThreadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NonNull final Runnable runnable) {
+                return new Thread(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "AppCenter.Http #" + mThreadCount.incrementAndGet());
+            }
+        });
+        mThreadPoolExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Get shared instance.
+     *
+     * @return shared instance.
+     */
+    public static synchronized HttpCallExecutor getInstance() {
+        if (sInstance == null) {
+            sInstance = new HttpCallExecutor(DEFAULT_MAX_CONCURRENT_CALLS);
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    static synchronized void unsetInstance() {
+        sInstance = null;
+    }
+
+    /**
+     * Get the maximum number of calls running at the same time.
+     *
+     * @return maximum number of concurrent calls.
+     */
+    public int getMaxConcurrentCalls() {
+        return mThreadPoolExecutor.getMaximumPoolSize();
+    }
+
+    /**
+     * Set the maximum number of calls running at the same time. Calls already running are not interrupted.
+     *
+     * @param maxConcurrentCalls maximum number of concurrent calls, must be positive.
+     */
+    public synchronized void setMaxConcurrentCalls(int maxConcurrentCalls) {
+        if (maxConcurrentCalls <= 0) {
+            AppCenterLog.error(LOG_TAG, "Maximum number of concurrent HTTP calls must be positive.");
+            return;
+        }
+
+        /* Pool core size can never be greater than maximum size, update in the right order. */
+        if (maxConcurrentCalls > mThreadPoolExecutor.getMaximumPoolSize()) {
+            mThreadPoolExecutor.setMaximumPoolSize(maxConcurrentCalls);
+            mThreadPoolExecutor.setCorePoolSize(maxConcurrentCalls);
+        } else {
+            mThreadPoolExecutor.setCorePoolSize(maxConcurrentCalls);
+            mThreadPoolExecutor.setMaximumPoolSize(maxConcurrentCalls);
+        }
+    }
+
+    /**
+     * Get the number of calls waiting for a thread.
+     *
+     * @return number of queued calls.
+     */
+    public int getQueuedCallCount() {
+        return mThreadPoolExecutor.getQueue().size();
+    }
+
+    /**
+     * Get the number of calls that started running.
+     *
+     * @return number of started calls.
+     */
+    public synchronized long getStartedCallCount() {
+        return mStartedCallCount;
+    }
+
+    /**
+     * Get the total time calls waited in queue before running.
+     *
+     * @return total queue wait time in ms.
+     */
+    public synchronized long getTotalQueueWaitTime() {
+        return mTotalQueueWaitTime;
+    }
+
+    /**
+     * Get the maximum time a call waited in queue before running.
+     *
+     * @return maximum queue wait time in ms.
+     */
+    public synchronized long getMaxQueueWaitTime() {
+        return mMaxQueueWaitTime;
+    }
+
+    /**
+     * Get an executor submitting calls with the given priority.
+     *
+     * @param priority call priority, such as {@link HttpClient#PRIORITY_NORMAL}.
+     * @return executor.
+     */
+    Executor getExecutor(final int priority) {
+        return new Executor() {
+
+            @Override
+            public void execute(@NonNull Runnable runnable) {
+                HttpCallExecutor.this.execute(runnable, priority);
+            }
+        };
+    }
+
+    /**
+     * Queue a call.
+     *
+     * @param runnable call.
+     * @param priority call priority, such as {@link HttpClient#PRIORITY_NORMAL}.
+     */
+    void execute(@NonNull Runnable runnable, int priority) {
+        mThreadPoolExecutor.execute(new PrioritizedCall(runnable, priority, mSequence.getAndIncrement()));
+    }
+
+    /**
+     * Update metrics when a call leaves the queue.
+     *
+     * @param priority      call priority.
+     * @param queueWaitTime time spent in queue in ms.
+     */
+    private synchronized void onCallStarted(int priority, long queueWaitTime) {
+        mStartedCallCount++;
+        mTotalQueueWaitTime += queueWaitTime;
+        mMaxQueueWaitTime = Math.max(mMaxQueueWaitTime, queueWaitTime);
+        AppCenterLog.verbose(LOG_TAG, "HTTP call with priority=" + priority + " waited " + queueWaitTime + " ms in queue.");
+    }
+
+    /**
+     * Queued call, ordered by priority then submission order.
+     */
+    private class PrioritizedCall implements Runnable, Comparable<PrioritizedCall> {
+
+        /**
+         * Call.
+         */
+        private final Runnable mRunnable;
+
+        /**
+         * Call priority.
+         */
+        private final int mPriority;
+
+        /**
+         * Submission order.
+         */
+        private final long mSequence;
+
+        /**
+         * Submission time.
+         */
+        private final long mQueuedTime;
+
+        PrioritizedCall(Runnable runnable, int priority, long sequence) {
+            mRunnable = runnable;
+            mPriority = priority;
+            mSequence = sequence;
+            mQueuedTime = System.currentTimeMillis();
+        }
+
+        @Override
+        public void run() {
+            onCallStarted(mPriority, System.currentTimeMillis() - mQueuedTime);
+            mRunnable.run();
+        }
+
+        @Override
+        public int compareTo(@NonNull PrioritizedCall other) {
+            if (mPriority != other.mPriority) {
+                return mPriority > other.mPriority ? -1 : 1;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+}
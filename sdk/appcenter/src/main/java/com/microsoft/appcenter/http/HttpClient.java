@@ -8,6 +8,8 @@ package com.microsoft.appcenter.http;
 import org.json.JSONException;
 
 import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
 import java.net.URL;
 import java.util.Map;
 
@@ -16,6 +18,21 @@ import java.util.Map;
  */
 public interface HttpClient extends Closeable {
 
+    /**
+     * Priority of background uploads that can wait, such as analytics batches.
+     */
+    int PRIORITY_LOW = -1;
+
+    /**
+     * Priority of calls that don't specify one.
+     */
+    int PRIORITY_NORMAL = 0;
+
+    /**
+     * Priority of calls that a user is waiting for or that carry critical data such as crashes.
+     */
+    int PRIORITY_HIGH = 1;
+
     /**
      * Make an HTTP call.
      *
@@ -50,6 +67,82 @@ public interface HttpClient extends Closeable {
         void onBeforeCalling(URL url, Map<String, String> headers);
     }
 
+    /**
+     * Call callbacks that also define the priority of the call in the HTTP queue.
+     */
+    interface PrioritizedCallTemplate extends CallTemplate {
+
+        /**
+         * Get the call priority.
+         *
+         * @return priority such as {@link #PRIORITY_NORMAL}.
+         */
+        int getPriority();
+    }
+
+    /**
+     * Call callbacks that can write the request body directly to the connection instead of
+     * building it in memory first.
+     */
+    interface StreamingCallTemplate extends CallTemplate {
+
+        /**
+         * Called when the method is POST to write request body. The writer must not be closed.
+         * {@link #buildRequestBody()} must produce the same content, it is still used when the body needs to be logged:
+         * implement it by writing to a {@link java.io.StringWriter} to keep a single code path.
+         *
+         * @param writer writer to the request body.
+         * @throws JSONException callback can throw this to make the call fail if a JSON error occurs.
+         * @throws IOException   if writing to the connection fails.
+         */
+        void writeRequestBody(Writer writer) throws JSONException, IOException;
+    }
+
+    /**
+     * Call callbacks of uploads that are worth retrying for a long time, such as log batches.
+     * The first attempt streams the body when possible, once it fails the body is encoded and compressed once for all the next attempts,
+     * and the retry schedule of the URL is persisted so that uploads after a restart wait for its next try, the same content continuing its backoff.
+     * Throttling responses (HTTP 429 and 503) are not retried: the caller pauses all its uploads to the endpoint instead.
+     */
+    interface RetryableCallTemplate extends CallTemplate {
+
+        /**
+         * Get a key identifying the uploaded content, the same content sent again after a restart must get the same key.
+         *
+         * @return key of the upload, or null if not known: the upload then waits for the schedule of the URL but does not resume a backoff.
+         */
+        String getRetryKey();
+
+        /**
+         * Called when an attempt has no encoded body to send.
+         *
+         * @return true for the first attempt, that can stream the body, false when the body must be encoded for the next attempts.
+         */
+        boolean shouldStreamBody();
+
+        /**
+         * Get the body as sent by a previous attempt.
+         *
+         * @return encoded body, or null if not sent yet.
+         */
+        byte[] getEncodedBody();
+
+        /**
+         * Check if the encoded body is compressed.
+         *
+         * @return true if the encoded body is gzip content.
+         */
+        boolean isEncodedBodyCompressed();
+
+        /**
+         * Called once the body is encoded, to keep it for next attempts.
+         *
+         * @param body       encoded body.
+         * @param compressed true if the body is gzip content.
+         */
+        void setEncodedBody(byte[] body, boolean compressed);
+    }
+
     /**
      * Make this client active again after closing.
      */
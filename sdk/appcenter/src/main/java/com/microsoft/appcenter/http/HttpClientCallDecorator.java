@@ -10,7 +10,7 @@ import java.util.Map;
 /**
  * Helper class used to share logic with multiple decorators.
  */
-abstract class HttpClientCallDecorator implements Runnable, ServiceCall, ServiceCallback {
+abstract class HttpClientCallDecorator implements Runnable, ServiceCall, AttemptServiceCallback {
 
     /**
      * Decorated API.
@@ -46,7 +46,11 @@ abstract class HttpClientCallDecorator implements Runnable, ServiceCall, Service
 
     @Override
     public synchronized void cancel() {
-        mServiceCall.cancel();
+
+        /* Not started yet when the first try is delayed. */
+        if (mServiceCall != null) {
+            mServiceCall.cancel();
+        }
     }
 
     @Override
@@ -54,6 +58,13 @@ abstract class HttpClientCallDecorator implements Runnable, ServiceCall, Service
         mServiceCall = mDecoratedApi.callAsync(mUrl, mMethod, mHeaders, mCallTemplate, this);
     }
 
+    @Override
+    public void onCallAttempted(long latency, Exception exception) {
+        if (mServiceCallback instanceof AttemptServiceCallback) {
+            ((AttemptServiceCallback) mServiceCallback).onCallAttempted(latency, exception);
+        }
+    }
+
     @Override
     public void onCallSucceeded(String payload, Map<String, String> headers) {
         mServiceCallback.onCallSucceeded(payload, headers);
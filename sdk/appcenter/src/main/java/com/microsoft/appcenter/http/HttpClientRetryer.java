@@ -11,14 +11,13 @@ import android.support.annotation.VisibleForTesting;
 
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
 import java.net.UnknownHostException;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
-import static com.microsoft.appcenter.http.DefaultHttpClient.X_MS_RETRY_AFTER_MS_HEADER;
-
 /**
  * Decorator managing retries.
  */
@@ -34,15 +33,23 @@ public class HttpClientRetryer extends HttpClientDecorator {
             TimeUnit.MINUTES.toMillis(20)
     };
 
+    /**
+     * Preference key prefix for the retry schedule of a URL.
+     * Every upload to the URL waits for the next try of the schedule, the schedule is tagged with the
+     * {@link RetryableCallTemplate#getRetryKey()} of the upload that saved it so that only this upload resumes its backoff.
+     */
+    @VisibleForTesting
+    static final String RETRY_SCHEDULE_PREFIX = "retrySchedule.";
+
     /**
      * Android "timer" using the main thread loop.
      */
     private final Handler mHandler;
 
     /**
-     * Random object for interval randomness.
+     * Retry policy.
      */
-    private final Random mRandom = new Random();
+    private final RetryPolicy mRetryPolicy;
 
     /**
      * Init with default retry policy.
@@ -54,15 +61,27 @@ public class HttpClientRetryer extends HttpClientDecorator {
     }
 
     /**
-     * Init.
+     * Init with default retry policy.
      *
      * @param decoratedApi API to decorate.
      * @param handler      handler for timed retries.
      */
     @VisibleForTesting
     HttpClientRetryer(HttpClient decoratedApi, Handler handler) {
+        this(decoratedApi, handler, null);
+    }
+
+    /**
+     * Init.
+     *
+     * @param decoratedApi API to decorate.
+     * @param handler      handler for timed retries.
+     * @param retryPolicy  retry policy, null for the default one.
+     */
+    HttpClientRetryer(HttpClient decoratedApi, Handler handler, RetryPolicy retryPolicy) {
         super(decoratedApi);
         mHandler = handler;
+        mRetryPolicy = retryPolicy != null ? retryPolicy : new IntervalsRetryPolicy();
     }
 
     @Override
@@ -70,44 +89,158 @@ public class HttpClientRetryer extends HttpClientDecorator {
 
         /* Wrap the call with the retry logic and call delegate. */
         RetryableCall retryableCall = new RetryableCall(mDecoratedApi, url, method, headers, callTemplate, serviceCallback);
-        retryableCall.run();
+
+        /* Continue the backoff of a previous process instead of calling the server right away. */
+        long delay = retryableCall.restoreSchedule();
+        if (delay > 0) {
+            AppCenterLog.debug(AppCenter.LOG_TAG, "Resuming retry schedule, next try in " + delay + " ms");
+            mHandler.postDelayed(retryableCall, delay);
+        } else {
+            retryableCall.run();
+        }
         return retryableCall;
     }
 
+    /**
+     * Retry policy used when none is specified: up to 3 retries after {@link #RETRY_INTERVALS},
+     * each delay being picked at random between half and the full interval.
+     */
+    private static class IntervalsRetryPolicy implements RetryPolicy {
+
+        /**
+         * Random object for interval randomness.
+         */
+        private final Random mRandom = new Random();
+
+        @Override
+        public long getRetryDelay(int retryCount, long previousDelay, long elapsedTime) {
+            if (retryCount >= RETRY_INTERVALS.length) {
+                return -1;
+            }
+            long delay = RETRY_INTERVALS[retryCount] / 2;
+            return delay + mRandom.nextInt((int) delay);
+        }
+    }
+
     /**
      * Retry wrapper logic.
      */
     private class RetryableCall extends HttpClientCallDecorator {
 
+        /**
+         * Whether the call is a log upload, see {@link RetryableCallTemplate}.
+         */
+        private final boolean mUpload;
+
+        /**
+         * Preference key of the retry schedule, null if the schedule is not persisted.
+         */
+        private final String mScheduleKey;
+
+        /**
+         * Key of the upload the persisted schedule belongs to, empty if the template does not identify its content.
+         */
+        private final String mRetryKey;
+
         /**
          * Current retry counter. 0 means its the first try.
          */
         private int mRetryCount;
 
+        /**
+         * Delay before the last retry.
+         */
+        private long mPreviousDelay;
+
+        /**
+         * Time of the first try.
+         */
+        private long mStartTime = System.currentTimeMillis();
+
         RetryableCall(HttpClient decoratedApi, String url, String method, Map<String, String> headers, CallTemplate callTemplate, ServiceCallback serviceCallback) {
             super(decoratedApi, url, method, headers, callTemplate, serviceCallback);
+            mUpload = callTemplate instanceof RetryableCallTemplate;
+            String retryKey = mUpload ? ((RetryableCallTemplate) callTemplate).getRetryKey() : null;
+            mRetryKey = retryKey != null ? retryKey : "";
+            mScheduleKey = url != null && mUpload ? RETRY_SCHEDULE_PREFIX + url : null;
+        }
+
+        /**
+         * Wait for the next try of a previous upload to the same URL,
+         * and continue its backoff if this upload sends the same content.
+         *
+         * @return remaining delay before the next try, 0 to call now.
+         */
+        long restoreSchedule() {
+            if (mScheduleKey == null) {
+                return 0;
+            }
+            String schedule = SharedPreferencesManager.getString(mScheduleKey);
+            if (schedule == null) {
+                return 0;
+            }
+            try {
+                String[] values = schedule.split("/", 5);
+                int retryCount = Integer.parseInt(values[0]);
+                long previousDelay = Long.parseLong(values[1]);
+                long nextTime = Long.parseLong(values[2]);
+                long startTime = Long.parseLong(values[3]);
+                String retryKey = values[4];
+
+                /* A schedule that is over or that was saved with a clock set in the future is ignored. */
+                long delay = nextTime - System.currentTimeMillis();
+                if (delay > 0 && delay <= previousDelay) {
+
+                    /* Another upload waits as well but starts its own backoff, the schedule stays with its owner. */
+                    if (mRetryKey.equals(retryKey)) {
+                        mRetryCount = retryCount;
+                        mPreviousDelay = previousDelay;
+                        mStartTime = startTime;
+                    }
+                    return delay;
+                }
+            } catch (RuntimeException e) {
+                AppCenterLog.warn(AppCenter.LOG_TAG, "Ignoring invalid retry schedule: " + schedule);
+            }
+            SharedPreferencesManager.remove(mScheduleKey);
+            return 0;
         }
 
         @Override
         public synchronized void cancel() {
             mHandler.removeCallbacks(this);
+            clearSchedule();
             super.cancel();
         }
 
+        @Override
+        public void onCallSucceeded(String payload, Map<String, String> headers) {
+            clearSchedule();
+            super.onCallSucceeded(payload, headers);
+        }
+
         @Override
         public void onCallFailed(Exception e) {
-            if (mRetryCount < RETRY_INTERVALS.length && HttpUtils.isRecoverableError(e)) {
-                long delay = 0;
+            long now = System.currentTimeMillis();
+            long delay = -1;
+
+            /* Uploads are throttled by the caller for all the calls to the endpoint. */
+            if (HttpUtils.isRecoverableError(e) && !(mUpload && HttpUtils.isThrottlingError(e))) {
+                delay = mRetryPolicy.getRetryDelay(mRetryCount, mPreviousDelay, now - mStartTime);
+            }
+            if (delay >= 0) {
+
+                /* The server knows better when it can take the call again. */
                 if (e instanceof HttpException) {
-                    HttpException httpException = (HttpException) e;
-                    String retryAfterMs = httpException.getHeaders().get(X_MS_RETRY_AFTER_MS_HEADER);
-                    if (retryAfterMs != null) {
-                        delay = Long.parseLong(retryAfterMs);
+                    long retryAfter = HttpUtils.getRetryAfter(((HttpException) e).getHeaders(), now);
+                    if (retryAfter > 0) {
+                        delay = retryAfter;
                     }
                 }
-                if (delay == 0) {
-                    delay = RETRY_INTERVALS[mRetryCount++] / 2;
-                    delay += mRandom.nextInt((int) delay);
+                mRetryCount++;
+                mPreviousDelay = delay;
+                if (mScheduleKey != null) {
+                    SharedPreferencesManager.putString(mScheduleKey, mRetryCount + "/" + delay + "/" + (now + delay) + "/" + mStartTime + "/" + mRetryKey);
                 }
                 String message = "Try #" + mRetryCount + " failed and will be retried in " + delay + " ms";
                 if (e instanceof UnknownHostException) {
@@ -116,8 +249,21 @@ public class HttpClientRetryer extends HttpClientDecorator {
                 AppCenterLog.warn(AppCenter.LOG_TAG, message, e);
                 mHandler.postDelayed(this, delay);
             } else {
+                clearSchedule();
                 mServiceCallback.onCallFailed(e);
             }
         }
+
+        /**
+         * Forget the retry schedule once the call is over, unless it was overwritten by another upload.
+         */
+        private void clearSchedule() {
+            if (mScheduleKey != null) {
+                String schedule = SharedPreferencesManager.getString(mScheduleKey);
+                if (schedule != null && schedule.endsWith("/" + mRetryKey)) {
+                    SharedPreferencesManager.remove(mScheduleKey);
+                }
+            }
+        }
     }
 }
@@ -6,23 +6,36 @@
 package com.microsoft.appcenter.http;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.VisibleForTesting;
 
+import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.NetworkStateHelper;
 
 import java.io.EOFException;
 import java.io.InterruptedIOException;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.net.ssl.SSLException;
 
+import static com.microsoft.appcenter.http.DefaultHttpClient.X_MS_RETRY_AFTER_MS_HEADER;
+import static com.microsoft.appcenter.utils.AppCenterLog.LOG_TAG;
+
 /**
  * HTTP utilities.
  */
@@ -59,6 +72,27 @@ public class HttpUtils {
      */
     private static final Pattern API_KEY_PATTERN = Pattern.compile("-[^,]+(,|$)");
 
+    /**
+     * Standard header for the delay requested by the server, in seconds or as an HTTP date.
+     */
+    @VisibleForTesting
+    static final String RETRY_AFTER_HEADER = "Retry-After";
+
+    /**
+     * Date format of the retry after header.
+     */
+    private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+    /**
+     * Handler on an SDK thread used to schedule retries of clients that don't call back on the main thread.
+     */
+    private static Handler sBackgroundHandler;
+
+    /**
+     * Retry policy of clients created next, null for the default one.
+     */
+    private static RetryPolicy sRetryPolicy;
+
     @VisibleForTesting
     HttpUtils() {
     }
@@ -107,6 +141,71 @@ public class HttpUtils {
         return false;
     }
 
+    /**
+     * Check whether an error means the server is overloaded and asks clients to slow down.
+     *
+     * @param t exception or error.
+     * @return true for HTTP 429 and 503 responses.
+     */
+    public static boolean isThrottlingError(Throwable t) {
+        if (t instanceof HttpException) {
+            int code = ((HttpException) t).getStatusCode();
+            return code == 429 || code == 503;
+        }
+        return false;
+    }
+
+    /**
+     * Check whether an error means the call took too long, either on the connection or on the server.
+     *
+     * @param t exception or error.
+     * @return true for socket timeouts and HTTP 408 responses.
+     */
+    public static boolean isTimeoutError(Throwable t) {
+        if (t instanceof HttpException) {
+            return ((HttpException) t).getStatusCode() == 408;
+        }
+        return t instanceof InterruptedIOException;
+    }
+
+    /**
+     * Get the delay requested by the server.
+     *
+     * @param headers response headers.
+     * @param now     current time in milliseconds.
+     * @return delay in milliseconds, 0 if not specified or invalid.
+     */
+    public static long getRetryAfter(@NonNull Map<String, String> headers, long now) {
+        String retryAfterMs = headers.get(X_MS_RETRY_AFTER_MS_HEADER);
+        if (retryAfterMs != null) {
+            try {
+                return Math.max(Long.parseLong(retryAfterMs.trim()), 0);
+            } catch (NumberFormatException ignored) {
+            }
+        }
+
+        /* Header names are case insensitive, HTTP/2 sends them in lower case. */
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            String value = header.getValue();
+            if (RETRY_AFTER_HEADER.equalsIgnoreCase(header.getKey()) && value != null) {
+                value = value.trim();
+                try {
+                    return Math.max(TimeUnit.SECONDS.toMillis(Long.parseLong(value)), 0);
+                } catch (NumberFormatException ignored) {
+                }
+                SimpleDateFormat dateFormat = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+                dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+                try {
+                    Date date = dateFormat.parse(value);
+                    return Math.max(date.getTime() - now, 0);
+                } catch (ParseException e) {
+                    AppCenterLog.warn(LOG_TAG, "Invalid " + RETRY_AFTER_HEADER + " header: " + value);
+                }
+            }
+        }
+        return 0;
+    }
+
     /**
      * Hide secret string.
      *
@@ -174,11 +273,57 @@ public class HttpUtils {
     }
 
     public static HttpClient createHttpClient(@NonNull Context context, boolean compressionEnabled) {
-        HttpClient httpClient = new DefaultHttpClient(compressionEnabled);
+        return createHttpClient(context, compressionEnabled, true);
+    }
+
+    /**
+     * Create an HTTP client that handles network state and retries.
+     *
+     * @param context              context.
+     * @param compressionEnabled   whether to compress large payloads.
+     * @param callbackOnMainThread if false, calls, retries and callbacks all run on SDK threads
+     *                             and the main thread is never used.
+     * @return HTTP client.
+     */
+    public static HttpClient createHttpClient(@NonNull Context context, boolean compressionEnabled, boolean callbackOnMainThread) {
+        HttpClient httpClient = new DefaultHttpClient(compressionEnabled, callbackOnMainThread);
         NetworkStateHelper networkStateHelper = NetworkStateHelper.getSharedInstance(context);
         httpClient = new HttpClientNetworkStateHandler(httpClient, networkStateHelper);
 
         /* Retryer should be applied last to avoid retries in offline. */
-        return new HttpClientRetryer(httpClient);
+        Handler handler = callbackOnMainThread ? new Handler(Looper.getMainLooper()) : getBackgroundHandler();
+        return new HttpClientRetryer(httpClient, handler, getRetryPolicy());
+    }
+
+    /**
+     * Get the retry policy of clients created next.
+     *
+     * @return retry policy, null for the default one.
+     */
+    static synchronized RetryPolicy getRetryPolicy() {
+        return sRetryPolicy;
+    }
+
+    /**
+     * Set the retry policy of clients created next.
+     *
+     * @param retryPolicy retry policy, null for the default one.
+     */
+    public static synchronized void setRetryPolicy(RetryPolicy retryPolicy) {
+        sRetryPolicy = retryPolicy;
+    }
+
+    /**
+     * Get the handler of the SDK thread used for retries and callbacks when the main thread must not be used.
+     *
+     * @return background handler.
+     */
+    static synchronized Handler getBackgroundHandler() {
+        if (sBackgroundHandler == null) {
+            HandlerThread handlerThread = new HandlerThread("AppCenter.Http.Retry");
+            handlerThread.start();
+            sBackgroundHandler = new Handler(handlerThread.getLooper());
+        }
+        return sBackgroundHandler;
     }
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Gzip output stream that reuses deflaters between calls.
+ * {@link java.util.zip.GZIPOutputStream} allocates and releases a native deflater every time,
+ * this class writes the same gzip format around a deflater taken from a pool.
+ */
+class PooledGzipOutputStream extends DeflaterOutputStream {
+
+    /**
+     * Compressed data buffer size.
+     */
+    private static final int BUFFER_SIZE = 4096;
+
+    /**
+     * Maximum number of idle deflaters, matches the default number of concurrent HTTP calls.
+     */
+    private static final int MAX_POOL_SIZE = 4;
+
+    /**
+     * Gzip header: magic number, deflate method, then no flags, time or OS, as written by {@link java.util.zip.GZIPOutputStream}.
+     */
+    private static final byte[] HEADER = {(byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    /**
+     * Idle deflaters.
+     */
+    private static final Deque<Deflater> sDeflaterPool = new ArrayDeque<>();
+
+    /**
+     * Checksum of uncompressed data.
+     */
+    private final CRC32 mCrc = new CRC32();
+
+    /**
+     * Whether the deflater went back to the pool.
+     */
+    private boolean mReleased;
+
+    /**
+     * Init and write gzip header.
+     *
+     * @param out stream receiving compressed data.
+     * @throws IOException if writing the header fails.
+     */
+    PooledGzipOutputStream(@NonNull OutputStream out) throws IOException {
+        super(out, obtainDeflater(), BUFFER_SIZE);
+        try {
+            out.write(HEADER);
+        } catch (IOException e) {
+            releaseDeflater();
+            throw e;
+        }
+    }
+
+    /**
+     * Take a deflater from the pool or create one.
+     *
+     * @return deflater producing raw deflate data.
+     */
+    private static Deflater obtainDeflater() {
+        synchronized (sDeflaterPool) {
+            Deflater deflater = sDeflaterPool.poll();
+            if (deflater != null) {
+                return deflater;
+            }
+        }
+        return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    }
+
+    @VisibleForTesting
+    static int getPooledDeflaterCount() {
+        synchronized (sDeflaterPool) {
+            return sDeflaterPool.size();
+        }
+    }
+
+    @Override
+    public synchronized void write(@NonNull byte[] buffer, int offset, int length) throws IOException {
+        super.write(buffer, offset, length);
+        mCrc.update(buffer, offset, length);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (!def.finished()) {
+            super.finish();
+
+            /* Gzip trailer: checksum and uncompressed size modulo 2^32. */
+            writeInt((int) mCrc.getValue());
+            writeInt((int) def.getBytesRead());
+        }
+    }
+
+    /**
+     * Finish, close the underlying stream and give the deflater back to the pool.
+     * The parent implementation is not used: before Android 7.0 it ends the deflater even when
+     * it was passed to the constructor, which would put an unusable deflater back in the pool.
+     */
+    @Override
+    public void close() throws IOException {
+        if (mReleased) {
+            return;
+        }
+        try {
+            try {
+                finish();
+            } finally {
+                out.close();
+            }
+        } finally {
+            releaseDeflater();
+        }
+    }
+
+    /**
+     * Write a 32 bits integer in little endian order.
+     */
+    private void writeInt(int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >> 8) & 0xff);
+        out.write((value >> 16) & 0xff);
+        out.write((value >> 24) & 0xff);
+    }
+
+    /**
+     * Give the deflater back to the pool, or free it if the pool is full.
+     */
+    private void releaseDeflater() {
+        if (mReleased) {
+            return;
+        }
+        mReleased = true;
+        def.reset();
+        synchronized (sDeflaterPool) {
+            if (sDeflaterPool.size() < MAX_POOL_SIZE) {
+                sDeflaterPool.push(def);
+                return;
+            }
+        }
+        def.end();
+    }
+}
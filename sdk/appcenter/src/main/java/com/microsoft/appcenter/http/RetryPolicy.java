@@ -0,0 +1,23 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+/**
+ * Decides when a call that failed with a recoverable error is retried.
+ * A delay requested by the server with a retry after header takes precedence over the delay of the policy.
+ */
+public interface RetryPolicy {
+
+    /**
+     * Get the delay before the next retry.
+     *
+     * @param retryCount    number of retries already made, 0 after the first attempt failed.
+     * @param previousDelay delay in milliseconds before the previous retry, 0 after the first attempt failed.
+     * @param elapsedTime   time in milliseconds since the first attempt.
+     * @return delay in milliseconds before the next retry, or a negative value to give up and forward the last error.
+     */
+    long getRetryDelay(int retryCount, long previousDelay, long elapsedTime);
+}
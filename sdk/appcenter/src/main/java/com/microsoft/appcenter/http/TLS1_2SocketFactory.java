@@ -5,6 +5,8 @@
 
 package com.microsoft.appcenter.http;
 
+import android.support.annotation.VisibleForTesting;
+
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
@@ -19,6 +21,7 @@ import static javax.net.ssl.HttpsURLConnection.getDefaultSSLSocketFactory;
 
 /**
  * This class forces TLS 1.2 protocol via adapter pattern.
+ * Use {@link #getInstance()} so that connections can be pooled and TLS sessions resumed.
  */
 class TLS1_2SocketFactory extends SSLSocketFactory {
 
@@ -39,6 +42,11 @@ class TLS1_2SocketFactory extends SSLSocketFactory {
      */
     private final SSLSocketFactory delegate;
 
+    /**
+     * Shared instance.
+     */
+    private static TLS1_2SocketFactory sInstance;
+
     TLS1_2SocketFactory() {
         SSLSocketFactory socketFactory = null;
         try {
@@ -55,6 +63,27 @@ class TLS1_2SocketFactory extends SSLSocketFactory {
         delegate = socketFactory != null ? socketFactory : getDefaultSSLSocketFactory();
     }
 
+    /**
+     * Get shared instance.
+     * <p>
+     * The HTTP connection pool only reuses a connection for the same socket factory instance,
+     * and the SSL context of the factory holds the session cache used for TLS session resumption,
+     * so a new factory per call would force a new connection and a full handshake every time.
+     *
+     * @return shared instance.
+     */
+    static synchronized TLS1_2SocketFactory getInstance() {
+        if (sInstance == null) {
+            sInstance = new TLS1_2SocketFactory();
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    static synchronized void unsetInstance() {
+        sInstance = null;
+    }
+
     /**
      * Force TLS 1.2 protocol on a socket.
      *
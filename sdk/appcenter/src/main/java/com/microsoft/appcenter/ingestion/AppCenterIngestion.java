@@ -20,9 +20,12 @@ import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import org.json.JSONException;
 
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.microsoft.appcenter.Constants.APP_SECRET;
 import static com.microsoft.appcenter.Constants.AUTHORIZATION_HEADER;
@@ -72,7 +75,7 @@ public class AppCenterIngestion implements Ingestion {
      */
     public AppCenterIngestion(@NonNull Context context, @NonNull LogSerializer logSerializer) {
         mLogSerializer = logSerializer;
-        mHttpClient = createHttpClient(context);
+        mHttpClient = createHttpClient(context, true, false);
         mLogUrl = DEFAULT_LOG_URL;
     }
 
@@ -87,6 +90,11 @@ public class AppCenterIngestion implements Ingestion {
         mLogUrl = logUrl;
     }
 
+    @Override
+    public String getLogUrl() {
+        return mLogUrl;
+    }
+
     @Override
     public ServiceCall sendAsync(String authToken, String appSecret, UUID installId, LogContainer logContainer, final ServiceCallback serviceCallback) throws IllegalArgumentException {
         Map<String, String> headers = new HashMap<>();
@@ -112,12 +120,18 @@ public class AppCenterIngestion implements Ingestion {
     /**
      * Inner class is used to be able to mock System.currentTimeMillis, does not work if using anonymous inner class...
      */
-    private static class IngestionCallTemplate extends AbstractAppCallTemplate {
+    private static class IngestionCallTemplate extends AbstractAppCallTemplate implements HttpClient.PrioritizedCallTemplate, HttpClient.StreamingCallTemplate, HttpClient.RetryableCallTemplate {
 
         private final LogSerializer mLogSerializer;
 
         private final LogContainer mLogContainer;
 
+        private final AtomicBoolean mBodyStreamed = new AtomicBoolean();
+
+        private volatile byte[] mEncodedBody;
+
+        private volatile boolean mEncodedBodyCompressed;
+
         IngestionCallTemplate(LogSerializer logSerializer, LogContainer logContainer) {
             mLogSerializer = logSerializer;
             mLogContainer = logContainer;
@@ -126,8 +140,56 @@ public class AppCenterIngestion implements Ingestion {
         @Override
         public String buildRequestBody() throws JSONException {
 
-            /* Serialize payload. */
-            return mLogSerializer.serializeContainer(mLogContainer);
+            /* Same code path as the body written to the connection. */
+            StringWriter writer = new StringWriter();
+            try {
+                writeRequestBody(writer);
+            } catch (IOException e) {
+
+                /* Never happens when writing to a string. */
+                throw new RuntimeException(e);
+            }
+            return writer.toString();
+        }
+
+        @Override
+        public void writeRequestBody(Writer writer) throws JSONException, IOException {
+
+            /* Serialize payload straight to the connection. */
+            mLogSerializer.serializeContainer(mLogContainer, writer);
+        }
+
+        @Override
+        public int getPriority() {
+
+            /* Crashes are stored as critical and should not wait for analytics. */
+            return mLogContainer.hasCriticalLogs() ? HttpClient.PRIORITY_HIGH : HttpClient.PRIORITY_LOW;
+        }
+
+        @Override
+        public String getRetryKey() {
+            return mLogContainer.getContentKey();
+        }
+
+        @Override
+        public boolean shouldStreamBody() {
+            return mBodyStreamed.compareAndSet(false, true);
+        }
+
+        @Override
+        public byte[] getEncodedBody() {
+            return mEncodedBody;
+        }
+
+        @Override
+        public boolean isEncodedBodyCompressed() {
+            return mEncodedBodyCompressed;
+        }
+
+        @Override
+        public void setEncodedBody(byte[] body, boolean compressed) {
+            mEncodedBody = body;
+            mEncodedBodyCompressed = compressed;
         }
     }
 }
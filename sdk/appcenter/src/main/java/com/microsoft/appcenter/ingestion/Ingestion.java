@@ -24,7 +24,7 @@ public interface Ingestion extends Closeable {
      * @param appSecret       a unique and secret key used to identify the application.
      * @param installId       install identifier.
      * @param logContainer    payload.
-     * @param serviceCallback the async ServiceCallback to handle successful and failed responses.
+     * @param serviceCallback the async ServiceCallback to handle successful and failed responses, may be called on a background thread.
      * @return the {@link ServiceCall} object
      * @throws IllegalArgumentException thrown if callback is null.
      */
@@ -37,6 +37,13 @@ public interface Ingestion extends Closeable {
      */
     void setLogUrl(String logUrl);
 
+    /**
+     * Get log URL, used to identify the endpoint the logs are sent to.
+     *
+     * @return log URL.
+     */
+    String getLogUrl();
+
     /**
      * Make ingestion active again after closing.
      */
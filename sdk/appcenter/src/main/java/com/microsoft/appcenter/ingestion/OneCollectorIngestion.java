@@ -16,6 +16,7 @@ import com.microsoft.appcenter.http.ServiceCall;
 import com.microsoft.appcenter.http.ServiceCallback;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.SerializedLog;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
 import com.microsoft.appcenter.utils.AppCenterLog;
@@ -25,13 +26,17 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static android.util.Log.VERBOSE;
 import static com.microsoft.appcenter.AppCenter.LOG_TAG;
@@ -86,6 +91,11 @@ public class OneCollectorIngestion implements Ingestion {
     @VisibleForTesting
     static final String UPLOAD_TIME_KEY = "Upload-Time";
 
+    /**
+     * Ticket keys JSON property, used to detect stored payloads that need their model rebuilt for the Tickets header.
+     */
+    private static final String TICKET_KEYS_PROPERTY = "\"ticketKeys\"";
+
     /**
      * Log serializer.
      */
@@ -109,7 +119,7 @@ public class OneCollectorIngestion implements Ingestion {
      */
     public OneCollectorIngestion(@NonNull Context context, @NonNull LogSerializer logSerializer) {
         mLogSerializer = logSerializer;
-        mHttpClient = createHttpClient(context);
+        mHttpClient = createHttpClient(context, true, false);
         mLogUrl = DEFAULT_LOG_URL;
     }
 
@@ -119,8 +129,15 @@ public class OneCollectorIngestion implements Ingestion {
         /* Gather API keys from logs. */
         Map<String, String> headers = new HashMap<>();
         Set<String> apiKeys = new LinkedHashSet<>();
-        for (Log log : logContainer.getLogs()) {
-            apiKeys.addAll(log.getTransmissionTargetTokens());
+        List<SerializedLog> serializedLogs = logContainer.getSerializedLogs();
+        if (serializedLogs != null) {
+            for (SerializedLog serializedLog : serializedLogs) {
+                apiKeys.addAll(serializedLog.getTransmissionTargetTokens());
+            }
+        } else {
+            for (Log log : logContainer.getLogs()) {
+                apiKeys.addAll(log.getTransmissionTargetTokens());
+            }
         }
 
         /* Build the header. String.join with iterable is only API level 26+. */
@@ -135,7 +152,7 @@ public class OneCollectorIngestion implements Ingestion {
 
         /* Gather tokens from logs. */
         JSONObject tickets = new JSONObject();
-        for (Log log : logContainer.getLogs()) {
+        for (Log log : getLogsWithTickets(logContainer)) {
             List<String> ticketKeys = ((CommonSchemaLog) log).getExt().getProtocol().getTicketKeys();
             if (ticketKeys != null) {
                 for (String ticketKey : ticketKeys) {
@@ -177,6 +194,32 @@ public class OneCollectorIngestion implements Ingestion {
         return mHttpClient.callAsync(mLogUrl, METHOD_POST, headers, callTemplate, serviceCallback);
     }
 
+    /**
+     * Get the logs that may reference tickets. Stored payloads are only rebuilt into models
+     * if they contain ticket keys.
+     *
+     * @param logContainer log container.
+     * @return logs to inspect for ticket keys.
+     */
+    private static List<Log> getLogsWithTickets(LogContainer logContainer) {
+        List<SerializedLog> serializedLogs = logContainer.getSerializedLogs();
+        if (serializedLogs == null) {
+            return logContainer.getLogs();
+        }
+        List<Log> logs = new ArrayList<>();
+        for (SerializedLog serializedLog : serializedLogs) {
+            String payload = serializedLog.getPayload();
+            if (payload == null || payload.contains(TICKET_KEYS_PROPERTY)) {
+                try {
+                    logs.add(serializedLog.getLog());
+                } catch (JSONException e) {
+                    AppCenterLog.error(LOG_TAG, "Cannot read ticket keys from stored log", e);
+                }
+            }
+        }
+        return logs;
+    }
+
     /**
      * Update log URL.
      *
@@ -188,6 +231,11 @@ public class OneCollectorIngestion implements Ingestion {
         mLogUrl = logUrl;
     }
 
+    @Override
+    public String getLogUrl() {
+        return mLogUrl;
+    }
+
     @Override
     public void reopen() {
         mHttpClient.reopen();
@@ -201,7 +249,7 @@ public class OneCollectorIngestion implements Ingestion {
     /**
      * Call template implementation for One Collector.
      */
-    private static class IngestionCallTemplate implements HttpClient.CallTemplate {
+    private static class IngestionCallTemplate implements HttpClient.PrioritizedCallTemplate, HttpClient.StreamingCallTemplate, HttpClient.RetryableCallTemplate {
 
         /**
          * Log serializer.
@@ -213,6 +261,21 @@ public class OneCollectorIngestion implements Ingestion {
          */
         private final LogContainer mLogContainer;
 
+        /**
+         * Whether an attempt already streamed the body.
+         */
+        private final AtomicBoolean mBodyStreamed = new AtomicBoolean();
+
+        /**
+         * Body as encoded for the retries.
+         */
+        private volatile byte[] mEncodedBody;
+
+        /**
+         * Whether the encoded body is gzip content.
+         */
+        private volatile boolean mEncodedBodyCompressed;
+
         /**
          * Init.
          */
@@ -224,15 +287,72 @@ public class OneCollectorIngestion implements Ingestion {
         @Override
         public String buildRequestBody() throws JSONException {
 
-            /* Serialize payload. */
-            StringBuilder jsonStream = new StringBuilder();
-            for (Log log : mLogContainer.getLogs()) {
-                jsonStream.append(mLogSerializer.serializeLog(log));
+            /* Same code path as the body written to the connection. */
+            StringWriter writer = new StringWriter();
+            try {
+                writeRequestBody(writer);
+            } catch (IOException e) {
+
+                /* Never happens when writing to a string. */
+                throw new RuntimeException(e);
+            }
+            return writer.toString();
+        }
+
+        @Override
+        public void writeRequestBody(Writer writer) throws JSONException, IOException {
+
+            /* Serialize payload one log at a time. */
+            List<SerializedLog> serializedLogs = mLogContainer.getSerializedLogs();
+            if (serializedLogs != null) {
+
+                /* Splice stored payloads without going through the models. */
+                for (SerializedLog serializedLog : serializedLogs) {
+                    String payload = serializedLog.getPayload();
+                    writer.write(payload != null ? payload : mLogSerializer.serializeLog(serializedLog.getLog()));
+                    writer.write('\n');
+                }
+            } else {
+                for (Log log : mLogContainer.getLogs()) {
+                    writer.write(mLogSerializer.serializeLog(log));
 
-                /* We have to use a different delimiter specific to OneCollector. */
-                jsonStream.append('\n');
+                    /* We have to use a different delimiter specific to OneCollector. */
+                    writer.write('\n');
+                }
             }
-            return jsonStream.toString();
+        }
+
+        @Override
+        public int getPriority() {
+
+            /* Critical logs should not wait for other telemetry. */
+            return mLogContainer.hasCriticalLogs() ? HttpClient.PRIORITY_HIGH : HttpClient.PRIORITY_LOW;
+        }
+
+        @Override
+        public String getRetryKey() {
+            return mLogContainer.getContentKey();
+        }
+
+        @Override
+        public boolean shouldStreamBody() {
+            return mBodyStreamed.compareAndSet(false, true);
+        }
+
+        @Override
+        public byte[] getEncodedBody() {
+            return mEncodedBody;
+        }
+
+        @Override
+        public boolean isEncodedBodyCompressed() {
+            return mEncodedBodyCompressed;
+        }
+
+        @Override
+        public void setEncodedBody(byte[] body, boolean compressed) {
+            mEncodedBody = body;
+            mEncodedBodyCompressed = compressed;
         }
 
         @Override
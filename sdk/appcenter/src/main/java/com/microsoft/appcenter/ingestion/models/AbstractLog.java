@@ -7,14 +7,17 @@ package com.microsoft.appcenter.ingestion.models;
 
 
 import android.support.annotation.VisibleForTesting;
+import android.util.JsonReader;
 
 import com.microsoft.appcenter.ingestion.models.json.JSONDateUtils;
+import com.microsoft.appcenter.ingestion.models.json.JSONStreamUtils;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.Date;
 import java.util.LinkedHashSet;
@@ -191,6 +194,49 @@ public abstract class AbstractLog implements Log {
         }
     }
 
+    /**
+     * Streaming counterpart of {@link #read(JSONObject)}, used by sub classes implementing {@link StreamingModel}.
+     * Such sub classes must read all their own properties this way.
+     *
+     * @param reader reader positioned on the property value.
+     * @param key    property name.
+     * @return true if the value was consumed, false if the property is unknown.
+     * @throws IOException   if the JSON is malformed.
+     * @throws JSONException if the value is invalid.
+     */
+    public boolean readProperty(JsonReader reader, String key) throws IOException, JSONException {
+        if (TYPE.equals(key)) {
+            if (!reader.nextString().equals(getType())) {
+                throw new JSONException("Invalid type");
+            }
+        } else if (TIMESTAMP.equals(key)) {
+            setTimestamp(JSONDateUtils.toDate(reader.nextString()));
+        } else if (SID.equals(key)) {
+            String sid = JSONStreamUtils.readString(reader);
+            setSid(sid != null ? UUID.fromString(sid) : null);
+        } else if (DISTRIBUTION_GROUP_ID.equals(key)) {
+            setDistributionGroupId(JSONStreamUtils.readString(reader));
+        } else if (USER_ID.equals(key)) {
+            setUserId(JSONStreamUtils.readString(reader));
+        } else if (DEVICE.equals(key)) {
+            Device device = new Device();
+            JSONStreamUtils.readModel(reader, device);
+            setDevice(device);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Check properties read by {@link #readProperty(JsonReader, String)}.
+     *
+     * @throws JSONException if a required property is missing.
+     */
+    public void validate() throws JSONException {
+        JSONStreamUtils.checkRequired(getTimestamp(), TIMESTAMP);
+    }
+
     @SuppressWarnings("EqualsReplaceableByObjectsCall")
     @Override
     public boolean equals(Object o) {
@@ -5,12 +5,17 @@
 
 package com.microsoft.appcenter.ingestion.models;
 
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.ingestion.models.json.JSONStreamUtils;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 /**
  * Device characteristic log.
  */
@@ -439,6 +444,62 @@ public class Device extends WrapperSdk {
         setAppNamespace(object.optString(APP_NAMESPACE, null));
     }
 
+    @Override
+    public boolean readProperty(JsonReader reader, String key) throws IOException, JSONException {
+        if (SDK_NAME.equals(key)) {
+            setSdkName(JSONStreamUtils.readString(reader));
+        } else if (SDK_VERSION.equals(key)) {
+            setSdkVersion(JSONStreamUtils.readString(reader));
+        } else if (MODEL.equals(key)) {
+            setModel(JSONStreamUtils.readString(reader));
+        } else if (OEM_NAME.equals(key)) {
+            setOemName(JSONStreamUtils.readString(reader));
+        } else if (OS_NAME.equals(key)) {
+            setOsName(JSONStreamUtils.readString(reader));
+        } else if (OS_VERSION.equals(key)) {
+            setOsVersion(JSONStreamUtils.readString(reader));
+        } else if (OS_BUILD.equals(key)) {
+            setOsBuild(JSONStreamUtils.readString(reader));
+        } else if (OS_API_LEVEL.equals(key)) {
+            setOsApiLevel(JSONStreamUtils.readInteger(reader));
+        } else if (LOCALE.equals(key)) {
+            setLocale(JSONStreamUtils.readString(reader));
+        } else if (TIME_ZONE_OFFSET.equals(key)) {
+            setTimeZoneOffset(JSONStreamUtils.readInteger(reader));
+        } else if (SCREEN_SIZE.equals(key)) {
+            setScreenSize(JSONStreamUtils.readString(reader));
+        } else if (APP_VERSION.equals(key)) {
+            setAppVersion(JSONStreamUtils.readString(reader));
+        } else if (CARRIER_NAME.equals(key)) {
+            setCarrierName(JSONStreamUtils.readString(reader));
+        } else if (CARRIER_COUNTRY.equals(key)) {
+            setCarrierCountry(JSONStreamUtils.readString(reader));
+        } else if (APP_BUILD.equals(key)) {
+            setAppBuild(JSONStreamUtils.readString(reader));
+        } else if (APP_NAMESPACE.equals(key)) {
+            setAppNamespace(JSONStreamUtils.readString(reader));
+        } else {
+            return super.readProperty(reader, key);
+        }
+        return true;
+    }
+
+    @Override
+    public void validate() throws JSONException {
+        super.validate();
+        JSONStreamUtils.checkRequired(getSdkName(), SDK_NAME);
+        JSONStreamUtils.checkRequired(getSdkVersion(), SDK_VERSION);
+        JSONStreamUtils.checkRequired(getModel(), MODEL);
+        JSONStreamUtils.checkRequired(getOemName(), OEM_NAME);
+        JSONStreamUtils.checkRequired(getOsName(), OS_NAME);
+        JSONStreamUtils.checkRequired(getOsVersion(), OS_VERSION);
+        JSONStreamUtils.checkRequired(getLocale(), LOCALE);
+        JSONStreamUtils.checkRequired(getTimeZoneOffset(), TIME_ZONE_OFFSET);
+        JSONStreamUtils.checkRequired(getScreenSize(), SCREEN_SIZE);
+        JSONStreamUtils.checkRequired(getAppVersion(), APP_VERSION);
+        JSONStreamUtils.checkRequired(getAppBuild(), APP_BUILD);
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
@@ -5,6 +5,10 @@
 
 package com.microsoft.appcenter.ingestion.models;
 
+import com.microsoft.appcenter.Flags;
+
+import org.json.JSONException;
+
 import java.util.List;
 
 /**
@@ -17,6 +21,11 @@ public class LogContainer {
      */
     private List<Log> logs;
 
+    /**
+     * The list of logs as persisted, used instead of {@link #logs} when sending stored payloads as is.
+     */
+    private List<SerializedLog> serializedLogs;
+
     /**
      * Get the logs value.
      *
@@ -35,6 +44,88 @@ public class LogContainer {
         this.logs = logs;
     }
 
+    /**
+     * Get the serializedLogs value.
+     *
+     * @return the serializedLogs value
+     */
+    public List<SerializedLog> getSerializedLogs() {
+        return this.serializedLogs;
+    }
+
+    /**
+     * Set the serializedLogs value.
+     *
+     * @param serializedLogs the serializedLogs value to set
+     */
+    public void setSerializedLogs(List<SerializedLog> serializedLogs) {
+        this.serializedLogs = serializedLogs;
+    }
+
+    /**
+     * Check whether any stored log of this container was persisted as {@link Flags#CRITICAL}.
+     *
+     * @return true if the container has a critical log, false otherwise.
+     */
+    public boolean hasCriticalLogs() {
+        if (serializedLogs != null) {
+            for (SerializedLog serializedLog : serializedLogs) {
+                if (serializedLog.getPriority() == Flags.CRITICAL) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get a key identifying the logs of this container, the same logs sent again after a restart get the same key.
+     *
+     * @return content key.
+     */
+    public String getContentKey() {
+        int count = 0;
+        int hash = 1;
+        if (serializedLogs != null) {
+            for (SerializedLog serializedLog : serializedLogs) {
+                String payload = serializedLog.getPayload();
+                int logHash;
+                if (payload != null) {
+                    logHash = payload.hashCode();
+                } else {
+                    try {
+                        logHash = getLogHash(serializedLog.getLog());
+                    } catch (JSONException e) {
+
+                        /* Cannot happen without payload: the model is already there. */
+                        logHash = 0;
+                    }
+                }
+                hash = 31 * hash + logHash;
+                count++;
+            }
+        } else if (logs != null) {
+            for (Log log : logs) {
+                hash = 31 * hash + getLogHash(log);
+                count++;
+            }
+        }
+        return count + "-" + Integer.toHexString(hash);
+    }
+
+    /**
+     * Hash the fields of a log model that identify it across restarts.
+     *
+     * @param log log.
+     * @return hash.
+     */
+    private static int getLogHash(Log log) {
+        int result = log.getType() != null ? log.getType().hashCode() : 0;
+        result = 31 * result + (log.getTimestamp() != null ? log.getTimestamp().hashCode() : 0);
+        result = 31 * result + (log.getSid() != null ? log.getSid().hashCode() : 0);
+        return result;
+    }
+
     @SuppressWarnings("EqualsReplaceableByObjectsCall")
     @Override
     public boolean equals(Object o) {
@@ -45,11 +136,16 @@ public class LogContainer {
             return false;
         }
         LogContainer container = (LogContainer) o;
-        return logs != null ? logs.equals(container.logs) : container.logs == null;
+        if (logs != null ? !logs.equals(container.logs) : container.logs != null) {
+            return false;
+        }
+        return serializedLogs != null ? serializedLogs.equals(container.serializedLogs) : container.serializedLogs == null;
     }
 
     @Override
     public int hashCode() {
-        return logs != null ? logs.hashCode() : 0;
+        int result = logs != null ? logs.hashCode() : 0;
+        result = 31 * result + (serializedLogs != null ? serializedLogs.hashCode() : 0);
+        return result;
     }
 }
@@ -5,12 +5,16 @@
 
 package com.microsoft.appcenter.ingestion.models;
 
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.ingestion.models.json.JSONStreamUtils;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.Map;
 
 /**
@@ -49,6 +53,15 @@ public abstract class LogWithProperties extends AbstractLog {
         setProperties(JSONUtils.readMap(object, PROPERTIES));
     }
 
+    @Override
+    public boolean readProperty(JsonReader reader, String key) throws IOException, JSONException {
+        if (PROPERTIES.equals(key)) {
+            setProperties(JSONStreamUtils.readMap(reader));
+            return true;
+        }
+        return super.readProperty(reader, key);
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.ingestion.models;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+
+import org.json.JSONException;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * A log as it was persisted: the serialized JSON payload and the metadata needed to send it.
+ * The full {@link Log} model is only rebuilt on demand.
+ */
+public class SerializedLog {
+
+    /**
+     * Log JSON payload, null if only the model is known.
+     */
+    private final String payload;
+
+    /**
+     * Log type.
+     */
+    private final String type;
+
+    /**
+     * Transmission target tokens this log should be sent to.
+     */
+    private final Set<String> transmissionTargetTokens;
+
+    /**
+     * Persistence priority flag, {@link Flags#NORMAL} or {@link Flags#CRITICAL}.
+     */
+    private final int priority;
+
+    /**
+     * Serializer used to rebuild the model from the payload.
+     */
+    private final LogSerializer logSerializer;
+
+    /**
+     * Log model, rebuilt lazily when payload is known.
+     */
+    private Log log;
+
+    /**
+     * Init with a stored payload.
+     *
+     * @param payload       log JSON payload.
+     * @param type          log type.
+     * @param targetToken   target token the log should be sent to or null.
+     * @param logSerializer serializer used to rebuild the model on demand.
+     */
+    public SerializedLog(@NonNull String payload, String type, @Nullable String targetToken, @NonNull LogSerializer logSerializer) {
+        this(payload, type, targetToken, Flags.NORMAL, logSerializer);
+    }
+
+    /**
+     * Init with a stored payload and its persistence priority.
+     *
+     * @param payload       log JSON payload.
+     * @param type          log type.
+     * @param targetToken   target token the log should be sent to or null.
+     * @param priority      persistence priority flag.
+     * @param logSerializer serializer used to rebuild the model on demand.
+     */
+    public SerializedLog(@NonNull String payload, String type, @Nullable String targetToken, int priority, @NonNull LogSerializer logSerializer) {
+        this.payload = payload;
+        this.type = type;
+        this.transmissionTargetTokens = targetToken != null ? Collections.singleton(targetToken) : Collections.<String>emptySet();
+        this.priority = priority;
+        this.logSerializer = logSerializer;
+    }
+
+    /**
+     * Init with an already built log model.
+     *
+     * @param log log model.
+     */
+    public SerializedLog(@NonNull Log log) {
+        this.payload = null;
+        this.type = log.getType();
+        this.transmissionTargetTokens = log.getTransmissionTargetTokens();
+        this.priority = Flags.NORMAL;
+        this.logSerializer = null;
+        this.log = log;
+    }
+
+    /**
+     * Get the payload value.
+     *
+     * @return the JSON payload or null if only the model is known.
+     */
+    @Nullable
+    public String getPayload() {
+        return payload;
+    }
+
+    /**
+     * Get the type value.
+     *
+     * @return the type value.
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Get the transmission target tokens.
+     *
+     * @return transmission target tokens that this log should be sent to.
+     */
+    @NonNull
+    public Set<String> getTransmissionTargetTokens() {
+        return transmissionTargetTokens;
+    }
+
+    /**
+     * Get the persistence priority.
+     *
+     * @return {@link Flags#NORMAL} or {@link Flags#CRITICAL}.
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Get the log model, deserializing the payload the first time it's called.
+     *
+     * @return the log model.
+     * @throws JSONException if the payload cannot be deserialized.
+     */
+    @NonNull
+    public synchronized Log getLog() throws JSONException {
+        if (log == null) {
+            log = logSerializer.deserializeLog(payload, type);
+            for (String targetToken : transmissionTargetTokens) {
+                log.addTransmissionTarget(targetToken);
+            }
+        }
+        return log;
+    }
+}
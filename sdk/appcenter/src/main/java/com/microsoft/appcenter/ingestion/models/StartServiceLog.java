@@ -5,19 +5,23 @@
 
 package com.microsoft.appcenter.ingestion.models;
 
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.ingestion.models.json.JSONStreamUtils;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
  * Describe a AppCenter.start call from the SDK.
  */
 @SuppressWarnings("RedundantSuppression")
-public class StartServiceLog extends AbstractLog {
+public class StartServiceLog extends AbstractLog implements StreamingModel {
 
     /**
      * Log type.
@@ -60,6 +64,15 @@ public class StartServiceLog extends AbstractLog {
         setServices(JSONUtils.readStringArray(object, SERVICES));
     }
 
+    @Override
+    public boolean readProperty(JsonReader reader, String key) throws IOException, JSONException {
+        if (SERVICES.equals(key)) {
+            setServices(JSONStreamUtils.readStringArray(reader));
+            return true;
+        }
+        return super.readProperty(reader, key);
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
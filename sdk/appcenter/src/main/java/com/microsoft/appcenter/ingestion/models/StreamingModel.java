@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.ingestion.models;
+
+import android.util.JsonReader;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+
+/**
+ * Model that can be read from a streaming JSON reader without building a {@link org.json.JSONObject} first.
+ * {@link #read(org.json.JSONObject)} remains the reference implementation and is used as a fallback.
+ */
+public interface StreamingModel extends Model {
+
+    /**
+     * Read a property of this model. Sub classes handle their own properties then delegate to the parent class.
+     *
+     * @param reader reader positioned on the property value.
+     * @param key    property name.
+     * @return true if the value was consumed, false if the property is unknown and must be skipped.
+     * @throws IOException   if the JSON is malformed.
+     * @throws JSONException if the value is invalid.
+     */
+    boolean readProperty(JsonReader reader, String key) throws IOException, JSONException;
+
+    /**
+     * Called after all properties are read.
+     *
+     * @throws JSONException if a property required by {@link #read(org.json.JSONObject)} is missing.
+     */
+    void validate() throws JSONException;
+}
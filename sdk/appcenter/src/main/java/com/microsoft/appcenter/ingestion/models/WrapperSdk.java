@@ -5,13 +5,18 @@
 
 package com.microsoft.appcenter.ingestion.models;
 
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.ingestion.models.json.JSONStreamUtils;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
-public class WrapperSdk implements Model {
+import java.io.IOException;
+
+public class WrapperSdk implements StreamingModel {
 
     private static final String WRAPPER_SDK_VERSION = "wrapperSdkVersion";
 
@@ -178,6 +183,30 @@ public class WrapperSdk implements Model {
         setLiveUpdatePackageHash(object.optString(LIVE_UPDATE_PACKAGE_HASH, null));
     }
 
+    @Override
+    public boolean readProperty(JsonReader reader, String key) throws IOException, JSONException {
+        if (WRAPPER_SDK_VERSION.equals(key)) {
+            setWrapperSdkVersion(JSONStreamUtils.readString(reader));
+        } else if (WRAPPER_SDK_NAME.equals(key)) {
+            setWrapperSdkName(JSONStreamUtils.readString(reader));
+        } else if (WRAPPER_RUNTIME_VERSION.equals(key)) {
+            setWrapperRuntimeVersion(JSONStreamUtils.readString(reader));
+        } else if (LIVE_UPDATE_RELEASE_LABEL.equals(key)) {
+            setLiveUpdateReleaseLabel(JSONStreamUtils.readString(reader));
+        } else if (LIVE_UPDATE_DEPLOYMENT_KEY.equals(key)) {
+            setLiveUpdateDeploymentKey(JSONStreamUtils.readString(reader));
+        } else if (LIVE_UPDATE_PACKAGE_HASH.equals(key)) {
+            setLiveUpdatePackageHash(JSONStreamUtils.readString(reader));
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void validate() throws JSONException {
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         JSONUtils.write(writer, WRAPPER_SDK_VERSION, getWrapperSdkVersion());
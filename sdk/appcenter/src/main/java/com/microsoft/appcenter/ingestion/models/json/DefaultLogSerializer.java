@@ -6,9 +6,13 @@
 package com.microsoft.appcenter.ingestion.models.json;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.JsonReader;
 
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.SerializedLog;
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
 import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
 
 import org.json.JSONArray;
@@ -16,6 +20,9 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -58,9 +65,74 @@ public class DefaultLogSerializer implements LogSerializer {
         return writeLog(new JSONStringer(), log).toString();
     }
 
+    /**
+     * Read a log with a streaming reader, without building a {@link JSONObject} for the whole log.
+     *
+     * @param json log JSON.
+     * @param type log type if known, otherwise it must be the first property.
+     * @return log, or null if the log model does not support streaming or the JSON could not be
+     * read this way. The {@link JSONObject} path then gives the result, including error reporting.
+     */
+    @Nullable
+    private Log streamLog(@NonNull String json, String type) {
+        JsonReader reader = new JsonReader(new StringReader(json));
+        try {
+            reader.beginObject();
+            boolean typeRead = false;
+            if (type == null) {
+                type = readType(reader);
+                typeRead = true;
+            }
+            LogFactory logFactory = type != null ? mLogFactories.get(type) : null;
+            if (logFactory == null) {
+                return null;
+            }
+            Log log = logFactory.create();
+            if (!(log instanceof StreamingModel) || !type.equals(log.getType())) {
+                return null;
+            }
+
+            /* App Center logs are written with their type first, and reading them requires it. */
+            if (!typeRead && !(log instanceof CommonSchemaLog) && !type.equals(readType(reader))) {
+                return null;
+            }
+            StreamingModel streamingModel = (StreamingModel) log;
+            JSONStreamUtils.readProperties(reader, streamingModel);
+            reader.endObject();
+            streamingModel.validate();
+            return log;
+        } catch (IOException | JSONException | IllegalStateException | IllegalArgumentException e) {
+            return null;
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Read the first property of a log if it's the type.
+     *
+     * @param reader reader positioned after the beginning of the log object.
+     * @return log type, or null if the first property is not the type.
+     * @throws IOException if the JSON is malformed.
+     */
+    @Nullable
+    private static String readType(JsonReader reader) throws IOException {
+        if (reader.hasNext() && TYPE.equals(reader.nextName())) {
+            return reader.nextString();
+        }
+        return null;
+    }
+
     @NonNull
     @Override
     public Log deserializeLog(@NonNull String json, String type) throws JSONException {
+        Log log = streamLog(json, type);
+        if (log != null) {
+            return log;
+        }
         return readLog(new JSONObject(json), type);
     }
 
@@ -73,6 +145,12 @@ public class DefaultLogSerializer implements LogSerializer {
     @Override
     public String serializeContainer(@NonNull LogContainer logContainer) throws JSONException {
 
+        /* Splice stored payloads as is if the container has them. */
+        List<SerializedLog> serializedLogs = logContainer.getSerializedLogs();
+        if (serializedLogs != null) {
+            return spliceContainer(serializedLogs);
+        }
+
         /* Init JSON serializer. */
         JSONStringer writer = new JSONStringer();
 
@@ -87,6 +165,61 @@ public class DefaultLogSerializer implements LogSerializer {
         return writer.toString();
     }
 
+    @Override
+    public void serializeContainer(@NonNull LogContainer logContainer, @NonNull Writer writer) throws JSONException, IOException {
+
+        /*
+         * Write logs one by one so that only one serialized log is in memory at a time,
+         * this produces the same output as the string version.
+         */
+        writer.write("{\"" + LOGS + "\":[");
+        List<SerializedLog> serializedLogs = logContainer.getSerializedLogs();
+        if (serializedLogs != null) {
+            for (int i = 0; i < serializedLogs.size(); i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                SerializedLog serializedLog = serializedLogs.get(i);
+                String payload = serializedLog.getPayload();
+                writer.write(payload != null ? payload : serializeLog(serializedLog.getLog()));
+            }
+        } else {
+            List<Log> logs = logContainer.getLogs();
+            for (int i = 0; i < logs.size(); i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(serializeLog(logs.get(i)));
+            }
+        }
+        writer.write("]}");
+    }
+
+    /**
+     * Build the container JSON by concatenating already serialized logs, this produces the same
+     * output as serializing the models.
+     */
+    @NonNull
+    private String spliceContainer(@NonNull List<SerializedLog> serializedLogs) throws JSONException {
+        int capacity = LOGS.length() + 8;
+        for (SerializedLog serializedLog : serializedLogs) {
+            String payload = serializedLog.getPayload();
+            capacity += payload != null ? payload.length() + 1 : 0;
+        }
+        StringBuilder json = new StringBuilder(capacity);
+        json.append("{\"").append(LOGS).append("\":[");
+        for (int i = 0; i < serializedLogs.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            SerializedLog serializedLog = serializedLogs.get(i);
+            String payload = serializedLog.getPayload();
+            json.append(payload != null ? payload : serializeLog(serializedLog.getLog()));
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
     @NonNull
     @Override
     public LogContainer deserializeContainer(@NonNull String json, String type) throws JSONException {
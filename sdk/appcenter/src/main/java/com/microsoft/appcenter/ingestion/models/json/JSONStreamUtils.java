@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.ingestion.models.json;
+
+import android.support.annotation.VisibleForTesting;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.microsoft.appcenter.ingestion.models.Model;
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counterpart of {@link JSONUtils} reading values from a {@link JsonReader}.
+ * Readers return null on JSON null, like the optional readers of {@link JSONUtils}.
+ */
+public class JSONStreamUtils {
+
+    @VisibleForTesting
+    JSONStreamUtils() {
+    }
+
+    /**
+     * Read a JSON object into a model. Models that don't implement {@link StreamingModel} are read
+     * from a {@link JSONObject} built for this sub tree only.
+     */
+    public static void readModel(JsonReader reader, Model model) throws IOException, JSONException {
+        if (model instanceof StreamingModel) {
+            StreamingModel streamingModel = (StreamingModel) model;
+            reader.beginObject();
+            readProperties(reader, streamingModel);
+            reader.endObject();
+            streamingModel.validate();
+        } else {
+            model.read(readObject(reader));
+        }
+    }
+
+    /**
+     * Read the remaining properties of the current object, without consuming the end of object.
+     */
+    public static void readProperties(JsonReader reader, StreamingModel model) throws IOException, JSONException {
+        while (reader.hasNext()) {
+            if (!model.readProperty(reader, reader.nextName())) {
+                reader.skipValue();
+            }
+        }
+    }
+
+    public static String readString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    public static Integer readInteger(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextInt();
+    }
+
+    public static Long readLong(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextLong();
+    }
+
+    public static Double readDouble(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextDouble();
+    }
+
+    public static Boolean readBoolean(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextBoolean();
+    }
+
+    public static Map<String, String> readMap(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        Map<String, String> properties = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            properties.put(reader.nextName(), reader.nextString());
+        }
+        reader.endObject();
+        return properties;
+    }
+
+    public static <M extends Model> List<M> readArray(JsonReader reader, ModelFactory<M> factory) throws IOException, JSONException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        List<M> array = factory.createList(0);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            M model = factory.create();
+            readModel(reader, model);
+            array.add(model);
+        }
+        reader.endArray();
+        return array;
+    }
+
+    public static List<String> readStringArray(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        List<String> array = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            array.add(reader.nextString());
+        }
+        reader.endArray();
+        return array;
+    }
+
+    /**
+     * Read a JSON object as a {@link JSONObject}, for data that has no model.
+     */
+    public static JSONObject readObject(JsonReader reader) throws IOException, JSONException {
+        JSONObject object = new JSONObject();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            object.put(reader.nextName(), readValue(reader));
+        }
+        reader.endObject();
+        return object;
+    }
+
+    private static JSONArray readJSONArray(JsonReader reader) throws IOException, JSONException {
+        JSONArray array = new JSONArray();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            array.put(readValue(reader));
+        }
+        reader.endArray();
+        return array;
+    }
+
+    /**
+     * Read any value with the same types as {@link JSONObject} parsing would produce.
+     */
+    private static Object readValue(JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                return readObject(reader);
+
+            case BEGIN_ARRAY:
+                return readJSONArray(reader);
+
+            case BOOLEAN:
+                return reader.nextBoolean();
+
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+
+            case NUMBER:
+                return parseNumber(reader.nextString());
+
+            default:
+                return reader.nextString();
+        }
+    }
+
+    private static Object parseNumber(String number) {
+        if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+            try {
+                long longValue = Long.parseLong(number);
+                if (longValue <= Integer.MAX_VALUE && longValue >= Integer.MIN_VALUE) {
+                    return (int) longValue;
+                }
+                return longValue;
+            } catch (NumberFormatException ignored) {
+
+                /* Too large for a long, use a double. */
+            }
+        }
+        return Double.valueOf(number);
+    }
+
+    /**
+     * Fail like {@link JSONObject#getString(String)} and similar getters when a required property is missing.
+     */
+    public static void checkRequired(Object value, String key) throws JSONException {
+        if (value == null) {
+            throw new JSONException("No value for " + key);
+        }
+    }
+}
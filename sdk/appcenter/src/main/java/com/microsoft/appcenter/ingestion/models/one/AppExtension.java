@@ -5,17 +5,22 @@
 
 package com.microsoft.appcenter.ingestion.models.one;
 
-import com.microsoft.appcenter.ingestion.models.Model;
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
+import com.microsoft.appcenter.ingestion.models.json.JSONStreamUtils;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 /**
  * This is the application extension. It contains data specified by the application.
  */
-public class AppExtension implements Model {
+public class AppExtension implements StreamingModel {
 
     /**
      * Id property.
@@ -167,6 +172,28 @@ public class AppExtension implements Model {
         setUserId(object.optString(USER_ID, null));
     }
 
+    @Override
+    public boolean readProperty(JsonReader reader, String key) throws IOException, JSONException {
+        if (ID.equals(key)) {
+            setId(JSONStreamUtils.readString(reader));
+        } else if (VER.equals(key)) {
+            setVer(JSONStreamUtils.readString(reader));
+        } else if (NAME.equals(key)) {
+            setName(JSONStreamUtils.readString(reader));
+        } else if (LOCALE.equals(key)) {
+            setLocale(JSONStreamUtils.readString(reader));
+        } else if (USER_ID.equals(key)) {
+            setUserId(JSONStreamUtils.readString(reader));
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void validate() throws JSONException {
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         JSONUtils.write(writer, ID, getId());
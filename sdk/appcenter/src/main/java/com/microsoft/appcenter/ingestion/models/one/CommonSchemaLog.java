@@ -5,19 +5,25 @@
 
 package com.microsoft.appcenter.ingestion.models.one;
 
+import android.util.JsonReader;
+
 import com.microsoft.appcenter.ingestion.models.AbstractLog;
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
 import com.microsoft.appcenter.ingestion.models.json.JSONDateUtils;
+import com.microsoft.appcenter.ingestion.models.json.JSONStreamUtils;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 /**
  * Common schema has 1 log type with extensions, everything is called an event.
  * Part B can be used in the future for domain specific typing (like reflecting AppCenter log type).
  */
-public abstract class CommonSchemaLog extends AbstractLog {
+public abstract class CommonSchemaLog extends AbstractLog implements StreamingModel {
 
     /**
      * Common schema version property.
@@ -287,6 +293,47 @@ public abstract class CommonSchemaLog extends AbstractLog {
         }
     }
 
+    @Override
+    public boolean readProperty(JsonReader reader, String key) throws IOException, JSONException {
+
+        /* Override abstract log properties since it's Common Schema and not App Center schema. */
+        if (VER.equals(key)) {
+            setVer(reader.nextString());
+        } else if (NAME.equals(key)) {
+            setName(reader.nextString());
+        } else if (TIME.equals(key)) {
+            setTimestamp(JSONDateUtils.toDate(reader.nextString()));
+        } else if (POP_SAMPLE.equals(key)) {
+            setPopSample(JSONStreamUtils.readDouble(reader));
+        } else if (IKEY.equals(key)) {
+            setIKey(JSONStreamUtils.readString(reader));
+        } else if (FLAGS.equals(key)) {
+            setFlags(JSONStreamUtils.readLong(reader));
+        } else if (CV.equals(key)) {
+            setCV(JSONStreamUtils.readString(reader));
+        } else if (EXT.equals(key)) {
+            Extensions extensions = new Extensions();
+            JSONStreamUtils.readModel(reader, extensions);
+            setExt(extensions);
+        } else if (DATA.equals(key)) {
+
+            /* Parts B&C have no fixed schema, they are read as a JSON object. */
+            Data data = new Data();
+            JSONStreamUtils.readModel(reader, data);
+            setData(data);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void validate() throws JSONException {
+        JSONStreamUtils.checkRequired(getVer(), VER);
+        JSONStreamUtils.checkRequired(getName(), NAME);
+        JSONStreamUtils.checkRequired(getTimestamp(), TIME);
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
 
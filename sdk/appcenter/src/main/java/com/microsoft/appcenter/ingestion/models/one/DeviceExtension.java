@@ -5,17 +5,22 @@
 
 package com.microsoft.appcenter.ingestion.models.one;
 
-import com.microsoft.appcenter.ingestion.models.Model;
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
+import com.microsoft.appcenter.ingestion.models.json.JSONStreamUtils;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 /**
  * The "device" extension tracks common device elements that are not available in the core envelope.
  */
-public class DeviceExtension implements Model {
+public class DeviceExtension implements StreamingModel {
 
     /**
      * Local ID property.
@@ -50,6 +55,20 @@ public class DeviceExtension implements Model {
         setLocalId(object.optString(LOCAL_ID, null));
     }
 
+    @Override
+    public boolean readProperty(JsonReader reader, String key) throws IOException, JSONException {
+        if (LOCAL_ID.equals(key)) {
+            setLocalId(JSONStreamUtils.readString(reader));
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void validate() throws JSONException {
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         JSONUtils.write(writer, LOCAL_ID, getLocalId());
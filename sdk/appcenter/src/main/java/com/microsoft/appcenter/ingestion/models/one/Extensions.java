@@ -5,16 +5,21 @@
 
 package com.microsoft.appcenter.ingestion.models.one;
 
-import com.microsoft.appcenter.ingestion.models.Model;
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
+import com.microsoft.appcenter.ingestion.models.json.JSONStreamUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 /**
  * Common Schema Part A extensions.
  */
-public class Extensions implements Model {
+public class Extensions implements StreamingModel {
 
     /**
      * Metadata extension.
@@ -337,6 +342,54 @@ public class Extensions implements Model {
         }
     }
 
+    @Override
+    public boolean readProperty(JsonReader reader, String key) throws IOException, JSONException {
+        if (METADATA.equals(key)) {
+            MetadataExtension metadata = new MetadataExtension();
+            JSONStreamUtils.readModel(reader, metadata);
+            setMetadata(metadata);
+        } else if (PROTOCOL.equals(key)) {
+            ProtocolExtension protocol = new ProtocolExtension();
+            JSONStreamUtils.readModel(reader, protocol);
+            setProtocol(protocol);
+        } else if (USER.equals(key)) {
+            UserExtension user = new UserExtension();
+            JSONStreamUtils.readModel(reader, user);
+            setUser(user);
+        } else if (DEVICE.equals(key)) {
+            DeviceExtension device = new DeviceExtension();
+            JSONStreamUtils.readModel(reader, device);
+            setDevice(device);
+        } else if (OS.equals(key)) {
+            OsExtension os = new OsExtension();
+            JSONStreamUtils.readModel(reader, os);
+            setOs(os);
+        } else if (APP.equals(key)) {
+            AppExtension app = new AppExtension();
+            JSONStreamUtils.readModel(reader, app);
+            setApp(app);
+        } else if (NET.equals(key)) {
+            NetExtension net = new NetExtension();
+            JSONStreamUtils.readModel(reader, net);
+            setNet(net);
+        } else if (SDK.equals(key)) {
+            SdkExtension sdk = new SdkExtension();
+            JSONStreamUtils.readModel(reader, sdk);
+            setSdk(sdk);
+        } else if (LOC.equals(key)) {
+            LocExtension loc = new LocExtension();
+            JSONStreamUtils.readModel(reader, loc);
+            setLoc(loc);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void validate() throws JSONException {
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
 
@@ -5,17 +5,22 @@
 
 package com.microsoft.appcenter.ingestion.models.one;
 
-import com.microsoft.appcenter.ingestion.models.Model;
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
+import com.microsoft.appcenter.ingestion.models.json.JSONStreamUtils;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 /**
  * Describes the location from which the event was logged.
  */
-public class LocExtension implements Model {
+public class LocExtension implements StreamingModel {
 
     /**
      * Time zone property.
@@ -50,6 +55,20 @@ public class LocExtension implements Model {
         setTz(object.optString(TZ, null));
     }
 
+    @Override
+    public boolean readProperty(JsonReader reader, String key) throws IOException, JSONException {
+        if (TZ.equals(key)) {
+            setTz(JSONStreamUtils.readString(reader));
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void validate() throws JSONException {
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         JSONUtils.write(writer, TZ, getTz());
@@ -5,17 +5,22 @@
 
 package com.microsoft.appcenter.ingestion.models.one;
 
-import com.microsoft.appcenter.ingestion.models.Model;
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
+import com.microsoft.appcenter.ingestion.models.json.JSONStreamUtils;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 /**
  * The "os" extension tracks common os elements that are not available in the core envelope.
  */
-public class OsExtension implements Model {
+public class OsExtension implements StreamingModel {
 
     /**
      * Name property.
@@ -79,6 +84,22 @@ public class OsExtension implements Model {
         setVer(object.optString(VER, null));
     }
 
+    @Override
+    public boolean readProperty(JsonReader reader, String key) throws IOException, JSONException {
+        if (NAME.equals(key)) {
+            setName(JSONStreamUtils.readString(reader));
+        } else if (VER.equals(key)) {
+            setVer(JSONStreamUtils.readString(reader));
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void validate() throws JSONException {
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         JSONUtils.write(writer, NAME, getName());
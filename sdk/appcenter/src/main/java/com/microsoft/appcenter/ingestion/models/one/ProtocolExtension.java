@@ -5,19 +5,24 @@
 
 package com.microsoft.appcenter.ingestion.models.one;
 
+import android.util.JsonReader;
+
 import com.microsoft.appcenter.ingestion.models.Model;
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
+import com.microsoft.appcenter.ingestion.models.json.JSONStreamUtils;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
  * Extension for device specific information.
  */
-public class ProtocolExtension implements Model {
+public class ProtocolExtension implements StreamingModel {
 
     /**
      * TicketKeys property.
@@ -110,6 +115,24 @@ public class ProtocolExtension implements Model {
         setDevModel(object.optString(DEV_MODEL, null));
     }
 
+    @Override
+    public boolean readProperty(JsonReader reader, String key) throws IOException, JSONException {
+        if (TICKET_KEYS.equals(key)) {
+            setTicketKeys(JSONStreamUtils.readStringArray(reader));
+        } else if (DEV_MAKE.equals(key)) {
+            setDevMake(JSONStreamUtils.readString(reader));
+        } else if (DEV_MODEL.equals(key)) {
+            setDevModel(JSONStreamUtils.readString(reader));
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void validate() throws JSONException {
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         JSONUtils.writeStringArray(writer, TICKET_KEYS, getTicketKeys());
@@ -5,20 +5,24 @@
 
 package com.microsoft.appcenter.ingestion.models.one;
 
-import com.microsoft.appcenter.ingestion.models.Model;
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
+import com.microsoft.appcenter.ingestion.models.json.JSONStreamUtils;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.UUID;
 
 /**
  * The SDK extension is used by platform specific library to record field that are specifically
  * required for a specific SDK.
  */
-public class SdkExtension implements Model {
+public class SdkExtension implements StreamingModel {
 
     /**
      * Library version property.
@@ -144,6 +148,27 @@ public class SdkExtension implements Model {
         }
     }
 
+    @Override
+    public boolean readProperty(JsonReader reader, String key) throws IOException, JSONException {
+        if (LIB_VER.equals(key)) {
+            setLibVer(JSONStreamUtils.readString(reader));
+        } else if (EPOCH.equals(key)) {
+            setEpoch(JSONStreamUtils.readString(reader));
+        } else if (SEQ.equals(key)) {
+            setSeq(JSONStreamUtils.readLong(reader));
+        } else if (INSTALL_ID.equals(key)) {
+            String installId = JSONStreamUtils.readString(reader);
+            setInstallId(installId != null ? UUID.fromString(installId) : null);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void validate() throws JSONException {
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         JSONUtils.write(writer, LIB_VER, getLibVer());
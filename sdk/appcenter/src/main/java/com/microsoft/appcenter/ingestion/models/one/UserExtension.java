@@ -5,17 +5,22 @@
 
 package com.microsoft.appcenter.ingestion.models.one;
 
-import com.microsoft.appcenter.ingestion.models.Model;
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
+import com.microsoft.appcenter.ingestion.models.json.JSONStreamUtils;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 /**
  * The "user" extension tracks common user elements that are not available in the core envelope.
  */
-public class UserExtension implements Model {
+public class UserExtension implements StreamingModel {
 
     /**
      * LocalId property.
@@ -81,6 +86,22 @@ public class UserExtension implements Model {
         setLocale(object.optString(LOCALE, null));
     }
 
+    @Override
+    public boolean readProperty(JsonReader reader, String key) throws IOException, JSONException {
+        if (LOCAL_ID.equals(key)) {
+            setLocalId(JSONStreamUtils.readString(reader));
+        } else if (LOCALE.equals(key)) {
+            setLocale(JSONStreamUtils.readString(reader));
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void validate() throws JSONException {
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         JSONUtils.write(writer, LOCAL_ID, getLocalId());
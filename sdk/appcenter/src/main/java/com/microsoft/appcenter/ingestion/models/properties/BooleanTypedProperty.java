@@ -5,13 +5,19 @@
 
 package com.microsoft.appcenter.ingestion.models.properties;
 
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 import static com.microsoft.appcenter.ingestion.models.CommonProperties.VALUE;
 
-public class BooleanTypedProperty extends TypedProperty {
+public class BooleanTypedProperty extends TypedProperty implements StreamingModel {
 
     public static final String TYPE = "boolean";
 
@@ -49,6 +55,15 @@ public class BooleanTypedProperty extends TypedProperty {
         setValue(object.getBoolean(VALUE));
     }
 
+    @Override
+    public boolean readProperty(JsonReader reader, String key) throws IOException, JSONException {
+        if (VALUE.equals(key)) {
+            setValue(reader.nextBoolean());
+            return true;
+        }
+        return super.readProperty(reader, key);
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
@@ -5,17 +5,22 @@
 
 package com.microsoft.appcenter.ingestion.models.properties;
 
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
 import com.microsoft.appcenter.ingestion.models.json.JSONDateUtils;
+import com.microsoft.appcenter.ingestion.models.json.JSONStreamUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.Date;
 
 import static com.microsoft.appcenter.ingestion.models.CommonProperties.VALUE;
 
-public class DateTimeTypedProperty extends TypedProperty {
+public class DateTimeTypedProperty extends TypedProperty implements StreamingModel {
 
     public static final String TYPE = "dateTime";
 
@@ -53,6 +58,21 @@ public class DateTimeTypedProperty extends TypedProperty {
         setValue(JSONDateUtils.toDate(object.getString(VALUE)));
     }
 
+    @Override
+    public boolean readProperty(JsonReader reader, String key) throws IOException, JSONException {
+        if (VALUE.equals(key)) {
+            setValue(JSONDateUtils.toDate(reader.nextString()));
+            return true;
+        }
+        return super.readProperty(reader, key);
+    }
+
+    @Override
+    public void validate() throws JSONException {
+        super.validate();
+        JSONStreamUtils.checkRequired(getValue(), VALUE);
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
@@ -5,13 +5,20 @@
 
 package com.microsoft.appcenter.ingestion.models.properties;
 
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
+import com.microsoft.appcenter.ingestion.models.json.JSONStreamUtils;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 import static com.microsoft.appcenter.ingestion.models.CommonProperties.VALUE;
 
-public class StringTypedProperty extends TypedProperty {
+public class StringTypedProperty extends TypedProperty implements StreamingModel {
 
     public static final String TYPE = "string";
 
@@ -49,6 +56,21 @@ public class StringTypedProperty extends TypedProperty {
         setValue(object.getString(VALUE));
     }
 
+    @Override
+    public boolean readProperty(JsonReader reader, String key) throws IOException, JSONException {
+        if (VALUE.equals(key)) {
+            setValue(reader.nextString());
+            return true;
+        }
+        return super.readProperty(reader, key);
+    }
+
+    @Override
+    public void validate() throws JSONException {
+        super.validate();
+        JSONStreamUtils.checkRequired(getValue(), VALUE);
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
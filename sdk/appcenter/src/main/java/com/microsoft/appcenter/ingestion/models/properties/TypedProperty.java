@@ -5,12 +5,18 @@
 
 package com.microsoft.appcenter.ingestion.models.properties;
 
+import android.util.JsonReader;
+
 import com.microsoft.appcenter.ingestion.models.Model;
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
+import com.microsoft.appcenter.ingestion.models.json.JSONStreamUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 import static com.microsoft.appcenter.ingestion.models.CommonProperties.NAME;
 import static com.microsoft.appcenter.ingestion.models.CommonProperties.TYPE;
 
@@ -54,6 +60,37 @@ public abstract class TypedProperty implements Model {
         setName(object.getString(NAME));
     }
 
+    /**
+     * Streaming counterpart of {@link #read(JSONObject)}, used by sub classes implementing {@link StreamingModel}.
+     *
+     * @param reader reader positioned on the property value.
+     * @param key    property name.
+     * @return true if the value was consumed, false if the property is unknown.
+     * @throws IOException   if the JSON is malformed.
+     * @throws JSONException if the value is invalid.
+     */
+    public boolean readProperty(JsonReader reader, String key) throws IOException, JSONException {
+        if (TYPE.equals(key)) {
+            if (!reader.nextString().equals(getType())) {
+                throw new JSONException("Invalid type");
+            }
+        } else if (NAME.equals(key)) {
+            setName(reader.nextString());
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Check properties read by {@link #readProperty(JsonReader, String)}.
+     *
+     * @throws JSONException if a required property is missing.
+     */
+    public void validate() throws JSONException {
+        JSONStreamUtils.checkRequired(getName(), NAME);
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         writer.key(TYPE).value(getType());
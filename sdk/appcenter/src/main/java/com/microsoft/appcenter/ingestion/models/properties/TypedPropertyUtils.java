@@ -6,11 +6,17 @@
 package com.microsoft.appcenter.ingestion.models.properties;
 
 import android.support.annotation.NonNull;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.microsoft.appcenter.ingestion.models.StreamingModel;
+import com.microsoft.appcenter.ingestion.models.json.JSONStreamUtils;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -49,4 +55,33 @@ public class TypedPropertyUtils {
         }
         return null;
     }
+
+    /**
+     * Streaming counterpart of {@link #read(JSONObject)}, reader positioned on the array of typed properties.
+     * The type is expected as the first property of each object, as written by {@link TypedProperty#write}.
+     */
+    public static List<TypedProperty> read(JsonReader reader) throws IOException, JSONException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        List<TypedProperty> array = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.beginObject();
+            if (!TYPE.equals(reader.nextName())) {
+                throw new JSONException("Expected type as first property");
+            }
+            TypedProperty typedProperty = TypedPropertyUtils.create(reader.nextString());
+            if (!(typedProperty instanceof StreamingModel)) {
+                throw new JSONException("Cannot stream type: " + typedProperty.getType());
+            }
+            JSONStreamUtils.readProperties(reader, (StreamingModel) typedProperty);
+            reader.endObject();
+            typedProperty.validate();
+            array.add(typedProperty);
+        }
+        reader.endArray();
+        return array;
+    }
 }
@@ -10,6 +10,7 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.support.annotation.IntRange;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
@@ -18,10 +19,14 @@ import android.support.annotation.VisibleForTesting;
 import com.microsoft.appcenter.Constants;
 import com.microsoft.appcenter.Flags;
 import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.SerializedLog;
 import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
 import com.microsoft.appcenter.ingestion.models.one.PartAUtils;
 import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.HashUtils;
+import com.microsoft.appcenter.utils.StringUtils;
 import com.microsoft.appcenter.utils.crypto.CryptoUtils;
+import com.microsoft.appcenter.utils.storage.CompressionUtils;
 import com.microsoft.appcenter.utils.storage.DatabaseManager;
 import com.microsoft.appcenter.utils.storage.FileManager;
 import com.microsoft.appcenter.utils.storage.SQLiteUtils;
@@ -30,17 +35,18 @@ import org.json.JSONException;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import static com.microsoft.appcenter.AppCenter.LOG_TAG;
 import static com.microsoft.appcenter.Flags.NORMAL;
@@ -68,6 +74,48 @@ public class DatabasePersistence extends Persistence {
     @VisibleForTesting
     static final int VERSION_PRIORITY_KEY = 4;
 
+    /**
+     * Version of the schema that introduced timestamp for logs.
+     */
+    @VisibleForTesting
+    static final int VERSION_TIMESTAMP_KEY = 5;
+
+    /**
+     * Version of the schema that introduced batch identifier for logs.
+     */
+    @VisibleForTesting
+    static final int VERSION_BATCH_ID_KEY = 6;
+
+    /**
+     * Version of the schema that introduced the devices table.
+     */
+    @VisibleForTesting
+    static final int VERSION_DEVICE_KEY = 7;
+
+    /**
+     * Version of the schema that introduced binary log payloads.
+     */
+    @VisibleForTesting
+    static final int VERSION_LOG_DATA_KEY = 8;
+
+    /**
+     * Version of the schema that introduced group and timestamp indexes.
+     */
+    @VisibleForTesting
+    static final int VERSION_GROUP_INDEX_KEY = 9;
+
+    /**
+     * Version of the schema that introduced the target tokens table.
+     */
+    @VisibleForTesting
+    static final int VERSION_TARGET_TOKEN_KEY = 10;
+
+    /**
+     * Version of the schema that introduced the payload size column.
+     */
+    @VisibleForTesting
+    static final int VERSION_PAYLOAD_SIZE_KEY = 11;
+
     /**
      * Table name.
      */
@@ -117,11 +165,80 @@ public class DatabasePersistence extends Persistence {
     @VisibleForTesting
     static final String COLUMN_PRIORITY = "priority";
 
+    /**
+     * Identifier of the batch the log is being sent with, null when the log is not being sent.
+     */
+    @VisibleForTesting
+    static final String COLUMN_BATCH_ID = "batch_id";
+
+    /**
+     * Identifier of the device snapshot removed from the log payload, null when the payload is complete.
+     */
+    @VisibleForTesting
+    static final String COLUMN_DEVICE_ID = "device_id";
+
+    /**
+     * Name of binary log column in the table, the first byte being the payload format.
+     * Null when the log is stored as text in {@link #COLUMN_LOG} or in a large payload file.
+     */
+    @VisibleForTesting
+    static final String COLUMN_LOG_DATA = "log_data";
+
+    /**
+     * Identifier of the encrypted target token in {@link #TABLE_TARGET_TOKENS},
+     * null when the token is stored in {@link #COLUMN_TARGET_TOKEN} or the log is not common schema.
+     */
+    @VisibleForTesting
+    static final String COLUMN_TARGET_TOKEN_ID = "target_token_id";
+
+    /**
+     * Size in bytes of the UTF-8 JSON payload as sent, before removing the device snapshot and compressing.
+     * Null for logs stored before this column existed.
+     */
+    @VisibleForTesting
+    static final String COLUMN_PAYLOAD_SIZE = "payload_size";
+
+    /**
+     * Binary log format: UTF-8 JSON compressed with deflate.
+     */
+    @VisibleForTesting
+    static final byte PAYLOAD_FORMAT_DEFLATE = 1;
+
     /**
      * Table schema for Persistence.
      */
     @VisibleForTesting
-    static final ContentValues SCHEMA = getContentValues("", "", "", "", "", 0, 0L);
+    static final ContentValues SCHEMA = getContentValues("", "", "", "", "", 0, 0L, "", 0L, new byte[0], 0L, 0L);
+
+    /**
+     * Device snapshots table name.
+     */
+    @VisibleForTesting
+    static final String TABLE_DEVICES = "devices";
+
+    /**
+     * Name of the content hash column in the devices table.
+     */
+    @VisibleForTesting
+    static final String COLUMN_DEVICE_HASH = "hash";
+
+    /**
+     * Name of the device JSON column in the devices table.
+     */
+    @VisibleForTesting
+    static final String COLUMN_DEVICE = "device";
+
+    /**
+     * Encrypted target tokens table name, the token being stored in {@link #COLUMN_TARGET_TOKEN}.
+     */
+    @VisibleForTesting
+    static final String TABLE_TARGET_TOKENS = "target_tokens";
+
+    /**
+     * Name of the token hash column in the target tokens table.
+     */
+    @VisibleForTesting
+    static final String COLUMN_TARGET_TOKEN_HASH = "hash";
 
     /**
      * Database name.
@@ -132,18 +249,111 @@ public class DatabasePersistence extends Persistence {
     /**
      * Current version of the schema.
      */
-    private static final int VERSION = 5;
+    private static final int VERSION = VERSION_PAYLOAD_SIZE_KEY;
 
     /**
      * Priority index.
      */
     private static final String INDEX_PRIORITY = "ix_" + TABLE + "_" + COLUMN_PRIORITY;
 
+    /**
+     * Batch identifier index.
+     */
+    private static final String INDEX_BATCH_ID = "ix_" + TABLE + "_" + COLUMN_BATCH_ID;
+
+    /**
+     * Group index, matching the filter and order of logs to send so that pages are read without sorting.
+     * The row identifier being the last column of any index, logs of same priority are in {@link #GET_SORT_ORDER}.
+     */
+    @VisibleForTesting
+    static final String INDEX_GROUP = "ix_" + TABLE + "_" + COLUMN_GROUP;
+
+    /**
+     * Timestamp index.
+     */
+    @VisibleForTesting
+    static final String INDEX_TIMESTAMP = "ix_" + TABLE + "_" + COLUMN_TIMESTAMP;
+
     /**
      * Order by clause to select logs.
      */
     private static final String GET_SORT_ORDER = COLUMN_PRIORITY + " DESC, " + PRIMARY_KEY;
 
+    /**
+     * Statement to insert a log, values being bound in the order of the columns.
+     */
+    private static final String INSERT_LOG = "INSERT INTO `" + TABLE + "` (`" + COLUMN_GROUP + "`, `" + COLUMN_LOG + "`, `"
+            + COLUMN_TARGET_TOKEN + "`, `" + COLUMN_DATA_TYPE + "`, `" + COLUMN_TARGET_KEY + "`, `" + COLUMN_PRIORITY + "`, `"
+            + COLUMN_TIMESTAMP + "`, `" + COLUMN_DEVICE_ID + "`, `" + COLUMN_LOG_DATA + "`, `" + COLUMN_TARGET_TOKEN_ID + "`, `"
+            + COLUMN_PAYLOAD_SIZE + "`) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * Query to count logs of a group.
+     */
+    private static final String COUNT_LOGS_BY_GROUP = "SELECT COUNT(*) FROM `" + TABLE + "` WHERE " + COLUMN_GROUP + " = ?";
+
+    /**
+     * Query to count logs older than a timestamp.
+     */
+    private static final String COUNT_LOGS_BY_TIMESTAMP = "SELECT COUNT(*) FROM `" + TABLE + "` WHERE " + COLUMN_TIMESTAMP + " < ?";
+
+    /**
+     * Columns read to send logs, each row being read by column index rather than converted to {@link ContentValues}.
+     */
+    @VisibleForTesting
+    static final String[] GET_COLUMNS = {PRIMARY_KEY, COLUMN_LOG, COLUMN_LOG_DATA, COLUMN_TARGET_TOKEN, COLUMN_DATA_TYPE, COLUMN_PRIORITY, COLUMN_DEVICE_ID, COLUMN_TARGET_TOKEN_ID, COLUMN_PAYLOAD_SIZE};
+
+    /**
+     * Index of the identifier in {@link #GET_COLUMNS}.
+     */
+    private static final int GET_INDEX_ID = 0;
+
+    /**
+     * Index of the log in {@link #GET_COLUMNS}.
+     */
+    private static final int GET_INDEX_LOG = 1;
+
+    /**
+     * Index of the binary log in {@link #GET_COLUMNS}.
+     */
+    private static final int GET_INDEX_LOG_DATA = 2;
+
+    /**
+     * Index of the target token in {@link #GET_COLUMNS}.
+     */
+    private static final int GET_INDEX_TARGET_TOKEN = 3;
+
+    /**
+     * Index of the log type in {@link #GET_COLUMNS}.
+     */
+    private static final int GET_INDEX_TYPE = 4;
+
+    /**
+     * Index of the priority in {@link #GET_COLUMNS}.
+     */
+    private static final int GET_INDEX_PRIORITY = 5;
+
+    /**
+     * Index of the device snapshot identifier in {@link #GET_COLUMNS}.
+     */
+    private static final int GET_INDEX_DEVICE_ID = 6;
+
+    /**
+     * Index of the target token identifier in {@link #GET_COLUMNS}.
+     */
+    private static final int GET_INDEX_TARGET_TOKEN_ID = 7;
+
+    /**
+     * Index of the payload size in {@link #GET_COLUMNS}.
+     */
+    private static final int GET_INDEX_PAYLOAD_SIZE = 8;
+
+    /**
+     * Maximum number of target tokens kept in memory, applications rarely use more than a few.
+     */
+    @VisibleForTesting
+    static final int TARGET_TOKEN_CACHE_SIZE = 32;
+
     /**
      * Size limit (in bytes) for a database row log payload.
      * A separate file is used if payload is larger.
@@ -160,6 +370,11 @@ public class DatabasePersistence extends Persistence {
      */
     private static final String PAYLOAD_FILE_EXTENSION = ".json";
 
+    /**
+     * Device property as written at the top level of a serialized log.
+     */
+    private static final String DEVICE_PROPERTY = ",\"device\":";
+
     /**
      * Database manager instance to access Persistence database.
      */
@@ -167,16 +382,14 @@ public class DatabasePersistence extends Persistence {
     final DatabaseManager mDatabaseManager;
 
     /**
-     * Pending log groups. Key is a UUID and value is a list of database identifiers.
+     * Whether batch identifiers left in the database by a previous process have been cleared.
      */
-    @VisibleForTesting
-    final Map<String, List<Long>> mPendingDbIdentifiersGroups;
+    private volatile boolean mPendingLogStateCleared;
 
     /**
-     * Pending logs across all groups.
+     * Whether a transaction started by {@link #beginTransaction()} is in progress.
      */
-    @VisibleForTesting
-    final Set<Long> mPendingDbIdentifiers;
+    private boolean mInTransaction;
 
     /**
      * Application context.
@@ -188,6 +401,63 @@ public class DatabasePersistence extends Persistence {
      */
     private final File mLargePayloadDirectory;
 
+    /**
+     * Device snapshot identifiers by device JSON, guarding {@link #mDeviceSnapshots} as well.
+     */
+    private final Map<String, Long> mDeviceIds = new HashMap<>();
+
+    /**
+     * Device JSON by device snapshot identifier.
+     */
+    private final Map<Long, String> mDeviceSnapshots = new HashMap<>();
+
+    /**
+     * Whether device snapshots that are no longer referenced have been deleted since the database was opened.
+     */
+    private boolean mDevicesPruned;
+
+    /**
+     * Target token identifiers by clear text token, guarding {@link #mTargetTokens} as well.
+     * Only tokens encrypted with the current key are cached so that a rotated key is not kept in use.
+     */
+    private final Map<String, Long> mTargetTokenIds = new LruMap<>(TARGET_TOKEN_CACHE_SIZE);
+
+    /**
+     * Clear text target tokens by identifier, each token being decrypted once.
+     */
+    private final Map<Long, String> mTargetTokens = new LruMap<>(TARGET_TOKEN_CACHE_SIZE);
+
+    /**
+     * Key rotation count when {@link #mTargetTokenIds} was filled.
+     */
+    private int mTargetTokenKeyRotationCount;
+
+    /**
+     * Whether target tokens that are no longer referenced have been deleted since the database was opened.
+     */
+    private boolean mTargetTokensPruned;
+
+    /**
+     * Whether new logs are stored compressed.
+     */
+    private volatile boolean mCompressionEnabled;
+
+    /**
+     * Deflater reused to compress logs, also used as its lock.
+     */
+    private final Deflater mDeflater = new Deflater();
+
+    /**
+     * Inflater reused to decompress logs, also used as its lock.
+     */
+    private final Inflater mInflater = new Inflater();
+
+    /**
+     * Evicts logs in bulk before the database is full.
+     */
+    @VisibleForTesting
+    final StorageBudgetManager mStorageBudget;
+
     /**
      * Initializes variables with default values.
      *
@@ -206,17 +476,38 @@ public class DatabasePersistence extends Persistence {
      */
     DatabasePersistence(Context context, int version, @SuppressWarnings("SameParameterValue") ContentValues schema) {
         mContext = context;
-        mPendingDbIdentifiersGroups = new HashMap<>();
-        mPendingDbIdentifiers = new HashSet<>();
         mDatabaseManager = new DatabaseManager(context, DATABASE, TABLE, version, schema, new DatabaseManager.Listener() {
 
             private void createPriorityIndex(SQLiteDatabase db) {
                 db.execSQL("CREATE INDEX `" + INDEX_PRIORITY + "` ON " + TABLE + " (`" + COLUMN_PRIORITY + "`)");
             }
 
+            private void createBatchIdIndex(SQLiteDatabase db) {
+                db.execSQL("CREATE INDEX `" + INDEX_BATCH_ID + "` ON " + TABLE + " (`" + COLUMN_BATCH_ID + "`)");
+            }
+
+            private void createGroupIndexes(SQLiteDatabase db) {
+                db.execSQL("CREATE INDEX `" + INDEX_GROUP + "` ON " + TABLE + " (`" + COLUMN_GROUP + "`, `" + COLUMN_BATCH_ID + "`, `" + COLUMN_PRIORITY + "` DESC)");
+                db.execSQL("CREATE INDEX `" + INDEX_TIMESTAMP + "` ON " + TABLE + " (`" + COLUMN_TIMESTAMP + "`)");
+            }
+
+            private void createDevicesTable(SQLiteDatabase db) {
+                db.execSQL("CREATE TABLE IF NOT EXISTS `" + TABLE_DEVICES + "` (" + PRIMARY_KEY + " INTEGER PRIMARY KEY AUTOINCREMENT, `"
+                        + COLUMN_DEVICE_HASH + "` TEXT, `" + COLUMN_DEVICE + "` TEXT, UNIQUE(`" + COLUMN_DEVICE_HASH + "`))");
+            }
+
+            private void createTargetTokensTable(SQLiteDatabase db) {
+                db.execSQL("CREATE TABLE IF NOT EXISTS `" + TABLE_TARGET_TOKENS + "` (" + PRIMARY_KEY + " INTEGER PRIMARY KEY AUTOINCREMENT, `"
+                        + COLUMN_TARGET_TOKEN_HASH + "` TEXT, `" + COLUMN_TARGET_TOKEN + "` TEXT, UNIQUE(`" + COLUMN_TARGET_TOKEN_HASH + "`))");
+            }
+
             @Override
             public void onCreate(SQLiteDatabase db) {
                 createPriorityIndex(db);
+                createBatchIdIndex(db);
+                createGroupIndexes(db);
+                createDevicesTable(db);
+                createTargetTokensTable(db);
             }
 
             @Override
@@ -233,12 +524,47 @@ public class DatabasePersistence extends Persistence {
                 if (oldVersion < VERSION_PRIORITY_KEY) {
                     db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN `" + COLUMN_PRIORITY + "` INTEGER DEFAULT " + NORMAL);
                 }
-                db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN `" + COLUMN_TIMESTAMP + "` INTEGER DEFAULT 0");
-                createPriorityIndex(db);
+                if (oldVersion < VERSION_TIMESTAMP_KEY) {
+                    db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN `" + COLUMN_TIMESTAMP + "` INTEGER DEFAULT 0");
+                    createPriorityIndex(db);
+                }
+                if (oldVersion < VERSION_BATCH_ID_KEY) {
+                    db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN `" + COLUMN_BATCH_ID + "` TEXT");
+                    createBatchIdIndex(db);
+                }
+                if (oldVersion < VERSION_DEVICE_KEY) {
+                    db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN `" + COLUMN_DEVICE_ID + "` INTEGER");
+                    createDevicesTable(db);
+                }
+                if (oldVersion < VERSION_LOG_DATA_KEY) {
+                    db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN `" + COLUMN_LOG_DATA + "` BLOB");
+                }
+                if (oldVersion < VERSION_GROUP_INDEX_KEY) {
+                    createGroupIndexes(db);
+                }
+                if (oldVersion < VERSION_TARGET_TOKEN_KEY) {
+                    db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN `" + COLUMN_TARGET_TOKEN_ID + "` INTEGER");
+                    createTargetTokensTable(db);
+                }
+                if (oldVersion < VERSION_PAYLOAD_SIZE_KEY) {
+                    db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN `" + COLUMN_PAYLOAD_SIZE + "` INTEGER");
+                }
                 return true;
             }
         });
+
+        /* Reading logs to send and evicting logs do not wait for logs being stored, and storing does not sync every commit. */
+        mDatabaseManager.setWriteAheadLoggingEnabled(true);
         mLargePayloadDirectory = new File(Constants.FILES_PATH + PAYLOAD_LARGE_DIRECTORY);
+        mStorageBudget = new StorageBudgetManager(mDatabaseManager, new StorageBudgetManager.Listener() {
+
+            @Override
+            public void onLargePayloadEvicted(@NonNull String group, long id) {
+
+                //noinspection ResultOfMethodCallIgnored SQLite delete does not have return type either.
+                getLargePayloadFile(getLargePayloadGroupDirectory(group), id).delete();
+            }
+        });
 
         //noinspection ResultOfMethodCallIgnored we handle errors at read/write time for each file.
         mLargePayloadDirectory.mkdirs();
@@ -252,9 +578,14 @@ public class DatabasePersistence extends Persistence {
      * @param targetToken The target token if the log is common schema.
      * @param targetKey   The project identifier part of the target token in clear text.
      * @param priority    The persistence priority.
+     * @param batchId     The identifier of the batch the log is being sent with.
+     * @param deviceId    The identifier of the device snapshot removed from the log JSON.
+     * @param logData       The log in a binary format, used instead of logJ.
+     * @param targetTokenId The identifier of the encrypted target token, used instead of targetToken.
+     * @param payloadSize   The size of the JSON payload as sent.
      * @return A {@link ContentValues} instance.
      */
-    private static ContentValues getContentValues(@Nullable String group, @Nullable String logJ, String targetToken, String type, String targetKey, int priority, Long timestamp) {
+    private static ContentValues getContentValues(@Nullable String group, @Nullable String logJ, String targetToken, String type, String targetKey, int priority, Long timestamp, @Nullable String batchId, @Nullable Long deviceId, @Nullable byte[] logData, @Nullable Long targetTokenId, @Nullable Long payloadSize) {
         ContentValues values = new ContentValues();
         values.put(COLUMN_GROUP, group);
         values.put(COLUMN_LOG, logJ);
@@ -263,12 +594,105 @@ public class DatabasePersistence extends Persistence {
         values.put(COLUMN_TARGET_KEY, targetKey);
         values.put(COLUMN_PRIORITY, priority);
         values.put(COLUMN_TIMESTAMP, timestamp);
+        values.put(COLUMN_BATCH_ID, batchId);
+        values.put(COLUMN_DEVICE_ID, deviceId);
+        values.put(COLUMN_LOG_DATA, logData);
+        values.put(COLUMN_TARGET_TOKEN_ID, targetTokenId);
+        values.put(COLUMN_PAYLOAD_SIZE, payloadSize);
         return values;
     }
 
+    /**
+     * Finds the device property at the top level of a serialized log.
+     *
+     * @param payload log JSON.
+     * @return start index of the property including its leading comma and end index after its closing brace,
+     * or null if the log JSON has no device object.
+     */
+    @Nullable
+    @VisibleForTesting
+    static int[] findDevice(@NonNull String payload) {
+        int depth = 0;
+        int start = -1;
+        boolean inString = false;
+        for (int i = 0; i < payload.length(); i++) {
+            char c = payload.charAt(i);
+            if (inString) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+                if (start >= 0 && depth == 1) {
+                    return new int[]{start, i + 1};
+                }
+            } else if (c == ',' && depth == 1 && payload.startsWith(DEVICE_PROPERTY, i)) {
+                int value = i + DEVICE_PROPERTY.length();
+                if (value < payload.length() && payload.charAt(value) == '{') {
+                    start = i;
+
+                    /* Resume on the opening brace. */
+                    i = value - 1;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Puts a device snapshot back into a log JSON it was removed from.
+     *
+     * @param payload log JSON without device.
+     * @param device  device JSON.
+     * @return complete log JSON.
+     */
+    @NonNull
+    @VisibleForTesting
+    static String joinDevice(@NonNull String payload, @NonNull String device) {
+        int end = payload.lastIndexOf('}');
+        return new StringBuilder(payload.length() + DEVICE_PROPERTY.length() + device.length())
+                .append(payload, 0, end)
+                .append(DEVICE_PROPERTY)
+                .append(device)
+                .append(payload, end, payload.length())
+                .toString();
+    }
+
     @Override
     public boolean setMaxStorageSize(long maxStorageSizeInBytes) {
-        return mDatabaseManager.setMaxSize(maxStorageSizeInBytes);
+        boolean result = mDatabaseManager.setMaxSize(maxStorageSizeInBytes);
+        mStorageBudget.scheduleCheck();
+        return result;
+    }
+
+    @NonNull
+    @Override
+    public Map<String, Long> getEvictedLogCounts() {
+        return mStorageBudget.getEvictedLogCounts();
+    }
+
+    @Override
+    public boolean setStorageQuota(@NonNull String group, @Nullable String targetKey, long maxStorageSizeInBytes) {
+        mStorageBudget.setQuota(group, targetKey, maxStorageSizeInBytes);
+        return true;
+    }
+
+    @NonNull
+    @Override
+    public Map<String, Long> getQuotaEvictedLogCounts() {
+        return mStorageBudget.getQuotaEvictedLogCounts();
+    }
+
+    @Override
+    public boolean setCompressionEnabled(boolean enabled) {
+        mCompressionEnabled = enabled;
+        return true;
     }
 
     @Override
@@ -278,38 +702,69 @@ public class DatabasePersistence extends Persistence {
         try {
             AppCenterLog.debug(LOG_TAG, "Storing a log to the Persistence database for log type " + log.getType() + " with flags=" + flags);
             String payload = getLogSerializer().serializeLog(log);
-            ContentValues contentValues;
 
-            //noinspection CharsetObjectCanBeUsed min API level 19 required to fix this warning.
-            int payloadSize = payload.getBytes("UTF-8").length;
+            int payloadSize = StringUtils.getUtf8Length(payload);
+            int sendSize = payloadSize;
             boolean isLargePayload = payloadSize >= PAYLOAD_MAX_SIZE;
-            String targetKey;
-            String targetToken;
+            String targetKey = null;
+            String targetToken = null;
+            Long targetTokenId = null;
             if (log instanceof CommonSchemaLog) {
                 if (isLargePayload) {
                     throw new PersistenceException("Log is larger than " + PAYLOAD_MAX_SIZE + " bytes, cannot send to OneCollector.");
                 }
                 targetToken = log.getTransmissionTargetTokens().iterator().next();
                 targetKey = PartAUtils.getTargetKey(targetToken);
-                targetToken = CryptoUtils.getInstance(mContext).encrypt(targetToken);
-            } else {
-                targetKey = null;
-                targetToken = null;
+
+                /* Logs of a process share very few tokens: encrypt and store each once. */
+                targetTokenId = getTargetTokenId(targetToken);
+                targetToken = targetTokenId == null ? CryptoUtils.getInstance(mContext).encrypt(targetToken) : null;
             }
             long maxSize = mDatabaseManager.getMaxSize();
             if (maxSize == -1) {
                 throw new PersistenceException("Failed to store a log to the Persistence database.");
             }
+
+            /*
+             * Logs of a process share very few device snapshots: store each once and cut it from the payload.
+             * The log itself is not modified as other threads may read its device.
+             */
+            Long deviceId = null;
+            if (!isLargePayload && log.getDevice() != null) {
+                int[] devicePosition = findDevice(payload);
+                if (devicePosition != null) {
+                    String device = payload.substring(devicePosition[0] + DEVICE_PROPERTY.length(), devicePosition[1]);
+                    deviceId = getDeviceId(device);
+                    if (deviceId != null) {
+                        payload = payload.substring(0, devicePosition[0]) + payload.substring(devicePosition[1]);
+                    }
+                }
+            }
+
+            /* Compress if enabled, a large payload that fits in a row once compressed no longer needs a file. */
+            byte[] logData = null;
+            if (mCompressionEnabled) {
+                logData = compress(payload);
+                if (logData.length < PAYLOAD_MAX_SIZE) {
+                    payloadSize = logData.length;
+                    isLargePayload = false;
+                } else {
+                    logData = null;
+                }
+            }
             if (!isLargePayload && maxSize <= payloadSize) {
                 throw new PersistenceException("Log is too large (" + payloadSize + " bytes) to store in database. " +
                         "Current maximum database size is " + maxSize + " bytes.");
             }
-            contentValues = getContentValues(group, isLargePayload ? null : payload, targetToken, log.getType(), targetKey, Flags.getPersistenceFlag(flags, false), log.getTimestamp().getTime());
-            long databaseId = mDatabaseManager.put(contentValues, COLUMN_PRIORITY);
+            String logJ = isLargePayload || logData != null ? null : payload;
+            long databaseId = insertLog(group, logJ, targetToken, log.getType(), targetKey, Flags.getPersistenceFlag(flags, false), log.getTimestamp().getTime(), deviceId, logData, targetTokenId, sendSize);
             if (databaseId == -1) {
                 throw new PersistenceException("Failed to store a log to the Persistence database for log type " + log.getType() + ".");
             }
             AppCenterLog.debug(LOG_TAG, "Stored a log to the Persistence database for log type " + log.getType() + " with databaseId=" + databaseId);
+            if (!isLargePayload) {
+                mStorageBudget.onLogStored(group, targetKey, payloadSize);
+            }
             if (isLargePayload) {
                 AppCenterLog.debug(LOG_TAG, "Payload is larger than what SQLite supports, storing payload in a separate file.");
                 File directory = getLargePayloadGroupDirectory(group);
@@ -335,6 +790,389 @@ public class DatabasePersistence extends Persistence {
         }
     }
 
+    /**
+     * Checks that a payload is a whole JSON object without parsing it: braces outside strings must be balanced
+     * and close on the last character. This detects truncated payloads, such as a cut-off payload file,
+     * for the logs that are sent as stored.
+     *
+     * @param payload log JSON.
+     * @return true if the payload is a complete JSON object, false otherwise.
+     */
+    @VisibleForTesting
+    static boolean isCompleteJsonObject(@NonNull String payload) {
+        int end = payload.length();
+        while (end > 0 && Character.isWhitespace(payload.charAt(end - 1))) {
+            end--;
+        }
+        int start = 0;
+        while (start < end && Character.isWhitespace(payload.charAt(start))) {
+            start++;
+        }
+        if (start >= end || payload.charAt(start) != '{') {
+            return false;
+        }
+        int depth = 0;
+        boolean inString = false;
+        for (int i = start; i < end; i++) {
+            char c = payload.charAt(i);
+            if (inString) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+                if (depth == 0) {
+                    return i == end - 1;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compresses a log payload.
+     *
+     * @param payload log JSON.
+     * @return format marker followed by compressed UTF-8 JSON.
+     * @throws UnsupportedEncodingException never, UTF-8 is always supported.
+     */
+    @NonNull
+    private byte[] compress(@NonNull String payload) throws UnsupportedEncodingException {
+
+        //noinspection CharsetObjectCanBeUsed min API level 19 required to fix this warning.
+        byte[] data = payload.getBytes("UTF-8");
+        synchronized (mDeflater) {
+            return CompressionUtils.deflate(mDeflater, data, PAYLOAD_FORMAT_DEFLATE);
+        }
+    }
+
+    /**
+     * Decompresses a log payload.
+     *
+     * @param data format marker followed by compressed log.
+     * @return log JSON.
+     * @throws JSONException if the format is unknown or data is corrupted.
+     */
+    @NonNull
+    private String decompress(@NonNull byte[] data) throws JSONException {
+        if (data.length == 0 || data[0] != PAYLOAD_FORMAT_DEFLATE) {
+            throw new JSONException("Unsupported log payload format.");
+        }
+        try {
+            byte[] payload;
+            synchronized (mInflater) {
+                payload = CompressionUtils.inflate(mInflater, data, 1);
+            }
+
+            //noinspection CharsetObjectCanBeUsed min API level 19 required to fix this warning.
+            return new String(payload, "UTF-8");
+        } catch (DataFormatException | UnsupportedEncodingException e) {
+            throw new JSONException("Cannot decompress log payload: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the identifier of a device snapshot, storing it if needed.
+     * Snapshots are only deleted from here and put calls are serialized by the channel,
+     * so a returned identifier can't be deleted before the log referencing it is stored.
+     *
+     * @param device device JSON.
+     * @return device snapshot identifier, null if the snapshot could not be stored.
+     */
+    @Nullable
+    private Long getDeviceId(@NonNull String device) {
+
+        /* Delete snapshots left behind by a previous process once. */
+        if (!mDevicesPruned) {
+            mDevicesPruned = true;
+            pruneDevices();
+        }
+        synchronized (mDeviceIds) {
+            Long deviceId = mDeviceIds.get(device);
+            if (deviceId != null) {
+                return deviceId;
+            }
+        }
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_DEVICE_HASH, HashUtils.sha256(device));
+        values.put(COLUMN_DEVICE, device);
+        long deviceId = mDatabaseManager.replace(TABLE_DEVICES, values, COLUMN_DEVICE_HASH);
+        if (deviceId == -1) {
+
+            /* Most likely storage is full: free space for next time, the log keeps its device inline. */
+            pruneDevices();
+            return null;
+        }
+        synchronized (mDeviceIds) {
+            mDeviceIds.put(device, deviceId);
+            mDeviceSnapshots.put(deviceId, device);
+        }
+        return deviceId;
+    }
+
+    /**
+     * Gets a device snapshot.
+     *
+     * @param deviceId device snapshot identifier.
+     * @return device JSON.
+     * @throws JSONException if the snapshot is missing.
+     */
+    @NonNull
+    private String getDevice(long deviceId) throws JSONException {
+        synchronized (mDeviceIds) {
+            String device = mDeviceSnapshots.get(deviceId);
+            if (device != null) {
+                return device;
+            }
+        }
+        String device = null;
+        SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
+        builder.appendWhere(PRIMARY_KEY + " = ?");
+        try {
+            Cursor cursor = mDatabaseManager.getCursor(TABLE_DEVICES, builder, new String[]{COLUMN_DEVICE}, new String[]{String.valueOf(deviceId)}, null);
+            try {
+                if (cursor.moveToNext()) {
+                    device = cursor.getString(0);
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to get device snapshot: ", e);
+        }
+        if (device == null) {
+            throw new JSONException("Device snapshot " + deviceId + " is missing.");
+        }
+        synchronized (mDeviceIds) {
+            mDeviceIds.put(device, deviceId);
+            mDeviceSnapshots.put(deviceId, device);
+        }
+        return device;
+    }
+
+    /**
+     * Deletes device snapshots that no log references anymore.
+     */
+    private void pruneDevices() {
+        int deletedCount = mDatabaseManager.delete(TABLE_DEVICES, PRIMARY_KEY + " NOT IN (SELECT " + COLUMN_DEVICE_ID + " FROM " + TABLE
+                + " WHERE " + COLUMN_DEVICE_ID + " IS NOT NULL)", null);
+        synchronized (mDeviceIds) {
+            mDeviceIds.clear();
+            mDeviceSnapshots.clear();
+        }
+        AppCenterLog.debug(LOG_TAG, "Deleted " + deletedCount + " device snapshots.");
+    }
+
+    /**
+     * Gets the identifier of an encrypted target token, storing it if needed.
+     * A token is encrypted again the first time it's used in a process or after the key was rotated,
+     * its identifier being kept so that stored logs still reference it.
+     *
+     * @param targetToken clear text target token.
+     * @return target token identifier, null if the token could not be stored.
+     */
+    @Nullable
+    private Long getTargetTokenId(@NonNull String targetToken) {
+
+        /* Delete tokens left behind by a previous process once. */
+        if (!mTargetTokensPruned) {
+            mTargetTokensPruned = true;
+            pruneTargetTokens();
+        }
+
+        /* Read the count before encrypting: a concurrent rotation makes us encrypt again rather than keep a stale key. */
+        CryptoUtils cryptoUtils = CryptoUtils.getInstance(mContext);
+        int keyRotationCount = cryptoUtils.getKeyRotationCount();
+        synchronized (mTargetTokenIds) {
+            if (mTargetTokenKeyRotationCount != keyRotationCount) {
+                mTargetTokenKeyRotationCount = keyRotationCount;
+                mTargetTokenIds.clear();
+            }
+            Long targetTokenId = mTargetTokenIds.get(targetToken);
+            if (targetTokenId != null) {
+                return targetTokenId;
+            }
+        }
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_TARGET_TOKEN_HASH, HashUtils.sha256(targetToken));
+        values.put(COLUMN_TARGET_TOKEN, cryptoUtils.encrypt(targetToken));
+        long targetTokenId = mDatabaseManager.replace(TABLE_TARGET_TOKENS, values, COLUMN_TARGET_TOKEN_HASH);
+        if (targetTokenId == -1) {
+
+            /* Most likely storage is full: free space for next time, the log keeps its token inline. */
+            pruneTargetTokens();
+            return null;
+        }
+        synchronized (mTargetTokenIds) {
+            if (mTargetTokenKeyRotationCount == keyRotationCount) {
+                mTargetTokenIds.put(targetToken, targetTokenId);
+            }
+            mTargetTokens.put(targetTokenId, targetToken);
+        }
+        return targetTokenId;
+    }
+
+    /**
+     * Gets a clear text target token, decrypting it once per process.
+     *
+     * @param targetTokenId target token identifier.
+     * @return clear text target token.
+     * @throws JSONException if the token is missing.
+     */
+    @NonNull
+    private String getTargetToken(long targetTokenId) throws JSONException {
+        synchronized (mTargetTokenIds) {
+            String targetToken = mTargetTokens.get(targetTokenId);
+            if (targetToken != null) {
+                return targetToken;
+            }
+        }
+        String encryptedTargetToken = null;
+        SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
+        builder.appendWhere(PRIMARY_KEY + " = ?");
+        try {
+            Cursor cursor = mDatabaseManager.getCursor(TABLE_TARGET_TOKENS, builder, new String[]{COLUMN_TARGET_TOKEN}, new String[]{String.valueOf(targetTokenId)}, null);
+            try {
+                if (cursor.moveToNext()) {
+                    encryptedTargetToken = cursor.getString(0);
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to get target token: ", e);
+        }
+        if (encryptedTargetToken == null) {
+            throw new JSONException("Target token " + targetTokenId + " is missing.");
+        }
+
+        /* The clear text does not change when the key is rotated, no need to track the key here. */
+        String targetToken = CryptoUtils.getInstance(mContext).decrypt(encryptedTargetToken, false).getDecryptedData();
+        synchronized (mTargetTokenIds) {
+            mTargetTokens.put(targetTokenId, targetToken);
+        }
+        return targetToken;
+    }
+
+    /**
+     * Deletes target tokens that no log references anymore.
+     */
+    private void pruneTargetTokens() {
+        int deletedCount = mDatabaseManager.delete(TABLE_TARGET_TOKENS, PRIMARY_KEY + " NOT IN (SELECT " + COLUMN_TARGET_TOKEN_ID + " FROM " + TABLE
+                + " WHERE " + COLUMN_TARGET_TOKEN_ID + " IS NOT NULL)", null);
+        clearTargetTokens();
+        AppCenterLog.debug(LOG_TAG, "Deleted " + deletedCount + " target tokens.");
+    }
+
+    private void clearTargetTokens() {
+        synchronized (mTargetTokenIds) {
+            mTargetTokenIds.clear();
+            mTargetTokens.clear();
+        }
+    }
+
+    @Override
+    public void beginTransaction() {
+        mInTransaction = mDatabaseManager.beginTransaction();
+    }
+
+    @Override
+    public boolean endTransaction() {
+        if (mInTransaction) {
+            mInTransaction = false;
+            if (mDatabaseManager.endTransaction()) {
+                return true;
+            }
+
+            /* Device snapshots and target tokens stored in the transaction may have been rolled back. */
+            synchronized (mDeviceIds) {
+                mDeviceIds.clear();
+                mDeviceSnapshots.clear();
+            }
+            clearTargetTokens();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Inserts a log with the precompiled statement, binding values without building {@link ContentValues}.
+     *
+     * @param group       The group of the storage for the log.
+     * @param logJ        The JSON string for a log, null if stored as binary or in a file.
+     * @param targetToken The encrypted target token if the log is common schema and the token is not referenced by identifier.
+     * @param type        The log type.
+     * @param targetKey   The project identifier part of the target token in clear text.
+     * @param priority    The persistence priority.
+     * @param timestamp   The log timestamp in milliseconds.
+     * @param deviceId    The identifier of the device snapshot removed from the log JSON.
+     * @param logData       The log in a binary format, used instead of logJ.
+     * @param targetTokenId The identifier of the encrypted target token, used instead of targetToken.
+     * @param payloadSize   The size of the JSON payload as sent.
+     * @return the database identifier, or -1 if the log could not be stored.
+     */
+    private long insertLog(@NonNull String group, @Nullable String logJ, @Nullable String targetToken, String type, @Nullable String targetKey, int priority, long timestamp, @Nullable Long deviceId, @Nullable byte[] logData, @Nullable Long targetTokenId, int payloadSize) {
+        SQLiteStatement statement;
+        try {
+            statement = mDatabaseManager.compileStatement(INSERT_LOG);
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to compile insert statement: ", e);
+            return -1;
+        }
+        synchronized (statement) {
+            try {
+                statement.bindString(1, group);
+                bindString(statement, 2, logJ);
+                bindString(statement, 3, targetToken);
+                bindString(statement, 4, type);
+                bindString(statement, 5, targetKey);
+                statement.bindLong(6, priority);
+                statement.bindLong(7, timestamp);
+                bindLong(statement, 8, deviceId);
+                if (logData != null) {
+                    statement.bindBlob(9, logData);
+                } else {
+                    statement.bindNull(9);
+                }
+                bindLong(statement, 10, targetTokenId);
+                statement.bindLong(11, payloadSize);
+                return mDatabaseManager.put(statement, COLUMN_PRIORITY, priority);
+            } finally {
+
+                /* Do not retain the payload until next insert. */
+                statement.clearBindings();
+            }
+        }
+    }
+
+    /**
+     * Binds a string that may be null.
+     */
+    private static void bindString(SQLiteStatement statement, int index, @Nullable String value) {
+        if (value != null) {
+            statement.bindString(index, value);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    /**
+     * Binds a number that may be null.
+     */
+    private static void bindLong(SQLiteStatement statement, int index, @Nullable Long value) {
+        if (value != null) {
+            statement.bindLong(index, value);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
     @NonNull
     @VisibleForTesting
     File getLargePayloadGroupDirectory(String group) {
@@ -359,18 +1197,20 @@ public class DatabasePersistence extends Persistence {
 
         /* Log. */
         AppCenterLog.debug(LOG_TAG, "Deleting logs from the Persistence database for " + group + " with " + id);
-        AppCenterLog.debug(LOG_TAG, "The IDs for deleting log(s) is/are:");
 
-        /* Delete logs. */
-        List<Long> dbIdentifiers = mPendingDbIdentifiersGroups.remove(group + id);
+        /* Delete large payload files of the batch. */
+        SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
+        builder.appendWhere(COLUMN_BATCH_ID + " = ? AND " + COLUMN_LOG + " IS NULL AND " + COLUMN_LOG_DATA + " IS NULL");
         File directory = getLargePayloadGroupDirectory(group);
-        if (dbIdentifiers != null) {
-            for (Long dbIdentifier : dbIdentifiers) {
-                AppCenterLog.debug(LOG_TAG, "\t" + dbIdentifier);
-                deleteLog(directory, dbIdentifier);
-                mPendingDbIdentifiers.remove(dbIdentifier);
-            }
+        for (Long dbIdentifier : getLogsIds(builder, new String[]{id})) {
+
+            //noinspection ResultOfMethodCallIgnored SQLite delete does not have return type either.
+            getLargePayloadFile(directory, dbIdentifier).delete();
         }
+
+        /* Delete the whole batch at once. */
+        int deletedCount = mDatabaseManager.delete(COLUMN_BATCH_ID, id);
+        AppCenterLog.debug(LOG_TAG, "Deleted " + deletedCount + " logs.");
     }
 
     @Override
@@ -396,40 +1236,22 @@ public class DatabasePersistence extends Persistence {
         /* Delete from database. */
         int deletedCount = mDatabaseManager.delete(COLUMN_GROUP, group);
         AppCenterLog.debug(LOG_TAG, "Deleted " + deletedCount + " logs.");
-
-        /* Delete from pending state. */
-        for (Iterator<String> iterator = mPendingDbIdentifiersGroups.keySet().iterator(); iterator.hasNext(); ) {
-            String key = iterator.next();
-            if (key.startsWith(group)) {
-                iterator.remove();
-            }
-        }
     }
 
     @Override
     public int countLogs(@NonNull String group) {
-        return countLogs(COLUMN_GROUP + " = ?", group);
+        return countLogs(COUNT_LOGS_BY_GROUP, group);
     }
 
     @Override
     public int countLogs(@NonNull Date timestamp) {
-        return countLogs(COLUMN_TIMESTAMP + " < ?", String.valueOf(timestamp.getTime()));
+        return countLogs(COUNT_LOGS_BY_TIMESTAMP, String.valueOf(timestamp.getTime()));
     }
 
-    private int countLogs(String whereClause, String... whereArgs) {
-
-        /* Query database and get scanner. */
-        SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
-        builder.appendWhere(whereClause);
+    private int countLogs(String query, String... selectionArgs) {
         int count = 0;
         try {
-            Cursor cursor = mDatabaseManager.getCursor(builder, new String[]{"COUNT(*)"}, whereArgs, null);
-            try {
-                cursor.moveToNext();
-                count = cursor.getInt(0);
-            } finally {
-                cursor.close();
-            }
+            count = (int) mDatabaseManager.simpleQueryForLong(query, selectionArgs);
         } catch (RuntimeException e) {
             AppCenterLog.error(LOG_TAG, "Failed to get logs count: ", e);
         }
@@ -439,13 +1261,83 @@ public class DatabasePersistence extends Persistence {
     @Override
     @Nullable
     public String getLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @NonNull List<Log> outLogs, @Nullable Date from, @Nullable Date to) {
+        List<SerializedLog> serializedLogs = new ArrayList<>();
+        String id = getLogs(group, pausedTargetKeys, limit, Long.MAX_VALUE, serializedLogs, from, to, true);
+        for (SerializedLog serializedLog : serializedLogs) {
+            try {
+                outLogs.add(serializedLog.getLog());
+            } catch (JSONException ignore) {
+
+                /* Cannot happen, logs are already deserialized. */
+            }
+        }
+        return id;
+    }
+
+    @Override
+    @Nullable
+    public String getSerializedLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @NonNull List<SerializedLog> outLogs, @Nullable Date from, @Nullable Date to) {
+        return getLogs(group, pausedTargetKeys, limit, Long.MAX_VALUE, outLogs, from, to, false);
+    }
+
+    @Override
+    @Nullable
+    public String getLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @IntRange(from = 1) long maxBytes, @NonNull List<Log> outLogs, @Nullable Date from, @Nullable Date to) {
+        List<SerializedLog> serializedLogs = new ArrayList<>();
+        String id = getLogs(group, pausedTargetKeys, limit, maxBytes, serializedLogs, from, to, true);
+        for (SerializedLog serializedLog : serializedLogs) {
+            try {
+                outLogs.add(serializedLog.getLog());
+            } catch (JSONException ignore) {
+
+                /* Cannot happen, logs are already deserialized. */
+            }
+        }
+        return id;
+    }
+
+    @Override
+    @Nullable
+    public String getSerializedLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @IntRange(from = 1) long maxBytes, @NonNull List<SerializedLog> outLogs, @Nullable Date from, @Nullable Date to) {
+        return getLogs(group, pausedTargetKeys, limit, maxBytes, outLogs, from, to, false);
+    }
+
+    /**
+     * Gets logs for the given {@code group} and marks them as pending.
+     *
+     * @param group            The group of the storage for logs.
+     * @param pausedTargetKeys List of target token keys to exclude from the log query.
+     * @param limit            The max number of logs to be returned.
+     * @param maxBytes         The max total payload size of the logs to be returned, the first log is returned even if larger.
+     * @param outLogs          A list to receive stored logs.
+     * @param from             A time to select only logs with time after specified.
+     * @param to               A time to select only logs with time before specified.
+     * @param deserialize      true to rebuild the models now and skip logs that cannot be deserialized.
+     * @return An ID for {@code outLogs}. {@code null} if no logs exist.
+     */
+    @Nullable
+    private String getLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, int limit, long maxBytes, @NonNull List<SerializedLog> outLogs, @Nullable Date from, @Nullable Date to, boolean deserialize) {
 
         /* Log. */
         AppCenterLog.debug(LOG_TAG, "Trying to get " + limit + " logs from the Persistence database for " + group);
 
-        /* Query database. */
+        /*
+         * Batches of a previous process were never completed, make their logs available again.
+         * Groups can read logs concurrently, only the first one clears.
+         */
+        if (!mPendingLogStateCleared) {
+            synchronized (this) {
+                if (!mPendingLogStateCleared) {
+                    clearPendingLogState();
+                }
+            }
+        }
+
+        /* Query database, logs that are already part of a batch are excluded. */
         SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
         builder.appendWhere(COLUMN_GROUP + " = ?");
+        builder.appendWhere(" AND ");
+        builder.appendWhere(COLUMN_BATCH_ID + " IS NULL");
         List<String> selectionArgs = new ArrayList<>();
         selectionArgs.add(group);
         if (!pausedTargetKeys.isEmpty()) {
@@ -471,53 +1363,72 @@ public class DatabasePersistence extends Persistence {
             selectionArgs.add(String.valueOf(to.getTime()));
         }
 
-        /* Add logs to output parameter after deserialization if logs are not already sent. */
+        /* Generate an ID. */
+        String id = UUID.randomUUID().toString();
+
+        /*
+         * Read logs page by page, each page being assigned to the batch before reading the next one.
+         * Another page is only needed when logs of a full page had to be deleted.
+         * Reading stops before the first log that does not fit in the byte budget, it stays available for the next batch.
+         */
         int count = 0;
-        Map<Long, Log> candidates = new LinkedHashMap<>();
-        List<Long> failedDbIdentifiers = new ArrayList<>();
+        long bytes = 0;
+        boolean budgetReached = false;
+        boolean hasMoreLogs = true;
+        Map<Long, SerializedLog> candidates = new LinkedHashMap<>();
         File largePayloadGroupDirectory = getLargePayloadGroupDirectory(group);
         String[] selectionArgsArray = selectionArgs.toArray(new String[0]);
-        Cursor cursor = null;
-        ContentValues values;
-        try {
-            cursor = mDatabaseManager.getCursor(builder, null, selectionArgsArray, GET_SORT_ORDER);
-        } catch (RuntimeException e) {
-            AppCenterLog.error(LOG_TAG, "Failed to get logs: ", e);
-        }
-        while (cursor != null &&
-                (values = mDatabaseManager.nextValues(cursor)) != null &&
-                count < limit) {
-            Long dbIdentifier = values.getAsLong(PRIMARY_KEY);
-
-            /*
-             * When we can't even read the identifier (in this case ContentValues is most likely empty).
-             * That probably means it contained a record larger than 2MB (from a previous SDK version)
-             * and we hit the cursor limit.
-             * Get rid of first non pending log.
-             */
-            if (dbIdentifier == null) {
-                AppCenterLog.error(LOG_TAG, "Empty database record, probably content was larger than 2MB, need to delete as it's now corrupted.");
-                List<Long> corruptedIds = getLogsIds(builder, selectionArgsArray);
-                for (Long corruptedId : corruptedIds) {
-                    if (!mPendingDbIdentifiers.contains(corruptedId) && !candidates.containsKey(corruptedId)) {
-
-                        /* Found the record to delete that we could not read when selecting all fields. */
-                        deleteLog(largePayloadGroupDirectory, corruptedId);
-                        AppCenterLog.error(LOG_TAG, "Empty database corrupted empty record deleted, id=" + corruptedId);
-                        break;
+        while (hasMoreLogs && count < limit) {
+            int pageSize = limit - count;
+            int rowCount = 0;
+            boolean deletedLogs = false;
+            List<Long> pageDbIdentifiers = new ArrayList<>();
+            List<Long> failedDbIdentifiers = new ArrayList<>();
+            Cursor cursor = null;
+            try {
+                cursor = mDatabaseManager.getCursor(builder, GET_COLUMNS, selectionArgsArray, GET_SORT_ORDER, String.valueOf(pageSize));
+            } catch (RuntimeException e) {
+                AppCenterLog.error(LOG_TAG, "Failed to get logs: ", e);
+            }
+            while (!budgetReached && cursor != null && mDatabaseManager.moveToNext(cursor)) {
+                rowCount++;
+
+                /*
+                 * When we can't even read the identifier (in this case all columns are most likely null).
+                 * That probably means it contained a record larger than 2MB (from a previous SDK version)
+                 * and we hit the cursor limit.
+                 * Get rid of first log that is not part of a batch.
+                 */
+                if (cursor.isNull(GET_INDEX_ID)) {
+                    AppCenterLog.error(LOG_TAG, "Empty database record, probably content was larger than 2MB, need to delete as it's now corrupted.");
+                    List<Long> corruptedIds = getLogsIds(builder, selectionArgsArray);
+                    for (Long corruptedId : corruptedIds) {
+                        if (!candidates.containsKey(corruptedId)) {
+
+                            /* Found the record to delete that we could not read when selecting all fields. */
+                            deleteLog(largePayloadGroupDirectory, corruptedId);
+                            deletedLogs = true;
+                            AppCenterLog.error(LOG_TAG, "Empty database corrupted empty record deleted, id=" + corruptedId);
+                            break;
+                        }
                     }
+                    continue;
+                }
+                long dbIdentifier = cursor.getLong(GET_INDEX_ID);
+                long payloadSize = cursor.isNull(GET_INDEX_PAYLOAD_SIZE) ? -1 : cursor.getLong(GET_INDEX_PAYLOAD_SIZE);
+                if (payloadSize >= 0 && count > 0 && bytes + payloadSize > maxBytes) {
+                    budgetReached = true;
+                    break;
                 }
-                continue;
-            }
-
-            /* If the log is already in pending state, then skip. Otherwise put the log to candidate container. */
-            if (!mPendingDbIdentifiers.contains(dbIdentifier)) {
                 try {
 
-                    /* Deserialize JSON to Log. */
+                    /* Read JSON payload. */
                     String logPayload;
-                    String databasePayload = values.getAsString(COLUMN_LOG);
-                    if (databasePayload == null) {
+                    String databasePayload = cursor.getString(GET_INDEX_LOG);
+                    byte[] databasePayloadData = cursor.getBlob(GET_INDEX_LOG_DATA);
+                    if (databasePayloadData != null) {
+                        logPayload = decompress(databasePayloadData);
+                    } else if (databasePayload == null) {
                         File file = getLargePayloadFile(largePayloadGroupDirectory, dbIdentifier);
                         AppCenterLog.debug(LOG_TAG, "Read payload file " + file);
                         logPayload = FileManager.read(file);
@@ -527,19 +1438,48 @@ public class DatabasePersistence extends Persistence {
                     } else {
                         logPayload = databasePayload;
                     }
-                    String databasePayloadType = values.getAsString(COLUMN_DATA_TYPE);
-                    Log log = getLogSerializer().deserializeLog(logPayload, databasePayloadType);
 
-                    /* Restore target token. */
-                    String targetToken = values.getAsString(COLUMN_TARGET_TOKEN);
-                    if (targetToken != null) {
+                    /* Payloads sent as stored are not parsed, still skip the truncated ones. */
+                    if (!deserialize && !isCompleteJsonObject(logPayload)) {
+                        throw new JSONException("Log payload is truncated.");
+                    }
+
+                    /* Restore device snapshot. */
+                    if (!cursor.isNull(GET_INDEX_DEVICE_ID)) {
+                        logPayload = joinDevice(logPayload, getDevice(cursor.getLong(GET_INDEX_DEVICE_ID)));
+                    }
+
+                    /* Restore target token, rows stored before the tokens table have it inline. */
+                    String targetToken = cursor.getString(GET_INDEX_TARGET_TOKEN);
+                    if (!cursor.isNull(GET_INDEX_TARGET_TOKEN_ID)) {
+                        targetToken = getTargetToken(cursor.getLong(GET_INDEX_TARGET_TOKEN_ID));
+                    } else if (targetToken != null) {
                         CryptoUtils.DecryptedData data = CryptoUtils.getInstance(mContext).decrypt(targetToken, false);
-                        log.addTransmissionTarget(data.getDecryptedData());
+                        targetToken = data.getDecryptedData();
+                    }
+
+                    /* Logs stored before the size column was added are measured once read. */
+                    if (payloadSize < 0) {
+                        payloadSize = StringUtils.getUtf8Length(logPayload);
+                        if (count > 0 && bytes + payloadSize > maxBytes) {
+                            budgetReached = true;
+                            break;
+                        }
+                    }
+                    String databasePayloadType = cursor.getString(GET_INDEX_TYPE);
+                    int priority = cursor.isNull(GET_INDEX_PRIORITY) ? NORMAL : cursor.getInt(GET_INDEX_PRIORITY);
+                    SerializedLog serializedLog = new SerializedLog(logPayload, databasePayloadType, targetToken, priority, getLogSerializer());
+
+                    /* Deserialize JSON to Log if requested. */
+                    if (deserialize) {
+                        serializedLog.getLog();
                     }
 
                     /* Add log to list and count. */
-                    candidates.put(dbIdentifier, log);
+                    candidates.put(dbIdentifier, serializedLog);
+                    pageDbIdentifiers.add(dbIdentifier);
                     count++;
+                    bytes += payloadSize;
                 } catch (JSONException e) {
 
                     /* If it is not able to deserialize, delete and get another log. */
@@ -549,20 +1489,25 @@ public class DatabasePersistence extends Persistence {
                     failedDbIdentifiers.add(dbIdentifier);
                 }
             }
-        }
-        if (cursor != null) {
-            try {
-                cursor.close();
-            } catch (RuntimeException ignore) {
+            if (cursor != null) {
+                try {
+                    cursor.close();
+                } catch (RuntimeException ignore) {
+                }
             }
-        }
 
-        /* Delete any logs that cannot be de-serialized. */
-        if (failedDbIdentifiers.size() > 0) {
-            for (long id : failedDbIdentifiers) {
-                deleteLog(largePayloadGroupDirectory, id);
+            /* Delete any logs that cannot be de-serialized. */
+            if (failedDbIdentifiers.size() > 0) {
+                for (long failedDbIdentifier : failedDbIdentifiers) {
+                    deleteLog(largePayloadGroupDirectory, failedDbIdentifier);
+                }
+                deletedLogs = true;
+                AppCenterLog.warn(LOG_TAG, "Deleted logs that cannot be deserialized");
             }
-            AppCenterLog.warn(LOG_TAG, "Deleted logs that cannot be deserialized");
+
+            /* Assign the page to the batch so that it's excluded from next queries. */
+            updateBatchId(pageDbIdentifiers, id);
+            hasMoreLogs = !budgetReached && deletedLogs && rowCount >= pageSize;
         }
 
         /* No logs found. */
@@ -571,41 +1516,57 @@ public class DatabasePersistence extends Persistence {
             return null;
         }
 
-        /* Generate an ID. */
-        String id = UUID.randomUUID().toString();
-
         /* Log. */
         AppCenterLog.debug(LOG_TAG, "Returning " + candidates.size() + " log(s) with an ID, " + id);
-        AppCenterLog.debug(LOG_TAG, "The SID/ID pairs for returning log(s) is/are:");
-        List<Long> pendingDbIdentifiersGroup = new ArrayList<>();
-        for (Map.Entry<Long, Log> entry : candidates.entrySet()) {
-            Long dbIdentifier = entry.getKey();
-
-            /* Change a database identifier to pending state. */
-            mPendingDbIdentifiers.add(dbIdentifier);
-
-            /* Store a database identifier to a group of the ID. */
-            pendingDbIdentifiersGroup.add(dbIdentifier);
+        AppCenterLog.debug(LOG_TAG, "The database identifiers for returning log(s) is/are:");
+        for (Map.Entry<Long, SerializedLog> entry : candidates.entrySet()) {
 
             /* Add to output parameter. */
             outLogs.add(entry.getValue());
 
             /* Log. */
-            AppCenterLog.debug(LOG_TAG, "\t" + entry.getValue().getSid() + " / " + dbIdentifier);
+            AppCenterLog.debug(LOG_TAG, "\t" + entry.getKey());
         }
-
-        /* Update pending IDs. */
-        mPendingDbIdentifiersGroups.put(group + id, pendingDbIdentifiersGroup);
         return id;
     }
 
+    /**
+     * Assigns logs to a batch.
+     *
+     * @param dbIdentifiers database identifiers of the logs.
+     * @param batchId       batch identifier.
+     */
+    private void updateBatchId(List<Long> dbIdentifiers, String batchId) {
+        if (dbIdentifiers.isEmpty()) {
+            return;
+        }
+        StringBuilder whereClause = new StringBuilder(PRIMARY_KEY).append(" IN (");
+        for (Long dbIdentifier : dbIdentifiers) {
+            whereClause.append(dbIdentifier).append(',');
+        }
+        whereClause.setCharAt(whereClause.length() - 1, ')');
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_BATCH_ID, batchId);
+        mDatabaseManager.update(values, whereClause.toString(), null);
+    }
+
     @Override
     public void clearPendingLogState() {
-        mPendingDbIdentifiers.clear();
-        mPendingDbIdentifiersGroups.clear();
+        ContentValues values = new ContentValues();
+        values.putNull(COLUMN_BATCH_ID);
+        mDatabaseManager.update(values, COLUMN_BATCH_ID + " IS NOT NULL", null);
+        mPendingLogStateCleared = true;
         AppCenterLog.debug(LOG_TAG, "Cleared pending log states");
     }
 
+    @Override
+    public void clearPendingLogState(@NonNull String group, @NonNull String id) {
+        ContentValues values = new ContentValues();
+        values.putNull(COLUMN_BATCH_ID);
+        int count = mDatabaseManager.update(values, COLUMN_BATCH_ID + " = ?", new String[]{id});
+        AppCenterLog.debug(LOG_TAG, "Cleared pending log state of " + count + " logs for " + group + " with " + id);
+    }
+
     @Override
     public void close() {
         mDatabaseManager.close();
@@ -617,16 +1578,35 @@ public class DatabasePersistence extends Persistence {
             Cursor cursor = mDatabaseManager.getCursor(builder, SELECT_PRIMARY_KEY, selectionArgs, null);
             try {
                 while (cursor.moveToNext()) {
-                    ContentValues idValues = mDatabaseManager.buildValues(cursor);
-                    Long id = idValues.getAsLong(PRIMARY_KEY);
-                    result.add(id);
+                    result.add(cursor.getLong(0));
                 }
             } finally {
                 cursor.close();
             }
         } catch (RuntimeException e) {
-            AppCenterLog.error(LOG_TAG, "Failed to get corrupted ids: ", e);
+            AppCenterLog.error(LOG_TAG, "Failed to get logs ids: ", e);
         }
         return result;
     }
+
+    /**
+     * Map that drops its least recently used entry when full.
+     */
+    private static class LruMap<K, V> extends LinkedHashMap<K, V> {
+
+        /**
+         * Maximum number of entries.
+         */
+        private final int mMaxEntries;
+
+        LruMap(int maxEntries) {
+            super(16, 0.75f, true);
+            mMaxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > mMaxEntries;
+        }
+    }
 }
@@ -0,0 +1,1137 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.persistence;
+
+import android.content.Context;
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.Constants;
+import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.SerializedLog;
+import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
+import com.microsoft.appcenter.ingestion.models.one.PartAUtils;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.StringUtils;
+import com.microsoft.appcenter.utils.crypto.CryptoUtils;
+import com.microsoft.appcenter.utils.storage.CompressionUtils;
+
+import org.json.JSONException;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+
+/**
+ * Persistence storing logs in append-only segment files instead of a database.
+ * <p>
+ * Each group has a lane per priority made of segment files that logs are appended to.
+ * Stored logs are never rewritten: deleting a batch appends the offsets of its logs to an acknowledgement file
+ * next to their segment, and a segment is deleted once all its logs are acknowledged.
+ * When storage is full, the oldest segments of the lowest priority are dropped as a whole.
+ * <p>
+ * Only the position, timestamp and target key of logs are kept in memory, payloads are read when sending.
+ */
+@SuppressWarnings("TryFinallyCanBeTryWithResources")
+public class JournalPersistence extends Persistence {
+
+    /**
+     * Sub path for directory where to store segments.
+     */
+    @VisibleForTesting
+    static final String DIRECTORY = "/appcenter/journal";
+
+    /**
+     * Segment file extension.
+     */
+    @VisibleForTesting
+    static final String SEGMENT_FILE_EXTENSION = ".seg";
+
+    /**
+     * Acknowledgement file extension.
+     */
+    @VisibleForTesting
+    static final String ACK_FILE_EXTENSION = ".ack";
+
+    /**
+     * Maximum size of a segment in bytes, unless a single log is larger.
+     */
+    @VisibleForTesting
+    static final int SEGMENT_MAX_SIZE = 256 * 1024;
+
+    /**
+     * Minimum size of a segment in bytes.
+     */
+    private static final int SEGMENT_MIN_SIZE = 4 * 1024;
+
+    /**
+     * Minimum number of segments the maximum storage size is split into, so that eviction drops a small part of logs.
+     */
+    private static final int SEGMENTS_PER_STORAGE = 8;
+
+    /**
+     * Maximum storage size until {@link #setMaxStorageSize(long)} is called.
+     */
+    private static final long DEFAULT_MAX_STORAGE_SIZE = 10 * 1024 * 1024;
+
+    /**
+     * Size of a frame header: body length and body checksum.
+     */
+    private static final int FRAME_HEADER_SIZE = 8;
+
+    /**
+     * Payload format: UTF-8 JSON.
+     */
+    private static final byte PAYLOAD_FORMAT_TEXT = 0;
+
+    /**
+     * Payload format: UTF-8 JSON compressed with deflate.
+     */
+    private static final byte PAYLOAD_FORMAT_DEFLATE = 1;
+
+    /**
+     * Maximum number of target tokens kept in memory.
+     */
+    private static final int TARGET_TOKEN_CACHE_SIZE = 32;
+
+    /**
+     * Application context.
+     */
+    private final Context mContext;
+
+    /**
+     * Base directory of segments.
+     */
+    private final File mDirectory;
+
+    /**
+     * Segments in order by priority (highest first) by group.
+     */
+    private final Map<String, Map<Integer, LinkedList<Segment>>> mLanes = new HashMap<>();
+
+    /**
+     * Logs by batch identifier.
+     */
+    private final Map<String, List<Record>> mBatches = new HashMap<>();
+
+    /**
+     * Number of logs evicted because storage was full by group.
+     */
+    private final Map<String, Long> mEvictedLogCounts = new HashMap<>();
+
+    /**
+     * Encrypted target tokens by clear text token, for the key rotation count {@link #mTargetTokenKeyRotationCount}.
+     */
+    private final Map<String, String> mEncryptedTargetTokens = new HashMap<>();
+
+    /**
+     * Clear text target tokens by encrypted token.
+     */
+    private final Map<String, String> mTargetTokens = new HashMap<>();
+
+    /**
+     * Key rotation count when {@link #mEncryptedTargetTokens} was filled.
+     */
+    private int mTargetTokenKeyRotationCount;
+
+    /**
+     * Checksum reused for frames.
+     */
+    private final CRC32 mChecksum = new CRC32();
+
+    /**
+     * Deflater reused to compress logs.
+     */
+    private final Deflater mDeflater = new Deflater();
+
+    /**
+     * Inflater reused to decompress logs.
+     */
+    private final Inflater mInflater = new Inflater();
+
+    /**
+     * Maximum storage size in bytes.
+     */
+    private long mMaxSize = DEFAULT_MAX_STORAGE_SIZE;
+
+    /**
+     * Size at which a segment is no longer appended to.
+     */
+    private int mSegmentSize = SEGMENT_MAX_SIZE;
+
+    /**
+     * Size of all segment and acknowledgement files in bytes.
+     */
+    private long mUsedSize;
+
+    /**
+     * Identifier of the next segment, segments of all lanes sharing a sequence.
+     */
+    private long mNextSegmentId;
+
+    /**
+     * Whether segments left by a previous process have been loaded.
+     */
+    private boolean mLoaded;
+
+    /**
+     * Whether new logs are stored compressed.
+     */
+    private boolean mCompressionEnabled;
+
+    /**
+     * Initializes the persistence in the default directory.
+     *
+     * @param context application context.
+     */
+    public JournalPersistence(Context context) {
+        this(context, new File(Constants.FILES_PATH + DIRECTORY));
+    }
+
+    /**
+     * Initializes the persistence.
+     *
+     * @param context   application context.
+     * @param directory base directory of segments.
+     */
+    @VisibleForTesting
+    JournalPersistence(Context context, File directory) {
+        mContext = context;
+        mDirectory = directory;
+    }
+
+    @Override
+    public synchronized boolean setMaxStorageSize(long maxStorageSizeInBytes) {
+        load();
+        mMaxSize = maxStorageSizeInBytes;
+        mSegmentSize = (int) Math.max(SEGMENT_MIN_SIZE, Math.min(SEGMENT_MAX_SIZE, maxStorageSizeInBytes / SEGMENTS_PER_STORAGE));
+        try {
+            makeRoom(0, Flags.CRITICAL);
+        } catch (PersistenceException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to reduce journal size to " + maxStorageSizeInBytes + " bytes.", e);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean setCompressionEnabled(boolean enabled) {
+        mCompressionEnabled = enabled;
+        return true;
+    }
+
+    @NonNull
+    @Override
+    public synchronized Map<String, Long> getEvictedLogCounts() {
+        return new HashMap<>(mEvictedLogCounts);
+    }
+
+    @Override
+    public synchronized long putLog(@NonNull Log log, @NonNull String group, @IntRange(from = Flags.NORMAL, to = Flags.CRITICAL) int flags) throws PersistenceException {
+        load();
+        try {
+            AppCenterLog.debug(LOG_TAG, "Storing a log to the journal for log type " + log.getType() + " with flags=" + flags);
+            String payload = getLogSerializer().serializeLog(log);
+            String targetKey = null;
+            String targetToken = null;
+            if (log instanceof CommonSchemaLog) {
+                targetToken = log.getTransmissionTargetTokens().iterator().next();
+                targetKey = PartAUtils.getTargetKey(targetToken);
+                targetToken = encryptTargetToken(targetToken);
+            }
+            int priority = Flags.getPersistenceFlag(flags, false);
+            long timestamp = log.getTimestamp().getTime();
+            byte[] frame = buildFrame(timestamp, log.getType(), targetKey, targetToken, payload);
+            if (frame.length > mMaxSize) {
+                throw new PersistenceException("Log is too large (" + frame.length + " bytes) to store in journal. " +
+                        "Current maximum storage size is " + mMaxSize + " bytes.");
+            }
+            makeRoom(frame.length, priority);
+            Segment segment = getWritableSegment(group, priority, frame.length);
+            int offset = (int) segment.mSize;
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(frame);
+                while (buffer.hasRemaining()) {
+                    segment.mChannel.write(buffer);
+                }
+            } catch (IOException e) {
+
+                /* Do not leave a partial frame behind, the segment is no longer appended to anyway. */
+                try {
+                    segment.mChannel.truncate(offset);
+                } catch (IOException ignore) {
+                }
+                closeChannel(segment);
+                throw e;
+            }
+            segment.mSize += frame.length;
+            mUsedSize += frame.length;
+            Record record = new Record(segment, offset, timestamp, targetKey);
+            record.mPayloadSize = StringUtils.getUtf8Length(payload);
+            segment.mRecords.add(record);
+            segment.mPendingCount++;
+            long id = record.getId();
+            AppCenterLog.debug(LOG_TAG, "Stored a log to the journal for log type " + log.getType() + " with id=" + id);
+            return id;
+        } catch (JSONException e) {
+            throw new PersistenceException("Cannot convert to JSON string.", e);
+        } catch (IOException e) {
+            throw new PersistenceException("Cannot write log to journal.", e);
+        }
+    }
+
+    @Override
+    public synchronized void deleteLogs(@NonNull String group, @NonNull String id) {
+        AppCenterLog.debug(LOG_TAG, "Deleting logs from the journal for " + group + " with " + id);
+        List<Record> records = mBatches.remove(id);
+        if (records != null) {
+            acknowledge(records);
+            AppCenterLog.debug(LOG_TAG, "Deleted " + records.size() + " logs.");
+        }
+    }
+
+    @Override
+    public synchronized void deleteLogs(String group) {
+        AppCenterLog.debug(LOG_TAG, "Deleting all logs from the journal for " + group);
+        load();
+        int deletedCount = 0;
+        Map<Integer, LinkedList<Segment>> lanes = mLanes.remove(group);
+        if (lanes != null) {
+            for (LinkedList<Segment> lane : lanes.values()) {
+                for (Segment segment : lane) {
+                    deletedCount += segment.mPendingCount;
+                    retire(segment);
+                }
+            }
+        }
+
+        /* Batches of the group are no longer valid. */
+        for (List<Record> records : mBatches.values()) {
+            for (Record record : records) {
+                if (record.mSegment.mGroup.equals(group)) {
+                    record.mAcknowledged = true;
+                }
+            }
+        }
+        File groupDirectory = getGroupDirectory(group);
+        File[] laneDirectories = groupDirectory.listFiles();
+        if (laneDirectories != null) {
+            for (File laneDirectory : laneDirectories) {
+
+                //noinspection ResultOfMethodCallIgnored only empty directories are deleted.
+                laneDirectory.delete();
+            }
+        }
+
+        //noinspection ResultOfMethodCallIgnored only empty directories are deleted.
+        groupDirectory.delete();
+        AppCenterLog.debug(LOG_TAG, "Deleted " + deletedCount + " logs.");
+    }
+
+    @Override
+    public synchronized int countLogs(@NonNull String group) {
+        load();
+        int count = 0;
+        Map<Integer, LinkedList<Segment>> lanes = mLanes.get(group);
+        if (lanes != null) {
+            for (LinkedList<Segment> lane : lanes.values()) {
+                for (Segment segment : lane) {
+                    count += segment.mPendingCount;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized int countLogs(@NonNull Date timestamp) {
+        load();
+        int count = 0;
+        long time = timestamp.getTime();
+        for (Map<Integer, LinkedList<Segment>> lanes : mLanes.values()) {
+            for (LinkedList<Segment> lane : lanes.values()) {
+                for (Segment segment : lane) {
+                    for (Record record : segment.mRecords) {
+                        if (!record.mAcknowledged && record.mTimestamp < time) {
+                            count++;
+                        }
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    @Nullable
+    @Override
+    public String getLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @NonNull List<Log> outLogs, @Nullable Date from, @Nullable Date to) {
+        List<SerializedLog> serializedLogs = new ArrayList<>();
+        String id = getLogs(group, pausedTargetKeys, limit, Long.MAX_VALUE, serializedLogs, from, to, true);
+        for (SerializedLog serializedLog : serializedLogs) {
+            try {
+                outLogs.add(serializedLog.getLog());
+            } catch (JSONException ignore) {
+
+                /* Cannot happen, logs are already deserialized. */
+            }
+        }
+        return id;
+    }
+
+    @Nullable
+    @Override
+    public String getSerializedLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @NonNull List<SerializedLog> outLogs, @Nullable Date from, @Nullable Date to) {
+        return getLogs(group, pausedTargetKeys, limit, Long.MAX_VALUE, outLogs, from, to, false);
+    }
+
+    @Nullable
+    @Override
+    public String getLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @IntRange(from = 1) long maxBytes, @NonNull List<Log> outLogs, @Nullable Date from, @Nullable Date to) {
+        List<SerializedLog> serializedLogs = new ArrayList<>();
+        String id = getLogs(group, pausedTargetKeys, limit, maxBytes, serializedLogs, from, to, true);
+        for (SerializedLog serializedLog : serializedLogs) {
+            try {
+                outLogs.add(serializedLog.getLog());
+            } catch (JSONException ignore) {
+
+                /* Cannot happen, logs are already deserialized. */
+            }
+        }
+        return id;
+    }
+
+    @Nullable
+    @Override
+    public String getSerializedLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @IntRange(from = 1) long maxBytes, @NonNull List<SerializedLog> outLogs, @Nullable Date from, @Nullable Date to) {
+        return getLogs(group, pausedTargetKeys, limit, maxBytes, outLogs, from, to, false);
+    }
+
+    /**
+     * Gets logs for the given {@code group} in priority then storage order and assigns them to a batch.
+     *
+     * @param group            The group of the storage for logs.
+     * @param pausedTargetKeys List of target token keys to exclude from the log query.
+     * @param limit            The max number of logs to be returned.
+     * @param maxBytes         The max total payload size of the logs to be returned, the first log is returned even if larger.
+     * @param outLogs          A list to receive stored logs.
+     * @param from             A time to select only logs with time after specified.
+     * @param to               A time to select only logs with time before specified.
+     * @param deserialize      true to rebuild the models now and skip logs that cannot be deserialized.
+     * @return An ID for {@code outLogs}. {@code null} if no logs exist.
+     */
+    @Nullable
+    private synchronized String getLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, int limit, long maxBytes, @NonNull List<SerializedLog> outLogs, @Nullable Date from, @Nullable Date to, boolean deserialize) {
+        AppCenterLog.debug(LOG_TAG, "Trying to get " + limit + " logs from the journal for " + group);
+        load();
+        Map<Integer, LinkedList<Segment>> lanes = mLanes.get(group);
+        if (lanes == null) {
+            AppCenterLog.debug(LOG_TAG, "No logs found in the journal at the moment");
+            return null;
+        }
+        String id = UUID.randomUUID().toString();
+        List<Record> batch = new ArrayList<>();
+        List<Record> failedRecords = new ArrayList<>();
+        long bytes = 0;
+        boolean budgetReached = false;
+        for (LinkedList<Segment> lane : lanes.values()) {
+            for (Segment segment : lane) {
+                if (budgetReached || batch.size() >= limit) {
+                    break;
+                }
+                RandomAccessFile file = null;
+                try {
+                    for (Record record : segment.mRecords) {
+                        if (batch.size() >= limit) {
+                            break;
+                        }
+                        if (record.mAcknowledged || record.mBatchId != null
+                                || (record.mTargetKey != null && pausedTargetKeys.contains(record.mTargetKey))
+                                || (from != null && record.mTimestamp < from.getTime())
+                                || (to != null && record.mTimestamp >= to.getTime())) {
+                            continue;
+                        }
+                        if (!batch.isEmpty() && record.mPayloadSize >= 0 && bytes + record.mPayloadSize > maxBytes) {
+                            budgetReached = true;
+                            break;
+                        }
+                        try {
+                            if (file == null) {
+                                file = new RandomAccessFile(segment.mFile, "r");
+                            }
+                            SerializedLog serializedLog = readLog(file, record);
+
+                            /* Logs loaded from a previous process are measured once read. */
+                            if (record.mPayloadSize < 0) {
+                                record.mPayloadSize = StringUtils.getUtf8Length(serializedLog.getPayload());
+                                if (!batch.isEmpty() && bytes + record.mPayloadSize > maxBytes) {
+                                    budgetReached = true;
+                                    break;
+                                }
+                            }
+                            if (deserialize) {
+                                serializedLog.getLog();
+                            }
+                            outLogs.add(serializedLog);
+                            record.mBatchId = id;
+                            batch.add(record);
+                            bytes += record.mPayloadSize;
+                        } catch (JSONException | IOException e) {
+
+                            /* If it is not able to read or deserialize, delete and get another log. */
+                            AppCenterLog.error(LOG_TAG, "Cannot read a log in the journal", e);
+                            failedRecords.add(record);
+                        }
+                    }
+                } finally {
+                    closeQuietly(file);
+                }
+            }
+        }
+        if (!failedRecords.isEmpty()) {
+            acknowledge(failedRecords);
+            AppCenterLog.warn(LOG_TAG, "Deleted logs that cannot be read");
+        }
+        if (batch.isEmpty()) {
+            AppCenterLog.debug(LOG_TAG, "No logs found in the journal at the moment");
+            return null;
+        }
+        mBatches.put(id, batch);
+        AppCenterLog.debug(LOG_TAG, "Returning " + batch.size() + " log(s) with an ID, " + id);
+        return id;
+    }
+
+    @Override
+    public synchronized void clearPendingLogState() {
+        for (List<Record> records : mBatches.values()) {
+            for (Record record : records) {
+                record.mBatchId = null;
+            }
+        }
+        mBatches.clear();
+        AppCenterLog.debug(LOG_TAG, "Cleared pending log states");
+    }
+
+    @Override
+    public synchronized void clearPendingLogState(@NonNull String group, @NonNull String id) {
+        List<Record> records = mBatches.remove(id);
+        if (records != null) {
+            for (Record record : records) {
+                record.mBatchId = null;
+            }
+            AppCenterLog.debug(LOG_TAG, "Cleared pending log state of " + records.size() + " logs for " + group + " with " + id);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Map<Integer, LinkedList<Segment>> lanes : mLanes.values()) {
+            for (LinkedList<Segment> lane : lanes.values()) {
+                for (Segment segment : lane) {
+                    closeChannel(segment);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the frame of a log.
+     * A frame is the body length, the body checksum then the body.
+     * The body is the metadata length, the metadata then the payload format and payload,
+     * so that loading segments reads metadata only.
+     */
+    @NonNull
+    private byte[] buildFrame(long timestamp, String type, @Nullable String targetKey, @Nullable String targetToken, @NonNull String payload) throws IOException {
+        ByteArrayOutputStream metadata = new ByteArrayOutputStream();
+        DataOutputStream metadataOutput = new DataOutputStream(metadata);
+        metadataOutput.writeLong(timestamp);
+        metadataOutput.writeUTF(type);
+        metadataOutput.writeUTF(targetKey != null ? targetKey : "");
+        metadataOutput.writeUTF(targetToken != null ? targetToken : "");
+
+        //noinspection CharsetObjectCanBeUsed min API level 19 required to fix this warning.
+        byte[] data = payload.getBytes("UTF-8");
+        byte format = PAYLOAD_FORMAT_TEXT;
+        if (mCompressionEnabled) {
+            data = CompressionUtils.deflate(mDeflater, data);
+            format = PAYLOAD_FORMAT_DEFLATE;
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream(2 + metadata.size() + 1 + data.length);
+        DataOutputStream bodyOutput = new DataOutputStream(body);
+        bodyOutput.writeShort(metadata.size());
+        metadata.writeTo(bodyOutput);
+        bodyOutput.writeByte(format);
+        bodyOutput.write(data);
+        byte[] bodyBytes = body.toByteArray();
+        mChecksum.reset();
+        mChecksum.update(bodyBytes, 0, bodyBytes.length);
+        return ByteBuffer.allocate(FRAME_HEADER_SIZE + bodyBytes.length)
+                .putInt(bodyBytes.length)
+                .putInt((int) mChecksum.getValue())
+                .put(bodyBytes)
+                .array();
+    }
+
+    /**
+     * Reads a log.
+     *
+     * @param file   segment file.
+     * @param record log to read.
+     * @return the log as stored.
+     * @throws IOException   if the segment cannot be read.
+     * @throws JSONException if the frame is corrupted.
+     */
+    @NonNull
+    private SerializedLog readLog(@NonNull RandomAccessFile file, @NonNull Record record) throws IOException, JSONException {
+        file.seek(record.mOffset);
+        int bodyLength = file.readInt();
+        int checksum = file.readInt();
+        if (bodyLength <= 0 || record.mOffset + FRAME_HEADER_SIZE + bodyLength > file.length()) {
+            throw new JSONException("Log frame at " + record.mOffset + " is truncated.");
+        }
+        byte[] body = new byte[bodyLength];
+        file.readFully(body);
+        mChecksum.reset();
+        mChecksum.update(body, 0, bodyLength);
+        if ((int) mChecksum.getValue() != checksum) {
+            throw new JSONException("Log frame at " + record.mOffset + " is corrupted.");
+        }
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(body));
+        int metadataLength = input.readUnsignedShort();
+        input.readLong();
+        String type = input.readUTF();
+        input.readUTF();
+        String targetToken = input.readUTF();
+        int payloadOffset = 2 + metadataLength;
+        String payload;
+        if (body[payloadOffset] == PAYLOAD_FORMAT_DEFLATE) {
+            try {
+
+                //noinspection CharsetObjectCanBeUsed min API level 19 required to fix this warning.
+                payload = new String(CompressionUtils.inflate(mInflater, body, payloadOffset + 1), "UTF-8");
+            } catch (DataFormatException e) {
+                throw new JSONException("Cannot decompress log payload: " + e.getMessage());
+            }
+        } else {
+            payload = new String(body, payloadOffset + 1, bodyLength - payloadOffset - 1, "UTF-8");
+        }
+        return new SerializedLog(payload, type, targetToken.isEmpty() ? null : decryptTargetToken(targetToken), record.mSegment.mPriority, getLogSerializer());
+    }
+
+    /**
+     * Encrypts a target token once per key.
+     */
+    private String encryptTargetToken(@NonNull String targetToken) {
+        CryptoUtils cryptoUtils = CryptoUtils.getInstance(mContext);
+        int keyRotationCount = cryptoUtils.getKeyRotationCount();
+        if (mTargetTokenKeyRotationCount != keyRotationCount || mEncryptedTargetTokens.size() >= TARGET_TOKEN_CACHE_SIZE) {
+            mTargetTokenKeyRotationCount = keyRotationCount;
+            mEncryptedTargetTokens.clear();
+        }
+        String encryptedTargetToken = mEncryptedTargetTokens.get(targetToken);
+        if (encryptedTargetToken == null) {
+            encryptedTargetToken = cryptoUtils.encrypt(targetToken);
+            mEncryptedTargetTokens.put(targetToken, encryptedTargetToken);
+        }
+        return encryptedTargetToken;
+    }
+
+    /**
+     * Decrypts a target token once per process.
+     */
+    private String decryptTargetToken(@NonNull String encryptedTargetToken) {
+        String targetToken = mTargetTokens.get(encryptedTargetToken);
+        if (targetToken == null) {
+            if (mTargetTokens.size() >= TARGET_TOKEN_CACHE_SIZE) {
+                mTargetTokens.clear();
+            }
+            targetToken = CryptoUtils.getInstance(mContext).decrypt(encryptedTargetToken, false).getDecryptedData();
+            mTargetTokens.put(encryptedTargetToken, targetToken);
+        }
+        return targetToken;
+    }
+
+    /**
+     * Drops oldest segments of the lowest priority until a frame fits in storage.
+     *
+     * @param frameLength size of the frame to store.
+     * @param priority    priority of the log to store, segments of higher priority are kept.
+     * @throws PersistenceException if storage is full of logs with a higher priority.
+     */
+    private void makeRoom(int frameLength, int priority) throws PersistenceException {
+        while (mUsedSize + frameLength > mMaxSize) {
+            Segment oldest = null;
+            for (Map<Integer, LinkedList<Segment>> lanes : mLanes.values()) {
+                for (LinkedList<Segment> lane : lanes.values()) {
+                    Segment segment = lane.peekFirst();
+                    if (segment != null && (oldest == null || segment.mPriority < oldest.mPriority
+                            || (segment.mPriority == oldest.mPriority && segment.mId < oldest.mId))) {
+                        oldest = segment;
+                    }
+                }
+            }
+            if (oldest == null || oldest.mPriority > priority) {
+                throw new PersistenceException("Journal is full of logs with a higher priority than " + priority + ".");
+            }
+            Long evictedCount = mEvictedLogCounts.get(oldest.mGroup);
+            mEvictedLogCounts.put(oldest.mGroup, (evictedCount == null ? 0 : evictedCount) + oldest.mPendingCount);
+            AppCenterLog.debug(LOG_TAG, "Storage is full, dropping segment " + oldest.mId + " with " + oldest.mPendingCount + " logs of " + oldest.mGroup);
+            retire(oldest);
+        }
+    }
+
+    /**
+     * Gets the segment to append a frame to, starting a new one if needed.
+     */
+    @NonNull
+    private Segment getWritableSegment(@NonNull String group, int priority, int frameLength) throws IOException {
+        LinkedList<Segment> lane = getLane(group, priority);
+        Segment segment = lane.peekLast();
+        if (segment == null || segment.mChannel == null || (segment.mSize > 0 && segment.mSize + frameLength > mSegmentSize)) {
+            if (segment != null) {
+                closeChannel(segment);
+            }
+            File directory = getLaneDirectory(group, priority);
+
+            //noinspection ResultOfMethodCallIgnored we'll get an error anyway at write time.
+            directory.mkdirs();
+            long id = mNextSegmentId++;
+            segment = new Segment(group, priority, id, new File(directory, id + SEGMENT_FILE_EXTENSION));
+            segment.mChannel = new FileOutputStream(segment.mFile, true).getChannel();
+            lane.add(segment);
+        }
+        return segment;
+    }
+
+    /**
+     * Marks logs as deleted, deleting segments whose logs are all deleted.
+     *
+     * @param records logs to delete.
+     */
+    private void acknowledge(@NonNull List<Record> records) {
+
+        /* Group by segment to write each acknowledgement file once. */
+        Map<Segment, List<Record>> recordsBySegment = new HashMap<>();
+        for (Record record : records) {
+            if (record.mAcknowledged) {
+                continue;
+            }
+            record.mAcknowledged = true;
+            List<Record> segmentRecords = recordsBySegment.get(record.mSegment);
+            if (segmentRecords == null) {
+                segmentRecords = new ArrayList<>();
+                recordsBySegment.put(record.mSegment, segmentRecords);
+            }
+            segmentRecords.add(record);
+        }
+        for (Map.Entry<Segment, List<Record>> entry : recordsBySegment.entrySet()) {
+            Segment segment = entry.getKey();
+            List<Record> segmentRecords = entry.getValue();
+            segment.mPendingCount -= segmentRecords.size();
+            if (segment.mRetired) {
+                continue;
+            }
+            if (segment.mPendingCount <= 0) {
+                retire(segment);
+                continue;
+            }
+            ByteBuffer offsets = ByteBuffer.allocate(segmentRecords.size() * 4);
+            for (Record record : segmentRecords) {
+                offsets.putInt(record.mOffset);
+            }
+            FileOutputStream output = null;
+            try {
+                output = new FileOutputStream(segment.getAckFile(), true);
+                output.write(offsets.array());
+                segment.mAckSize += offsets.capacity();
+                mUsedSize += offsets.capacity();
+            } catch (IOException e) {
+
+                /* Logs will be sent again by the next process. */
+                AppCenterLog.error(LOG_TAG, "Failed to acknowledge logs in segment " + segment.mFile, e);
+            } finally {
+                closeQuietly(output);
+            }
+        }
+    }
+
+    /**
+     * Deletes a segment and its acknowledgements.
+     */
+    private void retire(@NonNull Segment segment) {
+        closeChannel(segment);
+        segment.mRetired = true;
+
+        //noinspection ResultOfMethodCallIgnored we cannot do better than next process retrying.
+        segment.mFile.delete();
+
+        //noinspection ResultOfMethodCallIgnored we cannot do better than next process retrying.
+        segment.getAckFile().delete();
+        mUsedSize -= segment.mSize + segment.mAckSize;
+        Map<Integer, LinkedList<Segment>> lanes = mLanes.get(segment.mGroup);
+        if (lanes != null) {
+            LinkedList<Segment> lane = lanes.get(segment.mPriority);
+            if (lane != null) {
+                lane.remove(segment);
+            }
+        }
+    }
+
+    /**
+     * Loads segments left by a previous process once. They are read only, new logs start new segments.
+     */
+    private void load() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        File[] groupDirectories = mDirectory.listFiles();
+        if (groupDirectories == null) {
+            return;
+        }
+        for (File groupDirectory : groupDirectories) {
+            String group = decodeGroup(groupDirectory.getName());
+            File[] laneDirectories = groupDirectory.listFiles();
+            if (group == null || laneDirectories == null) {
+                continue;
+            }
+            for (File laneDirectory : laneDirectories) {
+                int priority;
+                try {
+                    priority = Integer.parseInt(laneDirectory.getName());
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                File[] files = laneDirectory.listFiles(new FileFilter() {
+
+                    @Override
+                    public boolean accept(File file) {
+                        return file.getName().endsWith(SEGMENT_FILE_EXTENSION);
+                    }
+                });
+                if (files == null) {
+                    continue;
+                }
+                List<Segment> segments = new ArrayList<>();
+                for (File file : files) {
+                    String name = file.getName();
+                    try {
+                        long id = Long.parseLong(name.substring(0, name.length() - SEGMENT_FILE_EXTENSION.length()));
+                        segments.add(new Segment(group, priority, id, file));
+                        mNextSegmentId = Math.max(mNextSegmentId, id + 1);
+                    } catch (NumberFormatException e) {
+                        AppCenterLog.warn(LOG_TAG, "Ignoring unexpected file in journal: " + file);
+                    }
+                }
+                Collections.sort(segments, new Comparator<Segment>() {
+
+                    @Override
+                    public int compare(Segment segment1, Segment segment2) {
+                        return segment1.mId < segment2.mId ? -1 : (segment1.mId == segment2.mId ? 0 : 1);
+                    }
+                });
+                for (Segment segment : segments) {
+                    loadSegment(segment);
+                    mUsedSize += segment.mSize + segment.mAckSize;
+                    if (segment.mPendingCount > 0) {
+                        getLane(group, priority).add(segment);
+                    } else {
+                        retire(segment);
+                    }
+                }
+            }
+        }
+        AppCenterLog.debug(LOG_TAG, "Loaded journal of " + mUsedSize + " bytes.");
+    }
+
+    /**
+     * Reads the metadata of the logs of a segment and which ones were acknowledged.
+     * Reading stops at the first truncated frame, which a process killed while writing can leave behind.
+     */
+    private void loadSegment(@NonNull Segment segment) {
+        long length = segment.mFile.length();
+        segment.mSize = length;
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.mFile)));
+            long offset = 0;
+            while (offset + FRAME_HEADER_SIZE <= length) {
+                int bodyLength = input.readInt();
+                input.readInt();
+                if (bodyLength <= 0 || offset + FRAME_HEADER_SIZE + bodyLength > length) {
+                    break;
+                }
+                int metadataLength = input.readUnsignedShort();
+                byte[] metadata = new byte[metadataLength];
+                input.readFully(metadata);
+                DataInputStream metadataInput = new DataInputStream(new ByteArrayInputStream(metadata));
+                long timestamp = metadataInput.readLong();
+                metadataInput.readUTF();
+                String targetKey = metadataInput.readUTF();
+                segment.mRecords.add(new Record(segment, (int) offset, timestamp, targetKey.isEmpty() ? null : targetKey));
+                input.skipBytes(bodyLength - 2 - metadataLength);
+                offset += FRAME_HEADER_SIZE + bodyLength;
+            }
+        } catch (IOException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to read segment " + segment.mFile, e);
+        } finally {
+            closeQuietly(input);
+        }
+        segment.mPendingCount = segment.mRecords.size();
+
+        /* Apply acknowledgements. */
+        File ackFile = segment.getAckFile();
+        segment.mAckSize = ackFile.length();
+        DataInputStream ackInput = null;
+        try {
+            if (ackFile.exists()) {
+                ackInput = new DataInputStream(new BufferedInputStream(new FileInputStream(ackFile)));
+                for (long i = 0; i < segment.mAckSize / 4; i++) {
+                    Record record = findRecord(segment, ackInput.readInt());
+                    if (record != null && !record.mAcknowledged) {
+                        record.mAcknowledged = true;
+                        segment.mPendingCount--;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to read acknowledgements " + ackFile, e);
+        } finally {
+            closeQuietly(ackInput);
+        }
+    }
+
+    @Nullable
+    private static Record findRecord(@NonNull Segment segment, int offset) {
+        int low = 0;
+        int high = segment.mRecords.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            Record record = segment.mRecords.get(middle);
+            if (record.mOffset < offset) {
+                low = middle + 1;
+            } else if (record.mOffset > offset) {
+                high = middle - 1;
+            } else {
+                return record;
+            }
+        }
+        return null;
+    }
+
+    @NonNull
+    private LinkedList<Segment> getLane(@NonNull String group, int priority) {
+        Map<Integer, LinkedList<Segment>> lanes = mLanes.get(group);
+        if (lanes == null) {
+
+            /* Highest priority first. */
+            lanes = new TreeMap<>(Collections.<Integer>reverseOrder());
+            mLanes.put(group, lanes);
+        }
+        LinkedList<Segment> lane = lanes.get(priority);
+        if (lane == null) {
+            lane = new LinkedList<>();
+            lanes.put(priority, lane);
+        }
+        return lane;
+    }
+
+    @NonNull
+    private File getGroupDirectory(@NonNull String group) {
+        try {
+            return new File(mDirectory, URLEncoder.encode(group, "UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+
+            /* Cannot happen, UTF-8 is always supported. */
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @NonNull
+    private File getLaneDirectory(@NonNull String group, int priority) {
+        return new File(getGroupDirectory(group), String.valueOf(priority));
+    }
+
+    @Nullable
+    private static String decodeGroup(@NonNull String name) {
+        try {
+            return URLDecoder.decode(name, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static void closeChannel(@NonNull Segment segment) {
+        if (segment.mChannel != null) {
+            closeQuietly(segment.mChannel);
+            segment.mChannel = null;
+        }
+    }
+
+    private static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    /**
+     * Segment file of a lane.
+     */
+    private static class Segment {
+
+        /**
+         * Group.
+         */
+        final String mGroup;
+
+        /**
+         * Priority of all logs in the segment.
+         */
+        final int mPriority;
+
+        /**
+         * Identifier, increasing in storage order.
+         */
+        final long mId;
+
+        /**
+         * Segment file.
+         */
+        final File mFile;
+
+        /**
+         * Logs in storage order.
+         */
+        final List<Record> mRecords = new ArrayList<>();
+
+        /**
+         * Segment file size in bytes.
+         */
+        long mSize;
+
+        /**
+         * Acknowledgement file size in bytes.
+         */
+        long mAckSize;
+
+        /**
+         * Number of logs not acknowledged.
+         */
+        int mPendingCount;
+
+        /**
+         * Whether the segment files have been deleted.
+         */
+        boolean mRetired;
+
+        /**
+         * Channel to append logs, null when the segment is no longer appended to.
+         */
+        FileChannel mChannel;
+
+        Segment(String group, int priority, long id, File file) {
+            mGroup = group;
+            mPriority = priority;
+            mId = id;
+            mFile = file;
+        }
+
+        File getAckFile() {
+            return new File(mFile.getParentFile(), mId + ACK_FILE_EXTENSION);
+        }
+    }
+
+    /**
+     * Log position and metadata needed to select logs without reading payloads.
+     */
+    private static class Record {
+
+        /**
+         * Segment.
+         */
+        final Segment mSegment;
+
+        /**
+         * Offset of the frame in the segment file.
+         */
+        final int mOffset;
+
+        /**
+         * Log timestamp in milliseconds.
+         */
+        final long mTimestamp;
+
+        /**
+         * Target key or null if the log is not common schema.
+         */
+        final String mTargetKey;
+
+        /**
+         * Identifier of the batch the log is being sent with, null when the log is not being sent.
+         */
+        String mBatchId;
+
+        /**
+         * Whether the log has been deleted.
+         */
+        boolean mAcknowledged;
+
+        /**
+         * Size in bytes of the UTF-8 JSON payload, -1 until known for logs loaded from segment files.
+         */
+        int mPayloadSize = -1;
+
+        Record(Segment segment, int offset, long timestamp, String targetKey) {
+            mSegment = segment;
+            mOffset = offset;
+            mTimestamp = timestamp;
+            mTargetKey = targetKey;
+        }
+
+        /**
+         * Gets the log identifier, made of segment identifier and offset.
+         */
+        long getId() {
+            return (mSegment.mId << 32) | mOffset;
+        }
+    }
+}
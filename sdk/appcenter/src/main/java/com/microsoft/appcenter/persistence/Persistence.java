@@ -11,12 +11,16 @@ import android.support.annotation.Nullable;
 
 import com.microsoft.appcenter.Flags;
 import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.SerializedLog;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 
 import java.io.Closeable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Abstract class for Persistence service.
@@ -40,6 +44,22 @@ public abstract class Persistence implements Closeable {
     public abstract long putLog(@NonNull Log log, @NonNull String group,
                                 @IntRange(from = Flags.NORMAL, to = Flags.CRITICAL) int flags) throws PersistenceException;
 
+    /**
+     * Starts grouping next {@link #putLog(Log, String, int)} calls so that they are written together
+     * by {@link #endTransaction()}. Logs are written one by one if not supported.
+     */
+    public void beginTransaction() {
+    }
+
+    /**
+     * Writes logs put since {@link #beginTransaction()}.
+     *
+     * @return false if logs put since {@link #beginTransaction()} could not be written, true otherwise.
+     */
+    public boolean endTransaction() {
+        return true;
+    }
+
     /**
      * Deletes a log with the give ID from the {@code group}.
      *
@@ -85,11 +105,93 @@ public abstract class Persistence implements Closeable {
     @Nullable
     public abstract String getLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @NonNull List<Log> outLogs, @Nullable Date from, @Nullable Date to);
 
+    /**
+     * Gets an array of logs for the given {@code group} as they are stored, without rebuilding {@link Log} models.
+     * The default implementation wraps the models returned by {@link #getLogs(String, Collection, int, List, Date, Date)}.
+     *
+     * @param group            The group of the storage for logs.
+     * @param pausedTargetKeys List of target token keys to exclude from the log query.
+     * @param limit            The max number of logs to be returned.
+     * @param outLogs          A list to receive {@link SerializedLog} objects.
+     * @param from             A time to select only logs with time after specified.
+     * @param to               A time to select only logs with time before specified.
+     * @return An ID for {@code outLogs}. {@code null} if no logs exist.
+     */
+    @Nullable
+    public String getSerializedLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @NonNull List<SerializedLog> outLogs, @Nullable Date from, @Nullable Date to) {
+        List<Log> logs = new ArrayList<>(limit);
+        String id = getLogs(group, pausedTargetKeys, limit, logs, from, to);
+        wrapLogs(logs, outLogs);
+        return id;
+    }
+
+    /**
+     * Gets an array of logs for the given {@code group}, capped by both a number of logs and their stored payload size.
+     * The first log is always returned, alone if its payload is larger than {@code maxBytes}.
+     * Implementations that don't track payload sizes only apply {@code limit}.
+     *
+     * @param group            The group of the storage for logs.
+     * @param pausedTargetKeys List of target token keys to exclude from the log query.
+     * @param limit            The max number of logs to be returned.
+     * @param maxBytes         The max total payload size of the logs to be returned, in bytes.
+     * @param outLogs          A list to receive {@link Log} objects.
+     * @param from             A time to select only logs with time after specified.
+     * @param to               A time to select only logs with time before specified.
+     * @return An ID for {@code outLogs}. {@code null} if no logs exist.
+     */
+    @Nullable
+    public String getLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @IntRange(from = 1) long maxBytes, @NonNull List<Log> outLogs, @Nullable Date from, @Nullable Date to) {
+        return getLogs(group, pausedTargetKeys, limit, outLogs, from, to);
+    }
+
+    /**
+     * Gets an array of logs for the given {@code group} as they are stored, capped by both a number of logs and their payload size.
+     * The first log is always returned, alone if its payload is larger than {@code maxBytes}.
+     * The default implementation wraps the models returned by {@link #getLogs(String, Collection, int, long, List, Date, Date)}.
+     *
+     * @param group            The group of the storage for logs.
+     * @param pausedTargetKeys List of target token keys to exclude from the log query.
+     * @param limit            The max number of logs to be returned.
+     * @param maxBytes         The max total payload size of the logs to be returned, in bytes.
+     * @param outLogs          A list to receive {@link SerializedLog} objects.
+     * @param from             A time to select only logs with time after specified.
+     * @param to               A time to select only logs with time before specified.
+     * @return An ID for {@code outLogs}. {@code null} if no logs exist.
+     */
+    @Nullable
+    public String getSerializedLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @IntRange(from = 1) long maxBytes, @NonNull List<SerializedLog> outLogs, @Nullable Date from, @Nullable Date to) {
+        List<Log> logs = new ArrayList<>(limit);
+        String id = getLogs(group, pausedTargetKeys, limit, maxBytes, logs, from, to);
+        wrapLogs(logs, outLogs);
+        return id;
+    }
+
+    /**
+     * Wraps log models for the serialized logs methods of implementations that only build models.
+     *
+     * @param logs    The log models.
+     * @param outLogs A list to receive {@link SerializedLog} objects.
+     */
+    private static void wrapLogs(@NonNull List<Log> logs, @NonNull List<SerializedLog> outLogs) {
+        for (Log log : logs) {
+            outLogs.add(new SerializedLog(log));
+        }
+    }
+
     /**
      * Clears all associations between logs of the {@code group} and ids returned by {@link #getLogs(String, Collection, int, List, Date, Date)}}.
      */
     public abstract void clearPendingLogState();
 
+    /**
+     * Clears the association between logs of the {@code group} and a single id returned by {@link #getLogs(String, Collection, int, List, Date, Date)},
+     * so that the logs of that batch can be returned again.
+     *
+     * @param group The group of the storage for logs.
+     * @param id    The ID of the batch.
+     */
+    public abstract void clearPendingLogState(@NonNull String group, @NonNull String id);
+
     /**
      * Gets a {@link LogSerializer}.
      *
@@ -119,6 +221,49 @@ public abstract class Persistence implements Closeable {
      */
     public abstract boolean setMaxStorageSize(long maxStorageSizeInBytes);
 
+    /**
+     * Sets whether new logs are stored compressed. Stored logs are read whatever format they were written with.
+     *
+     * @param enabled true to compress new logs, false to store them as text.
+     * @return true if supported, false otherwise.
+     */
+    public boolean setCompressionEnabled(boolean enabled) {
+        return false;
+    }
+
+    /**
+     * Gets the number of logs evicted to keep the storage under its maximum size, by group.
+     *
+     * @return number of evicted logs by group, empty if not tracked.
+     */
+    @NonNull
+    public Map<String, Long> getEvictedLogCounts() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Sets the storage quota of a group, or of a transmission target of a group.
+     * Logs over a quota are evicted from that group or target before logs of other groups.
+     *
+     * @param group                 group name.
+     * @param targetKey             target key, or null for the quota of the whole group.
+     * @param maxStorageSizeInBytes maximum size of stored logs in bytes, 0 or less to remove the quota.
+     * @return true if supported, false otherwise.
+     */
+    public boolean setStorageQuota(@NonNull String group, @Nullable String targetKey, long maxStorageSizeInBytes) {
+        return false;
+    }
+
+    /**
+     * Gets the number of logs evicted to honor storage quotas, by group.
+     *
+     * @return number of evicted logs by group, empty if not tracked.
+     */
+    @NonNull
+    public Map<String, Long> getQuotaEvictedLogCounts() {
+        return Collections.emptyMap();
+    }
+
     /**
      * Thrown when {@link Persistence} cannot write a log to the storage.
      */
@@ -127,8 +272,7 @@ public abstract class Persistence implements Closeable {
             super(detailMessage, throwable);
         }
 
-        @SuppressWarnings("SameParameterValue")
-        PersistenceException(String detailMessage) {
+        public PersistenceException(String detailMessage) {
             super(detailMessage);
         }
     }
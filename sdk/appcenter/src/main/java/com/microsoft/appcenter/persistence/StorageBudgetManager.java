@@ -0,0 +1,565 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.persistence;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.storage.DatabaseManager;
+import com.microsoft.appcenter.utils.storage.SQLiteUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+import static com.microsoft.appcenter.persistence.DatabasePersistence.COLUMN_GROUP;
+import static com.microsoft.appcenter.persistence.DatabasePersistence.COLUMN_LOG;
+import static com.microsoft.appcenter.persistence.DatabasePersistence.COLUMN_LOG_DATA;
+import static com.microsoft.appcenter.persistence.DatabasePersistence.COLUMN_PRIORITY;
+import static com.microsoft.appcenter.persistence.DatabasePersistence.COLUMN_TARGET_KEY;
+import static com.microsoft.appcenter.persistence.DatabasePersistence.TABLE;
+import static com.microsoft.appcenter.utils.storage.DatabaseManager.PRIMARY_KEY;
+
+/**
+ * Keeps the logs database under its maximum size. Once the used size goes over a high watermark,
+ * logs are deleted in bulk, lowest priority and oldest first, until it goes down to a low watermark.
+ * Checks run on a background thread after enough data has been written since the last check,
+ * so that storing a log never waits for an eviction and rarely hits a full database.
+ * <p>
+ * A group, or a transmission target of a group, can also have a quota: logs over a quota are
+ * evicted from that group or target only, before the global maximum size is checked.
+ */
+@SuppressWarnings("TryFinallyCanBeTryWithResources")
+class StorageBudgetManager {
+
+    /**
+     * Ratio of the maximum size over which logs are evicted.
+     */
+    @VisibleForTesting
+    static final float HIGH_WATERMARK = 0.9f;
+
+    /**
+     * Ratio of the maximum size that eviction goes down to.
+     */
+    @VisibleForTesting
+    static final float LOW_WATERMARK = 0.75f;
+
+    /**
+     * Part of the maximum size written between 2 checks.
+     */
+    private static final int CHECK_INTERVAL_DIVISOR = 50;
+
+    /**
+     * Maximum number of bulk deletions for one eviction, the row size being estimated.
+     */
+    private static final int MAX_EVICTION_PASSES = 3;
+
+    /**
+     * Idle time before stopping the eviction thread, in seconds.
+     */
+    private static final long KEEP_ALIVE_TIME = 30;
+
+    /**
+     * Order of eviction.
+     */
+    private static final String EVICTION_ORDER = COLUMN_PRIORITY + ", " + PRIMARY_KEY;
+
+    /**
+     * Database manager of the logs database.
+     */
+    private final DatabaseManager mDatabaseManager;
+
+    /**
+     * Listener for evicted logs.
+     */
+    private final Listener mListener;
+
+    /**
+     * Executor running checks.
+     */
+    private final Executor mExecutor;
+
+    /**
+     * Bytes written since last check.
+     */
+    private final AtomicLong mWrittenSize = new AtomicLong();
+
+    /**
+     * Whether a check is scheduled.
+     */
+    private final AtomicBoolean mCheckScheduled = new AtomicBoolean();
+
+    /**
+     * Bytes to write before next check, 0 until the maximum size is known to check on the first write.
+     */
+    private volatile long mCheckInterval;
+
+    /**
+     * Number of evicted logs by group.
+     */
+    private final Map<String, Long> mEvictedLogCounts = new HashMap<>();
+
+    /**
+     * Number of logs evicted to honor quotas, by group.
+     */
+    private final Map<String, Long> mQuotaEvictedLogCounts = new HashMap<>();
+
+    /**
+     * Quotas by group then by target key, the null target key being the quota of the whole group.
+     */
+    private final Map<String, Map<String, Quota>> mQuotas = new HashMap<>();
+
+    /**
+     * Init.
+     *
+     * @param databaseManager database manager of the logs database.
+     * @param listener        listener for evicted logs.
+     */
+    StorageBudgetManager(@NonNull DatabaseManager databaseManager, @NonNull Listener listener) {
+        this(databaseManager, listener, createExecutor());
+    }
+
+    /**
+     * Init.
+     *
+     * @param databaseManager database manager of the logs database.
+     * @param listener        listener for evicted logs.
+     * @param executor        executor running checks.
+     */
+    @VisibleForTesting
+    StorageBudgetManager(@NonNull DatabaseManager databaseManager, @NonNull Listener listener, @NonNull Executor executor) {
+        mDatabaseManager = databaseManager;
+        mListener = listener;
+        mExecutor = executor;
+    }
+
+    private static Executor createExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_TIME, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            @Override
+            public Thread newThread(@NonNull final Runnable runnable) {
+                return new Thread(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "AppCenter.Storage");
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Sets the storage quota of a group or of a transmission target of a group.
+     *
+     * @param group     group name.
+     * @param targetKey target key, or null for the whole group.
+     * @param maxSize   maximum size of stored payloads in bytes, 0 or less to remove the quota.
+     */
+    void setQuota(@NonNull String group, @Nullable String targetKey, long maxSize) {
+        synchronized (mQuotas) {
+            Map<String, Quota> groupQuotas = mQuotas.get(group);
+            if (maxSize <= 0) {
+                if (groupQuotas != null) {
+                    groupQuotas.remove(targetKey);
+                    if (groupQuotas.isEmpty()) {
+                        mQuotas.remove(group);
+                    }
+                }
+                return;
+            }
+            if (groupQuotas == null) {
+                groupQuotas = new HashMap<>();
+                mQuotas.put(group, groupQuotas);
+            }
+            Quota quota = groupQuotas.get(targetKey);
+            if (quota == null) {
+                quota = new Quota(group, targetKey);
+                groupQuotas.put(targetKey, quota);
+            }
+            quota.mMaxSize = maxSize;
+        }
+        scheduleCheck();
+    }
+
+    /**
+     * Called when a log has been written to the database.
+     *
+     * @param group     group of the log.
+     * @param targetKey target key of the log, null if not a Common Schema log.
+     * @param size      size of the row payload in bytes.
+     */
+    void onLogStored(@NonNull String group, @Nullable String targetKey, long size) {
+        boolean overQuota = false;
+        synchronized (mQuotas) {
+            Map<String, Quota> groupQuotas = mQuotas.get(group);
+            if (groupQuotas != null) {
+                overQuota = addWrittenSize(groupQuotas.get(null), size);
+                if (targetKey != null) {
+                    overQuota |= addWrittenSize(groupQuotas.get(targetKey), size);
+                }
+            }
+        }
+        if (mWrittenSize.addAndGet(size) >= mCheckInterval || overQuota) {
+            scheduleCheck();
+        }
+    }
+
+    /**
+     * Accounts for a written log in a quota.
+     *
+     * @param quota quota, may be null.
+     * @param size  size of the row payload in bytes.
+     * @return true if the quota needs to be checked.
+     */
+    private static boolean addWrittenSize(@Nullable Quota quota, long size) {
+        if (quota == null) {
+            return false;
+        }
+        quota.mWrittenSize += size;
+        return quota.mSize < 0 || quota.mSize + quota.mWrittenSize > quota.mMaxSize;
+    }
+
+    /**
+     * Schedules a check of the used size, for example when the maximum size changed.
+     */
+    void scheduleCheck() {
+        if (mCheckScheduled.compareAndSet(false, true)) {
+            mExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    check();
+                }
+            });
+        }
+    }
+
+    /**
+     * Evicts logs over quotas, then evicts logs if the used size is over the high watermark.
+     */
+    @VisibleForTesting
+    void check() {
+        mCheckScheduled.set(false);
+        mWrittenSize.set(0);
+        checkQuotas();
+        long maxSize = mDatabaseManager.getMaxSize();
+        if (maxSize <= 0) {
+            return;
+        }
+        mCheckInterval = maxSize / CHECK_INTERVAL_DIVISOR;
+        long usedSize = mDatabaseManager.getUsedSize();
+        if (usedSize > maxSize * HIGH_WATERMARK) {
+            AppCenterLog.debug(LOG_TAG, "Storage uses " + usedSize + " of " + maxSize + " bytes, evicting logs.");
+            evict(null, (long) (maxSize * LOW_WATERMARK));
+        }
+    }
+
+    /**
+     * Measures the size of each quota and evicts logs, lowest priority and oldest first,
+     * from those over their maximum size until they go down to the low watermark.
+     */
+    private void checkQuotas() {
+        List<Quota> quotas = new ArrayList<>();
+        synchronized (mQuotas) {
+            for (Map<String, Quota> groupQuotas : mQuotas.values()) {
+                for (Quota quota : groupQuotas.values()) {
+                    quota.mWrittenSize = 0;
+                    quotas.add(quota);
+                }
+            }
+        }
+        for (Quota quota : quotas) {
+            long size;
+            try {
+                size = getUsage(quota.mGroup, quota.mTargetKey)[0];
+            } catch (RuntimeException e) {
+                AppCenterLog.error(LOG_TAG, "Failed to measure storage quota usage.", e);
+                size = 0;
+            }
+            long maxSize;
+            synchronized (mQuotas) {
+                maxSize = quota.mMaxSize;
+            }
+            if (size > maxSize) {
+                AppCenterLog.debug(LOG_TAG, "Group " + quota.mGroup + (quota.mTargetKey != null ? " target " + quota.mTargetKey : "") +
+                        " uses " + size + " of " + maxSize + " bytes quota, evicting logs.");
+                size = (long) (maxSize * LOW_WATERMARK);
+                evict(quota.mGroup, quota.mTargetKey, size, true);
+            }
+            synchronized (mQuotas) {
+                quota.mSize = size;
+            }
+        }
+    }
+
+    /**
+     * Deletes logs, lowest priority and oldest first, until the used size goes down to the target.
+     * All deletions are committed at once.
+     *
+     * @param group      group to delete logs from, or null for all groups.
+     * @param targetSize used size to reach in bytes.
+     * @return number of deleted logs.
+     */
+    int evict(@Nullable String group, long targetSize) {
+        return evict(group, null, targetSize, false);
+    }
+
+    /**
+     * Deletes logs, lowest priority and oldest first, until the used size goes down to the target.
+     * All deletions are committed at once.
+     *
+     * @param group      group to delete logs from, or null for all groups.
+     * @param targetKey  target key to delete logs from, or null for all targets.
+     * @param targetSize size to reach in bytes.
+     * @param quota      true to measure the size of payloads of the selected logs, false to measure the database.
+     * @return number of deleted logs.
+     */
+    private int evict(@Nullable String group, @Nullable String targetKey, long targetSize, boolean quota) {
+        Map<String, Long> counts = new HashMap<>();
+        List<String> largePayloadGroups = new ArrayList<>();
+        List<Long> largePayloadIds = new ArrayList<>();
+        int evictedCount = 0;
+        boolean inTransaction = mDatabaseManager.beginTransaction();
+        try {
+            for (int pass = 0; pass < MAX_EVICTION_PASSES; pass++) {
+                long[] usage = quota ? getUsage(group, targetKey) : new long[]{mDatabaseManager.getUsedSize(), 0};
+                long usedSize = usage[0];
+                if (usedSize < 0 || usedSize <= targetSize) {
+                    break;
+                }
+
+                /* Estimate how many rows to delete from the average row size. */
+                long rowCount = quota ? usage[1] : mDatabaseManager.getRowCount();
+                if (rowCount <= 0) {
+                    break;
+                }
+                long averageRowSize = Math.max(1, usedSize / rowCount);
+                long limit = (usedSize - targetSize + averageRowSize - 1) / averageRowSize;
+                int deletedCount = deleteOldestLogs(group, targetKey, limit, counts, largePayloadGroups, largePayloadIds);
+                if (deletedCount <= 0) {
+                    break;
+                }
+                evictedCount += deletedCount;
+            }
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to evict logs.", e);
+        } finally {
+            if (inTransaction && !mDatabaseManager.endTransaction()) {
+                evictedCount = 0;
+            }
+        }
+        if (evictedCount <= 0) {
+            return 0;
+        }
+
+        /* Clean up after commit. */
+        for (int i = 0; i < largePayloadIds.size(); i++) {
+            mListener.onLargePayloadEvicted(largePayloadGroups.get(i), largePayloadIds.get(i));
+        }
+        Map<String, Long> evictedLogCounts = quota ? mQuotaEvictedLogCounts : mEvictedLogCounts;
+        synchronized (evictedLogCounts) {
+            for (Map.Entry<String, Long> entry : counts.entrySet()) {
+                Long count = evictedLogCounts.get(entry.getKey());
+                evictedLogCounts.put(entry.getKey(), count == null ? entry.getValue() : count + entry.getValue());
+            }
+        }
+        AppCenterLog.debug(LOG_TAG, "Evicted " + evictedCount + " logs" + (quota ? " over quota" : "") + ": " + counts);
+        return evictedCount;
+    }
+
+    /**
+     * Measures the stored payloads of a group or of a target of a group.
+     *
+     * @param group     group name.
+     * @param targetKey target key, or null for the whole group.
+     * @return size of payloads stored in the database in bytes, then number of logs.
+     */
+    @NonNull
+    private long[] getUsage(@NonNull String group, @Nullable String targetKey) {
+        SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
+        builder.appendWhere(getSelection(group, targetKey));
+        String[] columns = {
+                "IFNULL(SUM(LENGTH(CAST(" + COLUMN_LOG + " AS BLOB))), 0) + IFNULL(SUM(LENGTH(" + COLUMN_LOG_DATA + ")), 0)",
+                "COUNT(*)"
+        };
+        Cursor cursor = mDatabaseManager.getCursor(builder, columns, getSelectionArgs(group, targetKey), null);
+        try {
+            if (cursor.moveToNext()) {
+                return new long[]{cursor.getLong(0), cursor.getLong(1)};
+            }
+            return new long[]{0, 0};
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Gets the selection of logs of a group or of a target.
+     *
+     * @param group     group name, or null for all groups.
+     * @param targetKey target key, or null for all targets.
+     * @return where clause, null to select all logs.
+     */
+    @Nullable
+    private static String getSelection(@Nullable String group, @Nullable String targetKey) {
+        if (group == null) {
+            return null;
+        }
+        String selection = COLUMN_GROUP + " = ?";
+        if (targetKey != null) {
+            selection += " AND " + COLUMN_TARGET_KEY + " = ?";
+        }
+        return selection;
+    }
+
+    /**
+     * Gets the arguments of {@link #getSelection(String, String)}.
+     *
+     * @param group     group name, or null for all groups.
+     * @param targetKey target key, or null for all targets.
+     * @return selection arguments, null to select all logs.
+     */
+    @Nullable
+    private static String[] getSelectionArgs(@Nullable String group, @Nullable String targetKey) {
+        if (group == null) {
+            return null;
+        }
+        return targetKey != null ? new String[]{group, targetKey} : new String[]{group};
+    }
+
+    /**
+     * Deletes logs with a single statement, lowest priority and oldest first.
+     *
+     * @param group              group to delete logs from, or null for all groups.
+     * @param targetKey          target key to delete logs from, or null for all targets.
+     * @param limit              maximum number of logs to delete.
+     * @param counts             number of logs to delete by group, updated.
+     * @param largePayloadGroups groups of deleted logs stored in a large payload file, updated.
+     * @param largePayloadIds    identifiers of deleted logs stored in a large payload file, updated.
+     * @return number of deleted logs.
+     */
+    private int deleteOldestLogs(@Nullable String group, @Nullable String targetKey, long limit, Map<String, Long> counts, List<String> largePayloadGroups, List<Long> largePayloadIds) {
+        SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
+        String selection = getSelection(group, targetKey);
+        String[] selectionArgs = getSelectionArgs(group, targetKey);
+        if (selection != null) {
+            builder.appendWhere(selection);
+        }
+
+        /* Read groups of the logs to delete, the statement below deletes the same rows. */
+        String[] columns = {PRIMARY_KEY, COLUMN_GROUP, "(" + COLUMN_LOG + " IS NULL AND " + COLUMN_LOG_DATA + " IS NULL)"};
+        Cursor cursor = mDatabaseManager.getCursor(builder, columns, selectionArgs, EVICTION_ORDER, String.valueOf(limit));
+        try {
+            while (cursor.moveToNext()) {
+                String logGroup = cursor.getString(1);
+                Long count = counts.get(logGroup);
+                counts.put(logGroup, count == null ? 1 : count + 1);
+                if (cursor.getInt(2) != 0) {
+                    largePayloadGroups.add(logGroup);
+                    largePayloadIds.add(cursor.getLong(0));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        String whereClause = PRIMARY_KEY + " IN (SELECT " + PRIMARY_KEY + " FROM " + TABLE
+                + (selection != null ? " WHERE " + selection : "")
+                + " ORDER BY " + EVICTION_ORDER + " LIMIT " + limit + ")";
+        return mDatabaseManager.delete(TABLE, whereClause, selectionArgs);
+    }
+
+    /**
+     * Gets the number of logs evicted since the database was opened, by group.
+     *
+     * @return number of evicted logs by group.
+     */
+    @NonNull
+    Map<String, Long> getEvictedLogCounts() {
+        synchronized (mEvictedLogCounts) {
+            return new HashMap<>(mEvictedLogCounts);
+        }
+    }
+
+    /**
+     * Gets the number of logs evicted to honor quotas since the database was opened, by group.
+     *
+     * @return number of evicted logs by group.
+     */
+    @NonNull
+    Map<String, Long> getQuotaEvictedLogCounts() {
+        synchronized (mQuotaEvictedLogCounts) {
+            return new HashMap<>(mQuotaEvictedLogCounts);
+        }
+    }
+
+    /**
+     * Storage quota of a group or of a target of a group, guarded by the quotas lock.
+     */
+    private static class Quota {
+
+        /**
+         * Group name.
+         */
+        final String mGroup;
+
+        /**
+         * Target key, null for the whole group.
+         */
+        final String mTargetKey;
+
+        /**
+         * Maximum size of stored payloads in bytes.
+         */
+        long mMaxSize;
+
+        /**
+         * Size measured at last check, -1 until measured.
+         */
+        long mSize = -1;
+
+        /**
+         * Bytes written since last check.
+         */
+        long mWrittenSize;
+
+        Quota(@NonNull String group, @Nullable String targetKey) {
+            mGroup = group;
+            mTargetKey = targetKey;
+        }
+    }
+
+    /**
+     * Listener for evicted logs.
+     */
+    interface Listener {
+
+        /**
+         * Called after a log stored in a large payload file has been evicted.
+         *
+         * @param group group of the log.
+         * @param id    database identifier of the log.
+         */
+        void onLargePayloadEvicted(@NonNull String group, long id);
+    }
+}
@@ -34,6 +34,31 @@ import static com.microsoft.appcenter.AppCenter.LOG_TAG;
  */
 public class NetworkStateHelper implements Closeable {
 
+    /**
+     * No network is connected.
+     */
+    public static final int TRANSPORT_NONE = 0;
+
+    /**
+     * Active network uses Wi-Fi.
+     */
+    public static final int TRANSPORT_WIFI = 1;
+
+    /**
+     * Active network uses a cellular connection.
+     */
+    public static final int TRANSPORT_CELLULAR = 2;
+
+    /**
+     * Active network uses Ethernet.
+     */
+    public static final int TRANSPORT_ETHERNET = 3;
+
+    /**
+     * Active network uses another transport, or the transport could not be determined.
+     */
+    public static final int TRANSPORT_OTHER = 4;
+
     /**
      * Shared instance.
      */
@@ -55,6 +80,11 @@ public class NetworkStateHelper implements Closeable {
      */
     private final Set<Listener> mListeners = new CopyOnWriteArraySet<>();
 
+    /**
+     * Network type listeners.
+     */
+    private final Set<NetworkTypeListener> mNetworkTypeListeners = new CopyOnWriteArraySet<>();
+
     /**
      * Network callback, null on API level < 21.
      */
@@ -70,6 +100,11 @@ public class NetworkStateHelper implements Closeable {
      */
     private final AtomicBoolean mConnected = new AtomicBoolean();
 
+    /**
+     * Last unmetered state notified to network type listeners.
+     */
+    private final AtomicBoolean mUnmetered = new AtomicBoolean();
+
     /**
      * Init.
      *
@@ -122,6 +157,11 @@ public class NetworkStateHelper implements Closeable {
                     public void onLost(Network network) {
                         onNetworkLost(network);
                     }
+
+                    @Override
+                    public void onCapabilitiesChanged(Network network, NetworkCapabilities networkCapabilities) {
+                        checkNetworkTypeUpdate();
+                    }
                 };
                 mConnectivityManager.registerNetworkCallback(request.build(), mNetworkCallback);
             } else {
@@ -157,6 +197,113 @@ public class NetworkStateHelper implements Closeable {
         return mConnected.get() || isAnyNetworkConnected();
     }
 
+    /**
+     * Get the transport of the network used by default.
+     *
+     * @return one of the TRANSPORT_* constants, {@link #TRANSPORT_OTHER} if it cannot be determined.
+     */
+    @SuppressWarnings({"deprecation", "RedundantSuppression"})
+    public int getNetworkTransport() {
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                NetworkCapabilities capabilities = getActiveNetworkCapabilities();
+                if (capabilities == null) {
+                    return TRANSPORT_NONE;
+                }
+                if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) {
+                    return TRANSPORT_WIFI;
+                }
+                if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) {
+                    return TRANSPORT_CELLULAR;
+                }
+                if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) {
+                    return TRANSPORT_ETHERNET;
+                }
+                return TRANSPORT_OTHER;
+            }
+            NetworkInfo info = mConnectivityManager.getActiveNetworkInfo();
+            if (info == null || !info.isConnected()) {
+                return TRANSPORT_NONE;
+            }
+            switch (info.getType()) {
+                case ConnectivityManager.TYPE_WIFI:
+                    return TRANSPORT_WIFI;
+
+                case ConnectivityManager.TYPE_MOBILE:
+                    return TRANSPORT_CELLULAR;
+
+                case ConnectivityManager.TYPE_ETHERNET:
+                    return TRANSPORT_ETHERNET;
+
+                default:
+                    return TRANSPORT_OTHER;
+            }
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Cannot access network type information.", e);
+            return TRANSPORT_OTHER;
+        }
+    }
+
+    /**
+     * Check whether the network used by default may charge for data.
+     * Returns false when it cannot be determined, so that data is still sent.
+     *
+     * @return true if metered, false otherwise.
+     */
+    public boolean isNetworkMetered() {
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                NetworkCapabilities capabilities = getActiveNetworkCapabilities();
+                return capabilities != null && !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+            }
+            return mConnectivityManager.isActiveNetworkMetered();
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Cannot access network type information.", e);
+            return false;
+        }
+    }
+
+    /**
+     * Check whether the network used by default is roaming.
+     * Returns false when it cannot be determined, so that data is still sent.
+     *
+     * @return true if roaming, false otherwise.
+     */
+    @SuppressWarnings({"deprecation", "RedundantSuppression"})
+    public boolean isNetworkRoaming() {
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                NetworkCapabilities capabilities = getActiveNetworkCapabilities();
+                return capabilities != null && !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_ROAMING);
+            }
+            NetworkInfo info = mConnectivityManager.getActiveNetworkInfo();
+            return info != null && info.isRoaming();
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Cannot access network type information.", e);
+            return false;
+        }
+    }
+
+    /**
+     * Check whether the network is connected and neither metered nor roaming.
+     *
+     * @return true if data can be sent without charge, false otherwise.
+     */
+    public boolean isNetworkUnmetered() {
+        return isNetworkConnected() && !isNetworkMetered() && !isNetworkRoaming();
+    }
+
+    /**
+     * Get the capabilities of the network used by default.
+     *
+     * @return capabilities or null if there is no default network.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    private NetworkCapabilities getActiveNetworkCapabilities() {
+        Network network = mConnectivityManager.getActiveNetwork();
+        return network != null ? mConnectivityManager.getNetworkCapabilities(network) : null;
+    }
+
     /**
      * Check if any network is connected.
      *
@@ -199,6 +346,7 @@ public class NetworkStateHelper implements Closeable {
         if (mConnected.compareAndSet(false, true)) {
             notifyNetworkStateUpdated(true);
         }
+        checkNetworkTypeUpdate();
     }
 
     /**
@@ -213,6 +361,7 @@ public class NetworkStateHelper implements Closeable {
         if (noNetwork && mConnected.compareAndSet(true, false)) {
             notifyNetworkStateUpdated(false);
         }
+        checkNetworkTypeUpdate();
     }
 
     /**
@@ -223,6 +372,23 @@ public class NetworkStateHelper implements Closeable {
         if (mConnected.compareAndSet(!connected, connected)) {
             notifyNetworkStateUpdated(connected);
         }
+        checkNetworkTypeUpdate();
+    }
+
+    /**
+     * Notify network type listeners if the unmetered state changed.
+     */
+    private void checkNetworkTypeUpdate() {
+        if (mNetworkTypeListeners.isEmpty()) {
+            return;
+        }
+        boolean unmetered = isNetworkUnmetered();
+        if (mUnmetered.compareAndSet(!unmetered, unmetered)) {
+            AppCenterLog.debug(LOG_TAG, "Network is now " + (unmetered ? "unmetered." : "metered."));
+            for (NetworkTypeListener listener : mNetworkTypeListeners) {
+                listener.onNetworkTypeUpdated(unmetered);
+            }
+        }
     }
 
     /**
@@ -265,6 +431,27 @@ public class NetworkStateHelper implements Closeable {
         mListeners.remove(listener);
     }
 
+    /**
+     * Add a network type listener.
+     *
+     * @param listener listener to add.
+     */
+    public void addNetworkTypeListener(NetworkTypeListener listener) {
+        if (mNetworkTypeListeners.isEmpty()) {
+            mUnmetered.set(isNetworkUnmetered());
+        }
+        mNetworkTypeListeners.add(listener);
+    }
+
+    /**
+     * Remove a network type listener.
+     *
+     * @param listener listener to remove.
+     */
+    public void removeNetworkTypeListener(NetworkTypeListener listener) {
+        mNetworkTypeListeners.remove(listener);
+    }
+
     /**
      * Network state listener specification.
      */
@@ -278,6 +465,19 @@ public class NetworkStateHelper implements Closeable {
         void onNetworkStateUpdated(boolean connected);
     }
 
+    /**
+     * Network type listener specification.
+     */
+    public interface NetworkTypeListener {
+
+        /**
+         * Called when the network becomes unmetered or stops being unmetered.
+         *
+         * @param unmetered true if the network is connected and neither metered nor roaming, false otherwise.
+         */
+        void onNetworkTypeUpdated(boolean unmetered);
+    }
+
     /**
      * Class receiving connectivity changes.
      */
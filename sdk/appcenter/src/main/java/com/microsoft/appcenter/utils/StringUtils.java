@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.utils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+/**
+ * Utility class relating to strings.
+ */
+public class StringUtils {
+
+    @VisibleForTesting
+    StringUtils() {
+
+        /* Hide constructor in utils pattern. */
+    }
+
+    /**
+     * Counts the bytes of a string encoded in UTF-8 without encoding it.
+     * Like {@link String#getBytes(String)}, an unpaired surrogate counts as the 1 byte of its replacement character.
+     *
+     * @param value string to measure.
+     * @return UTF-8 length in bytes.
+     */
+    public static int getUtf8Length(@NonNull String value) {
+        int length = value.length();
+        int size = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                size++;
+            } else if (Character.isHighSurrogate(c)) {
+
+                /* A surrogate pair is 4 bytes for 2 chars. */
+                if (i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    size += 2;
+                    i++;
+                }
+            } else if (!Character.isLowSurrogate(c)) {
+                size += 2;
+            }
+        }
+        return size;
+    }
+}
@@ -141,6 +141,11 @@ public class CryptoUtils {
      */
     private final KeyStore mKeyStore;
 
+    /**
+     * Number of times the preferred key has been replaced since this instance was created.
+     */
+    private volatile int mKeyRotationCount;
+
     /**
      * Init.
      *
@@ -273,6 +278,17 @@ public class CryptoUtils {
         return mKeyStore.getEntry(alias, null);
     }
 
+    /**
+     * Get the number of times the preferred key has been replaced in this process.
+     * Data encrypted before the count changed should be encrypted again
+     * as its key is deleted on the next rotation.
+     *
+     * @return key rotation count.
+     */
+    public int getKeyRotationCount() {
+        return mKeyRotationCount;
+    }
+
     /**
      * Encrypt data.
      *
@@ -317,6 +333,7 @@ public class CryptoUtils {
                 /* Generate new key. */
                 AppCenterLog.debug(LOG_TAG, "Creating alias: " + newAlias);
                 handler.generateKey(mCryptoFactory, newAlias, mContext);
+                mKeyRotationCount++;
 
                 /* And encrypt using that new key. */
                 return encrypt(data);
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.utils.storage;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Utility class to compress stored data with deflate.
+ */
+public class CompressionUtils {
+
+    /**
+     * Size of the buffer used to copy compressed or decompressed data.
+     */
+    private static final int BUFFER_SIZE = 4096;
+
+    @VisibleForTesting
+    CompressionUtils() {
+
+        /* Hide constructor in utils pattern. */
+    }
+
+    /**
+     * Compresses data. The deflater is reset before use, callers reusing a deflater across threads must synchronize.
+     *
+     * @param deflater deflater.
+     * @param data     data to compress.
+     * @param prefix   bytes written as is before compressed data, such as a format marker.
+     * @return prefix followed by compressed data.
+     */
+    @NonNull
+    public static byte[] deflate(@NonNull Deflater deflater, @NonNull byte[] data, byte... prefix) {
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream output = new ByteArrayOutputStream(prefix.length + data.length / 4 + 16);
+        output.write(prefix, 0, prefix.length);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (!deflater.finished()) {
+            int count = deflater.deflate(buffer);
+            output.write(buffer, 0, count);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Decompresses data. The inflater is reset before use, callers reusing an inflater across threads must synchronize.
+     *
+     * @param inflater inflater.
+     * @param data     data containing compressed bytes.
+     * @param offset   index of the first compressed byte in data.
+     * @return decompressed data.
+     * @throws DataFormatException if data is not valid or truncated.
+     */
+    @NonNull
+    public static byte[] inflate(@NonNull Inflater inflater, @NonNull byte[] data, int offset) throws DataFormatException {
+        inflater.reset();
+        inflater.setInput(data, offset, data.length - offset);
+        ByteArrayOutputStream output = new ByteArrayOutputStream(data.length * 4);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (!inflater.finished()) {
+            int count = inflater.inflate(buffer);
+            if (count == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                throw new DataFormatException("Compressed data is truncated.");
+            }
+            output.write(buffer, 0, count);
+        }
+        return output.toByteArray();
+    }
+}
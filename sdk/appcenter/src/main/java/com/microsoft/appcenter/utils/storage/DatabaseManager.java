@@ -13,6 +13,7 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteFullException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.support.annotation.IntRange;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
@@ -24,6 +25,7 @@ import com.microsoft.appcenter.utils.AppCenterLog;
 import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -44,6 +46,21 @@ public class DatabaseManager implements Closeable {
      */
     public static final String[] SELECT_PRIMARY_KEY = {PRIMARY_KEY};
 
+    /**
+     * Default number of pages written to the write-ahead log before it is checkpointed, as in SQLite.
+     */
+    private static final long WAL_CHECKPOINT_MAX_PAGES = 1000;
+
+    /**
+     * Minimum number of pages written to the write-ahead log before it is checkpointed.
+     */
+    private static final long WAL_CHECKPOINT_MIN_PAGES = 16;
+
+    /**
+     * Part of the maximum database size that the write-ahead log can use before it is checkpointed.
+     */
+    private static final int WAL_CHECKPOINT_SIZE_DIVISOR = 10;
+
     /**
      * Application context instance.
      */
@@ -74,6 +91,41 @@ public class DatabaseManager implements Closeable {
      */
     private SQLiteOpenHelper mSQLiteOpenHelper;
 
+    /**
+     * Whether the database uses write-ahead logging.
+     */
+    private boolean mWriteAheadLoggingEnabled;
+
+    /**
+     * Page size in bytes for a new database, 0 for SQLite default.
+     */
+    private int mPageSize;
+
+    /**
+     * Page cache size in kibibytes, 0 for SQLite default.
+     */
+    private int mCacheSize;
+
+    /**
+     * Maximum size set by {@link #setMaxSize(long)}, applied again when the database is reopened, -1 if not set.
+     */
+    private volatile long mMaxSize = -1;
+
+    /**
+     * Maximum size read from the database while none was set, -1 if not read yet.
+     */
+    private volatile long mDefaultMaxSize = -1;
+
+    /**
+     * Precompiled statements by SQL, also used as a lock for the cache.
+     */
+    private final Map<String, SQLiteStatement> mStatements = new HashMap<>();
+
+    /**
+     * Database the cached statements were compiled for.
+     */
+    private SQLiteDatabase mStatementsDatabase;
+
     /**
      * Initializes the table in the database.
      *
@@ -109,6 +161,11 @@ public class DatabaseManager implements Closeable {
         mListener = listener;
         mSQLiteOpenHelper = new SQLiteOpenHelper(context, database, null, version) {
 
+            @Override
+            public void onConfigure(SQLiteDatabase db) {
+                configure(db);
+            }
+
             @Override
             public void onCreate(SQLiteDatabase db) {
                 createTable(db, mDefaultTable, mSchema, uniqueColumns);
@@ -127,6 +184,87 @@ public class DatabaseManager implements Closeable {
         };
     }
 
+    /**
+     * Sets whether the database uses write-ahead logging, with synchronous commits only at checkpoints.
+     * Readers then do not wait for writers, and commits do not sync the file.
+     * Applies when the database is opened, so this should be called before any other operation.
+     *
+     * @param enabled true to enable write-ahead logging.
+     */
+    public void setWriteAheadLoggingEnabled(boolean enabled) {
+        mWriteAheadLoggingEnabled = enabled;
+    }
+
+    /**
+     * Sets the page size of the database. This is ignored if the database already exists.
+     * Applies when the database is opened, so this should be called before any other operation.
+     *
+     * @param pageSize page size in bytes, a power of 2 from 512 to 65536, 0 for SQLite default.
+     */
+    public void setPageSize(int pageSize) {
+        mPageSize = pageSize;
+    }
+
+    /**
+     * Sets the size of the page cache of the database connection that writes.
+     * Applies when the database is opened, so this should be called before any other operation.
+     *
+     * @param cacheSizeInKiB cache size in kibibytes, 0 for SQLite default.
+     */
+    public void setCacheSize(int cacheSizeInKiB) {
+        mCacheSize = cacheSizeInKiB;
+    }
+
+    /**
+     * Configures a database connection being opened.
+     *
+     * @param db The database.
+     */
+    private void configure(SQLiteDatabase db) {
+
+        /* Page size can only be changed before creating tables and before enabling write-ahead logging. */
+        if (mPageSize > 0) {
+            db.setPageSize(mPageSize);
+        }
+        if (mWriteAheadLoggingEnabled) {
+            db.enableWriteAheadLogging();
+
+            /* A crash cannot corrupt a database in write-ahead logging mode, it can only lose the last commits. */
+            db.execSQL("PRAGMA synchronous = NORMAL");
+        }
+        if (mCacheSize > 0) {
+            db.execSQL("PRAGMA cache_size = -" + mCacheSize);
+        }
+
+        /* Maximum size is a setting of the connection, not of the file. */
+        long maxSize = mMaxSize;
+        if (maxSize > 0) {
+            db.setMaximumSize(maxSize);
+        }
+        if (mWriteAheadLoggingEnabled) {
+            configureCheckpoints(db, maxSize);
+        }
+    }
+
+    /**
+     * Limits the size of the write-ahead log relatively to the maximum size of the database,
+     * as the log file is not accounted in the maximum size.
+     *
+     * @param db      The database.
+     * @param maxSize The maximum size of database in bytes, or -1 if not set.
+     */
+    private static void configureCheckpoints(SQLiteDatabase db, long maxSize) {
+        long pageSize = db.getPageSize();
+        long checkpointPages = WAL_CHECKPOINT_MAX_PAGES;
+        if (maxSize > 0) {
+            checkpointPages = Math.max(WAL_CHECKPOINT_MIN_PAGES, Math.min(checkpointPages, maxSize / pageSize / WAL_CHECKPOINT_SIZE_DIVISOR));
+        }
+        DatabaseUtils.longForQuery(db, "PRAGMA wal_autocheckpoint = " + checkpointPages, null);
+
+        /* Truncate the log file to that size after checkpoints. */
+        DatabaseUtils.longForQuery(db, "PRAGMA journal_size_limit = " + checkpointPages * pageSize, null);
+    }
+
     /**
      * Converts a cursor to an entry.
      *
@@ -217,6 +355,21 @@ public class DatabaseManager implements Closeable {
         return null;
     }
 
+    /**
+     * Moves the cursor to the next row, for reading columns by index without converting the row to an entry.
+     *
+     * @param cursor The cursor to move.
+     * @return true if the cursor is on a row, false if there are no more rows or the cursor failed.
+     */
+    public boolean moveToNext(Cursor cursor) {
+        try {
+            return cursor.moveToNext();
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to get next cursor value: ", e);
+        }
+        return false;
+    }
+
     /**
      * Replaces the row, if the given property string values match the values of the row. Insert a new row if cannot find the match property values or multiple rows matches.
      *
@@ -237,13 +390,15 @@ public class DatabaseManager implements Closeable {
             }
             builder.appendWhere(TextUtils.join(" AND ", propertyQueryList));
             if (selectionArgs.size() > 0) {
-                Cursor cursor = getCursor(table, builder, null, selectionArgs.toArray(new String[0]), null);
+                Cursor cursor = getCursor(table, builder, SELECT_PRIMARY_KEY, selectionArgs.toArray(new String[0]), null);
                 try {
-                    ContentValues value = nextValues(cursor);
 
                     /* If only contains one result, replace the value, otherwise insert directly. */
-                    if (value != null && !cursor.moveToNext()) {
-                        values.put(PRIMARY_KEY, value.getAsInteger(PRIMARY_KEY));
+                    if (cursor.moveToNext()) {
+                        long id = cursor.getLong(0);
+                        if (!cursor.moveToNext()) {
+                            values.put(PRIMARY_KEY, id);
+                        }
                     }
                 } finally {
                     cursor.close();
@@ -266,6 +421,33 @@ public class DatabaseManager implements Closeable {
      * @return If a log was inserted, the database identifier. Otherwise -1.
      */
     public long put(@NonNull ContentValues values, @NonNull String priorityColumn) {
+        return put(values, null, priorityColumn, values.getAsString(priorityColumn));
+    }
+
+    /**
+     * Stores an entry with a precompiled insert statement from {@link #compileStatement(String)},
+     * values being already bound by the caller that holds the lock of the statement.
+     * If the table is full, the oldest logs are discarded until the new one can fit.
+     *
+     * @param statement      The insert statement to execute.
+     * @param priorityColumn When storage full and deleting data, use this column to determine which entries to delete first.
+     * @param priority       The priority of the new entry.
+     * @return If a log was inserted, the database identifier. Otherwise -1.
+     */
+    public long put(@NonNull SQLiteStatement statement, @NonNull String priorityColumn, long priority) {
+        return put(null, statement, priorityColumn, String.valueOf(priority));
+    }
+
+    /**
+     * Stores an entry either from values or with a bound insert statement.
+     *
+     * @param values         The entry to be stored, or null if using the statement.
+     * @param statement      The insert statement, or null if using the values.
+     * @param priorityColumn When storage full and deleting data, use this column to determine which entries to delete first.
+     * @param priority       The priority of the new entry.
+     * @return If a log was inserted, the database identifier. Otherwise -1.
+     */
+    private long put(@Nullable ContentValues values, @Nullable SQLiteStatement statement, @NonNull String priorityColumn, String priority) {
         Long id = null;
         Cursor cursor = null;
         try {
@@ -273,13 +455,16 @@ public class DatabaseManager implements Closeable {
                 try {
 
                     /* Insert data. */
-                    id = getDatabase().insertOrThrow(mDefaultTable, null, values);
+                    if (statement != null) {
+                        id = statement.executeInsert();
+                    } else {
+                        id = getDatabase().insertOrThrow(mDefaultTable, null, values);
+                    }
                 } catch (SQLiteFullException e) {
 
                     /* Delete the oldest log. */
                     AppCenterLog.debug(LOG_TAG, "Storage is full, trying to delete the oldest log that has the lowest priority which is lower or equal priority than the new log");
                     if (cursor == null) {
-                        String priority = values.getAsString(priorityColumn);
                         SQLiteQueryBuilder queryBuilder = SQLiteUtils.newSQLiteQueryBuilder();
                         queryBuilder.appendWhere(priorityColumn + " <= ?");
                         cursor = getCursor(queryBuilder, SELECT_PRIMARY_KEY, new String[]{priority}, priorityColumn + " , " + PRIMARY_KEY);
@@ -295,7 +480,7 @@ public class DatabaseManager implements Closeable {
             }
         } catch (RuntimeException e) {
             id = -1L;
-            AppCenterLog.error(LOG_TAG, String.format("Failed to insert values (%s) to database %s.", values.toString(), mDatabase), e);
+            AppCenterLog.error(LOG_TAG, String.format("Failed to insert values (%s) to database %s.", values != null ? values.toString() : statement, mDatabase), e);
         }
         if (cursor != null) {
             try {
@@ -321,8 +506,16 @@ public class DatabaseManager implements Closeable {
      * @param table The table to perform the operation on.
      * @param id    The database identifier.
      */
-    private void delete(@NonNull String table, @IntRange(from = 0) long id) {
-        delete(table, PRIMARY_KEY, id);
+    public void delete(@NonNull String table, @IntRange(from = 0) long id) {
+        try {
+            SQLiteStatement statement = compileStatement("DELETE FROM `" + table + "` WHERE " + PRIMARY_KEY + " = ?");
+            synchronized (statement) {
+                statement.bindLong(1, id);
+                statement.executeUpdateDelete();
+            }
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, String.format("Failed to delete entry id=%s from database %s.", id, mDatabase), e);
+        }
     }
 
     /**
@@ -345,6 +538,61 @@ public class DatabaseManager implements Closeable {
         }
     }
 
+    /**
+     * Begins a transaction so that next writes are committed together by {@link #endTransaction()}.
+     *
+     * @return true if the transaction was started, false if writes will be committed one by one.
+     */
+    public boolean beginTransaction() {
+        try {
+            getDatabase().beginTransaction();
+            return true;
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to begin transaction.", e);
+            return false;
+        }
+    }
+
+    /**
+     * Commits writes done since {@link #beginTransaction()}.
+     *
+     * @return true if writes were committed, false if the transaction failed.
+     */
+    public boolean endTransaction() {
+        try {
+            SQLiteDatabase database = getDatabase();
+            try {
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+            return true;
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to commit transaction.", e);
+            return false;
+        }
+    }
+
+    /**
+     * Updates the entries that matches the condition.
+     *
+     * @param values      The column values to set, a null value sets the column to NULL.
+     * @param whereClause the optional WHERE clause to apply when updating.
+     *                    Passing null will update all rows.
+     * @param whereArgs   You may include ?s in the where clause, which
+     *                    will be replaced by the values from whereArgs. The values
+     *                    will be bound as Strings.
+     * @return the number of rows affected.
+     */
+    public int update(@NonNull ContentValues values, String whereClause, String[] whereArgs) {
+        try {
+            return getDatabase().update(mDefaultTable, values, whereClause, whereArgs);
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, String.format("Failed to update values that match condition=\"%s\" and values=\"%s\" in database %s.", whereClause, Arrays.toString(whereArgs), mDatabase), e);
+            return 0;
+        }
+    }
+
     /**
      * Deletes the entries that matches key == value.
      *
@@ -379,11 +627,75 @@ public class DatabaseManager implements Closeable {
         }
     }
 
+    /**
+     * Gets a precompiled statement, compiled once and reused until the database is closed.
+     * Statements are shared: callers bind and execute them while holding the lock of the statement.
+     *
+     * @param sql The SQL statement.
+     * @return The precompiled statement.
+     * @throws RuntimeException If an error occurs.
+     */
+    @NonNull
+    public SQLiteStatement compileStatement(@NonNull String sql) throws RuntimeException {
+        SQLiteDatabase db = getDatabase();
+        synchronized (mStatements) {
+
+            /* Statements of a previous database instance cannot be used anymore. */
+            if (db != mStatementsDatabase) {
+                closeStatements();
+                mStatementsDatabase = db;
+            }
+            SQLiteStatement statement = mStatements.get(sql);
+            if (statement == null) {
+                statement = db.compileStatement(sql);
+                mStatements.put(sql, statement);
+            }
+            return statement;
+        }
+    }
+
+    /**
+     * Runs a query returning a single number, such as a count, with a precompiled statement.
+     *
+     * @param sql           The SQL query.
+     * @param selectionArgs The values bound as strings to the query.
+     * @return The number in the first column of the first row.
+     * @throws RuntimeException If an error occurs.
+     */
+    public long simpleQueryForLong(@NonNull String sql, @NonNull String... selectionArgs) throws RuntimeException {
+        SQLiteStatement statement = compileStatement(sql);
+        synchronized (statement) {
+            statement.bindAllArgsAsStrings(selectionArgs);
+            try {
+                return statement.simpleQueryForLong();
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+
+    /**
+     * Closes cached statements, caller holds the lock of the cache.
+     */
+    private void closeStatements() {
+        for (SQLiteStatement statement : mStatements.values()) {
+            try {
+                statement.close();
+            } catch (RuntimeException ignore) {
+            }
+        }
+        mStatements.clear();
+        mStatementsDatabase = null;
+    }
+
     /**
      * Closes database.
      */
     @Override
     public void close() {
+        synchronized (mStatements) {
+            closeStatements();
+        }
         try {
 
             /* Close opened database (do not force open). */
@@ -421,6 +733,25 @@ public class DatabaseManager implements Closeable {
         return getCursor(mDefaultTable, queryBuilder, columns, selectionArgs, sortOrder);
     }
 
+    /**
+     * Gets a cursor for at most {@code limit} rows in the table, all rows where key matches value if specified.
+     *
+     * @param queryBuilder  The query builder that contains SQL query.
+     * @param columns       Columns to select, null for all.
+     * @param selectionArgs The array of values for selection.
+     * @param sortOrder     Sorting order (ORDER BY clause without ORDER BY itself).
+     * @param limit         Maximum number of rows to return (LIMIT clause without LIMIT itself).
+     * @return A cursor for all rows that matches the given criteria.
+     * @throws RuntimeException If an error occurs.
+     */
+    public Cursor getCursor(@Nullable SQLiteQueryBuilder queryBuilder, String[] columns, @Nullable String[] selectionArgs, @Nullable String sortOrder, @Nullable String limit) throws RuntimeException {
+        if (queryBuilder == null) {
+            queryBuilder = SQLiteUtils.newSQLiteQueryBuilder();
+        }
+        queryBuilder.setTables(mDefaultTable);
+        return queryBuilder.query(getDatabase(), columns, null, selectionArgs, null, null, sortOrder, limit);
+    }
+
     /**
      * Gets a cursor for all rows in the table, all rows where key matches value if specified.
      *
@@ -513,10 +844,34 @@ public class DatabaseManager implements Closeable {
     public boolean setMaxSize(long maxStorageSizeInBytes) {
         try {
             SQLiteDatabase db = getDatabase();
-            long newMaxSize = db.setMaximumSize(maxStorageSizeInBytes);
+
+            /*
+             * With write-ahead logging, statements outside of a transaction can run on any connection of the pool.
+             * Settings need to be applied to the connection that writes, which is the one running transactions.
+             */
+            boolean inTransaction = false;
+            if (mWriteAheadLoggingEnabled) {
+                db.beginTransaction();
+                inTransaction = true;
+            }
+            long newMaxSize;
+            long pageSize;
+            try {
+                newMaxSize = db.setMaximumSize(maxStorageSizeInBytes);
+                pageSize = db.getPageSize();
+                mMaxSize = newMaxSize;
+                mDefaultMaxSize = -1;
+                if (inTransaction) {
+                    configureCheckpoints(db, newMaxSize);
+                    db.setTransactionSuccessful();
+                }
+            } finally {
+                if (inTransaction) {
+                    db.endTransaction();
+                }
+            }
 
             /* SQLite always use the next multiple of page size as maximum size. */
-            long pageSize = db.getPageSize();
             long expectedMultipleMaxSize = maxStorageSizeInBytes / pageSize;
             if (maxStorageSizeInBytes % pageSize != 0) {
                 expectedMultipleMaxSize++;
@@ -546,14 +901,45 @@ public class DatabaseManager implements Closeable {
      * @return The maximum size of database in bytes.
      */
     public long getMaxSize() {
+
+        /* Once set, the maximum size is known without asking a connection that may not have the setting. */
+        long maxSize = mMaxSize;
+        if (maxSize > 0) {
+            return maxSize;
+        }
+
+        /* The default only changes with setMaxSize, don't query it for every log. */
+        maxSize = mDefaultMaxSize;
+        if (maxSize > 0) {
+            return maxSize;
+        }
         try {
-            return getDatabase().getMaximumSize();
+            maxSize = getDatabase().getMaximumSize();
+            mDefaultMaxSize = maxSize;
+            return maxSize;
         } catch (RuntimeException e) {
             AppCenterLog.error(LOG_TAG, "Could not get maximum database size.", e);
             return -1;
         }
     }
 
+    /**
+     * Gets the size of the database pages in use, pages freed by deletions are not counted as they are reused by next writes.
+     *
+     * @return The used size of database in bytes, or -1 if it could not be read.
+     */
+    public long getUsedSize() {
+        try {
+            SQLiteDatabase db = getDatabase();
+            long pageCount = DatabaseUtils.longForQuery(db, "PRAGMA page_count", null);
+            long freePageCount = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+            return (pageCount - freePageCount) * db.getPageSize();
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Could not get used database size.", e);
+            return -1;
+        }
+    }
+
     /**
      * Database listener.
      */
@@ -8,6 +8,7 @@ package com.microsoft.appcenter;
 import android.content.Context;
 
 import com.microsoft.appcenter.channel.Channel;
+import com.microsoft.appcenter.channel.NetworkPolicy;
 import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
@@ -15,6 +16,7 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.powermock.api.mockito.PowerMockito;
@@ -32,6 +34,7 @@ import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -241,6 +244,42 @@ public class AbstractAppCenterServiceTest {
         verifyNoMoreInteractions(channel);
     }
 
+    @Test
+    public void onChannelReadyWithNetworkPolicy() {
+        final NetworkPolicy networkPolicy = NetworkPolicy.unmeteredPreferred(1000);
+        mService = new AbstractAppCenterService() {
+
+            @Override
+            protected String getGroupName() {
+                return "group_test";
+            }
+
+            @Override
+            protected NetworkPolicy getNetworkPolicy() {
+                return networkPolicy;
+            }
+
+            @Override
+            public String getServiceName() {
+                return "Test";
+            }
+
+            @Override
+            protected String getLoggerTag() {
+                return "TestLog";
+            }
+        };
+        Channel channel = mock(Channel.class);
+        mService.onStarted(mock(Context.class), channel, "", null, true);
+
+        /* Policy is set before the group is added so that no log is sent before it applies. */
+        InOrder inOrder = inOrder(channel);
+        inOrder.verify(channel).removeGroup(mService.getGroupName());
+        inOrder.verify(channel).setNetworkPolicy(mService.getGroupName(), networkPolicy);
+        inOrder.verify(channel).addGroup(eq(mService.getGroupName()), anyInt(), anyLong(), anyInt(), isNull(Ingestion.class), any(Channel.GroupListener.class));
+        verifyNoMoreInteractions(channel);
+    }
+
     @Test
     public void isAppSecretRequired() {
         Assert.assertTrue(mService.isAppSecretRequired());
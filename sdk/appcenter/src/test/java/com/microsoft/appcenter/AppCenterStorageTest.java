@@ -5,15 +5,31 @@
 
 package com.microsoft.appcenter;
 
+import android.content.Context;
+import android.os.Handler;
+
+import com.microsoft.appcenter.channel.DefaultChannel;
+import com.microsoft.appcenter.http.HttpUtils;
+import com.microsoft.appcenter.http.RetryPolicy;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.utils.async.AppCenterFuture;
 
 import org.junit.Test;
+import org.powermock.core.classloader.annotations.PrepareForTest;
 
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyNew;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 import static org.powermock.api.mockito.PowerMockito.when;
 
 public class AppCenterStorageTest extends AbstractAppCenterTest {
@@ -106,4 +122,103 @@ public class AppCenterStorageTest extends AbstractAppCenterTest {
         /* And result returned to developer. */
         assertTrue(future.get());
     }
+
+    @Test
+    public void storageCompression() {
+
+        /* Configure before start. */
+        AppCenter.setStorageCompressionEnabled(true);
+        verify(mChannel, never()).setStorageCompressionEnabled(anyBoolean());
+
+        /* Start AppCenter. */
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        verify(mChannel).setStorageCompressionEnabled(true);
+
+        /* Change after start. */
+        AppCenter.setStorageCompressionEnabled(false);
+        verify(mChannel).setStorageCompressionEnabled(false);
+    }
+
+    @Test
+    public void adaptiveBatching() {
+
+        /* Configure before start. */
+        AppCenter.setAdaptiveBatchingEnabled(true);
+        verify(mChannel, never()).setAdaptiveBatchingEnabled(anyBoolean());
+
+        /* Start AppCenter. */
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        verify(mChannel).setAdaptiveBatchingEnabled(true);
+
+        /* Change after start. */
+        AppCenter.setAdaptiveBatchingEnabled(false);
+        verify(mChannel).setAdaptiveBatchingEnabled(false);
+    }
+
+    @Test
+    public void maxBatchSize() {
+
+        /* Default is applied at start. */
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        verify(mChannel).setMaxBatchSize(AppCenter.DEFAULT_MAX_BATCH_SIZE_IN_BYTES);
+
+        /* Change after start. */
+        AppCenter.setMaxBatchSize(0);
+        verify(mChannel).setMaxBatchSize(0);
+
+        /* Negative values are ignored. */
+        AppCenter.setMaxBatchSize(-1);
+        verify(mChannel, never()).setMaxBatchSize(-1);
+    }
+
+    @Test
+    public void maxBatchSizeBeforeStart() {
+        AppCenter.setMaxBatchSize(512 * 1024);
+        verify(mChannel, never()).setMaxBatchSize(anyLong());
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        verify(mChannel).setMaxBatchSize(512 * 1024);
+        verify(mChannel, never()).setMaxBatchSize(AppCenter.DEFAULT_MAX_BATCH_SIZE_IN_BYTES);
+    }
+
+    @Test
+    public void storageJournal() throws Exception {
+
+        /* Configure before start. */
+        AppCenter.setStorageJournalEnabled(true);
+
+        /* Start AppCenter. */
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        verifyNew(DefaultChannel.class).withArguments(any(Context.class), anyString(), any(LogSerializer.class), any(Handler.class), eq(true));
+    }
+
+    @Test
+    public void cannotEnableStorageJournalAfterStart() throws Exception {
+
+        /* Start AppCenter. */
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        verifyNew(DefaultChannel.class).withArguments(any(Context.class), anyString(), any(LogSerializer.class), any(Handler.class), eq(false));
+
+        /* Configure after start is ignored, the channel is not created again. */
+        AppCenter.setStorageJournalEnabled(true);
+        AppCenter.startFromLibrary(mApplication, DummyService.class);
+        verifyNew(DefaultChannel.class, never()).withArguments(any(Context.class), anyString(), any(LogSerializer.class), any(Handler.class), eq(true));
+    }
+
+    @Test
+    @PrepareForTest(HttpUtils.class)
+    public void retryPolicy() {
+        mockStatic(HttpUtils.class);
+
+        /* Configure before start. */
+        RetryPolicy retryPolicy = mock(RetryPolicy.class);
+        AppCenter.setRetryPolicy(retryPolicy);
+        verifyStatic();
+        HttpUtils.setRetryPolicy(retryPolicy);
+
+        /* Configure after start is ignored. */
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        AppCenter.setRetryPolicy(null);
+        verifyStatic(never());
+        HttpUtils.setRetryPolicy(null);
+    }
 }
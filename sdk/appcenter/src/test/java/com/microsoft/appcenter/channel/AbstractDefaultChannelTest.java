@@ -8,13 +8,17 @@ package com.microsoft.appcenter.channel;
 import android.content.Context;
 import android.os.Handler;
 
+import com.microsoft.appcenter.http.AttemptServiceCallback;
 import com.microsoft.appcenter.http.ServiceCallback;
 import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.SerializedLog;
+import com.microsoft.appcenter.persistence.Persistence;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.HandlerUtils;
 import com.microsoft.appcenter.utils.IdHelper;
+import com.microsoft.appcenter.utils.NetworkStateHelper;
 import com.microsoft.appcenter.utils.context.AuthTokenContext;
 import com.microsoft.appcenter.utils.context.AuthTokenInfo;
 import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
@@ -30,12 +34,16 @@ import org.powermock.modules.junit4.rule.PowerMockRule;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.UUID;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
-import static org.powermock.api.mockito.PowerMockito.doAnswer;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.whenNew;
 
@@ -47,6 +55,7 @@ import static org.powermock.api.mockito.PowerMockito.whenNew;
         DeviceInfoHelper.class,
         HandlerUtils.class,
         IdHelper.class,
+        NetworkStateHelper.class,
         SharedPreferencesManager.class,
         System.class
 })
@@ -92,6 +101,16 @@ public class AbstractDefaultChannelTest {
         };
     }
 
+    /**
+     * Mock persistence whose serialized logs methods wrap the models of the mocked log methods, like the default implementation.
+     */
+    static Persistence mockPersistence() {
+        Persistence persistence = mock(Persistence.class);
+        when(persistence.getSerializedLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(SerializedLog.class), any(Date.class), any(Date.class))).thenCallRealMethod();
+        when(persistence.getSerializedLogs(anyString(), anyListOf(String.class), anyInt(), anyLong(), anyListOf(SerializedLog.class), any(Date.class), any(Date.class))).thenCallRealMethod();
+        return persistence;
+    }
+
     static Answer<Object> getSendAsyncAnswer() {
         return getSendAsyncAnswer(null);
     }
@@ -101,6 +120,9 @@ public class AbstractDefaultChannelTest {
             @Override
             public Object answer(InvocationOnMock invocation) {
                 Object[] args = invocation.getArguments();
+                if (args[4] instanceof AttemptServiceCallback) {
+                    ((AttemptServiceCallback) args[4]).onCallAttempted(0, e);
+                }
                 if (args[4] instanceof ServiceCallback) {
                     if (e == null)
                         ((ServiceCallback) invocation.getArguments()[4]).onCallSucceeded("", null);
@@ -126,16 +148,9 @@ public class AbstractDefaultChannelTest {
                 return true;
             }
         });
-        mockStatic(HandlerUtils.class);
-        doAnswer(new Answer<Void>() {
 
-            @Override
-            public Void answer(InvocationOnMock invocation) {
-                ((Runnable) invocation.getArguments()[0]).run();
-                return null;
-            }
-        }).when(HandlerUtils.class);
-        HandlerUtils.runOnUiThread(any(Runnable.class));
+        /* Channel must not use the main thread, only mock it to verify that. */
+        mockStatic(HandlerUtils.class);
         mockStatic(AuthTokenContext.class);
         when(mAuthTokenContext.getAuthToken()).thenReturn(MOCK_TOKEN);
         when(mAuthTokenContext.getAuthTokenValidityList()).thenReturn(Collections.singletonList(new AuthTokenInfo()));
@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.microsoft.appcenter.channel.CongestionController.BASE_LATENCY;
+import static com.microsoft.appcenter.channel.CongestionController.BATCH_SIZE_INCREASE;
+import static com.microsoft.appcenter.channel.CongestionController.INITIAL_BATCH_SIZE;
+import static com.microsoft.appcenter.channel.CongestionController.PARALLEL_PROBE_INCREASE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@PrepareForTest(AppCenterLog.class)
+public class CongestionControllerTest {
+
+    private static final String ENDPOINT = "https://in.appcenter.ms";
+
+    private static final int MAX_LOGS_PER_BATCH = 50;
+
+    private static final int MAX_PARALLEL_BATCHES = 3;
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    @Before
+    public void setUp() {
+        mockStatic(AppCenterLog.class);
+    }
+
+    @Test
+    public void initialLimits() {
+        CongestionController controller = new CongestionController();
+        assertEquals(INITIAL_BATCH_SIZE, controller.getBatchSize(ENDPOINT, MAX_LOGS_PER_BATCH));
+        assertEquals(1, controller.getParallelBatches(ENDPOINT, MAX_PARALLEL_BATCHES));
+
+        /* Group values are ceilings. */
+        assertEquals(1, controller.getBatchSize(ENDPOINT, 1));
+    }
+
+    @Test
+    public void additiveIncreaseUpToCeilings() {
+        CongestionController controller = new CongestionController();
+        controller.onSuccess(ENDPOINT, 100, 1000, MAX_LOGS_PER_BATCH, MAX_PARALLEL_BATCHES);
+        assertEquals(INITIAL_BATCH_SIZE + BATCH_SIZE_INCREASE, controller.getBatchSize(ENDPOINT, MAX_LOGS_PER_BATCH));
+        assertEquals(2, controller.getParallelBatches(ENDPOINT, MAX_PARALLEL_BATCHES));
+        for (int i = 0; i < 100; i++) {
+            controller.onSuccess(ENDPOINT, 100, 1000, MAX_LOGS_PER_BATCH, MAX_PARALLEL_BATCHES);
+        }
+        assertEquals(MAX_LOGS_PER_BATCH, controller.getBatchSize(ENDPOINT, MAX_LOGS_PER_BATCH));
+        assertEquals(MAX_PARALLEL_BATCHES, controller.getParallelBatches(ENDPOINT, MAX_PARALLEL_BATCHES));
+        assertEquals(Integer.valueOf(MAX_LOGS_PER_BATCH), controller.getBatchSizes().get(ENDPOINT));
+        assertEquals(Integer.valueOf(MAX_PARALLEL_BATCHES), controller.getParallelBatches().get(ENDPOINT));
+
+        /* A group with smaller batches does not shrink the limits of the others. */
+        controller.onSuccess(ENDPOINT, 100, 1000, 1, 1);
+        assertEquals(MAX_LOGS_PER_BATCH, controller.getBatchSize(ENDPOINT, MAX_LOGS_PER_BATCH));
+        assertEquals(1, controller.getBatchSize(ENDPOINT, 1));
+    }
+
+    @Test
+    public void slowBatchDecreasesLimits() {
+        CongestionController controller = new CongestionController();
+
+        /* Large payloads are allowed more time. */
+        controller.onSuccess(ENDPOINT, BASE_LATENCY + 1000, 1024 * 1024, MAX_LOGS_PER_BATCH, MAX_PARALLEL_BATCHES);
+        assertEquals(INITIAL_BATCH_SIZE + BATCH_SIZE_INCREASE, controller.getBatchSize(ENDPOINT, MAX_LOGS_PER_BATCH));
+
+        /* Small payloads are not. */
+        controller.onSuccess(ENDPOINT, BASE_LATENCY + 1000, 1024, MAX_LOGS_PER_BATCH, MAX_PARALLEL_BATCHES);
+        assertEquals((INITIAL_BATCH_SIZE + BATCH_SIZE_INCREASE) / 2, controller.getBatchSize(ENDPOINT, MAX_LOGS_PER_BATCH));
+        assertEquals(1, controller.getParallelBatches(ENDPOINT, MAX_PARALLEL_BATCHES));
+
+        /* Never below 1. */
+        for (int i = 0; i < 10; i++) {
+            controller.onSuccess(ENDPOINT, BASE_LATENCY * 10, 0, MAX_LOGS_PER_BATCH, MAX_PARALLEL_BATCHES);
+        }
+        assertEquals(1, controller.getBatchSize(ENDPOINT, MAX_LOGS_PER_BATCH));
+    }
+
+    @Test
+    public void timeoutSendsOneSmallerBatchAtATime() {
+        CongestionController controller = new CongestionController();
+        for (int i = 0; i < 100; i++) {
+            controller.onSuccess(ENDPOINT, 100, 1000, MAX_LOGS_PER_BATCH, 4);
+        }
+        controller.onTimeout(ENDPOINT);
+        assertEquals(MAX_LOGS_PER_BATCH / 2, controller.getBatchSize(ENDPOINT, MAX_LOGS_PER_BATCH));
+        assertEquals(1, controller.getParallelBatches(ENDPOINT, 4));
+    }
+
+    @Test
+    public void throttlingDecreasesParallelBatches() {
+        CongestionController controller = new CongestionController();
+        for (int i = 0; i < 100; i++) {
+            controller.onSuccess(ENDPOINT, 100, 1000, MAX_LOGS_PER_BATCH, 4);
+        }
+        controller.onThrottled(ENDPOINT);
+        assertEquals(MAX_LOGS_PER_BATCH, controller.getBatchSize(ENDPOINT, MAX_LOGS_PER_BATCH));
+        assertEquals(2, controller.getParallelBatches(ENDPOINT, 4));
+
+        /* Grow back quickly to what the server accepted, then probe slowly. */
+        for (int i = 0; i < 10; i++) {
+            controller.onSuccess(ENDPOINT, 100, 1000, MAX_LOGS_PER_BATCH, 4);
+        }
+        assertEquals(3, controller.getParallelBatches(ENDPOINT, 4));
+        for (int i = 0; i < (int) (1 / PARALLEL_PROBE_INCREASE); i++) {
+            controller.onSuccess(ENDPOINT, 100, 1000, MAX_LOGS_PER_BATCH, 4);
+        }
+        assertEquals(4, controller.getParallelBatches(ENDPOINT, 4));
+    }
+
+    @Test
+    public void endpointsAreIndependent() {
+        CongestionController controller = new CongestionController();
+        controller.onTimeout(ENDPOINT);
+        assertEquals(INITIAL_BATCH_SIZE, controller.getBatchSize("https://mobile.events.data.microsoft.com/OneCollector/1.0", MAX_LOGS_PER_BATCH));
+    }
+
+    @Test
+    public void simulateFastLink() {
+        SimulatedServer server = new SimulatedServer(50, 1024 * 1024, Integer.MAX_VALUE);
+        Simulation simulation = simulate(new CongestionController(), server, 1024);
+
+        /* The link is used at full configured capacity. */
+        assertEquals(0, simulation.mTimeouts);
+        assertEquals(MAX_LOGS_PER_BATCH, simulation.mBatchSize);
+        assertEquals(MAX_PARALLEL_BATCHES, simulation.mParallelBatches);
+    }
+
+    @Test
+    public void simulateSlowLink() {
+
+        /* 2G like link: 4KB/s with a long round trip, 2KB logs. */
+        SimulatedServer server = new SimulatedServer(600, 4 * 1024, Integer.MAX_VALUE);
+        Simulation adaptive = simulate(new CongestionController(), server, 2048);
+        Simulation fixed = simulate(null, server, 2048);
+
+        /* Configured values time out every time, adaptive batches get logs through. */
+        assertEquals(0, fixed.mDeliveredLogs);
+        assertTrue(adaptive.mDeliveredLogs > 0);
+        assertTrue(adaptive.mTimeouts * 10 < adaptive.mRequests);
+        assertTrue(adaptive.mBatchSize < MAX_LOGS_PER_BATCH / 2);
+    }
+
+    @Test
+    public void simulateThrottlingServer() {
+
+        /* Fast link but the server only takes 2 batches at once from a client. */
+        SimulatedServer server = new SimulatedServer(50, 1024 * 1024, 2);
+        Simulation adaptive = simulate(new CongestionController(), server, 1024);
+        Simulation fixed = simulate(null, server, 1024);
+        assertEquals(fixed.mRequests, fixed.mThrottled);
+        assertTrue(adaptive.mThrottled * 3 < adaptive.mRequests);
+        assertTrue(adaptive.mDeliveredLogs > fixed.mDeliveredLogs);
+    }
+
+    @Test
+    public void simulateRetriedCalls() {
+
+        /* Fast link but one call in 5 fails and is retried after a backoff. */
+        SimulatedServer server = new SimulatedServer(50, 1024 * 1024, Integer.MAX_VALUE);
+        server.mFailureInterval = 5;
+        Simulation perAttempt = simulate(new CongestionController(), server, 1024, true);
+        server = new SimulatedServer(50, 1024 * 1024, Integer.MAX_VALUE);
+        server.mFailureInterval = 5;
+        Simulation perCall = simulate(new CongestionController(), server, 1024, false);
+
+        /* A success after a retry is judged on its own latency: the link is still used at full capacity. */
+        assertTrue(perAttempt.mRetries > 0);
+        assertEquals(MAX_LOGS_PER_BATCH, perAttempt.mBatchSize);
+        assertEquals(MAX_PARALLEL_BATCHES, perAttempt.mParallelBatches);
+
+        /* Counting the backoff in the latency would make every retried batch look slow. */
+        assertTrue(perCall.mBatchSize < MAX_LOGS_PER_BATCH);
+        assertTrue(perAttempt.mDeliveredLogs > perCall.mDeliveredLogs);
+    }
+
+    private static Simulation simulate(CongestionController controller, SimulatedServer server, int logSize) {
+        return simulate(controller, server, logSize, true);
+    }
+
+    /**
+     * Send batches of logs of the same size to a simulated server for 10 minutes.
+     *
+     * @param controller controller, or null to always use the configured values.
+     * @param server     simulated server.
+     * @param logSize    size of each log.
+     * @param perAttempt true to report the latency of each attempt, false to include the retries of a call.
+     * @return simulation results.
+     */
+    private static Simulation simulate(CongestionController controller, SimulatedServer server, int logSize, boolean perAttempt) {
+        Simulation simulation = new Simulation();
+        long time = 0;
+        long retryTime = 0;
+        while (time < TimeUnit.MINUTES.toMillis(10)) {
+            int batchSize = controller != null ? controller.getBatchSize(ENDPOINT, MAX_LOGS_PER_BATCH) : MAX_LOGS_PER_BATCH;
+            int parallelBatches = controller != null ? controller.getParallelBatches(ENDPOINT, MAX_PARALLEL_BATCHES) : MAX_PARALLEL_BATCHES;
+            long bytes = (long) batchSize * logSize;
+            long latency = server.send(bytes, parallelBatches);
+            simulation.mRequests += parallelBatches;
+            if (latency == SimulatedServer.FAILED) {
+
+                /* Recoverable error: the same batches are sent again after the backoff. */
+                simulation.mRetries += parallelBatches;
+                latency = server.mRoundTrip + SimulatedServer.RETRY_DELAY;
+                retryTime += latency;
+            } else if (latency == SimulatedServer.THROTTLED) {
+                simulation.mThrottled += parallelBatches;
+                latency = server.mRoundTrip;
+                if (controller != null) {
+                    controller.onThrottled(ENDPOINT);
+                }
+            } else if (latency > SimulatedServer.TIMEOUT) {
+                simulation.mTimeouts += parallelBatches;
+                latency = SimulatedServer.TIMEOUT;
+                if (controller != null) {
+                    controller.onTimeout(ENDPOINT);
+                }
+            } else {
+                simulation.mDeliveredLogs += batchSize * parallelBatches;
+                if (controller != null) {
+                    long reportedLatency = perAttempt ? latency : latency + retryTime;
+                    for (int i = 0; i < parallelBatches; i++) {
+                        controller.onSuccess(ENDPOINT, reportedLatency, bytes, MAX_LOGS_PER_BATCH, MAX_PARALLEL_BATCHES);
+                    }
+                }
+                retryTime = 0;
+            }
+            time += latency;
+        }
+        simulation.mBatchSize = controller != null ? controller.getBatchSize(ENDPOINT, MAX_LOGS_PER_BATCH) : MAX_LOGS_PER_BATCH;
+        simulation.mParallelBatches = controller != null ? controller.getParallelBatches(ENDPOINT, MAX_PARALLEL_BATCHES) : MAX_PARALLEL_BATCHES;
+        return simulation;
+    }
+
+    /**
+     * Stand-in for the ingestion server, with injected latency: parallel batches share the link.
+     */
+    private static class SimulatedServer {
+
+        static final long TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+        static final long THROTTLED = -1;
+
+        static final long FAILED = -2;
+
+        static final long RETRY_DELAY = TimeUnit.SECONDS.toMillis(10);
+
+        final long mRoundTrip;
+
+        final long mThroughput;
+
+        final int mMaxParallelCalls;
+
+        int mFailureInterval;
+
+        int mCalls;
+
+        SimulatedServer(long roundTrip, long throughput, int maxParallelCalls) {
+            mRoundTrip = roundTrip;
+            mThroughput = throughput;
+            mMaxParallelCalls = maxParallelCalls;
+        }
+
+        long send(long bytes, int parallelCalls) {
+            if (parallelCalls > mMaxParallelCalls) {
+                return THROTTLED;
+            }
+            mCalls++;
+            if (mFailureInterval > 0 && mCalls % mFailureInterval == 0) {
+                return FAILED;
+            }
+            return mRoundTrip + bytes * parallelCalls * 1000 / mThroughput;
+        }
+    }
+
+    private static class Simulation {
+
+        int mRequests;
+
+        int mDeliveredLogs;
+
+        int mTimeouts;
+
+        int mThrottled;
+
+        int mRetries;
+
+        int mBatchSize;
+
+        int mParallelBatches;
+    }
+}
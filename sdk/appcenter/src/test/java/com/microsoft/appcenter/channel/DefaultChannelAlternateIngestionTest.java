@@ -44,7 +44,7 @@ public class DefaultChannelAlternateIngestionTest extends AbstractDefaultChannel
          */
 
         /* Given a mock channel. */
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         Ingestion ingestion = mock(Ingestion.class);
         DefaultChannel channel = new DefaultChannel(mock(Context.class), null, persistence, ingestion, mAppCenterHandler);
         channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
@@ -74,7 +74,7 @@ public class DefaultChannelAlternateIngestionTest extends AbstractDefaultChannel
     public void useAlternateIngestion() throws IOException {
 
         /* Set up channel with an alternate ingestion. */
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         Ingestion defaultIngestion = mock(Ingestion.class);
         Ingestion alternateIngestion = mock(Ingestion.class);
         when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class))).then(getGetLogsAnswer(1));
@@ -108,7 +108,7 @@ public class DefaultChannelAlternateIngestionTest extends AbstractDefaultChannel
         /* Set up channel without app secret. */
         String appCenterGroup = "test_group1";
         String oneCollectorGroup = "test_group2";
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         Ingestion defaultIngestion = mock(Ingestion.class);
         Ingestion alternateIngestion = mock(Ingestion.class);
 
@@ -155,7 +155,7 @@ public class DefaultChannelAlternateIngestionTest extends AbstractDefaultChannel
         /* Set up channel without app secret. */
         String appCenterGroup = "test_group1";
         String oneCollectorGroup = "test_group2";
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         Ingestion defaultIngestion = mock(Ingestion.class);
         Ingestion alternateIngestion = mock(Ingestion.class);
         when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class))).then(getGetLogsAnswer(1));
@@ -182,7 +182,7 @@ public class DefaultChannelAlternateIngestionTest extends AbstractDefaultChannel
         /* Set up channel without app secret. */
         String appCenterGroup = "test_group1";
         String oneCollectorGroup = "test_group2";
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         Ingestion defaultIngestion = mock(Ingestion.class);
         Ingestion alternateIngestion = mock(Ingestion.class);
         when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class))).then(getGetLogsAnswer(1));
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import android.content.Context;
+
+import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.ingestion.AppCenterIngestion;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.persistence.Persistence;
+import com.microsoft.appcenter.utils.NetworkStateHelper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Date;
+import java.util.UUID;
+
+import static com.microsoft.appcenter.channel.DefaultChannel.NETWORK_POLICY_CHECK_INTERVAL;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+
+public class DefaultChannelNetworkPolicyTest extends AbstractDefaultChannelTest {
+
+    private NetworkStateHelper mNetworkStateHelper;
+
+    @Before
+    public void setUpNetworkStateHelper() {
+        mNetworkStateHelper = mock(NetworkStateHelper.class);
+        mockStatic(NetworkStateHelper.class);
+        when(NetworkStateHelper.getSharedInstance(any(Context.class))).thenReturn(mNetworkStateHelper);
+    }
+
+    @Test
+    public void unmeteredOnlyWaitsForUnmeteredNetwork() {
+        Persistence mockPersistence = mockPersistence();
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class))).then(getGetLogsAnswer(1));
+        when(mockIngestion.sendAsync(anyString(), anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer());
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.setNetworkPolicy(TEST_GROUP, NetworkPolicy.UNMETERED);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        ArgumentCaptor<NetworkStateHelper.NetworkTypeListener> listener = ArgumentCaptor.forClass(NetworkStateHelper.NetworkTypeListener.class);
+        verify(mNetworkStateHelper).addNetworkTypeListener(listener.capture());
+
+        /* Log is kept on a metered network. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(mockPersistence, never()).getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class));
+        verify(mockIngestion, never()).sendAsync(anyString(), anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        assertEquals(1, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+
+        /* Switching to a metered network does nothing. */
+        listener.getValue().onNetworkTypeUpdated(false);
+        verify(mockIngestion, never()).sendAsync(anyString(), anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+
+        /* Log is sent once the network is unmetered. */
+        when(mNetworkStateHelper.isNetworkUnmetered()).thenReturn(true);
+        listener.getValue().onNetworkTypeUpdated(true);
+        verify(mockPersistence).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(1), anyListOf(Log.class), any(Date.class), isNull(Date.class));
+        verify(mockIngestion).sendAsync(anyString(), anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
+
+    @Test
+    public void unmeteredPreferredSendsOldLogsOnMeteredNetwork() {
+        long now = 10 * NETWORK_POLICY_CHECK_INTERVAL;
+        long maxAge = 2 * NETWORK_POLICY_CHECK_INTERVAL;
+        when(System.currentTimeMillis()).thenReturn(now);
+        Persistence mockPersistence = mockPersistence();
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockPersistence.countLogs(TEST_GROUP)).thenReturn(1);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.setNetworkPolicy(TEST_GROUP, NetworkPolicy.unmeteredPreferred(maxAge));
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+
+        /* Only logs older than the max age are queried, the pending one is checked again later. */
+        verify(mockPersistence).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(1), anyListOf(Log.class), any(Date.class), eq(new Date(now - maxAge)));
+        verify(mockIngestion, never()).sendAsync(anyString(), anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        ArgumentCaptor<Runnable> check = ArgumentCaptor.forClass(Runnable.class);
+        verify(mAppCenterHandler).postDelayed(check.capture(), eq(NETWORK_POLICY_CHECK_INTERVAL));
+
+        /* New logs don't query the database until the next check. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(mockPersistence).getLogs(eq(TEST_GROUP), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class));
+        verify(mockPersistence, times(2)).countLogs(TEST_GROUP);
+
+        /* The check queries logs again. */
+        check.getValue().run();
+        verify(mockPersistence, times(2)).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(1), anyListOf(Log.class), any(Date.class), eq(new Date(now - maxAge)));
+        verify(mAppCenterHandler, times(2)).postDelayed(check.getValue(), NETWORK_POLICY_CHECK_INTERVAL);
+
+        /* No date restriction on an unmetered network. */
+        when(mNetworkStateHelper.isNetworkUnmetered()).thenReturn(true);
+        channel.setNetworkPolicy(TEST_GROUP, NetworkPolicy.unmeteredPreferred(maxAge));
+        verify(mockPersistence).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(1), anyListOf(Log.class), any(Date.class), isNull(Date.class));
+
+        /* Listener is registered only once. */
+        verify(mNetworkStateHelper).addNetworkTypeListener(any(NetworkStateHelper.NetworkTypeListener.class));
+    }
+
+    @Test
+    public void networkPolicyKeptWhenGroupIsAddedAgain() {
+        Persistence mockPersistence = mockPersistence();
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.setNetworkPolicy(TEST_GROUP, NetworkPolicy.UNMETERED);
+        channel.removeGroup(TEST_GROUP);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(mockPersistence, never()).getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class));
+
+        /* Going back to any network sends the log and stops listening to the network. */
+        channel.setNetworkPolicy(TEST_GROUP, NetworkPolicy.ANY);
+        verify(mockPersistence).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(1), anyListOf(Log.class), any(Date.class), any(Date.class));
+        ArgumentCaptor<NetworkStateHelper.NetworkTypeListener> listener = ArgumentCaptor.forClass(NetworkStateHelper.NetworkTypeListener.class);
+        verify(mNetworkStateHelper).addNetworkTypeListener(listener.capture());
+        verify(mNetworkStateHelper).removeNetworkTypeListener(listener.getValue());
+    }
+
+    @Test
+    public void networkListenerKeptWhileAnotherGroupIsRestricted() {
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence(), mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.setNetworkPolicy(TEST_GROUP, NetworkPolicy.UNMETERED);
+        channel.setNetworkPolicy("other", NetworkPolicy.unmeteredPreferred(NETWORK_POLICY_CHECK_INTERVAL));
+        channel.setNetworkPolicy(TEST_GROUP, NetworkPolicy.ANY);
+        verify(mNetworkStateHelper, never()).removeNetworkTypeListener(any(NetworkStateHelper.NetworkTypeListener.class));
+
+        /* Shutdown stops listening. */
+        channel.shutdown();
+        ArgumentCaptor<NetworkStateHelper.NetworkTypeListener> listener = ArgumentCaptor.forClass(NetworkStateHelper.NetworkTypeListener.class);
+        verify(mNetworkStateHelper).addNetworkTypeListener(listener.capture());
+        verify(mNetworkStateHelper).removeNetworkTypeListener(listener.getValue());
+    }
+
+    @Test
+    public void anyNetworkPolicyDoesNotListenToNetwork() {
+        Persistence mockPersistence = mockPersistence();
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.setNetworkPolicy(TEST_GROUP, NetworkPolicy.ANY);
+        channel.setNetworkPolicy(TEST_GROUP, NetworkPolicy.unmeteredPreferred(0));
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(mockPersistence).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(1), anyListOf(Log.class), any(Date.class), any(Date.class));
+        verifyStatic(never());
+        NetworkStateHelper.getSharedInstance(any(Context.class));
+    }
+}
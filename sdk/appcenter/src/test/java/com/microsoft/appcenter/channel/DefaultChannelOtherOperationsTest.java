@@ -16,13 +16,16 @@ import com.microsoft.appcenter.persistence.Persistence;
 import org.junit.Test;
 import org.mockito.Matchers;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyLong;
@@ -42,7 +45,7 @@ public class DefaultChannelOtherOperationsTest extends AbstractDefaultChannelTes
     @Test
     public void setLogUrl() {
         Ingestion ingestion = mock(Ingestion.class);
-        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mock(Persistence.class), ingestion, mAppCenterHandler);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence(), ingestion, mAppCenterHandler);
         String logUrl = "http://mockUrl";
         channel.setLogUrl(logUrl);
         verify(ingestion).setLogUrl(logUrl);
@@ -50,7 +53,7 @@ public class DefaultChannelOtherOperationsTest extends AbstractDefaultChannelTes
 
     @Test
     public void logCallbacks() {
-        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mock(Persistence.class), mock(AppCenterIngestion.class), mAppCenterHandler);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence(), mock(AppCenterIngestion.class), mAppCenterHandler);
         channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
         Channel.Listener listener = spy(new AbstractChannelListener());
         channel.addListener(listener);
@@ -77,7 +80,7 @@ public class DefaultChannelOtherOperationsTest extends AbstractDefaultChannelTes
 
     @Test
     public void clear() {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(AppCenterIngestion.class), mAppCenterHandler);
         channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
 
@@ -93,7 +96,7 @@ public class DefaultChannelOtherOperationsTest extends AbstractDefaultChannelTes
 
     @Test
     public void shutdown() {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
         when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), Matchers.<List<Log>>any(), any(Date.class), any(Date.class)))
@@ -114,7 +117,7 @@ public class DefaultChannelOtherOperationsTest extends AbstractDefaultChannelTes
     public void filter() throws Persistence.PersistenceException {
 
         /* Given a mock channel. */
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(AppCenterIngestion.class), mAppCenterHandler);
         channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
 
@@ -182,7 +185,7 @@ public class DefaultChannelOtherOperationsTest extends AbstractDefaultChannelTes
 
     @Test
     public void groupCallbacks() {
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         Ingestion ingestion = mock(Ingestion.class);
         Channel.Listener listener = spy(new AbstractChannelListener());
         DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, ingestion, mAppCenterHandler);
@@ -206,7 +209,7 @@ public class DefaultChannelOtherOperationsTest extends AbstractDefaultChannelTes
     public void checkSetStorageSizeForwarding() {
 
         /* The real Android test for checking size is in DatabaseManagerAndroidTest. */
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         when(persistence.setMaxStorageSize(anyLong())).thenReturn(true).thenReturn(false);
         DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(Ingestion.class), mAppCenterHandler);
 
@@ -214,4 +217,40 @@ public class DefaultChannelOtherOperationsTest extends AbstractDefaultChannelTes
         assertTrue(channel.setMaxStorageSize(20480));
         assertFalse(channel.setMaxStorageSize(2));
     }
+
+    @Test
+    public void checkSetStorageCompressionForwarding() {
+        Persistence persistence = mockPersistence();
+        when(persistence.setCompressionEnabled(anyBoolean())).thenReturn(true);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(Ingestion.class), mAppCenterHandler);
+        channel.setStorageCompressionEnabled(true);
+        verify(persistence).setCompressionEnabled(true);
+    }
+
+    @Test
+    public void checkSetStorageQuotaForwarding() {
+        Persistence persistence = mockPersistence();
+        when(persistence.setStorageQuota(anyString(), anyString(), anyLong())).thenReturn(true);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(Ingestion.class), mAppCenterHandler);
+        channel.setStorageQuota("group", null, 1024);
+        verify(persistence).setStorageQuota("group", null, 1024);
+        channel.setStorageQuota("group", "key-secret", 512);
+        verify(persistence).setStorageQuota("group", "key", 512);
+    }
+
+    @Test
+    public void checkEvictedLogCountsForwarding() {
+        Persistence persistence = mockPersistence();
+        when(persistence.getEvictedLogCounts()).thenReturn(Collections.singletonMap("group", 3L));
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(Ingestion.class), mAppCenterHandler);
+        assertEquals(Collections.singletonMap("group", 3L), channel.getEvictedLogCounts());
+    }
+
+    @Test
+    public void checkQuotaEvictedLogCountsForwarding() {
+        Persistence persistence = mockPersistence();
+        when(persistence.getQuotaEvictedLogCounts()).thenReturn(Collections.singletonMap("group", 2L));
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(Ingestion.class), mAppCenterHandler);
+        assertEquals(Collections.singletonMap("group", 2L), channel.getQuotaEvictedLogCounts());
+    }
 }
@@ -47,7 +47,7 @@ public class DefaultChannelPauseResumeTest extends AbstractDefaultChannelTest {
 
     @Test
     public void pauseResumeGroup() throws Persistence.PersistenceException {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
 
@@ -96,7 +96,7 @@ public class DefaultChannelPauseResumeTest extends AbstractDefaultChannelTest {
 
     @Test
     public void pauseGroupTwice() {
-        DefaultChannel channel = spy(new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mock(Persistence.class), mock(AppCenterIngestion.class), mAppCenterHandler));
+        DefaultChannel channel = spy(new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence(), mock(AppCenterIngestion.class), mAppCenterHandler));
         channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mock(Channel.GroupListener.class));
         assertFalse(channel.getGroupState(TEST_GROUP).mPaused);
 
@@ -112,7 +112,7 @@ public class DefaultChannelPauseResumeTest extends AbstractDefaultChannelTest {
 
     @Test
     public void resumeGroupWhileNotPaused() {
-        DefaultChannel channel = spy(new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mock(Persistence.class), mock(AppCenterIngestion.class), mAppCenterHandler));
+        DefaultChannel channel = spy(new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence(), mock(AppCenterIngestion.class), mAppCenterHandler));
         channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mock(Channel.GroupListener.class));
         DefaultChannel.GroupState groupState = channel.getGroupState(TEST_GROUP);
         verify(channel).checkPendingLogs(groupState);
@@ -130,7 +130,7 @@ public class DefaultChannelPauseResumeTest extends AbstractDefaultChannelTest {
     public void pauseResumeTargetToken() throws Persistence.PersistenceException {
 
         /* Mock database and ingestion. */
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         OneCollectorIngestion ingestion = mock(OneCollectorIngestion.class);
 
         /* Create a channel with a log group that send logs 1 by 1. */
@@ -195,7 +195,7 @@ public class DefaultChannelPauseResumeTest extends AbstractDefaultChannelTest {
     public void pauseGroupPauseTargetResumeGroupResumeTarget() throws Persistence.PersistenceException {
 
         /* Mock database and ingestion. */
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         OneCollectorIngestion ingestion = mock(OneCollectorIngestion.class);
 
         /* Create a channel with a log group that send logs 1 by 1. */
@@ -236,7 +236,7 @@ public class DefaultChannelPauseResumeTest extends AbstractDefaultChannelTest {
     public void pauseResumeGroupWhenDisabled() {
 
         /* Create a channel with a log group. */
-        DefaultChannel channel = spy(new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mock(Persistence.class), mock(AppCenterIngestion.class), mAppCenterHandler));
+        DefaultChannel channel = spy(new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence(), mock(AppCenterIngestion.class), mAppCenterHandler));
         Channel.Listener listener = mock(Channel.Listener.class);
         channel.addListener(listener);
 
@@ -263,7 +263,7 @@ public class DefaultChannelPauseResumeTest extends AbstractDefaultChannelTest {
         when(System.currentTimeMillis()).thenReturn(now);
 
         /* Create channel and group. */
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         when(persistence.countLogs(TEST_GROUP)).thenReturn(0);
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mockIngestion, mAppCenterHandler);
@@ -306,7 +306,7 @@ public class DefaultChannelPauseResumeTest extends AbstractDefaultChannelTest {
         when(System.currentTimeMillis()).thenReturn(now);
 
         /* Create channel and group. */
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         when(persistence.countLogs(TEST_GROUP)).thenReturn(0);
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mockIngestion, mAppCenterHandler);
@@ -8,13 +8,13 @@ package com.microsoft.appcenter.channel;
 import android.content.Context;
 
 import com.microsoft.appcenter.CancellationException;
+import com.microsoft.appcenter.Flags;
 import com.microsoft.appcenter.http.ServiceCall;
 import com.microsoft.appcenter.http.ServiceCallback;
 import com.microsoft.appcenter.ingestion.AppCenterIngestion;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
 import com.microsoft.appcenter.persistence.Persistence;
-import com.microsoft.appcenter.utils.HandlerUtils;
 
 import org.junit.Test;
 import org.mockito.ArgumentMatcher;
@@ -34,56 +34,68 @@ import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
-import static org.powermock.api.mockito.PowerMockito.doAnswer;
 
 public class DefaultChannelRaceConditionTest extends AbstractDefaultChannelTest {
 
     @Test(timeout = 5000)
     public void disabledWhileSendingLogs() {
 
-        /* Set up mocking. */
-        final Semaphore beforeCallSemaphore = new Semaphore(0);
+        /* Set up mocking: reading the batch blocks until released. */
+        final Semaphore readingSemaphore = new Semaphore(0);
+        final Semaphore releaseSemaphore = new Semaphore(0);
         final Semaphore afterCallSemaphore = new Semaphore(0);
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         when(mockPersistence.countLogs(anyString())).thenReturn(1);
-        when(mockPersistence.getLogs(anyString(), anyListOf(String.class), eq(1), anyListOf(Log.class), any(Date.class), any(Date.class))).then(getGetLogsAnswer(1));
+        when(mockPersistence.getLogs(anyString(), anyListOf(String.class), eq(1), anyListOf(Log.class), any(Date.class), any(Date.class))).then(new Answer<String>() {
+
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                readingSemaphore.release();
+                releaseSemaphore.acquireUninterruptibly();
+                return getGetLogsAnswer(1).answer(invocation);
+            }
+        });
         when(mockPersistence.getLogs(anyString(), anyListOf(String.class), eq(CLEAR_BATCH_SIZE), anyListOf(Log.class), any(Date.class), any(Date.class))).then(getGetLogsAnswer(0));
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
-        doAnswer(new Answer<Void>() {
 
-            @Override
-            public Void answer(final InvocationOnMock invocation) {
-                new Thread() {
+        /* Enable module from another thread, it blocks while reading the batch to send. */
+        final DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        final Channel.GroupListener listener = mock(Channel.GroupListener.class);
+        new Thread() {
 
-                    @Override
-                    public void run() {
-                        beforeCallSemaphore.acquireUninterruptibly();
-                        ((Runnable) invocation.getArguments()[0]).run();
-                        afterCallSemaphore.release();
-                    }
-                }.start();
-                return null;
+            @Override
+            public void run() {
+                channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, listener);
+                afterCallSemaphore.release();
             }
-        }).when(HandlerUtils.class);
-        HandlerUtils.runOnUiThread(any(Runnable.class));
+        }.start();
+        readingSemaphore.acquireUninterruptibly();
 
-        /* Simulate enable module then disable. */
-        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
-        Channel.GroupListener listener = mock(Channel.GroupListener.class);
-        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, listener);
-        channel.setEnabled(false);
-        channel.setEnabled(true);
+        /* Disable from another thread, it waits for the batch to be sent. */
+        new Thread() {
 
-        /* Release call to mock ingestion. */
-        beforeCallSemaphore.release();
+            @Override
+            public void run() {
+                channel.setEnabled(false);
+                afterCallSemaphore.release();
+            }
+        }.start();
+        releaseSemaphore.release();
+        afterCallSemaphore.acquireUninterruptibly(2);
 
-        /* Wait for callback ingestion. */
-        afterCallSemaphore.acquireUninterruptibly();
+        /* Verify the batch sent before disabling is cancelled. */
+        verify(mockIngestion).sendAsync(anyString(), anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(listener).onFailure(any(Log.class), argThat(new ArgumentMatcher<Exception>() {
 
-        /* Verify ingestion not sent. */
-        verify(mockIngestion, never()).sendAsync(anyString(), anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+            @Override
+            public boolean matches(Object argument) {
+                return argument instanceof CancellationException;
+            }
+        }));
+        verify(listener, never()).onSuccess(any(Log.class));
     }
 
     @Test(timeout = 5000)
@@ -92,7 +104,7 @@ public class DefaultChannelRaceConditionTest extends AbstractDefaultChannelTest
         /* Set up mocking. */
         final Semaphore beforeCallSemaphore = new Semaphore(0);
         final Semaphore afterCallSemaphore = new Semaphore(0);
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         when(mockPersistence.countLogs(anyString())).thenReturn(1);
         when(mockPersistence.getLogs(anyString(), anyListOf(String.class), eq(1), anyListOf(Log.class), any(Date.class), any(Date.class))).then(getGetLogsAnswer(1));
         when(mockPersistence.getLogs(anyString(), anyListOf(String.class), eq(CLEAR_BATCH_SIZE), anyListOf(Log.class), any(Date.class), any(Date.class))).then(getGetLogsAnswer(0));
@@ -145,7 +157,7 @@ public class DefaultChannelRaceConditionTest extends AbstractDefaultChannelTest
         /* Set up mocking. */
         final Semaphore beforeCallSemaphore = new Semaphore(0);
         final Semaphore afterCallSemaphore = new Semaphore(0);
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         when(mockPersistence.countLogs(anyString())).thenReturn(1);
         when(mockPersistence.getLogs(anyString(), anyListOf(String.class), eq(1), anyListOf(Log.class), any(Date.class), any(Date.class))).then(getGetLogsAnswer(1));
         when(mockPersistence.getLogs(anyString(), anyListOf(String.class), eq(CLEAR_BATCH_SIZE), anyListOf(Log.class), any(Date.class), any(Date.class))).then(getGetLogsAnswer(0));
@@ -191,4 +203,50 @@ public class DefaultChannelRaceConditionTest extends AbstractDefaultChannelTest
             }
         }));
     }
+
+    @Test(timeout = 5000)
+    public void groupsProgressIndependently() {
+
+        /* Set up mocking: reading logs of the first group blocks until released. */
+        final Semaphore readingSemaphore = new Semaphore(0);
+        final Semaphore releaseSemaphore = new Semaphore(0);
+        final Semaphore afterSendSemaphore = new Semaphore(0);
+        final String otherGroup = "other_group";
+        Persistence mockPersistence = mockPersistence();
+        when(mockPersistence.getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(1), anyListOf(Log.class), any(Date.class), any(Date.class))).then(new Answer<String>() {
+
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                readingSemaphore.release();
+                releaseSemaphore.acquireUninterruptibly();
+                return getGetLogsAnswer(1).answer(invocation);
+            }
+        });
+        when(mockPersistence.getLogs(eq(otherGroup), anyListOf(String.class), eq(1), anyListOf(Log.class), any(Date.class), any(Date.class))).then(getGetLogsAnswer(1));
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        final DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.addGroup(otherGroup, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+
+        /* Send a log of the first group from another thread, it blocks while reading the batch. */
+        new Thread() {
+
+            @Override
+            public void run() {
+                channel.enqueue(mock(Log.class), TEST_GROUP, Flags.CRITICAL);
+                afterSendSemaphore.release();
+            }
+        }.start();
+        readingSemaphore.acquireUninterruptibly();
+
+        /* The other group is not blocked: its log is persisted and sent. */
+        channel.enqueue(mock(Log.class), otherGroup, Flags.CRITICAL);
+        verify(mockPersistence).getLogs(eq(otherGroup), anyListOf(String.class), eq(1), anyListOf(Log.class), any(Date.class), any(Date.class));
+        verify(mockIngestion).sendAsync(anyString(), anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+
+        /* Release the first group and wait for it to be sent too. */
+        releaseSemaphore.release();
+        afterSendSemaphore.acquireUninterruptibly();
+        verify(mockIngestion, times(2)).sendAsync(anyString(), anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
 }
@@ -10,6 +10,7 @@ import android.content.pm.PackageManager;
 
 import com.microsoft.appcenter.CancellationException;
 import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.http.AttemptServiceCallback;
 import com.microsoft.appcenter.http.HttpException;
 import com.microsoft.appcenter.http.ServiceCallback;
 import com.microsoft.appcenter.ingestion.AppCenterIngestion;
@@ -17,29 +18,36 @@ import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.SerializedLog;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.persistence.Persistence;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
+import com.microsoft.appcenter.utils.HandlerUtils;
 import com.microsoft.appcenter.utils.context.AuthTokenContext;
 import com.microsoft.appcenter.utils.context.AuthTokenInfo;
 import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Matchers;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
 import java.io.IOException;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Semaphore;
 
 import static com.microsoft.appcenter.Flags.NORMAL;
 import static com.microsoft.appcenter.channel.DefaultChannel.START_TIMER_PREFIX;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyListOf;
@@ -48,6 +56,7 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -63,7 +72,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
     @Test
     public void invalidGroup() throws Persistence.PersistenceException {
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         Channel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(Ingestion.class), mAppCenterHandler);
 
         /* Enqueue a log before group is registered = failure. */
@@ -78,9 +87,33 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         verify(mAppCenterHandler, never()).removeCallbacks(any(Runnable.class));
     }
 
+    @Test
+    public void sendingBacklogDoesNotUseMainThread() {
+        Persistence mockPersistence = mockPersistence();
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockPersistence.countLogs(TEST_GROUP)).thenReturn(150);
+        when(mockPersistence.getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(50), anyListOf(Log.class), any(Date.class), any(Date.class)))
+                .then(getGetLogsAnswer(50));
+        when(mockIngestion.sendAsync(anyString(), anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class)))
+                .then(getSendAsyncAnswer());
+
+        /* Adding the group drains the backlog. */
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        verify(mockIngestion, times(3)).sendAsync(anyString(), anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mockPersistence, times(3)).deleteLogs(eq(TEST_GROUP), anyString());
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+
+        /* Verify nothing was posted to the main thread. */
+        verifyStatic(never());
+        HandlerUtils.runOnUiThread(any(Runnable.class));
+        verifyStatic(never());
+        HandlerUtils.getMainHandler();
+    }
+
     @Test
     public void analyticsSuccess() throws Persistence.PersistenceException {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
         when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class)))
@@ -172,7 +205,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
     @Test
     public void lessLogsThanExpected() {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
         when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), Matchers.<ArrayList<Log>>any(), any(Date.class), any(Date.class)))
@@ -206,7 +239,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
     @Test
     public void maxRequests() throws Persistence.PersistenceException {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
 
         /* We make second request return less logs than expected to make sure counter is reset properly. */
@@ -270,7 +303,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
     @Test
     public void maxRequestsInitial() throws Persistence.PersistenceException {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         when(mockPersistence.countLogs(any(String.class))).thenReturn(100);
         when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class))).then(getGetLogsAnswer());
@@ -321,7 +354,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
     @Test
     public void analyticsRecoverable() throws Persistence.PersistenceException {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
         when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class)))
@@ -397,7 +430,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
     @Test
     public void analyticsFatal() throws Exception {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class)))
                 .then(getGetLogsAnswer(50))
@@ -477,7 +510,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
     @Test
     public void errorLogSuccess() throws Persistence.PersistenceException {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         Ingestion mockIngestion = mock(Ingestion.class);
         Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
         when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class))).then(getGetLogsAnswer());
@@ -514,7 +547,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
     @Test
     public void errorLogRecoverable() throws Persistence.PersistenceException {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         Ingestion mockIngestion = mock(Ingestion.class);
         Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
 
@@ -569,7 +602,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
     @Test
     public void errorLogDiscarded() {
         Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
-        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mock(Persistence.class), mock(Ingestion.class), mAppCenterHandler);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence(), mock(Ingestion.class), mAppCenterHandler);
         channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mockListener);
         channel.setEnabled(false);
         channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
@@ -579,7 +612,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
     @Test
     public void suspendWithFailureCallback() {
         Ingestion mockIngestion = mock(Ingestion.class);
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
         when(mockPersistence.countLogs(anyString())).thenReturn(30);
         when(mockPersistence.getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class))).thenAnswer(getGetLogsAnswer(10));
@@ -613,7 +646,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
     @Test
     public void suspendWithoutFailureCallback() {
         Ingestion mockIngestion = mock(Ingestion.class);
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         when(mockPersistence.countLogs(anyString())).thenReturn(3);
         when(mockPersistence.getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class))).thenAnswer(getGetLogsAnswer(1));
         when(mockIngestion.sendAsync(anyString(), anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class)))
@@ -642,7 +675,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
     @Test
     public void enqueuePersistenceFailure() throws Persistence.PersistenceException {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
 
         /* Simulate Persistence failing. */
@@ -675,7 +708,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         /* Send a log. */
         Ingestion ingestion = mock(Ingestion.class);
         doThrow(new IOException()).when(ingestion).close();
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         when(persistence.getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class))).thenAnswer(getGetLogsAnswer(1));
         DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, ingestion, mAppCenterHandler);
         Channel.Listener listener = spy(new AbstractChannelListener());
@@ -706,7 +739,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
     @Test
     public void disableBeforeCheckingPendingLogs() {
         Ingestion ingestion = mock(Ingestion.class);
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         final DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, ingestion, mAppCenterHandler);
         when(persistence.getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class))).thenAnswer(getGetLogsAnswer(1));
         when(ingestion.sendAsync(anyString(), anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).thenAnswer(new Answer<Void>() {
@@ -732,7 +765,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         when(mAppCenterHandler.postDelayed(delayedRunnable.capture(), anyLong())).thenReturn(true);
         Ingestion ingestion = mock(Ingestion.class);
         doThrow(new IOException()).when(ingestion).close();
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         when(persistence.countLogs(anyString())).thenReturn(3);
         when(persistence.getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class))).thenAnswer(getGetLogsAnswer(3));
 
@@ -758,7 +791,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         when(mAppCenterHandler.postDelayed(delayedRunnable.capture(), anyLong())).thenReturn(true);
         Ingestion ingestion = mock(Ingestion.class);
         doThrow(new IOException()).when(ingestion).close();
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         when(persistence.countLogs(anyString())).thenReturn(103);
         when(persistence.getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class))).thenAnswer(getGetLogsAnswer(50)).thenAnswer(getGetLogsAnswer(50)).thenAnswer(getGetLogsAnswer(3));
         DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, ingestion, mAppCenterHandler);
@@ -777,7 +810,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         when(mAppCenterHandler.postDelayed(delayedRunnable.capture(), anyLong())).thenReturn(true);
         Ingestion ingestion = mock(Ingestion.class);
         doThrow(new IOException()).when(ingestion).close();
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         when(persistence.countLogs(anyString())).thenReturn(3);
         when(persistence.getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class))).thenAnswer(getGetLogsAnswer(3));
         DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, ingestion, mAppCenterHandler);
@@ -797,7 +830,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
         /* Setup mocking to make device properties generation fail. */
         when(DeviceInfoHelper.getDeviceInfo(any(Context.class))).thenThrow(new DeviceInfoHelper.DeviceInfoException("mock", new PackageManager.NameNotFoundException()));
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         DefaultChannel channel = new DefaultChannel(mock(Context.class), null, persistence, mock(AppCenterIngestion.class), mAppCenterHandler);
         channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
         Channel.Listener listener = mock(Channel.Listener.class);
@@ -819,7 +852,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         when(mAppCenterHandler.postDelayed(delayedRunnable.capture(), anyLong())).thenReturn(true);
         Ingestion ingestion = mock(Ingestion.class);
         doThrow(new IOException()).when(ingestion).close();
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         when(persistence.countLogs(anyString())).thenReturn(2);
         DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, ingestion, mAppCenterHandler);
         channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
@@ -833,7 +866,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
     @Test
     public void invokeCallbacksAfterSuspendFatal() {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
 
@@ -863,7 +896,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
     @Test
     public void invokeCallbacksAfterSuspendFatalNoListener() {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
 
@@ -894,7 +927,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
     @Test
     public void invokeCallbacksAfterSuspendRecoverable() {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
 
@@ -928,7 +961,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         /* Other tests use default flags, test explicit flags here. */
 
         /* Setup persistence, channel and a listener. */
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         Channel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(AppCenterIngestion.class), mAppCenterHandler);
         channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mock(Channel.GroupListener.class));
         Channel.Listener listener = mock(Channel.Listener.class);
@@ -953,7 +986,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
     @Test
     public void removeTokenIfNoMoreLogs() {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         final Date changeTokenDate = new Date();
         when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), Matchers.<ArrayList<Log>>any(), isNull(Date.class), eq(changeTokenDate)))
                 .then(getGetLogsAnswer(10))
@@ -975,7 +1008,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
     @Test
     public void doNotRemoveTokenIfThereAreLogsInOtherChannels() {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         final Date changeTokenDate = new Date();
         when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), Matchers.<ArrayList<Log>>any(), isNull(Date.class), eq(changeTokenDate)))
                 .then(getGetLogsAnswer(10))
@@ -997,7 +1030,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
     @Test
     public void doNotRemoveCurrentToken() {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         final Date changeTokenDate = new Date();
         when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), Matchers.<ArrayList<Log>>any(), eq(changeTokenDate), isNull(Date.class)))
                 .then(getGetLogsAnswer(40))
@@ -1036,7 +1069,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         doNothing().when(mAuthTokenContext).addListener(listenerArgumentCaptor.capture());
 
         /* Create channel. Verify scheduling logs. */
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         DefaultChannel channel = spy(new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler));
@@ -1056,7 +1089,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         when(System.currentTimeMillis()).thenReturn(now);
 
         /* Create channel and group. */
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         when(mockPersistence.countLogs(TEST_GROUP)).thenReturn(5);
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
@@ -1076,7 +1109,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         when(System.currentTimeMillis()).thenReturn(now);
 
         /* Create channel and group. */
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         when(mockPersistence.countLogs(TEST_GROUP)).thenReturn(0);
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
@@ -1100,7 +1133,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         when(System.currentTimeMillis()).thenReturn(now);
 
         /* Create channel and group. */
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         when(mockPersistence.countLogs(TEST_GROUP)).thenReturn(5);
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
@@ -1126,7 +1159,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         when(SharedPreferencesManager.getLong(eq(START_TIMER_PREFIX + TEST_GROUP))).thenReturn(startTime);
 
         /* Create channel and group. */
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         when(mockPersistence.countLogs(TEST_GROUP)).thenReturn(5);
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
@@ -1152,7 +1185,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         when(SharedPreferencesManager.getLong(eq(START_TIMER_PREFIX + TEST_GROUP))).thenReturn(startTime);
 
         /* Create channel and group. */
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         when(mockPersistence.countLogs(TEST_GROUP)).thenReturn(5);
         when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class))).then(getGetLogsAnswer(5));
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
@@ -1178,7 +1211,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         when(SharedPreferencesManager.getLong(eq(START_TIMER_PREFIX + TEST_GROUP))).thenReturn(startTimer);
 
         /* Mock persistence. */
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class)))
                 .then(getGetLogsAnswer())
                 .then(getGetLogsAnswer(50))
@@ -1231,4 +1264,440 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         /* Check rest logs sending. */
         verify(mockIngestion, times(4)).sendAsync(anyString(), anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
     }
+
+    @Test
+    public void passThroughSendsStoredPayloads() throws Exception {
+
+        /* Mock persistence returning stored payloads. */
+        Persistence mockPersistence = mockPersistence();
+        when(mockPersistence.countLogs(anyString())).thenReturn(1);
+        final SerializedLog serializedLog = mock(SerializedLog.class);
+        final Log log = mock(Log.class);
+        when(serializedLog.getLog()).thenReturn(log);
+        when(mockPersistence.getSerializedLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(SerializedLog.class), any(Date.class), any(Date.class))).then(new Answer<String>() {
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public String answer(InvocationOnMock invocation) {
+                ((List<SerializedLog>) invocation.getArguments()[3]).add(serializedLog);
+                return UUID.randomUUID().toString();
+            }
+        });
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockIngestion.sendAsync(anyString(), anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer());
+
+        /* Without listener, the log model is never rebuilt. */
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        ArgumentCaptor<LogContainer> container = ArgumentCaptor.forClass(LogContainer.class);
+        verify(mockIngestion).sendAsync(anyString(), anyString(), any(UUID.class), container.capture(), any(ServiceCallback.class));
+        assertEquals(1, container.getValue().getSerializedLogs().size());
+        assertEquals(serializedLog, container.getValue().getSerializedLogs().get(0));
+        verify(mockPersistence, never()).getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class));
+        verify(serializedLog, never()).getLog();
+        verify(mockPersistence).deleteLogs(eq(TEST_GROUP), anyString());
+
+        /* With a listener, the model is rebuilt for the callbacks. */
+        channel.removeGroup(TEST_GROUP);
+        Channel.GroupListener listener = mock(Channel.GroupListener.class);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, listener);
+        verify(listener).onBeforeSending(log);
+        verify(listener).onSuccess(log);
+    }
+
+    @Test
+    public void filteredGroupListenerSendsWithoutDeserializing() throws Exception {
+
+        /* Mock persistence returning a stored payload. */
+        Persistence mockPersistence = mockPersistence();
+        when(mockPersistence.countLogs(anyString())).thenReturn(1);
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        final SerializedLog serializedLog = new SerializedLog("{}", "event", null, logSerializer);
+        when(mockPersistence.getSerializedLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(SerializedLog.class), any(Date.class), any(Date.class))).then(new Answer<String>() {
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public String answer(InvocationOnMock invocation) {
+                ((List<SerializedLog>) invocation.getArguments()[3]).add(serializedLog);
+                return UUID.randomUUID().toString();
+            }
+        });
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockIngestion.sendAsync(anyString(), anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer());
+
+        /* Listener that does not need event models, like the one of Analytics without application listener. */
+        Channel.FilteredGroupListener listener = mock(Channel.FilteredGroupListener.class);
+        when(listener.needsLog("event")).thenReturn(false);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, listener);
+        verify(mockIngestion).sendAsync(anyString(), anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mockPersistence).deleteLogs(eq(TEST_GROUP), anyString());
+        verify(logSerializer, never()).deserializeLog(anyString(), anyString());
+        verify(listener, never()).onBeforeSending(any(Log.class));
+        verify(listener, never()).onSuccess(any(Log.class));
+
+        /* Once the listener needs them, models are rebuilt for callbacks. */
+        Log log = mock(Log.class);
+        when(logSerializer.deserializeLog("{}", "event")).thenReturn(log);
+        when(listener.needsLog("event")).thenReturn(true);
+        channel.removeGroup(TEST_GROUP);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, listener);
+        verify(listener).onBeforeSending(log);
+        verify(listener).onSuccess(log);
+    }
+
+    @Test
+    public void payloadSizeInUtf8Bytes() {
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        List<SerializedLog> batch = new ArrayList<>();
+        batch.add(new SerializedLog("{\"a\":\"\u00e9\"}", "mock", null, logSerializer));
+        batch.add(new SerializedLog("{\"a\":\"\u20ac\ud83d\ude00\"}", "mock", null, logSerializer));
+
+        /* Logs without stored payload are not counted. */
+        batch.add(new SerializedLog(mock(Log.class)));
+        assertEquals(10 + 15, DefaultChannel.getPayloadSize(batch));
+    }
+
+    @Test
+    public void intakeLogsPersistedInSingleTransaction() throws Persistence.PersistenceException {
+        Persistence mockPersistence = mockPersistence();
+        when(mockPersistence.endTransaction()).thenReturn(true);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+
+        /* Keep intake runnable for later. */
+        ArgumentCaptor<Runnable> runnable = ArgumentCaptor.forClass(Runnable.class);
+        when(mAppCenterHandler.post(runnable.capture())).thenReturn(true);
+
+        /* Enqueue a burst of logs: nothing is written yet and runnable is posted only once. */
+        Log log1 = mock(Log.class);
+        Log log2 = mock(Log.class);
+        Log log3 = mock(Log.class);
+        channel.enqueue(log1, TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(log2, TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(log3, TEST_GROUP, Flags.DEFAULTS);
+        verify(mockPersistence, never()).putLog(any(Log.class), anyString(), anyInt());
+        verify(mAppCenterHandler).post(any(Runnable.class));
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+
+        /* Run intake: logs are written in order in a single transaction. */
+        runnable.getValue().run();
+        InOrder inOrder = inOrder(mockPersistence);
+        inOrder.verify(mockPersistence).beginTransaction();
+        inOrder.verify(mockPersistence).putLog(log1, TEST_GROUP, Flags.DEFAULTS);
+        inOrder.verify(mockPersistence).putLog(log2, TEST_GROUP, Flags.DEFAULTS);
+        inOrder.verify(mockPersistence).putLog(log3, TEST_GROUP, Flags.DEFAULTS);
+        inOrder.verify(mockPersistence).endTransaction();
+        assertEquals(3, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+        verify(mAppCenterHandler).postDelayed(any(Runnable.class), eq(BATCH_TIME_INTERVAL));
+    }
+
+    @Test
+    public void intakeFlushedSynchronouslyForCriticalLog() throws Persistence.PersistenceException {
+        Persistence mockPersistence = mockPersistence();
+        when(mockPersistence.endTransaction()).thenReturn(true);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        when(mAppCenterHandler.post(any(Runnable.class))).thenReturn(true);
+
+        /* Normal log is queued. */
+        Log normalLog = mock(Log.class);
+        channel.enqueue(normalLog, TEST_GROUP, Flags.NORMAL);
+        verify(mockPersistence, never()).putLog(any(Log.class), anyString(), anyInt());
+
+        /* Critical log is written right away, after the log queued before it. */
+        Log criticalLog = mock(Log.class);
+        channel.enqueue(criticalLog, TEST_GROUP, Flags.CRITICAL);
+        InOrder inOrder = inOrder(mockPersistence);
+        inOrder.verify(mockPersistence).beginTransaction();
+        inOrder.verify(mockPersistence).putLog(normalLog, TEST_GROUP, Flags.NORMAL);
+        inOrder.verify(mockPersistence).putLog(criticalLog, TEST_GROUP, Flags.CRITICAL);
+        inOrder.verify(mockPersistence).endTransaction();
+        assertEquals(2, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+    }
+
+    @Test
+    public void intakeFlushedWhenFull() throws Persistence.PersistenceException {
+        Persistence mockPersistence = mockPersistence();
+        when(mockPersistence.endTransaction()).thenReturn(true);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, DefaultChannel.INTAKE_MAX_LOGS * 2, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        when(mAppCenterHandler.post(any(Runnable.class))).thenReturn(true);
+        for (int i = 0; i < DefaultChannel.INTAKE_MAX_LOGS; i++) {
+            channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        }
+        verify(mockPersistence).beginTransaction();
+        verify(mockPersistence, times(DefaultChannel.INTAKE_MAX_LOGS)).putLog(any(Log.class), eq(TEST_GROUP), eq(Flags.DEFAULTS));
+        verify(mockPersistence).endTransaction();
+        assertEquals(DefaultChannel.INTAKE_MAX_LOGS, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+    }
+
+    @Test
+    public void intakeEnqueueDoesNotWaitForDiskWrite() throws Exception {
+        Persistence mockPersistence = mockPersistence();
+        final Semaphore writing = new Semaphore(0);
+        final Semaphore written = new Semaphore(0);
+        when(mockPersistence.putLog(any(Log.class), anyString(), anyInt())).then(new Answer<Long>() {
+
+            @Override
+            public Long answer(InvocationOnMock invocation) {
+                writing.release();
+                written.acquireUninterruptibly();
+                return 0L;
+            }
+        });
+        final DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        ArgumentCaptor<Runnable> runnable = ArgumentCaptor.forClass(Runnable.class);
+        when(mAppCenterHandler.post(runnable.capture())).thenReturn(true);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+
+        /* Write the queue on another thread and block in persistence. */
+        Thread flushThread = new Thread(runnable.getValue());
+        flushThread.start();
+        writing.acquireUninterruptibly();
+
+        /* Enqueueing meanwhile does not wait for the write. */
+        final Log log = mock(Log.class);
+        Thread enqueueThread = new Thread() {
+
+            @Override
+            public void run() {
+                channel.enqueue(log, TEST_GROUP, Flags.DEFAULTS);
+            }
+        };
+        enqueueThread.start();
+        enqueueThread.join(5000);
+        assertFalse(enqueueThread.isAlive());
+        written.release(2);
+        flushThread.join();
+
+        /* The second log is written by its own flush. */
+        verify(mockPersistence).putLog(any(Log.class), eq(TEST_GROUP), eq(Flags.DEFAULTS));
+        runnable.getValue().run();
+        verify(mockPersistence).putLog(log, TEST_GROUP, Flags.DEFAULTS);
+        assertEquals(2, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+    }
+
+    @Test
+    public void intakeTransactionFailureReportsLogs() throws Persistence.PersistenceException {
+        Persistence mockPersistence = mockPersistence();
+        when(mockPersistence.endTransaction()).thenReturn(false);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        Channel.GroupListener listener = mock(Channel.GroupListener.class);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, listener);
+        ArgumentCaptor<Runnable> runnable = ArgumentCaptor.forClass(Runnable.class);
+        when(mAppCenterHandler.post(runnable.capture())).thenReturn(true);
+        Log log1 = mock(Log.class);
+        Log log2 = mock(Log.class);
+        channel.enqueue(log1, TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(log2, TEST_GROUP, Flags.DEFAULTS);
+        runnable.getValue().run();
+
+        /* Every log of the transaction is reported as failed and not counted as pending. */
+        InOrder inOrder = inOrder(listener);
+        inOrder.verify(listener).onBeforeSending(log1);
+        inOrder.verify(listener).onFailure(eq(log1), any(Persistence.PersistenceException.class));
+        inOrder.verify(listener).onBeforeSending(log2);
+        inOrder.verify(listener).onFailure(eq(log2), any(Persistence.PersistenceException.class));
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+        verify(mAppCenterHandler, never()).postDelayed(any(Runnable.class), anyLong());
+    }
+
+    @Test
+    public void throttlingPausesAllGroupsOfEndpoint() throws Persistence.PersistenceException {
+        String logUrl = "https://in.appcenter.ms";
+        String otherGroup = TEST_GROUP + "2";
+        Persistence mockPersistence = mockPersistence();
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockIngestion.getLogUrl()).thenReturn(logUrl);
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class))).then(getGetLogsAnswer());
+        when(mockIngestion.sendAsync(anyString(), anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class)))
+                .then(getSendAsyncAnswer(new HttpException(429)))
+                .then(getSendAsyncAnswer());
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.addGroup(otherGroup, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        ArgumentCaptor<Runnable> resumeRunnable = ArgumentCaptor.forClass(Runnable.class);
+        ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+        when(mAppCenterHandler.postDelayed(resumeRunnable.capture(), delay.capture())).thenReturn(true);
+
+        /* The throttled batch goes back to the pending logs, the channel is not suspended. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(mockPersistence).clearPendingLogState(eq(TEST_GROUP), anyString());
+        verify(mockPersistence, never()).clearPendingLogState();
+        assertTrue(channel.isEnabled());
+        assertEquals(1, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+        assertTrue(channel.getThrottledEndpoints().containsKey(logUrl));
+
+        /* The other group waits too. */
+        channel.enqueue(mock(Log.class), otherGroup, Flags.DEFAULTS);
+        verify(mockIngestion).sendAsync(anyString(), anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        assertEquals(1, channel.getGroupState(otherGroup).mPendingLogCount);
+
+        /* A single resume is scheduled for the endpoint. */
+        verify(mAppCenterHandler).postDelayed(any(Runnable.class), anyLong());
+        assertTrue(delay.getValue() >= EndpointThrottle.INITIAL_DELAY);
+
+        /* Resume both groups once the pause is over. */
+        when(System.currentTimeMillis()).thenReturn(delay.getValue());
+        resumeRunnable.getValue().run();
+        verify(mockIngestion, times(3)).sendAsync(anyString(), anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mockPersistence).deleteLogs(eq(TEST_GROUP), anyString());
+        verify(mockPersistence).deleteLogs(eq(otherGroup), anyString());
+        assertTrue(channel.getThrottledEndpoints().isEmpty());
+        verifyStatic();
+        SharedPreferencesManager.remove(EndpointThrottle.THROTTLE_PREFIX + logUrl);
+    }
+
+    @Test
+    public void throttlingStateRestoredOnStart() {
+        String logUrl = "https://in.appcenter.ms";
+        when(SharedPreferencesManager.getString(EndpointThrottle.THROTTLE_PREFIX + logUrl)).thenReturn("1000/1");
+        Persistence mockPersistence = mockPersistence();
+        when(mockPersistence.countLogs(TEST_GROUP)).thenReturn(1);
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockIngestion.getLogUrl()).thenReturn(logUrl);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+
+        /* Nothing is sent before the end of the pause. */
+        verify(mAppCenterHandler).postDelayed(any(Runnable.class), eq(1000L));
+        verify(mockIngestion, never()).sendAsync(anyString(), anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        assertEquals(Long.valueOf(1000), channel.getThrottledEndpoints().get(logUrl));
+    }
+
+    @Test
+    public void otherRecoverableErrorStillSuspendsWithLogUrl() {
+        Persistence mockPersistence = mockPersistence();
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockIngestion.getLogUrl()).thenReturn("https://in.appcenter.ms");
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class))).then(getGetLogsAnswer());
+        when(mockIngestion.sendAsync(anyString(), anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer(new HttpException(500)));
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        assertFalse(channel.isEnabled());
+        verify(mockPersistence).clearPendingLogState();
+        verify(mockPersistence, never()).clearPendingLogState(anyString(), anyString());
+        assertTrue(channel.getThrottledEndpoints().isEmpty());
+    }
+
+    @Test
+    public void adaptiveBatching() throws Persistence.PersistenceException {
+        String logUrl = "https://in.appcenter.ms";
+        Persistence mockPersistence = mockPersistence();
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockIngestion.getLogUrl()).thenReturn(logUrl);
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class))).then(getGetLogsAnswer());
+        when(mockIngestion.sendAsync(anyString(), anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer());
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.setAdaptiveBatchingEnabled(true);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+
+        /* The first batch is sent as soon as the initial adaptive batch size is reached. */
+        for (int i = 0; i < CongestionController.INITIAL_BATCH_SIZE; i++) {
+            channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        }
+        verify(mockPersistence).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(CongestionController.INITIAL_BATCH_SIZE), anyListOf(Log.class), any(Date.class), any(Date.class));
+        verify(mockIngestion).sendAsync(anyString(), anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+
+        /* The batch went through fast, next batches can be larger. */
+        assertEquals(Integer.valueOf(CongestionController.INITIAL_BATCH_SIZE + CongestionController.BATCH_SIZE_INCREASE), channel.getAdaptiveBatchSizes().get(logUrl));
+        assertEquals(Integer.valueOf(2), channel.getAdaptiveParallelBatches().get(logUrl));
+    }
+
+    @Test
+    public void adaptiveBatchingTimeout() {
+        String logUrl = "https://in.appcenter.ms";
+        Persistence mockPersistence = mockPersistence();
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockIngestion.getLogUrl()).thenReturn(logUrl);
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class))).then(getGetLogsAnswer());
+        when(mockIngestion.sendAsync(anyString(), anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer(new SocketTimeoutException()));
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.setAdaptiveBatchingEnabled(true);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        for (int i = 0; i < CongestionController.INITIAL_BATCH_SIZE; i++) {
+            channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        }
+        assertEquals(Integer.valueOf(CongestionController.INITIAL_BATCH_SIZE / 2), channel.getAdaptiveBatchSizes().get(logUrl));
+    }
+
+    @Test
+    public void adaptiveBatchingSuccessAfterRetry() {
+        String logUrl = "https://in.appcenter.ms";
+        Persistence mockPersistence = mockPersistence();
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockIngestion.getLogUrl()).thenReturn(logUrl);
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class))).then(getGetLogsAnswer());
+
+        /* First attempt times out, the retry goes through fast minutes later. */
+        when(mockIngestion.sendAsync(anyString(), anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(new Answer<Object>() {
+
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                AttemptServiceCallback callback = (AttemptServiceCallback) invocation.getArguments()[4];
+                callback.onCallAttempted(10000, new SocketTimeoutException());
+                callback.onCallAttempted(100, null);
+                callback.onCallSucceeded("", null);
+                return null;
+            }
+        });
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.setAdaptiveBatchingEnabled(true);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        for (int i = 0; i < CongestionController.INITIAL_BATCH_SIZE; i++) {
+            channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        }
+
+        /* The timeout halves the batch size, the retry is judged on its own latency and grows it again. */
+        assertEquals(Integer.valueOf(CongestionController.INITIAL_BATCH_SIZE / 2 + CongestionController.BATCH_SIZE_INCREASE), channel.getAdaptiveBatchSizes().get(logUrl));
+    }
+
+    @Test
+    public void maxBatchSize() {
+        Persistence mockPersistence = mockPersistence();
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyLong(), anyListOf(Log.class), any(Date.class), any(Date.class))).then(new Answer<String>() {
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public String answer(InvocationOnMock invocation) {
+
+                /* Only one log fits in the batch. */
+                ((List<Log>) invocation.getArguments()[4]).add(mock(Log.class));
+                return UUID.randomUUID().toString();
+            }
+        });
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.setMaxBatchSize(1024);
+        channel.addGroup(TEST_GROUP, 2, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+
+        /* Batch is limited by both count and size. */
+        verify(mockPersistence).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(2), eq(1024L), anyListOf(Log.class), any(Date.class), any(Date.class));
+        verify(mockPersistence, never()).getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class));
+        verify(mockIngestion).sendAsync(anyString(), anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+
+        /* The log left behind is sent with the next batch. */
+        assertEquals(1, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+    }
+
+    @Test
+    public void maxBatchSizeWithPassThrough() {
+        Persistence mockPersistence = mockPersistence();
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.setMaxBatchSize(1024);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(mockPersistence).getSerializedLogs(eq(TEST_GROUP), anyListOf(String.class), eq(1), eq(1024L), anyListOf(SerializedLog.class), any(Date.class), any(Date.class));
+
+        /* No size limit. */
+        channel.setMaxBatchSize(0);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(mockPersistence).getSerializedLogs(eq(TEST_GROUP), anyListOf(String.class), eq(1), anyListOf(SerializedLog.class), any(Date.class), any(Date.class));
+    }
 }
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.microsoft.appcenter.channel.EndpointThrottle.INITIAL_DELAY;
+import static com.microsoft.appcenter.channel.EndpointThrottle.JITTER_RATIO;
+import static com.microsoft.appcenter.channel.EndpointThrottle.MAX_DELAY;
+import static com.microsoft.appcenter.channel.EndpointThrottle.MAX_RETRY_AFTER;
+import static com.microsoft.appcenter.channel.EndpointThrottle.THROTTLE_PREFIX;
+import static com.microsoft.appcenter.http.DefaultHttpClient.X_MS_RETRY_AFTER_MS_HEADER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+
+@PrepareForTest({AppCenterLog.class, SharedPreferencesManager.class})
+public class EndpointThrottleTest {
+
+    private static final String ENDPOINT = "https://in.appcenter.ms";
+
+    private static final long NOW = 1000000;
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    private Random mRandom;
+
+    @Before
+    public void setUp() {
+        mockStatic(AppCenterLog.class);
+        mockStatic(SharedPreferencesManager.class);
+        mRandom = mock(Random.class);
+    }
+
+    @Test
+    public void exponentialPauseWithoutHint() {
+        EndpointThrottle throttle = new EndpointThrottle(mRandom);
+        Map<String, String> headers = Collections.emptyMap();
+        assertEquals(0, throttle.getRemainingTime(ENDPOINT, NOW));
+        assertEquals(INITIAL_DELAY, throttle.onThrottled(ENDPOINT, headers, NOW));
+        assertEquals(INITIAL_DELAY, throttle.getRemainingTime(ENDPOINT, NOW));
+        verifyStatic();
+        SharedPreferencesManager.putString(THROTTLE_PREFIX + ENDPOINT, (NOW + INITIAL_DELAY) + "/1");
+
+        /* Other batches failing during the pause don't extend it. */
+        assertEquals(INITIAL_DELAY - 10, throttle.onThrottled(ENDPOINT, headers, NOW + 10));
+
+        /* The next pause doubles, up to the maximum. */
+        long now = NOW + INITIAL_DELAY;
+        assertEquals(INITIAL_DELAY * 2, throttle.onThrottled(ENDPOINT, headers, now));
+        for (int i = 0; i < 40; i++) {
+            now += MAX_DELAY;
+            assertTrue(throttle.onThrottled(ENDPOINT, headers, now) <= MAX_DELAY);
+        }
+        assertEquals(MAX_DELAY, throttle.getRemainingTime(ENDPOINT, now));
+
+        /* A success ends the backoff. */
+        throttle.onSuccess(ENDPOINT);
+        assertEquals(0, throttle.getRemainingTime(ENDPOINT, now));
+        verifyStatic();
+        SharedPreferencesManager.remove(THROTTLE_PREFIX + ENDPOINT);
+        assertEquals(INITIAL_DELAY, throttle.onThrottled(ENDPOINT, headers, now));
+    }
+
+    @Test
+    public void retryAfterHint() {
+        EndpointThrottle throttle = new EndpointThrottle(mRandom);
+        long delay = TimeUnit.MINUTES.toMillis(2);
+        assertEquals(delay, throttle.onThrottled(ENDPOINT, Collections.singletonMap(X_MS_RETRY_AFTER_MS_HEADER, String.valueOf(delay)), NOW));
+
+        /* A longer hint during the pause extends it. */
+        long longerDelay = TimeUnit.MINUTES.toMillis(5);
+        assertEquals(longerDelay, throttle.onThrottled(ENDPOINT, Collections.singletonMap(X_MS_RETRY_AFTER_MS_HEADER, String.valueOf(longerDelay)), NOW));
+
+        /* Hints are capped. */
+        long now = NOW + longerDelay;
+        assertEquals(MAX_RETRY_AFTER, throttle.onThrottled(ENDPOINT, Collections.singletonMap(X_MS_RETRY_AFTER_MS_HEADER, String.valueOf(Long.MAX_VALUE / 2)), now));
+    }
+
+    @Test
+    public void jitter() {
+        when(mRandom.nextDouble()).thenReturn(0.5);
+        EndpointThrottle throttle = new EndpointThrottle(mRandom);
+        assertEquals(INITIAL_DELAY + (long) (INITIAL_DELAY * JITTER_RATIO * 0.5), throttle.onThrottled(ENDPOINT, Collections.<String, String>emptyMap(), NOW));
+    }
+
+    @Test
+    public void endpointsAreIndependent() {
+        EndpointThrottle throttle = new EndpointThrottle(mRandom);
+        String otherEndpoint = "https://mobile.events.data.microsoft.com/OneCollector/1.0";
+        throttle.onThrottled(ENDPOINT, Collections.<String, String>emptyMap(), NOW);
+        assertEquals(0, throttle.getRemainingTime(otherEndpoint, NOW));
+        assertEquals(Collections.singletonMap(ENDPOINT, NOW + INITIAL_DELAY), throttle.getThrottledEndpoints(NOW));
+        assertTrue(throttle.getThrottledEndpoints(NOW + INITIAL_DELAY).isEmpty());
+    }
+
+    @Test
+    public void restoreState() {
+        when(SharedPreferencesManager.getString(THROTTLE_PREFIX + ENDPOINT)).thenReturn((NOW + 5000) + "/2");
+        EndpointThrottle throttle = new EndpointThrottle(mRandom);
+        assertEquals(5000, throttle.getRemainingTime(ENDPOINT, NOW));
+
+        /* The backoff continues where it stopped. */
+        assertEquals(INITIAL_DELAY * 4, throttle.onThrottled(ENDPOINT, Collections.<String, String>emptyMap(), NOW + 5000));
+    }
+
+    @Test
+    public void restoreStateFromFuture() {
+        when(SharedPreferencesManager.getString(THROTTLE_PREFIX + ENDPOINT)).thenReturn((NOW + 2 * MAX_RETRY_AFTER) + "/1");
+        EndpointThrottle throttle = new EndpointThrottle(mRandom);
+        assertEquals(0, throttle.getRemainingTime(ENDPOINT, NOW));
+    }
+
+    @Test
+    public void restoreInvalidState() {
+        when(SharedPreferencesManager.getString(anyString())).thenReturn("invalid");
+        EndpointThrottle throttle = new EndpointThrottle(mRandom);
+        assertEquals(0, throttle.getRemainingTime(ENDPOINT, NOW));
+        verifyStatic();
+        SharedPreferencesManager.remove(THROTTLE_PREFIX + ENDPOINT);
+        assertEquals(INITIAL_DELAY, throttle.onThrottled(ENDPOINT, Collections.<String, String>emptyMap(), NOW));
+    }
+
+    @Test
+    public void successWithoutThrottlingDoesNotWritePreferences() {
+        EndpointThrottle throttle = new EndpointThrottle(mRandom);
+        throttle.onSuccess(ENDPOINT);
+        verifyStatic(never());
+        SharedPreferencesManager.remove(anyString());
+    }
+
+    @Test
+    public void resumeScheduledOnce() {
+        EndpointThrottle throttle = new EndpointThrottle(mRandom);
+        assertTrue(throttle.setResumeScheduled(ENDPOINT));
+        assertFalse(throttle.setResumeScheduled(ENDPOINT));
+        throttle.clearResumeScheduled(ENDPOINT);
+        assertTrue(throttle.setResumeScheduled(ENDPOINT));
+    }
+}
@@ -7,6 +7,7 @@ package com.microsoft.appcenter.http;
 
 import android.net.TrafficStats;
 import android.os.Build;
+import android.os.Handler;
 import android.util.Log;
 import android.util.Pair;
 
@@ -22,6 +23,7 @@ import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatcher;
 import org.mockito.Captor;
+import org.mockito.InOrder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PrepareForTest;
@@ -34,9 +36,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.Writer;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -46,6 +50,7 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
 import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 import javax.net.ssl.HttpsURLConnection;
@@ -56,15 +61,21 @@ import static com.microsoft.appcenter.http.DefaultHttpClient.METHOD_POST;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.AdditionalMatchers.geq;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyMapOf;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.isNull;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.notNull;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
@@ -96,6 +107,7 @@ public class DefaultHttpClientTest {
     @After
     public void tearDown() throws Exception {
         TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", 0);
+        TLS1_2SocketFactory.unsetInstance();
     }
 
     /**
@@ -184,6 +196,45 @@ public class DefaultHttpClientTest {
         }));
     }
 
+    @Test
+    public void reuseConnectionForNextCall() throws Exception {
+
+        /* Simulate the connection pool: both calls get the same open connection as long as it's not disconnected. */
+        mockCall();
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.KITKAT);
+        String urlString = "https://mock/logs?api-version=1.0.0";
+        URL url = mock(URL.class);
+        whenNew(URL.class).withArguments(urlString).thenReturn(url);
+        HttpsURLConnection urlConnection = mock(HttpsURLConnection.class);
+        when(url.openConnection()).thenReturn(urlConnection);
+        when(urlConnection.getResponseCode()).thenReturn(200);
+        when(urlConnection.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+        ByteArrayInputStream firstResponse = spy(new ByteArrayInputStream("OK".getBytes()));
+        ByteArrayInputStream secondResponse = spy(new ByteArrayInputStream("OK".getBytes()));
+        when(urlConnection.getInputStream()).thenReturn(firstResponse, secondResponse);
+        HttpClient.CallTemplate callTemplate = mock(HttpClient.CallTemplate.class);
+        when(callTemplate.buildRequestBody()).thenReturn("{a:1,b:2}");
+        DefaultHttpClient httpClient = new DefaultHttpClient();
+
+        /* Send 2 batches. */
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        httpClient.callAsync(urlString, METHOD_POST, new HashMap<String, String>(), callTemplate, serviceCallback);
+        httpClient.callAsync(urlString, METHOD_POST, new HashMap<String, String>(), callTemplate, serviceCallback);
+        verify(serviceCallback, times(2)).onCallSucceeded("OK", Collections.<String, String>emptyMap());
+
+        /* Responses were fully read and closed, but connection was never released. */
+        verify(firstResponse).close();
+        verify(secondResponse).close();
+        verify(urlConnection, never()).disconnect();
+
+        /* Same socket factory instance on both calls, otherwise the pool would open a new connection. */
+        ArgumentCaptor<SSLSocketFactory> factoryCaptor = ArgumentCaptor.forClass(SSLSocketFactory.class);
+        verify(urlConnection, times(2)).setSSLSocketFactory(factoryCaptor.capture());
+        assertSame(factoryCaptor.getAllValues().get(0), factoryCaptor.getAllValues().get(1));
+        assertSame(TLS1_2SocketFactory.getInstance(), factoryCaptor.getValue());
+        httpClient.close();
+    }
+
     @Test
     public void post200() throws Exception {
 
@@ -231,7 +282,7 @@ public class DefaultHttpClientTest {
         verify(urlConnection).setRequestProperty("Install-ID", installId.toString());
         verify(urlConnection).setRequestMethod("POST");
         verify(urlConnection).setDoOutput(true);
-        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).disconnect();
         verify(callTemplate).onBeforeCalling(eq(url), anyMapOf(String.class, String.class));
         verify(callTemplate).buildRequestBody();
         httpClient.close();
@@ -285,7 +336,7 @@ public class DefaultHttpClientTest {
         verify(urlConnection).setRequestProperty("Install-ID", installId.toString());
         verify(urlConnection).setRequestMethod("POST");
         verify(urlConnection, never()).setDoOutput(true);
-        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).disconnect();
         httpClient.close();
 
         /* Verify payload. */
@@ -329,7 +380,7 @@ public class DefaultHttpClientTest {
         verify(urlConnection).setRequestProperty("Install-ID", installId.toString());
         verify(urlConnection).setRequestMethod("GET");
         verify(urlConnection, never()).setDoOutput(true);
-        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).disconnect();
         verify(inputStream).close();
         verify(callTemplate).onBeforeCalling(eq(url), anyMapOf(String.class, String.class));
         verify(callTemplate, never()).buildRequestBody();
@@ -399,6 +450,34 @@ public class DefaultHttpClientTest {
         verify(urlConnection).disconnect();
     }
 
+    @Test
+    public void attemptReportedBeforeResult() throws Exception {
+
+        /* Configure mock HTTPS, first call fails, second succeeds. */
+        String urlString = "https://mock/get";
+        URL url = mock(URL.class);
+        whenNew(URL.class).withArguments(urlString).thenReturn(url);
+        HttpsURLConnection urlConnection = mock(HttpsURLConnection.class);
+        when(url.openConnection()).thenReturn(urlConnection);
+        when(urlConnection.getResponseCode()).thenReturn(500, 500, 200);
+        when(urlConnection.getErrorStream()).thenReturn(new ByteArrayInputStream("Error".getBytes()));
+        when(urlConnection.getInputStream()).thenReturn(new ByteArrayInputStream("OK".getBytes()));
+        DefaultHttpClient httpClient = new DefaultHttpClient();
+        AttemptServiceCallback serviceCallback = mock(AttemptServiceCallback.class);
+        mockCall();
+
+        /* Each attempt is reported with its own latency, then the result. */
+        httpClient.callAsync(urlString, METHOD_GET, new HashMap<String, String>(), null, serviceCallback);
+        httpClient.callAsync(urlString, METHOD_GET, new HashMap<String, String>(), null, serviceCallback);
+        InOrder inOrder = inOrder(serviceCallback);
+        inOrder.verify(serviceCallback).onCallAttempted(geq(0L), any(HttpException.class));
+        inOrder.verify(serviceCallback).onCallFailed(any(HttpException.class));
+        inOrder.verify(serviceCallback).onCallAttempted(geq(0L), isNull(Exception.class));
+        inOrder.verify(serviceCallback).onCallSucceeded("OK", Collections.<String, String>emptyMap());
+        verifyNoMoreInteractions(serviceCallback);
+        httpClient.close();
+    }
+
     @Test
     public void get200WithoutCallTemplate() throws Exception {
 
@@ -433,7 +512,7 @@ public class DefaultHttpClientTest {
         verify(urlConnection).setRequestProperty("Install-ID", installId.toString());
         verify(urlConnection).setRequestMethod("GET");
         verify(urlConnection, never()).setDoOutput(true);
-        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).disconnect();
         httpClient.close();
     }
 
@@ -469,7 +548,7 @@ public class DefaultHttpClientTest {
         verifyNoMoreInteractions(serviceCallback);
         verify(urlConnection).setRequestMethod("GET");
         verify(urlConnection, never()).setDoOutput(true);
-        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).disconnect();
         verify(inputStream).close();
         verify(callTemplate).onBeforeCalling(eq(url), anyMapOf(String.class, String.class));
         verify(callTemplate, never()).buildRequestBody();
@@ -532,7 +611,7 @@ public class DefaultHttpClientTest {
         verifyNoMoreInteractions(serviceCallback);
         verify(urlConnection).setRequestMethod("GET");
         verify(urlConnection, never()).setDoOutput(true);
-        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).disconnect();
         verify(inputStream).close();
         verify(callTemplate).onBeforeCalling(eq(url), anyMapOf(String.class, String.class));
         verify(callTemplate, never()).buildRequestBody();
@@ -588,7 +667,7 @@ public class DefaultHttpClientTest {
         verifyNoMoreInteractions(serviceCallback);
         verify(urlConnection).setRequestMethod("GET");
         verify(urlConnection, never()).setDoOutput(true);
-        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).disconnect();
         verify(inputStream).close();
         verify(callTemplate).onBeforeCalling(eq(url), anyMapOf(String.class, String.class));
         verify(callTemplate, never()).buildRequestBody();
@@ -824,6 +903,9 @@ public class DefaultHttpClientTest {
         ServiceCall call = httpClient.callAsync(urlString, METHOD_GET, new HashMap<String, String>(), callTemplate, serviceCallback);
         //verify(serviceCallback).onCallSucceeded(anyString(), anyMapOf(String.class, String.class));
         assertEquals(0, httpClient.getTasks().size());
+
+        /* Response was not fully read, connection cannot be reused. */
+        verify(urlConnection).disconnect();
     }
 
     @Test
@@ -1019,6 +1101,117 @@ public class DefaultHttpClientTest {
         verify(serviceCallback, never()).onCallSucceeded(notNull(String.class), anyMapOf(String.class, String.class));
     }
 
+    @Test
+    @PrepareForTest({HandlerUtils.class, HttpUtils.class})
+    public void rejectedAsyncTaskCallbackOnBackgroundThread() throws Exception {
+
+        /* Mock the SDK background handler to run on another thread. */
+        mockStatic(HandlerUtils.class);
+        mockStatic(HttpUtils.class);
+        final Semaphore semaphore = new Semaphore(0);
+        Handler handler = mock(Handler.class);
+        when(HttpUtils.getBackgroundHandler()).thenReturn(handler);
+        when(handler.post(any(Runnable.class))).then(new Answer<Boolean>() {
+
+            @Override
+            public Boolean answer(final InvocationOnMock invocation) {
+                new Thread("rejectedAsyncTask.background") {
+
+                    @Override
+                    public void run() {
+                        ((Runnable) invocation.getArguments()[0]).run();
+                        semaphore.release();
+                    }
+                }.start();
+                return true;
+            }
+        });
+
+        /* Mock a saturated executor. */
+        DefaultHttpClientCallTask call = mock(DefaultHttpClientCallTask.class);
+        whenNew(DefaultHttpClientCallTask.class).withAnyArguments().thenReturn(call);
+        RejectedExecutionException exception = new RejectedExecutionException();
+        doThrow(exception).when(call).executeInBackground(any(Executor.class));
+        HttpCallExecutor httpCallExecutor = mock(HttpCallExecutor.class);
+        when(httpCallExecutor.getExecutor(anyInt())).thenReturn(mock(Executor.class));
+        DefaultHttpClient httpClient = new DefaultHttpClient(true, false, httpCallExecutor);
+
+        /* Test. */
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        assertNotNull(httpClient.callAsync("", "", new HashMap<String, String>(), mock(HttpClient.CallTemplate.class), serviceCallback));
+
+        /* Verify the callback was posted to the background handler and the main thread was not used. */
+        semaphore.acquireUninterruptibly();
+        verify(serviceCallback).onCallFailed(exception);
+        verifyStatic(never());
+        HandlerUtils.runOnUiThread(any(Runnable.class));
+    }
+
+    @Test
+    @PrepareForTest(HandlerUtils.class)
+    public void callbackOnBackgroundThread() throws Exception {
+
+        /* Run calls on a test thread and remember the thread used for the callback. */
+        mockStatic(HandlerUtils.class);
+        mockStatic(TrafficStats.class);
+        final Semaphore semaphore = new Semaphore(0);
+        Executor executor = new Executor() {
+
+            @Override
+            public void execute(final Runnable command) {
+                new Thread("callbackOnBackgroundThread.executor") {
+
+                    @Override
+                    public void run() {
+                        command.run();
+                        semaphore.release();
+                    }
+                }.start();
+            }
+        };
+        final String[] callbackThreadName = new String[1];
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                callbackThreadName[0] = Thread.currentThread().getName();
+                return null;
+            }
+        }).when(serviceCallback).onCallFailed(any(Exception.class));
+        HttpCallExecutor httpCallExecutor = mock(HttpCallExecutor.class);
+        when(httpCallExecutor.getExecutor(anyInt())).thenReturn(executor);
+        DefaultHttpClient httpClient = new DefaultHttpClient(true, false, httpCallExecutor);
+
+        /* Test. */
+        httpClient.callAsync("http://mock/get", "", new HashMap<String, String>(), mock(HttpClient.CallTemplate.class), serviceCallback);
+        semaphore.acquireUninterruptibly();
+
+        /* Verify the callback was called from the executor thread and the main thread was not used. */
+        verify(httpCallExecutor).getExecutor(HttpClient.PRIORITY_NORMAL);
+        verify(serviceCallback).onCallFailed(any(IOException.class));
+        assertEquals("callbackOnBackgroundThread.executor", callbackThreadName[0]);
+        assertEquals(0, httpClient.getTasks().size());
+        verifyStatic(never());
+        HandlerUtils.runOnUiThread(any(Runnable.class));
+    }
+
+    @Test
+    public void callWithPriority() throws Exception {
+        DefaultHttpClientCallTask mockCall = mock(DefaultHttpClientCallTask.class);
+        whenNew(DefaultHttpClientCallTask.class).withAnyArguments().thenReturn(mockCall);
+        HttpCallExecutor httpCallExecutor = mock(HttpCallExecutor.class);
+        Executor executor = mock(Executor.class);
+        when(httpCallExecutor.getExecutor(HttpClient.PRIORITY_HIGH)).thenReturn(executor);
+        HttpClient.PrioritizedCallTemplate callTemplate = mock(HttpClient.PrioritizedCallTemplate.class);
+        when(callTemplate.getPriority()).thenReturn(HttpClient.PRIORITY_HIGH);
+        DefaultHttpClient httpClient = new DefaultHttpClient(true, true, httpCallExecutor);
+
+        /* Verify the call is queued with the template priority. */
+        httpClient.callAsync("https://mock/get", METHOD_GET, new HashMap<String, String>(), callTemplate, mock(ServiceCallback.class));
+        verify(mockCall).executeOnExecutor(executor);
+    }
+
     @Test
     public void sendGzipWithoutVerboseLogging() throws Exception {
 
@@ -1073,7 +1266,7 @@ public class DefaultHttpClientTest {
         verify(urlConnection).setRequestProperty("Content-Encoding", "gzip");
         verify(urlConnection).setRequestMethod("POST");
         verify(urlConnection).setDoOutput(true);
-        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).disconnect();
         verify(callTemplate).onBeforeCalling(eq(url), anyMapOf(String.class, String.class));
         verify(callTemplate).buildRequestBody();
         httpClient.close();
@@ -1091,6 +1284,189 @@ public class DefaultHttpClientTest {
         }));
     }
 
+    @Test
+    public void sendStreamingGzip() throws Exception {
+
+        /* Mock no verbose logging. */
+        mockStatic(AppCenterLog.class);
+        when(AppCenterLog.getLogLevel()).thenReturn(Log.DEBUG);
+
+        /* Configure mock HTTPS. */
+        String urlString = "https://mock";
+        URL url = mock(URL.class);
+        whenNew(URL.class).withArguments(urlString).thenReturn(url);
+        HttpsURLConnection urlConnection = mock(HttpsURLConnection.class);
+        when(url.openConnection()).thenReturn(urlConnection);
+        when(urlConnection.getResponseCode()).thenReturn(200);
+        ByteArrayOutputStream buffer = spy(new ByteArrayOutputStream());
+        when(urlConnection.getOutputStream()).thenReturn(buffer);
+        when(urlConnection.getInputStream()).thenReturn(new ByteArrayInputStream("OK".getBytes()));
+
+        /* Streaming template, even a small payload is compressed as size is unknown. */
+        final String payload = "{\"logs\":[]}";
+        HttpClient.StreamingCallTemplate callTemplate = mock(HttpClient.StreamingCallTemplate.class);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ((Writer) invocation.getArguments()[0]).write(payload);
+                return null;
+            }
+        }).when(callTemplate).writeRequestBody(any(Writer.class));
+        DefaultHttpClient httpClient = new DefaultHttpClient();
+
+        /* Test calling code. */
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mockCall();
+        httpClient.callAsync(urlString, METHOD_POST, new HashMap<String, String>(), callTemplate, serviceCallback);
+        verify(serviceCallback).onCallSucceeded("OK", Collections.<String, String>emptyMap());
+        verifyNoMoreInteractions(serviceCallback);
+        verify(urlConnection).setRequestProperty("Content-Type", "application/json");
+        verify(urlConnection).setRequestProperty("Content-Encoding", "gzip");
+        verify(urlConnection).setDoOutput(true);
+        verify(urlConnection).setChunkedStreamingMode(0);
+        verify(urlConnection, never()).setFixedLengthStreamingMode(anyInt());
+        verify(callTemplate, never()).buildRequestBody();
+        verify(buffer).close();
+        httpClient.close();
+
+        /* Verify payload compressed. */
+        GZIPInputStream gzipStream = new GZIPInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+        byte[] decompressed = new byte[payload.length() + 1];
+        int length = gzipStream.read(decompressed);
+        assertEquals(payload, new String(decompressed, 0, length, StandardCharsets.UTF_8));
+        assertEquals(-1, gzipStream.read());
+    }
+
+    @Test
+    public void sendRetryableBodyEncodedOnce() throws Exception {
+
+        /* Mock no verbose logging. */
+        mockStatic(AppCenterLog.class);
+        when(AppCenterLog.getLogLevel()).thenReturn(Log.DEBUG);
+
+        /* Configure mock HTTPS, the first two tries fail. */
+        String urlString = "https://mock";
+        URL url = mock(URL.class);
+        whenNew(URL.class).withArguments(urlString).thenReturn(url);
+        HttpsURLConnection urlConnection = mock(HttpsURLConnection.class);
+        when(url.openConnection()).thenReturn(urlConnection);
+        when(urlConnection.getResponseCode()).thenReturn(503, 503, 503, 503, 200);
+        ByteArrayOutputStream firstBuffer = new ByteArrayOutputStream();
+        ByteArrayOutputStream secondBuffer = new ByteArrayOutputStream();
+        ByteArrayOutputStream thirdBuffer = new ByteArrayOutputStream();
+        when(urlConnection.getOutputStream()).thenReturn(firstBuffer, secondBuffer, thirdBuffer);
+        when(urlConnection.getErrorStream()).thenReturn(new ByteArrayInputStream("Busy".getBytes()), new ByteArrayInputStream("Busy".getBytes()));
+        when(urlConnection.getInputStream()).thenReturn(new ByteArrayInputStream("OK".getBytes()));
+        RetryableTemplate callTemplate = spy(new RetryableTemplate("{\"logs\":[]}"));
+        DefaultHttpClient httpClient = new DefaultHttpClient();
+        mockCall();
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        httpClient.callAsync(urlString, METHOD_POST, new HashMap<String, String>(), callTemplate, serviceCallback);
+        verify(serviceCallback).onCallFailed(any(HttpException.class));
+
+        /* The first try streams the body without keeping it. */
+        verify(urlConnection).setChunkedStreamingMode(0);
+        verify(urlConnection, never()).setFixedLengthStreamingMode(anyInt());
+        assertNull(callTemplate.getEncodedBody());
+
+        /* The retry encodes the body in memory with a known length. */
+        httpClient.callAsync(urlString, METHOD_POST, new HashMap<String, String>(), callTemplate, serviceCallback);
+        verify(serviceCallback, times(2)).onCallFailed(any(HttpException.class));
+        verify(urlConnection).setFixedLengthStreamingMode(secondBuffer.size());
+        assertArrayEquals(secondBuffer.toByteArray(), callTemplate.getEncodedBody());
+        assertTrue(callTemplate.isEncodedBodyCompressed());
+        verify(callTemplate, times(2)).writeRequestBody(any(Writer.class));
+
+        /* Next try sends the same bytes without serializing again. */
+        httpClient.callAsync(urlString, METHOD_POST, new HashMap<String, String>(), callTemplate, serviceCallback);
+        verify(serviceCallback).onCallSucceeded("OK", Collections.<String, String>emptyMap());
+        verify(callTemplate, times(2)).writeRequestBody(any(Writer.class));
+        verify(callTemplate, never()).buildRequestBody();
+        assertArrayEquals(secondBuffer.toByteArray(), thirdBuffer.toByteArray());
+        verify(urlConnection, times(3)).setRequestProperty("Content-Encoding", "gzip");
+        httpClient.close();
+
+        /* Verify every try sent the same compressed payload. */
+        for (ByteArrayOutputStream buffer : Arrays.asList(firstBuffer, thirdBuffer)) {
+            GZIPInputStream gzipStream = new GZIPInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+            byte[] decompressed = new byte[64];
+            int length = gzipStream.read(decompressed);
+            assertEquals("{\"logs\":[]}", new String(decompressed, 0, length, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void sendStreamingWithoutCompression() throws Exception {
+
+        /* Configure mock HTTPS. */
+        String urlString = "https://mock";
+        URL url = mock(URL.class);
+        whenNew(URL.class).withArguments(urlString).thenReturn(url);
+        HttpsURLConnection urlConnection = mock(HttpsURLConnection.class);
+        when(url.openConnection()).thenReturn(urlConnection);
+        when(urlConnection.getResponseCode()).thenReturn(200);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        when(urlConnection.getOutputStream()).thenReturn(buffer);
+        when(urlConnection.getInputStream()).thenReturn(new ByteArrayInputStream("OK".getBytes()));
+        HttpClient.StreamingCallTemplate callTemplate = mock(HttpClient.StreamingCallTemplate.class);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ((Writer) invocation.getArguments()[0]).write("{a:1}");
+                return null;
+            }
+        }).when(callTemplate).writeRequestBody(any(Writer.class));
+        DefaultHttpClient httpClient = new DefaultHttpClient(false);
+
+        /* Test calling code. */
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mockCall();
+        httpClient.callAsync(urlString, METHOD_POST, new HashMap<String, String>(), callTemplate, serviceCallback);
+        verify(serviceCallback).onCallSucceeded("OK", Collections.<String, String>emptyMap());
+        verify(urlConnection, never()).setRequestProperty(eq("Content-Encoding"), anyString());
+        verify(urlConnection).setChunkedStreamingMode(0);
+        verify(callTemplate, never()).buildRequestBody();
+        assertEquals("{a:1}", buffer.toString("UTF-8"));
+        httpClient.close();
+    }
+
+    @Test
+    public void sendStreamingWithVerboseLogging() throws Exception {
+
+        /* Mock verbose logging. */
+        mockStatic(AppCenterLog.class);
+        when(AppCenterLog.getLogLevel()).thenReturn(Log.VERBOSE);
+
+        /* Configure mock HTTPS. */
+        String urlString = "https://mock";
+        URL url = mock(URL.class);
+        whenNew(URL.class).withArguments(urlString).thenReturn(url);
+        HttpsURLConnection urlConnection = mock(HttpsURLConnection.class);
+        when(url.openConnection()).thenReturn(urlConnection);
+        when(urlConnection.getResponseCode()).thenReturn(200);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        when(urlConnection.getOutputStream()).thenReturn(buffer);
+        when(urlConnection.getInputStream()).thenReturn(new ByteArrayInputStream("OK".getBytes()));
+        HttpClient.StreamingCallTemplate callTemplate = mock(HttpClient.StreamingCallTemplate.class);
+        when(callTemplate.buildRequestBody()).thenReturn("short");
+        DefaultHttpClient httpClient = new DefaultHttpClient();
+
+        /* Payload is built to be logged and sent with fixed length as before. */
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mockCall();
+        httpClient.callAsync(urlString, METHOD_POST, new HashMap<String, String>(Collections.singletonMap("Content-Type", "text/plain")), callTemplate, serviceCallback);
+        verify(serviceCallback).onCallSucceeded("OK", Collections.<String, String>emptyMap());
+        verify(callTemplate, never()).writeRequestBody(any(Writer.class));
+        verify(urlConnection).setFixedLengthStreamingMode(5);
+        verify(urlConnection, never()).setChunkedStreamingMode(anyInt());
+        assertEquals("short", buffer.toString("UTF-8"));
+        verifyStatic();
+        AppCenterLog.verbose(AppCenterLog.LOG_TAG, "short");
+        httpClient.close();
+    }
+
     @Test
     public void sendNoGzipWhenCompressionDisabled() throws Exception {
 
@@ -1138,7 +1514,7 @@ public class DefaultHttpClientTest {
         verify(urlConnection, never()).setRequestProperty("Content-Encoding", "gzip");
         verify(urlConnection).setRequestMethod("POST");
         verify(urlConnection).setDoOutput(true);
-        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).disconnect();
         verify(callTemplate).onBeforeCalling(eq(url), anyMapOf(String.class, String.class));
         verify(callTemplate).buildRequestBody();
         httpClient.close();
@@ -1203,7 +1579,7 @@ public class DefaultHttpClientTest {
         verify(urlConnection, never()).setRequestProperty("Content-Encoding", "gzip");
         verify(urlConnection).setRequestMethod("POST");
         verify(urlConnection).setDoOutput(true);
-        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).disconnect();
         verify(callTemplate).onBeforeCalling(eq(url), anyMapOf(String.class, String.class));
         verify(callTemplate).buildRequestBody();
         httpClient.close();
@@ -1275,7 +1651,7 @@ public class DefaultHttpClientTest {
         verify(urlConnection).setRequestProperty("Content-Encoding", "gzip");
         verify(urlConnection).setRequestMethod("POST");
         verify(urlConnection).setDoOutput(true);
-        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).disconnect();
         verify(callTemplate).onBeforeCalling(eq(url), anyMapOf(String.class, String.class));
         verify(callTemplate).buildRequestBody();
         httpClient.close();
@@ -1339,4 +1715,61 @@ public class DefaultHttpClientTest {
         verifyZeroInteractions(callTemplate);
         verifyZeroInteractions(serviceCallback);
     }
+
+    private static class RetryableTemplate implements HttpClient.StreamingCallTemplate, HttpClient.RetryableCallTemplate {
+
+        private final String mPayload;
+
+        private byte[] mEncodedBody;
+
+        private boolean mEncodedBodyCompressed;
+
+        private boolean mBodyStreamed;
+
+        RetryableTemplate(String payload) {
+            mPayload = payload;
+        }
+
+        @Override
+        public String buildRequestBody() {
+            return mPayload;
+        }
+
+        @Override
+        public void writeRequestBody(Writer writer) throws IOException {
+            writer.write(mPayload);
+        }
+
+        @Override
+        public void onBeforeCalling(URL url, Map<String, String> headers) {
+        }
+
+        @Override
+        public String getRetryKey() {
+            return null;
+        }
+
+        @Override
+        public boolean shouldStreamBody() {
+            boolean stream = !mBodyStreamed;
+            mBodyStreamed = true;
+            return stream;
+        }
+
+        @Override
+        public byte[] getEncodedBody() {
+            return mEncodedBody;
+        }
+
+        @Override
+        public boolean isEncodedBodyCompressed() {
+            return mEncodedBodyCompressed;
+        }
+
+        @Override
+        public void setEncodedBody(byte[] body, boolean compressed) {
+            mEncodedBody = body;
+            mEncodedBodyCompressed = compressed;
+        }
+    }
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ExponentialBackoffRetryPolicyTest {
+
+    @Test
+    public void delaysAreDecorrelated() {
+        Random random = mock(Random.class);
+        when(random.nextDouble()).thenReturn(0.0, 1.0, 0.5, 1.0, 1.0);
+        RetryPolicy retryPolicy = new ExponentialBackoffRetryPolicy(1000, 10000, 60000, random);
+
+        /* Between initial delay and 3 times the previous one. */
+        assertEquals(1000, retryPolicy.getRetryDelay(0, 0, 0));
+        assertEquals(3000, retryPolicy.getRetryDelay(1, 1000, 1000));
+        assertEquals(5000, retryPolicy.getRetryDelay(2, 3000, 4000));
+
+        /* Bounded by maximum delay. */
+        assertEquals(10000, retryPolicy.getRetryDelay(3, 5000, 9000));
+        assertEquals(10000, retryPolicy.getRetryDelay(4, 10000, 19000));
+    }
+
+    @Test
+    public void giveUpAfterMaxElapsedTime() {
+        RetryPolicy retryPolicy = new ExponentialBackoffRetryPolicy(1000, 10000, 60000);
+        long delay = retryPolicy.getRetryDelay(5, 10000, 59999);
+        assertTrue(delay >= 1000 && delay <= 10000);
+        assertEquals(-1, retryPolicy.getRetryDelay(6, delay, 60000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidInitialDelay() {
+        new ExponentialBackoffRetryPolicy(0, 10000, 60000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxDelayLessThanInitialDelay() {
+        new ExponentialBackoffRetryPolicy(1000, 999, 60000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidMaxElapsedTime() {
+        new ExponentialBackoffRetryPolicy(1000, 10000, -1);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HttpCallExecutorTest {
+
+    @After
+    public void tearDown() {
+        HttpCallExecutor.unsetInstance();
+    }
+
+    @Test
+    public void singleton() {
+        HttpCallExecutor instance = HttpCallExecutor.getInstance();
+        assertNotNull(instance);
+        assertSame(instance, HttpCallExecutor.getInstance());
+        assertEquals(HttpCallExecutor.DEFAULT_MAX_CONCURRENT_CALLS, instance.getMaxConcurrentCalls());
+    }
+
+    @Test
+    public void setMaxConcurrentCalls() {
+        HttpCallExecutor executor = new HttpCallExecutor(2);
+        executor.setMaxConcurrentCalls(8);
+        assertEquals(8, executor.getMaxConcurrentCalls());
+        executor.setMaxConcurrentCalls(1);
+        assertEquals(1, executor.getMaxConcurrentCalls());
+
+        /* Invalid values are ignored. */
+        executor.setMaxConcurrentCalls(0);
+        assertEquals(1, executor.getMaxConcurrentCalls());
+    }
+
+    @Test(timeout = 5000)
+    public void runsByPriorityThenInOrder() {
+
+        /* Block the only thread. */
+        HttpCallExecutor executor = new HttpCallExecutor(1);
+        final Semaphore blockingSemaphore = new Semaphore(0);
+        final Semaphore doneSemaphore = new Semaphore(0);
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                blockingSemaphore.acquireUninterruptibly();
+            }
+        }, HttpClient.PRIORITY_NORMAL);
+
+        /* Queue calls. */
+        final List<String> calls = new ArrayList<>();
+        executor.getExecutor(HttpClient.PRIORITY_LOW).execute(new RecordingCall(calls, "low", doneSemaphore));
+        executor.getExecutor(HttpClient.PRIORITY_NORMAL).execute(new RecordingCall(calls, "normal1", doneSemaphore));
+        executor.getExecutor(HttpClient.PRIORITY_HIGH).execute(new RecordingCall(calls, "high", doneSemaphore));
+        executor.getExecutor(HttpClient.PRIORITY_NORMAL).execute(new RecordingCall(calls, "normal2", doneSemaphore));
+
+        /* Release and verify order. */
+        blockingSemaphore.release();
+        doneSemaphore.acquireUninterruptibly(4);
+        assertEquals(Arrays.asList("high", "normal1", "normal2", "low"), calls);
+
+        /* Verify metrics. */
+        assertEquals(5, executor.getStartedCallCount());
+        assertEquals(0, executor.getQueuedCallCount());
+        assertTrue(executor.getMaxQueueWaitTime() <= executor.getTotalQueueWaitTime());
+    }
+
+    private static class RecordingCall implements Runnable {
+
+        private final List<String> mCalls;
+
+        private final String mName;
+
+        private final Semaphore mSemaphore;
+
+        RecordingCall(List<String> calls, String name, Semaphore semaphore) {
+            mCalls = calls;
+            mName = name;
+            mSemaphore = semaphore;
+        }
+
+        @Override
+        public void run() {
+            synchronized (mCalls) {
+                mCalls.add(mName);
+            }
+            mSemaphore.release();
+        }
+    }
+}
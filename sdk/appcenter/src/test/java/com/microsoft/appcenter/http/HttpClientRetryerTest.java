@@ -7,32 +7,55 @@ package com.microsoft.appcenter.http;
 
 import android.os.Handler;
 
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
+
+import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatcher;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
 
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 import static com.microsoft.appcenter.http.DefaultHttpClient.CONTENT_TYPE_KEY;
 import static com.microsoft.appcenter.http.DefaultHttpClient.CONTENT_TYPE_VALUE;
 import static com.microsoft.appcenter.http.DefaultHttpClient.X_MS_RETRY_AFTER_MS_HEADER;
+import static com.microsoft.appcenter.http.HttpUtils.RETRY_AFTER_HEADER;
+import static com.microsoft.appcenter.http.HttpClientRetryer.RETRY_SCHEDULE_PREFIX;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyMapOf;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.longThat;
 import static org.mockito.Mockito.any;
-import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.doAnswer;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 
 @SuppressWarnings("unused")
 public class HttpClientRetryerTest {
 
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
     private static void simulateRetryAfterDelay(Handler handler) {
         doAnswer(new Answer() {
 
@@ -45,6 +68,43 @@ public class HttpClientRetryerTest {
         }).when(handler).postDelayed(any(Runnable.class), anyLong());
     }
 
+    private static HttpClient.RetryableCallTemplate mockUploadTemplate(String retryKey) {
+        HttpClient.RetryableCallTemplate callTemplate = mock(HttpClient.RetryableCallTemplate.class);
+        when(callTemplate.getRetryKey()).thenReturn(retryKey);
+        return callTemplate;
+    }
+
+    private static Map<String, String> mockSchedulePreferences() {
+        mockStatic(SharedPreferencesManager.class);
+        final Map<String, String> preferences = new HashMap<>();
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                preferences.put((String) invocation.getArguments()[0], (String) invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(SharedPreferencesManager.class);
+        SharedPreferencesManager.putString(anyString(), anyString());
+        when(SharedPreferencesManager.getString(anyString())).thenAnswer(new Answer<String>() {
+
+            @Override
+            public String answer(InvocationOnMock invocation) {
+                return preferences.get(invocation.getArguments()[0]);
+            }
+        });
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                preferences.remove(invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(SharedPreferencesManager.class);
+        SharedPreferencesManager.remove(anyString());
+        return preferences;
+    }
+
     private static void verifyDelay(Handler handler, final int retryIndex) {
         verify(handler).postDelayed(any(Runnable.class), longThat(new ArgumentMatcher<Long>() {
 
@@ -235,4 +295,301 @@ public class HttpClientRetryerTest {
         verifyNoMoreInteractions(callback);
         verify(call).cancel();
     }
+
+    @Test
+    public void customRetryPolicy() {
+        ServiceCallback callback = mock(ServiceCallback.class);
+        HttpClient httpClient = mock(HttpClient.class);
+        final HttpException exception = new HttpException(503, "", Collections.singletonMap(RETRY_AFTER_HEADER, "2"));
+        doAnswer(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocationOnMock) {
+                ((ServiceCallback) invocationOnMock.getArguments()[4]).onCallFailed(new SocketException());
+                return mock(ServiceCall.class);
+            }
+        }).doAnswer(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocationOnMock) {
+                ((ServiceCallback) invocationOnMock.getArguments()[4]).onCallFailed(exception);
+                return mock(ServiceCall.class);
+            }
+        }).when(httpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+        RetryPolicy retryPolicy = mock(RetryPolicy.class);
+        when(retryPolicy.getRetryDelay(anyInt(), anyLong(), anyLong())).thenReturn(500L, 700L, -1L);
+        Handler handler = mock(Handler.class);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler, retryPolicy);
+        simulateRetryAfterDelay(handler);
+        retryer.callAsync(null, null, null, null, callback);
+
+        /* Policy delay, then server delay, then the policy gives up. */
+        verifyDelayFromHeader(handler, 500);
+        verifyDelayFromHeader(handler, 2000);
+        verifyNoMoreInteractions(handler);
+        verify(retryPolicy).getRetryDelay(eq(0), eq(0L), anyLong());
+        verify(retryPolicy).getRetryDelay(eq(1), eq(500L), anyLong());
+        verify(retryPolicy).getRetryDelay(eq(2), eq(2000L), anyLong());
+        verify(callback).onCallFailed(exception);
+        verifyNoMoreInteractions(callback);
+    }
+
+    @Test
+    public void nonRecoverableErrorIsNotRetried() {
+        ServiceCallback callback = mock(ServiceCallback.class);
+        HttpClient httpClient = mock(HttpClient.class);
+        final HttpException exception = new HttpException(400);
+        doAnswer(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocationOnMock) {
+                ((ServiceCallback) invocationOnMock.getArguments()[4]).onCallFailed(exception);
+                return mock(ServiceCall.class);
+            }
+        }).when(httpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+        RetryPolicy retryPolicy = mock(RetryPolicy.class);
+        Handler handler = mock(Handler.class);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler, retryPolicy);
+        retryer.callAsync(null, null, null, null, callback);
+        verify(callback).onCallFailed(exception);
+        verifyNoMoreInteractions(handler, retryPolicy);
+    }
+
+    @Test
+    @PrepareForTest(SharedPreferencesManager.class)
+    public void retryScheduleIsPersisted() {
+        Map<String, String> preferences = mockSchedulePreferences();
+        ServiceCallback callback = mock(ServiceCallback.class);
+        HttpClient httpClient = mock(HttpClient.class);
+        doAnswer(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocationOnMock) {
+                ((ServiceCallback) invocationOnMock.getArguments()[4]).onCallFailed(new HttpException(500));
+                return mock(ServiceCall.class);
+            }
+        }).doAnswer(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocationOnMock) {
+                ((ServiceCallback) invocationOnMock.getArguments()[4]).onCallSucceeded("OK", null);
+                return mock(ServiceCall.class);
+            }
+        }).when(httpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+        Handler handler = mock(Handler.class);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler);
+        simulateRetryAfterDelay(handler);
+        long now = System.currentTimeMillis();
+        retryer.callAsync("https://mock", "POST", new HashMap<String, String>(), mockUploadTemplate("batch"), callback);
+        verify(callback).onCallSucceeded("OK", null);
+
+        /* Saved when the retry was scheduled and removed on success. */
+        ArgumentCaptor<String> schedule = ArgumentCaptor.forClass(String.class);
+        verifyStatic();
+        SharedPreferencesManager.putString(eq(RETRY_SCHEDULE_PREFIX + "https://mock"), schedule.capture());
+        String[] values = schedule.getValue().split("/");
+        assertEquals("1", values[0]);
+        long delay = Long.parseLong(values[1]);
+        verifyDelayFromHeader(handler, delay);
+        assertTrue(Long.parseLong(values[2]) >= now + delay);
+        assertTrue(Long.parseLong(values[3]) >= now);
+        assertEquals("batch", values[4]);
+        verifyStatic();
+        SharedPreferencesManager.remove(RETRY_SCHEDULE_PREFIX + "https://mock");
+        assertNull(preferences.get(RETRY_SCHEDULE_PREFIX + "https://mock"));
+    }
+
+    @Test
+    @PrepareForTest(SharedPreferencesManager.class)
+    public void retryScheduleIsResumed() {
+        mockStatic(SharedPreferencesManager.class);
+        long now = System.currentTimeMillis();
+        when(SharedPreferencesManager.getString(RETRY_SCHEDULE_PREFIX + "https://mock")).thenReturn("2/60000/" + (now + 30000) + "/" + (now - 100000) + "/batch");
+        ServiceCallback callback = mock(ServiceCallback.class);
+        HttpClient httpClient = mock(HttpClient.class);
+        doAnswer(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocationOnMock) {
+                ((ServiceCallback) invocationOnMock.getArguments()[4]).onCallFailed(new HttpException(500));
+                return mock(ServiceCall.class);
+            }
+        }).when(httpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+        RetryPolicy retryPolicy = mock(RetryPolicy.class);
+        when(retryPolicy.getRetryDelay(anyInt(), anyLong(), anyLong())).thenReturn(-1L);
+        Handler handler = mock(Handler.class);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler, retryPolicy);
+        retryer.callAsync("https://mock", "POST", new HashMap<String, String>(), mockUploadTemplate("batch"), callback);
+
+        /* First try waits for the rest of the previous delay. */
+        ArgumentCaptor<Runnable> runnable = ArgumentCaptor.forClass(Runnable.class);
+        ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+        verify(handler).postDelayed(runnable.capture(), delay.capture());
+        assertTrue(delay.getValue() > 0 && delay.getValue() <= 30000);
+        verify(httpClient, never()).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+
+        /* Backoff continues where it was, here the policy gives up. */
+        runnable.getValue().run();
+        verify(retryPolicy).getRetryDelay(eq(2), eq(60000L), longThat(new ArgumentMatcher<Long>() {
+
+            @Override
+            public boolean matches(Object argument) {
+                return (Long) argument >= 100000;
+            }
+        }));
+        verify(callback).onCallFailed(new HttpException(500));
+        verifyStatic();
+        SharedPreferencesManager.remove(RETRY_SCHEDULE_PREFIX + "https://mock");
+    }
+
+    @Test
+    @PrepareForTest(SharedPreferencesManager.class)
+    public void expiredRetryScheduleIsIgnored() {
+        mockStatic(SharedPreferencesManager.class);
+        long now = System.currentTimeMillis();
+        when(SharedPreferencesManager.getString(startsWith(RETRY_SCHEDULE_PREFIX)))
+                .thenReturn("2/60000/" + (now - 1000) + "/" + (now - 100000) + "/batch")
+                .thenReturn("2/60000/" + (now + 3600000) + "/" + now + "/batch")
+                .thenReturn("corrupted");
+        HttpClient httpClient = mock(HttpClient.class);
+        Handler handler = mock(Handler.class);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler);
+
+        /* Over, saved with a clock in the future, and invalid schedules: call right away. */
+        for (int i = 0; i < 3; i++) {
+            retryer.callAsync("https://mock", "POST", new HashMap<String, String>(), mockUploadTemplate("batch"), mock(ServiceCallback.class));
+        }
+        verify(httpClient, times(3)).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+        verifyNoMoreInteractions(handler);
+        verifyStatic(times(3));
+        SharedPreferencesManager.remove(RETRY_SCHEDULE_PREFIX + "https://mock");
+    }
+
+    @Test
+    @PrepareForTest(SharedPreferencesManager.class)
+    public void retryScheduleBelongsToItsUpload() {
+        Map<String, String> preferences = mockSchedulePreferences();
+        String scheduleKey = RETRY_SCHEDULE_PREFIX + "https://mock";
+
+        /* First batch keeps failing, second batch succeeds. */
+        HttpClient httpClient = mock(HttpClient.class);
+        doAnswer(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocationOnMock) {
+                HttpClient.RetryableCallTemplate callTemplate = (HttpClient.RetryableCallTemplate) invocationOnMock.getArguments()[3];
+                ServiceCallback serviceCallback = (ServiceCallback) invocationOnMock.getArguments()[4];
+                if ("first".equals(callTemplate.getRetryKey())) {
+                    serviceCallback.onCallFailed(new HttpException(500));
+                } else {
+                    serviceCallback.onCallSucceeded("OK", null);
+                }
+                return mock(ServiceCall.class);
+            }
+        }).when(httpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+        Handler handler = mock(Handler.class);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler);
+        retryer.callAsync("https://mock", "POST", new HashMap<String, String>(), mockUploadTemplate("first"), mock(ServiceCallback.class));
+        verify(handler).postDelayed(any(Runnable.class), anyLong());
+        assertTrue(preferences.get(scheduleKey).endsWith("/first"));
+
+        /* Second batch in flight waits for the next try of the endpoint instead of calling right away. */
+        ServiceCallback secondCallback = mock(ServiceCallback.class);
+        retryer.callAsync("https://mock", "POST", new HashMap<String, String>(), mockUploadTemplate("second"), secondCallback);
+        ArgumentCaptor<Runnable> runnable = ArgumentCaptor.forClass(Runnable.class);
+        verify(handler, times(2)).postDelayed(runnable.capture(), anyLong());
+        verify(httpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+
+        /* Its success does not clear the schedule of the first batch. */
+        runnable.getValue().run();
+        verify(secondCallback).onCallSucceeded("OK", null);
+        assertTrue(preferences.get(scheduleKey).endsWith("/first"));
+
+        /* After a restart, any batch waits: the first one sent again as well as a new one. */
+        Handler restartHandler = mock(Handler.class);
+        retryer = new HttpClientRetryer(httpClient, restartHandler);
+        ServiceCall call = retryer.callAsync("https://mock", "POST", new HashMap<String, String>(), mockUploadTemplate("first"), mock(ServiceCallback.class));
+        retryer.callAsync("https://mock", "POST", new HashMap<String, String>(), mockUploadTemplate("third"), mock(ServiceCallback.class));
+        verify(restartHandler, times(2)).postDelayed(any(Runnable.class), anyLong());
+        verify(httpClient, times(2)).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+
+        /* Canceling the upload that owns the schedule forgets it. */
+        call.cancel();
+        verify(restartHandler).removeCallbacks(any(Runnable.class));
+        assertNull(preferences.get(scheduleKey));
+    }
+
+    @Test
+    @PrepareForTest(SharedPreferencesManager.class)
+    public void retryScheduleDelaysOtherUploadWithoutResumingBackoff() {
+        Map<String, String> preferences = mockSchedulePreferences();
+        String scheduleKey = RETRY_SCHEDULE_PREFIX + "https://mock";
+        long now = System.currentTimeMillis();
+        String schedule = "2/60000/" + (now + 30000) + "/" + (now - 100000) + "/batch";
+        preferences.put(scheduleKey, schedule);
+        HttpClient httpClient = mock(HttpClient.class);
+        doAnswer(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocationOnMock) {
+                ((ServiceCallback) invocationOnMock.getArguments()[4]).onCallFailed(new HttpException(500));
+                return mock(ServiceCall.class);
+            }
+        }).when(httpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+        RetryPolicy retryPolicy = mock(RetryPolicy.class);
+        when(retryPolicy.getRetryDelay(anyInt(), anyLong(), anyLong())).thenReturn(-1L);
+        Handler handler = mock(Handler.class);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler, retryPolicy);
+
+        /* Uploads with other or unknown content wait for the rest of the delay. */
+        ServiceCallback callback = mock(ServiceCallback.class);
+        retryer.callAsync("https://mock", "POST", new HashMap<String, String>(), mockUploadTemplate("other"), callback);
+        retryer.callAsync("https://mock", "POST", new HashMap<String, String>(), mockUploadTemplate(null), mock(ServiceCallback.class));
+        ArgumentCaptor<Runnable> runnable = ArgumentCaptor.forClass(Runnable.class);
+        ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+        verify(handler, times(2)).postDelayed(runnable.capture(), delay.capture());
+        for (Long value : delay.getAllValues()) {
+            assertTrue(value > 0 && value <= 30000);
+        }
+        verify(httpClient, never()).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+
+        /* They start their own backoff and leave the schedule to its owner. */
+        runnable.getAllValues().get(0).run();
+        verify(retryPolicy).getRetryDelay(eq(0), eq(0L), anyLong());
+        verify(callback).onCallFailed(new HttpException(500));
+        assertEquals(schedule, preferences.get(scheduleKey));
+    }
+
+    @Test
+    public void retryScheduleNotPersistedForOtherCalls() {
+        HttpClient httpClient = mock(HttpClient.class);
+        HttpClient retryer = new HttpClientRetryer(httpClient, mock(Handler.class));
+
+        /* SharedPreferencesManager is not initialized in this test, it would fail if used. */
+        retryer.callAsync("https://mock", "GET", new HashMap<String, String>(), mock(HttpClient.CallTemplate.class), mock(ServiceCallback.class));
+        verify(httpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+    }
+
+    @Test
+    public void uploadThrottlingIsNotRetried() {
+        ServiceCallback callback = mock(ServiceCallback.class);
+        HttpClient httpClient = mock(HttpClient.class);
+        final HttpException exception = new HttpException(429);
+        doAnswer(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocationOnMock) {
+                ((ServiceCallback) invocationOnMock.getArguments()[4]).onCallFailed(exception);
+                return mock(ServiceCall.class);
+            }
+        }).when(httpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+        RetryPolicy retryPolicy = mock(RetryPolicy.class);
+        Handler handler = mock(Handler.class);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler, retryPolicy);
+
+        /* The caller pauses all its uploads instead, URL is not set so that the schedule is not used. */
+        retryer.callAsync(null, "POST", new HashMap<String, String>(), mock(HttpClient.RetryableCallTemplate.class), callback);
+        verify(callback).onCallFailed(exception);
+        verifyNoMoreInteractions(handler, retryPolicy);
+    }
 }
@@ -9,7 +9,19 @@ import android.content.Context;
 
 import org.junit.Test;
 
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import static com.microsoft.appcenter.http.DefaultHttpClient.X_MS_RETRY_AFTER_MS_HEADER;
 import static com.microsoft.appcenter.http.HttpUtils.MAX_CHARACTERS_DISPLAYED_FOR_SECRET;
+import static com.microsoft.appcenter.http.HttpUtils.RETRY_AFTER_HEADER;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -105,6 +117,49 @@ public class HttpUtilsTest {
         assertFalse(defaultHttpClient.isCompressionEnabled());
     }
 
+    @Test
+    public void retryAfterHeaderFormats() {
+        long now = System.currentTimeMillis();
+        SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+        long date = now / 1000 * 1000 + 60000;
+
+        /* Seconds or HTTP date, any case. */
+        assertEquals(120000, HttpUtils.getRetryAfter(Collections.singletonMap(RETRY_AFTER_HEADER, "120"), now));
+        assertEquals(5000, HttpUtils.getRetryAfter(Collections.singletonMap("retry-after", " 5 "), now));
+        assertEquals(date - now, HttpUtils.getRetryAfter(Collections.singletonMap(RETRY_AFTER_HEADER, dateFormat.format(new Date(date))), now));
+        assertEquals(0, HttpUtils.getRetryAfter(Collections.singletonMap(RETRY_AFTER_HEADER, dateFormat.format(new Date(now - 60000))), now));
+
+        /* Invalid or missing values are ignored. */
+        assertEquals(0, HttpUtils.getRetryAfter(Collections.singletonMap(RETRY_AFTER_HEADER, "soon"), now));
+        assertEquals(0, HttpUtils.getRetryAfter(Collections.singletonMap(RETRY_AFTER_HEADER, "-1"), now));
+        assertEquals(0, HttpUtils.getRetryAfter(Collections.<String, String>emptyMap(), now));
+
+        /* Milliseconds header takes precedence. */
+        Map<String, String> headers = new HashMap<>();
+        headers.put(RETRY_AFTER_HEADER, "120");
+        headers.put(X_MS_RETRY_AFTER_MS_HEADER, "1500");
+        assertEquals(1500, HttpUtils.getRetryAfter(headers, now));
+        headers.put(X_MS_RETRY_AFTER_MS_HEADER, "invalid");
+        assertEquals(120000, HttpUtils.getRetryAfter(headers, now));
+    }
+
+    @Test
+    public void isThrottlingError() {
+        assertTrue(HttpUtils.isThrottlingError(new HttpException(429)));
+        assertTrue(HttpUtils.isThrottlingError(new HttpException(503)));
+        assertFalse(HttpUtils.isThrottlingError(new HttpException(500)));
+        assertFalse(HttpUtils.isThrottlingError(new SocketException()));
+    }
+
+    @Test
+    public void isTimeoutError() {
+        assertTrue(HttpUtils.isTimeoutError(new SocketTimeoutException()));
+        assertTrue(HttpUtils.isTimeoutError(new HttpException(408)));
+        assertFalse(HttpUtils.isTimeoutError(new HttpException(500)));
+        assertFalse(HttpUtils.isTimeoutError(new SocketException()));
+    }
+
     private DefaultHttpClient getDefaultHttpClient(HttpClientDecorator httpClientDecorator) {
         httpClientDecorator = (HttpClientDecorator) httpClientDecorator.getDecoratedApi();
         return (DefaultHttpClient) httpClientDecorator.getDecoratedApi();
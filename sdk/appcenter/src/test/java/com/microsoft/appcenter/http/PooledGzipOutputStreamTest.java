@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class PooledGzipOutputStreamTest {
+
+    private static byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        OutputStream gzipStream = new PooledGzipOutputStream(buffer);
+        gzipStream.write(data);
+        gzipStream.close();
+        return buffer.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] data) throws IOException {
+        InputStream gzipStream = new GZIPInputStream(new ByteArrayInputStream(data));
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[1024];
+        int length;
+        while ((length = gzipStream.read(chunk)) > 0) {
+            buffer.write(chunk, 0, length);
+        }
+        gzipStream.close();
+        return buffer.toByteArray();
+    }
+
+    @Test
+    public void sameOutputAsGzipOutputStream() throws IOException {
+        StringBuilder payload = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            payload.append("{\"type\":\"event\",\"sid\":").append(i).append('}');
+        }
+        byte[] data = payload.toString().getBytes("UTF-8");
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        GZIPOutputStream gzipStream = new GZIPOutputStream(expected);
+        gzipStream.write(data);
+        gzipStream.close();
+
+        /* Skip header as OS byte differs between Java versions. */
+        byte[] expectedBytes = expected.toByteArray();
+        byte[] actualBytes = compress(data);
+        assertArrayEquals(Arrays.copyOfRange(expectedBytes, 10, expectedBytes.length), Arrays.copyOfRange(actualBytes, 10, actualBytes.length));
+        assertArrayEquals(data, decompress(compress(data)));
+    }
+
+    @Test
+    public void emptyAndSingleBytes() throws IOException {
+        assertArrayEquals(new byte[0], decompress(compress(new byte[0])));
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        OutputStream gzipStream = new PooledGzipOutputStream(buffer);
+        gzipStream.write('a');
+        gzipStream.write('b');
+        gzipStream.close();
+
+        /* Closing again is a no-op. */
+        gzipStream.close();
+        assertArrayEquals("ab".getBytes("UTF-8"), decompress(buffer.toByteArray()));
+    }
+
+    @Test
+    public void deflaterIsReused() throws IOException {
+        compress("warm up".getBytes("UTF-8"));
+        int pooled = PooledGzipOutputStream.getPooledDeflaterCount();
+
+        /* Sequential calls don't grow the pool. */
+        for (int i = 0; i < 3; i++) {
+            compress("some data".getBytes("UTF-8"));
+            assertEquals(pooled, PooledGzipOutputStream.getPooledDeflaterCount());
+        }
+    }
+
+    @Test
+    public void deflaterReleasedWhenHeaderFails() throws IOException {
+        compress("warm up".getBytes("UTF-8"));
+        int pooled = PooledGzipOutputStream.getPooledDeflaterCount();
+        OutputStream out = mock(OutputStream.class);
+        doThrow(new IOException("mock")).when(out).write(any(byte[].class));
+        try {
+            new PooledGzipOutputStream(out);
+        } catch (IOException ignored) {
+        }
+        assertEquals(pooled, PooledGzipOutputStream.getPooledDeflaterCount());
+    }
+
+    @Test
+    public void closeKeepsPooledDeflaterUsable() throws IOException {
+        final AtomicBoolean ended = new AtomicBoolean();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true) {
+
+            @Override
+            public void end() {
+                ended.set(true);
+                super.end();
+            }
+        };
+        Deque<Deflater> pool = Whitebox.getInternalState(PooledGzipOutputStream.class, "sDeflaterPool");
+        synchronized (pool) {
+            pool.push(deflater);
+        }
+
+        /* Closing the stream gives the deflater back without ending it. */
+        byte[] data = "some data".getBytes("UTF-8");
+        assertArrayEquals(data, decompress(compress(data)));
+        assertFalse(ended.get());
+        synchronized (pool) {
+            assertSame(deflater, pool.peek());
+        }
+
+        /* The pooled deflater can compress again. */
+        byte[] moreData = "some more data".getBytes("UTF-8");
+        assertArrayEquals(moreData, decompress(compress(moreData)));
+        assertFalse(ended.get());
+    }
+
+    @Test
+    public void underlyingStreamClosedWhenFinishFails() throws IOException {
+        OutputStream out = mock(OutputStream.class);
+        OutputStream gzipStream = new PooledGzipOutputStream(out);
+        int pooled = PooledGzipOutputStream.getPooledDeflaterCount();
+        doThrow(new IOException("mock")).when(out).write(any(byte[].class), anyInt(), anyInt());
+        try {
+            gzipStream.close();
+            fail();
+        } catch (IOException ignored) {
+        }
+        verify(out).close();
+        assertEquals(pooled + 1, PooledGzipOutputStream.getPooledDeflaterCount());
+    }
+}
@@ -26,6 +26,8 @@ import javax.net.ssl.TrustManager;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyInt;
@@ -104,6 +106,17 @@ public class Tls1_2SocketFactoryTest {
         HttpsURLConnection.getDefaultSSLSocketFactory();
     }
 
+    @Test
+    public void sharedInstance() {
+        TLS1_2SocketFactory.unsetInstance();
+        TLS1_2SocketFactory factory = TLS1_2SocketFactory.getInstance();
+        assertNotNull(factory);
+        assertSame(factory, TLS1_2SocketFactory.getInstance());
+        TLS1_2SocketFactory.unsetInstance();
+        assertNotSame(factory, TLS1_2SocketFactory.getInstance());
+        TLS1_2SocketFactory.unsetInstance();
+    }
+
     @Test
     public void createSocket() throws Exception {
         checkProtocol(getFactory().createSocket());
@@ -8,12 +8,14 @@ package com.microsoft.appcenter.ingestion;
 import android.content.Context;
 
 import com.microsoft.appcenter.Constants;
+import com.microsoft.appcenter.Flags;
 import com.microsoft.appcenter.http.HttpClient;
 import com.microsoft.appcenter.http.HttpUtils;
 import com.microsoft.appcenter.http.ServiceCall;
 import com.microsoft.appcenter.http.ServiceCallback;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.SerializedLog;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.utils.AppCenterLog;
 
@@ -22,12 +24,16 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentMatcher;
 import org.mockito.Mock;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -38,9 +44,12 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import static com.microsoft.appcenter.http.DefaultHttpClient.METHOD_POST;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyMapOf;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.contains;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.notNull;
@@ -48,7 +57,9 @@ import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.doAnswer;
 import static org.powermock.api.mockito.PowerMockito.doReturn;
+import static org.powermock.api.mockito.PowerMockito.doThrow;
 import static org.powermock.api.mockito.PowerMockito.mock;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.spy;
@@ -71,7 +82,7 @@ public class AppCenterIngestionTest {
     @Before
     public void setUp() throws Exception {
         spy(HttpUtils.class);
-        doReturn(mHttpClient).when(HttpUtils.class, "createHttpClient", any(Context.class));
+        doReturn(mHttpClient).when(HttpUtils.class, "createHttpClient", any(Context.class), anyBoolean(), anyBoolean());
     }
 
     @Test
@@ -84,7 +95,14 @@ public class AppCenterIngestionTest {
         logs.add(log);
         container.setLogs(logs);
         LogSerializer serializer = mock(LogSerializer.class);
-        when(serializer.serializeContainer(any(LogContainer.class))).thenReturn("mockPayload");
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ((Writer) invocation.getArguments()[1]).write("mockPayload");
+                return null;
+            }
+        }).when(serializer).serializeContainer(any(LogContainer.class), any(Writer.class));
 
         /* Configure mock HTTP. */
         final ServiceCall call = mock(ServiceCall.class);
@@ -115,7 +133,11 @@ public class AppCenterIngestionTest {
         verify(mHttpClient).callAsync(eq("http://mock" + AppCenterIngestion.API_PATH), eq(METHOD_POST), eq(expectedHeaders), notNull(HttpClient.CallTemplate.class), eq(serviceCallback));
         assertNotNull(callTemplate.get());
         assertEquals("mockPayload", callTemplate.get().buildRequestBody());
+        Writer writer = new StringWriter();
+        ((HttpClient.StreamingCallTemplate) callTemplate.get()).writeRequestBody(writer);
+        verify(serializer).serializeContainer(container, writer);
         assertEquals(authToken, authToken);
+        assertEquals(HttpClient.PRIORITY_LOW, ((HttpClient.PrioritizedCallTemplate) callTemplate.get()).getPriority());
         
         /* Verify close. */
         ingestion.close();
@@ -126,6 +148,57 @@ public class AppCenterIngestionTest {
         verify(mHttpClient).reopen();
     }
 
+    @Test
+    public void criticalLogsSentFirst() {
+
+        /* Build a payload with a critical log. */
+        LogContainer container = new LogContainer();
+        List<SerializedLog> serializedLogs = new ArrayList<>();
+        serializedLogs.add(new SerializedLog("{}", "mock", null, mock(LogSerializer.class)));
+        serializedLogs.add(new SerializedLog("{}", "mock", null, Flags.CRITICAL, mock(LogSerializer.class)));
+        container.setSerializedLogs(serializedLogs);
+
+        /* Send. */
+        AppCenterIngestion ingestion = new AppCenterIngestion(mock(Context.class), mock(LogSerializer.class));
+        ingestion.setLogUrl("http://mock");
+        ingestion.sendAsync(null, UUID.randomUUID().toString(), UUID.randomUUID(), container, mock(ServiceCallback.class));
+
+        /* Verify call priority. */
+        verify(mHttpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), argThat(new ArgumentMatcher<HttpClient.CallTemplate>() {
+
+            @Override
+            public boolean matches(Object argument) {
+                return ((HttpClient.PrioritizedCallTemplate) argument).getPriority() == HttpClient.PRIORITY_HIGH;
+            }
+        }), any(ServiceCallback.class));
+    }
+
+    @Test
+    public void failedWritingRequestBody() throws Exception {
+        LogSerializer serializer = mock(LogSerializer.class);
+        IOException exception = new IOException("mock");
+        doThrow(exception).when(serializer).serializeContainer(any(LogContainer.class), any(Writer.class));
+        final AtomicReference<HttpClient.CallTemplate> callTemplate = new AtomicReference<>();
+        when(mHttpClient.callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class))).then(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocation) {
+                callTemplate.set((HttpClient.CallTemplate) invocation.getArguments()[3]);
+                return mock(ServiceCall.class);
+            }
+        });
+        AppCenterIngestion ingestion = new AppCenterIngestion(mock(Context.class), serializer);
+        ingestion.sendAsync(null, UUID.randomUUID().toString(), UUID.randomUUID(), new LogContainer(), mock(ServiceCallback.class));
+
+        /* Writing to a string does not fail, but the error is not swallowed if it does. */
+        try {
+            callTemplate.get().buildRequestBody();
+            Assert.fail("Expected runtime exception");
+        } catch (RuntimeException e) {
+            assertEquals(exception, e.getCause());
+        }
+    }
+
     @Test
     public void failedSerialization() throws Exception {
 
@@ -137,7 +210,7 @@ public class AppCenterIngestionTest {
         container.setLogs(logs);
         LogSerializer serializer = mock(LogSerializer.class);
         JSONException exception = new JSONException("mock");
-        when(serializer.serializeContainer(any(LogContainer.class))).thenThrow(exception);
+        doThrow(exception).when(serializer).serializeContainer(any(LogContainer.class), any(Writer.class));
 
         /* Configure mock HTTP. */
         final ServiceCall call = mock(ServiceCall.class);
@@ -238,6 +311,38 @@ public class AppCenterIngestionTest {
         AppCenterLog.verbose(anyString(), anyString());
     }
 
+    @Test
+    public void retryKeyIdentifiesLogs() {
+        LogSerializer serializer = mock(LogSerializer.class);
+        final List<HttpClient.CallTemplate> callTemplates = new ArrayList<>();
+        when(mHttpClient.callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class))).then(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocation) {
+                callTemplates.add((HttpClient.CallTemplate) invocation.getArguments()[3]);
+                return mock(ServiceCall.class);
+            }
+        });
+        AppCenterIngestion ingestion = new AppCenterIngestion(mock(Context.class), serializer);
+        ingestion.setLogUrl("http://mock");
+
+        /* Send the same stored logs twice, as after a restart, then other logs. */
+        String[][] batches = {{"{\"a\":1}", "{\"b\":2}"}, {"{\"a\":1}", "{\"b\":2}"}, {"{\"a\":1}", "{\"c\":3}"}};
+        for (String[] payloads : batches) {
+            List<SerializedLog> serializedLogs = new ArrayList<>();
+            for (String payload : payloads) {
+                serializedLogs.add(new SerializedLog(payload, "mock", null, serializer));
+            }
+            LogContainer container = new LogContainer();
+            container.setSerializedLogs(serializedLogs);
+            ingestion.sendAsync(null, "appSecret", UUID.randomUUID(), container, mock(ServiceCallback.class));
+        }
+        String firstKey = ((HttpClient.RetryableCallTemplate) callTemplates.get(0)).getRetryKey();
+        assertNotNull(firstKey);
+        assertEquals(firstKey, ((HttpClient.RetryableCallTemplate) callTemplates.get(1)).getRetryKey());
+        assertNotEquals(firstKey, ((HttpClient.RetryableCallTemplate) callTemplates.get(2)).getRetryKey());
+    }
+
     private HttpClient.CallTemplate getCallTemplate(String appSecret, String authToken) {
 
         /* Configure mock HTTP to get an instance of IngestionCallTemplate. */
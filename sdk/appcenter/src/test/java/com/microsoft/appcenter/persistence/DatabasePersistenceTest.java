@@ -14,6 +14,7 @@ import android.database.sqlite.SQLiteQueryBuilder;
 
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.SerializedLog;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.persistence.Persistence.PersistenceException;
 import com.microsoft.appcenter.utils.AppCenterLog;
@@ -22,6 +23,7 @@ import com.microsoft.appcenter.utils.storage.DatabaseManager;
 import org.json.JSONException;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.Matchers;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PrepareForTest;
@@ -35,15 +37,21 @@ import java.util.List;
 import static com.microsoft.appcenter.Flags.NORMAL;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.endsWith;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNotNull;
 import static org.mockito.Matchers.isNull;
+import static org.mockito.Matchers.startsWith;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
@@ -63,16 +71,12 @@ public class DatabasePersistenceTest {
         /* Expected values. */
         int expectedCount = 1;
         Date expectedDate = new Date();
-        String[] expectedColumns = new String[]{"COUNT(*)"};
-        String[] expectedWhereArgs = new String[]{String.valueOf(expectedDate.getTime())};
 
         /* Mock instances. */
         mockStatic(AppCenterLog.class);
         DatabaseManager mockDatabaseManager = mock(DatabaseManager.class);
         whenNew(DatabaseManager.class).withAnyArguments().thenReturn(mockDatabaseManager);
-        Cursor mockCursor = mock(Cursor.class);
-        when(mockCursor.getInt(anyInt())).thenReturn(expectedCount);
-        when(mockDatabaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), any(String[].class), anyString())).thenReturn(mockCursor);
+        when(mockDatabaseManager.simpleQueryForLong(anyString(), Matchers.<String>anyVararg())).thenReturn((long) expectedCount);
         DatabasePersistence persistence = new DatabasePersistence(mock(Context.class), 1, DatabasePersistence.SCHEMA);
 
         /* Get count. */
@@ -80,7 +84,7 @@ public class DatabasePersistenceTest {
 
         /* Verify. */
         assertEquals(expectedCount, actualCount);
-        verify(mockDatabaseManager).getCursor(any(SQLiteQueryBuilder.class), eq(expectedColumns), eq(expectedWhereArgs), anyString());
+        verify(mockDatabaseManager).simpleQueryForLong(endsWith(DatabasePersistence.COLUMN_TIMESTAMP + " < ?"), eq(String.valueOf(expectedDate.getTime())));
     }
 
     @Test
@@ -90,9 +94,7 @@ public class DatabasePersistenceTest {
         mockStatic(AppCenterLog.class);
         DatabaseManager mockDatabaseManager = mock(DatabaseManager.class);
         whenNew(DatabaseManager.class).withAnyArguments().thenReturn(mockDatabaseManager);
-        Cursor mockCursor = mock(Cursor.class);
-        when(mockCursor.moveToNext()).thenThrow(new RuntimeException());
-        when(mockDatabaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), any(String[].class), anyString())).thenReturn(mockCursor);
+        when(mockDatabaseManager.simpleQueryForLong(anyString(), Matchers.<String>anyVararg())).thenThrow(new RuntimeException());
         DatabasePersistence persistence = new DatabasePersistence(mock(Context.class), 1, DatabasePersistence.SCHEMA);
 
         /* Try to get logs count. */
@@ -133,12 +135,11 @@ public class DatabasePersistenceTest {
         /* Mock instances. */
         DatabaseManager mockDatabaseManager = mock(DatabaseManager.class);
         whenNew(DatabaseManager.class).withAnyArguments().thenReturn(mockDatabaseManager);
-        when(mockDatabaseManager.nextValues(any(Cursor.class))).thenCallRealMethod();
+        when(mockDatabaseManager.moveToNext(any(Cursor.class))).thenCallRealMethod();
 
         for (int i = 0; i < groupCount; i++) {
             MockCursor mockCursor = new MockCursor(list.get(i));
-            mockCursor.mockBuildValues(mockDatabaseManager);
-            when(mockDatabaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), eq(new String[]{String.valueOf(i)}), anyString()))
+            when(mockDatabaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), eq(new String[]{String.valueOf(i)}), anyString(), anyString()))
                     .thenReturn(mockCursor);
         }
 
@@ -154,14 +155,51 @@ public class DatabasePersistenceTest {
             persistence.getLogs(String.valueOf(i), Collections.<String>emptyList(), logCount, new ArrayList<Log>(), null, null);
         }
 
-        /* Verify there are 4 pending groups. */
-        assertEquals(groupCount, persistence.mPendingDbIdentifiersGroups.size());
-        assertEquals(groupCount * logCount, persistence.mPendingDbIdentifiers.size());
+        /* Verify batches of a previous process were cleared once and there are 4 pending batches. */
+        verify(mockDatabaseManager).update(any(ContentValues.class), eq(DatabasePersistence.COLUMN_BATCH_ID + " IS NOT NULL"), isNull(String[].class));
+        verify(mockDatabaseManager, times(groupCount)).update(any(ContentValues.class), startsWith(DatabaseManager.PRIMARY_KEY + " IN ("), isNull(String[].class));
 
-        /* Clear all pending groups and verify. */
+        /* Clear all pending batches and verify. */
         persistence.clearPendingLogState();
-        assertEquals(0, persistence.mPendingDbIdentifiersGroups.size());
-        assertEquals(0, persistence.mPendingDbIdentifiers.size());
+        verify(mockDatabaseManager, times(2)).update(any(ContentValues.class), eq(DatabasePersistence.COLUMN_BATCH_ID + " IS NOT NULL"), isNull(String[].class));
+    }
+
+    @Test
+    public void getSerializedLogsDoesNotDeserialize() throws Exception {
+
+        /* Mock logs. */
+        List<ContentValues> list = new ArrayList<>();
+        for (long l = 1; l <= 2; l++) {
+            ContentValues values = mock(ContentValues.class);
+            when(values.getAsLong(DatabaseManager.PRIMARY_KEY)).thenReturn(l);
+            when(values.getAsString(DatabasePersistence.COLUMN_LOG)).thenReturn("{\"id\":" + l + "}");
+            when(values.getAsString(DatabasePersistence.COLUMN_DATA_TYPE)).thenReturn("mock");
+            list.add(values);
+        }
+
+        /* Mock instances. */
+        DatabaseManager mockDatabaseManager = mock(DatabaseManager.class);
+        whenNew(DatabaseManager.class).withAnyArguments().thenReturn(mockDatabaseManager);
+        when(mockDatabaseManager.moveToNext(any(Cursor.class))).thenCallRealMethod();
+        MockCursor mockCursor = new MockCursor(list);
+        when(mockDatabaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), any(String[].class), anyString(), anyString())).thenReturn(mockCursor);
+        LogSerializer mockLogSerializer = mock(LogSerializer.class);
+        DatabasePersistence persistence = new DatabasePersistence(mock(Context.class));
+        persistence.setLogSerializer(mockLogSerializer);
+
+        /* Get logs. */
+        List<SerializedLog> outLogs = new ArrayList<>();
+        String id = persistence.getSerializedLogs("mock", Collections.<String>emptyList(), 10, outLogs, null, null);
+
+        /* Verify payloads are returned as stored and never deserialized. */
+        assertNotNull(id);
+        assertEquals(2, outLogs.size());
+        assertEquals("{\"id\":1}", outLogs.get(0).getPayload());
+        assertEquals("{\"id\":2}", outLogs.get(1).getPayload());
+        assertEquals("mock", outLogs.get(0).getType());
+        assertTrue(outLogs.get(0).getTransmissionTargetTokens().isEmpty());
+        verify(mockDatabaseManager).update(any(ContentValues.class), eq(DatabaseManager.PRIMARY_KEY + " IN (1,2)"), isNull(String[].class));
+        verify(mockLogSerializer, never()).deserializeLog(anyString(), anyString());
     }
 
     @Test
@@ -171,8 +209,8 @@ public class DatabasePersistenceTest {
         mockStatic(AppCenterLog.class);
         DatabaseManager databaseManager = mock(DatabaseManager.class);
         whenNew(DatabaseManager.class).withAnyArguments().thenReturn(databaseManager);
-        when(databaseManager.nextValues(any(Cursor.class))).thenCallRealMethod();
-        when(databaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), any(String[].class), anyString())).thenThrow(new RuntimeException());
+        when(databaseManager.moveToNext(any(Cursor.class))).thenCallRealMethod();
+        when(databaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), any(String[].class), anyString(), anyString())).thenThrow(new RuntimeException());
         DatabasePersistence persistence = new DatabasePersistence(mock(Context.class), 1, DatabasePersistence.SCHEMA);
 
         /* Try to get logs. */
@@ -192,10 +230,10 @@ public class DatabasePersistenceTest {
         mockStatic(AppCenterLog.class);
         DatabaseManager databaseManager = mock(DatabaseManager.class);
         whenNew(DatabaseManager.class).withAnyArguments().thenReturn(databaseManager);
-        when(databaseManager.nextValues(any(Cursor.class))).thenCallRealMethod();
+        when(databaseManager.moveToNext(any(Cursor.class))).thenCallRealMethod();
         Cursor mockCursor = mock(Cursor.class);
         when(mockCursor.moveToNext()).thenThrow(new RuntimeException());
-        when(databaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), any(String[].class), anyString())).thenReturn(mockCursor);
+        when(databaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), any(String[].class), anyString(), anyString())).thenReturn(mockCursor);
         DatabasePersistence persistence = new DatabasePersistence(mock(Context.class), 1, DatabasePersistence.SCHEMA);
 
         /* Try to get logs. */
@@ -215,7 +253,7 @@ public class DatabasePersistenceTest {
         mockStatic(AppCenterLog.class);
         DatabaseManager databaseManager = mock(DatabaseManager.class);
         whenNew(DatabaseManager.class).withAnyArguments().thenReturn(databaseManager);
-        when(databaseManager.nextValues(any(Cursor.class))).thenCallRealMethod();
+        when(databaseManager.moveToNext(any(Cursor.class))).thenCallRealMethod();
 
         /* Make corrupted log. */
         List<ContentValues> fieldValues = new ArrayList<>();
@@ -228,8 +266,7 @@ public class DatabasePersistenceTest {
 
         /* Mock log sequence retrieved from cursor. */
         MockCursor mockCursor = new MockCursor(fieldValues);
-        mockCursor.mockBuildValues(databaseManager);
-        when(databaseManager.getCursor(any(SQLiteQueryBuilder.class), isNull(String[].class), any(String[].class), anyString())).thenReturn(mockCursor);
+        when(databaseManager.getCursor(any(SQLiteQueryBuilder.class), eq(DatabasePersistence.GET_COLUMNS), any(String[].class), anyString(), anyString())).thenReturn(mockCursor);
 
         /* Mock second cursor with identifiers only. */
         Cursor failingCursor = mock(Cursor.class);
@@ -254,7 +291,7 @@ public class DatabasePersistenceTest {
         int logCount = 3;
         DatabaseManager databaseManager = mock(DatabaseManager.class);
         whenNew(DatabaseManager.class).withAnyArguments().thenReturn(databaseManager);
-        when(databaseManager.nextValues(any(Cursor.class))).thenCallRealMethod();
+        when(databaseManager.moveToNext(any(Cursor.class))).thenCallRealMethod();
 
         /* Make 3 logs, the second one will be corrupted. */
         List<ContentValues> fieldValues = new ArrayList<>(logCount);
@@ -281,8 +318,7 @@ public class DatabasePersistenceTest {
 
         /* Mock log sequence retrieved from cursor. */
         MockCursor mockCursor = new MockCursor(fieldValues);
-        mockCursor.mockBuildValues(databaseManager);
-        when(databaseManager.getCursor(any(SQLiteQueryBuilder.class), isNull(String[].class), any(String[].class), anyString())).thenReturn(mockCursor);
+        when(databaseManager.getCursor(any(SQLiteQueryBuilder.class), eq(DatabasePersistence.GET_COLUMNS), any(String[].class), anyString(), anyString())).thenReturn(mockCursor);
 
         /* Mock second cursor with identifiers only. */
         List<ContentValues> idValues = new ArrayList<>(logCount);
@@ -292,7 +328,6 @@ public class DatabasePersistenceTest {
             idValues.add(contentValues);
         }
         MockCursor mockIdCursor = new MockCursor(idValues);
-        mockIdCursor.mockBuildValues(databaseManager);
         when(databaseManager.getCursor(any(SQLiteQueryBuilder.class), isNotNull(String[].class), any(String[].class), anyString())).thenReturn(mockIdCursor);
 
         /* Mock serializer and eventually the database. */
@@ -327,27 +362,12 @@ public class DatabasePersistenceTest {
         assertEquals(0, outLogs.size());
 
         /*
-         * Add new logs with corruption again. First 2 logs are still there.
+         * Add new logs with corruption again. First 2 logs are still there but pending so not returned by the query.
          * Also this time the corrupted log will not even return its identifier when scanning
          * with only id fields, to test that the delete fails gracefully and that we can still
          * work with other logs.
          */
-        logCount = 4;
-        fieldValues = new ArrayList<>(logCount);
-        {
-            /* Valid record. */
-            ContentValues contentValues = mock(ContentValues.class);
-            when(contentValues.getAsLong(DatabaseManager.PRIMARY_KEY)).thenReturn(0L);
-            when(contentValues.getAsString(DatabasePersistence.COLUMN_LOG)).thenReturn("first");
-            fieldValues.add(contentValues);
-        }
-        {
-            /* Valid record. */
-            ContentValues contentValues = mock(ContentValues.class);
-            when(contentValues.getAsLong(DatabaseManager.PRIMARY_KEY)).thenReturn(2L);
-            when(contentValues.getAsString(DatabasePersistence.COLUMN_LOG)).thenReturn("last");
-            fieldValues.add(contentValues);
-        }
+        fieldValues = new ArrayList<>();
         {
             /* New corrupted record. */
             ContentValues contentValues = mock(ContentValues.class);
@@ -370,16 +390,10 @@ public class DatabasePersistenceTest {
                 throw new RuntimeException();
             }
         };
-        mockCursor.mockBuildValues(databaseManager);
-        when(databaseManager.getCursor(any(SQLiteQueryBuilder.class), isNull(String[].class), any(String[].class), anyString())).thenReturn(mockCursor);
-        idValues = new ArrayList<>(4);
+        when(databaseManager.getCursor(any(SQLiteQueryBuilder.class), eq(DatabasePersistence.GET_COLUMNS), any(String[].class), anyString(), anyString())).thenReturn(mockCursor);
 
-        /* Here the id cursor will also skip the new corrupted log which id would be 3. */
-        for (long i = 0; i < logCount; i += 2) {
-            ContentValues contentValues = mock(ContentValues.class);
-            when(contentValues.getAsLong(DatabaseManager.PRIMARY_KEY)).thenReturn(i);
-            idValues.add(contentValues);
-        }
+        /* Here the id cursor will skip the new corrupted log which id would be 3 and pending logs are filtered out. */
+        idValues = new ArrayList<>();
         mockIdCursor = new MockCursor(idValues) {
 
             @Override
@@ -389,7 +403,6 @@ public class DatabasePersistenceTest {
                 throw new RuntimeException();
             }
         };
-        mockIdCursor.mockBuildValues(databaseManager);
         when(databaseManager.getCursor(any(SQLiteQueryBuilder.class), isNotNull(String[].class), any(String[].class), anyString())).thenReturn(mockIdCursor);
 
         /* Verify next call is only the new valid log as others are marked pending. */
@@ -449,6 +462,9 @@ public class DatabasePersistenceTest {
         persistence.putLog(mock(Log.class), "test-p1", NORMAL);
     }
 
+    /**
+     * Cursor reading rows of {@link DatabasePersistence#GET_COLUMNS} from mocked values by column index.
+     */
     private static class MockCursor extends CursorWrapper {
 
         private final List<ContentValues> mList;
@@ -469,14 +485,98 @@ public class DatabasePersistenceTest {
         public void close() {
         }
 
-        private void mockBuildValues(DatabaseManager databaseManager) {
-            when(databaseManager.buildValues(eq(this))).then(new Answer<ContentValues>() {
+        private ContentValues getRow() {
+            return mList.get(mIndex);
+        }
+
+        @Override
+        public boolean isNull(int columnIndex) {
+            String column = DatabasePersistence.GET_COLUMNS[columnIndex];
+            return getRow().getAsLong(column) == null && getRow().getAsString(column) == null && getRow().getAsByteArray(column) == null;
+        }
+
+        @Override
+        public long getLong(int columnIndex) {
+            Long value = getRow().getAsLong(DatabasePersistence.GET_COLUMNS[columnIndex]);
+            return value != null ? value : 0;
+        }
+
+        @Override
+        public int getInt(int columnIndex) {
+            Integer value = getRow().getAsInteger(DatabasePersistence.GET_COLUMNS[columnIndex]);
+            return value != null ? value : 0;
+        }
 
-                @Override
-                public ContentValues answer(InvocationOnMock invocation) {
-                    return mList.get(mIndex);
-                }
-            });
+        @Override
+        public String getString(int columnIndex) {
+            return getRow().getAsString(DatabasePersistence.GET_COLUMNS[columnIndex]);
         }
+
+        @Override
+        public byte[] getBlob(int columnIndex) {
+            return getRow().getAsByteArray(DatabasePersistence.GET_COLUMNS[columnIndex]);
+        }
+    }
+
+    @Test
+    public void findAndJoinDevice() {
+        String device = "{\"sdkName\":\"a}\\\"\",\"oemName\":{\"x\":[1,{}]}}";
+        String payload = "{\"type\":\"mock\",\"userId\":\",\\\"device\\\":{\",\"device\":" + device + ",\"id\":1}";
+        int[] position = DatabasePersistence.findDevice(payload);
+        assertNotNull(position);
+        String withoutDevice = payload.substring(0, position[0]) + payload.substring(position[1]);
+        assertEquals("{\"type\":\"mock\",\"userId\":\",\\\"device\\\":{\",\"id\":1}", withoutDevice);
+        assertEquals(device, payload.substring(position[0] + ",\"device\":".length(), position[1]));
+        assertEquals(withoutDevice.substring(0, withoutDevice.length() - 1) + ",\"device\":" + device + "}",
+                DatabasePersistence.joinDevice(withoutDevice, device));
+    }
+
+    @Test
+    public void findDeviceOnlyAtTopLevel() {
+        assertNull(DatabasePersistence.findDevice("{\"type\":\"mock\"}"));
+        assertNull(DatabasePersistence.findDevice("{\"type\":\"mock\",\"ext\":{\"a\":1,\"device\":{}}}"));
+        assertNull(DatabasePersistence.findDevice("{\"type\":\"mock\",\"device\":null}"));
+    }
+
+    @Test
+    public void completeJsonObject() {
+        assertTrue(DatabasePersistence.isCompleteJsonObject("{}"));
+        assertTrue(DatabasePersistence.isCompleteJsonObject(" {\"a\":{\"b\":[1,{}]}}\n"));
+        assertTrue(DatabasePersistence.isCompleteJsonObject("{\"a\":\"}{\\\"}\"}"));
+        assertFalse(DatabasePersistence.isCompleteJsonObject(""));
+        assertFalse(DatabasePersistence.isCompleteJsonObject("[]"));
+        assertFalse(DatabasePersistence.isCompleteJsonObject("{\"a\":{\"b\":1}"));
+        assertFalse(DatabasePersistence.isCompleteJsonObject("{\"a\":\"}"));
+        assertFalse(DatabasePersistence.isCompleteJsonObject("{\"a\":1}}"));
+    }
+
+    @Test
+    public void getSerializedLogsDeletesTruncatedPayloads() throws Exception {
+
+        /* Mock a valid and a truncated log. */
+        List<ContentValues> list = new ArrayList<>();
+        String[] payloads = {"{\"id\":1}", "{\"id\":2,\"ext\":{\"a\":1}"};
+        for (int i = 0; i < payloads.length; i++) {
+            ContentValues values = mock(ContentValues.class);
+            when(values.getAsLong(DatabaseManager.PRIMARY_KEY)).thenReturn((long) i + 1);
+            when(values.getAsString(DatabasePersistence.COLUMN_LOG)).thenReturn(payloads[i]);
+            when(values.getAsString(DatabasePersistence.COLUMN_DATA_TYPE)).thenReturn("mock");
+            list.add(values);
+        }
+
+        /* Mock instances. */
+        DatabaseManager mockDatabaseManager = mock(DatabaseManager.class);
+        whenNew(DatabaseManager.class).withAnyArguments().thenReturn(mockDatabaseManager);
+        when(mockDatabaseManager.moveToNext(any(Cursor.class))).thenCallRealMethod();
+        when(mockDatabaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), any(String[].class), anyString(), anyString())).thenReturn(new MockCursor(list));
+        DatabasePersistence persistence = new DatabasePersistence(mock(Context.class));
+        persistence.setLogSerializer(mock(LogSerializer.class));
+
+        /* Only the valid log is returned, the other one is deleted. */
+        List<SerializedLog> outLogs = new ArrayList<>();
+        assertNotNull(persistence.getSerializedLogs("mock", Collections.<String>emptyList(), 10, outLogs, null, null));
+        assertEquals(1, outLogs.size());
+        assertEquals("{\"id\":1}", outLogs.get(0).getPayload());
+        verify(mockDatabaseManager).delete(2L);
     }
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.persistence;
+
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.SerializedLog;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PersistenceTest {
+
+    private static Answer<String> getLogsAnswer(final Log log, final int outLogsIndex) {
+        return new Answer<String>() {
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public String answer(InvocationOnMock invocation) {
+                ((List<Log>) invocation.getArguments()[outLogsIndex]).add(log);
+                return "id";
+            }
+        };
+    }
+
+    @Test
+    public void serializedLogsWrapLogModelsByDefault() throws Exception {
+        Persistence persistence = mock(Persistence.class);
+        when(persistence.getSerializedLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(SerializedLog.class), any(Date.class), any(Date.class))).thenCallRealMethod();
+        when(persistence.getSerializedLogs(anyString(), anyListOf(String.class), anyInt(), eq(1024L), anyListOf(SerializedLog.class), any(Date.class), any(Date.class))).thenCallRealMethod();
+        Log log = mock(Log.class);
+        when(log.getType()).thenReturn("mock");
+        when(log.getTransmissionTargetTokens()).thenReturn(Collections.<String>emptySet());
+        when(persistence.getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class), any(Date.class), any(Date.class))).then(getLogsAnswer(log, 3));
+
+        /* Models are wrapped as they are. */
+        List<SerializedLog> outLogs = new ArrayList<>();
+        assertEquals("id", persistence.getSerializedLogs("group", Collections.<String>emptyList(), 10, outLogs, null, null));
+        assertEquals(1, outLogs.size());
+        assertNull(outLogs.get(0).getPayload());
+        assertEquals("mock", outLogs.get(0).getType());
+        assertSame(log, outLogs.get(0).getLog());
+
+        /* Same with a size limit. */
+        Log log2 = mock(Log.class);
+        when(log2.getTransmissionTargetTokens()).thenReturn(Collections.<String>emptySet());
+        when(persistence.getLogs(anyString(), anyListOf(String.class), anyInt(), eq(1024L), anyListOf(Log.class), any(Date.class), any(Date.class))).then(getLogsAnswer(log2, 4));
+        outLogs.clear();
+        assertEquals("id", persistence.getSerializedLogs("group", Collections.<String>emptyList(), 10, 1024L, outLogs, null, null));
+        assertEquals(1, outLogs.size());
+        assertSame(log2, outLogs.get(0).getLog());
+    }
+}
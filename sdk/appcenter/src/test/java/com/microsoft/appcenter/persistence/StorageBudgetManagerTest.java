@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.persistence;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteQueryBuilder;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.storage.DatabaseManager;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static com.microsoft.appcenter.persistence.DatabasePersistence.TABLE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@PrepareForTest({AppCenterLog.class, DatabaseManager.class})
+public class StorageBudgetManagerTest {
+
+    private static final long MAX_SIZE = 100000;
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    private DatabaseManager mDatabaseManager;
+
+    private StorageBudgetManager.Listener mListener;
+
+    private Executor mExecutor;
+
+    private StorageBudgetManager mStorageBudget;
+
+    @Before
+    public void setUp() {
+        mockStatic(AppCenterLog.class);
+        mDatabaseManager = mock(DatabaseManager.class);
+        when(mDatabaseManager.getMaxSize()).thenReturn(MAX_SIZE);
+        when(mDatabaseManager.beginTransaction()).thenReturn(true);
+        when(mDatabaseManager.endTransaction()).thenReturn(true);
+        mListener = mock(StorageBudgetManager.Listener.class);
+        mExecutor = mock(Executor.class);
+        mStorageBudget = new StorageBudgetManager(mDatabaseManager, mListener, mExecutor);
+    }
+
+    private void mockEvictedRows(Cursor cursor) {
+        when(mDatabaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), any(String[].class), anyString(), anyString())).thenReturn(cursor);
+        when(mDatabaseManager.delete(eq(TABLE), contains("LIMIT"), any(String[].class))).thenReturn(3);
+    }
+
+    @Test
+    public void checkScheduledOnFirstWriteThenByInterval() {
+
+        /* First write schedules a check as the maximum size is not known yet. */
+        mStorageBudget.onLogStored("a", null, 10);
+        verify(mExecutor).execute(any(Runnable.class));
+
+        /* Other writes do not schedule again until the check runs. */
+        mStorageBudget.onLogStored("a", null, 10);
+        verify(mExecutor).execute(any(Runnable.class));
+
+        /* After check, writes schedule only once the interval is reached. */
+        mStorageBudget.check();
+        mStorageBudget.onLogStored("a", null, MAX_SIZE / 50 - 1);
+        verify(mExecutor).execute(any(Runnable.class));
+        mStorageBudget.onLogStored("a", null, 1);
+        verify(mExecutor, times(2)).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void checkUnderHighWatermark() {
+        when(mDatabaseManager.getUsedSize()).thenReturn((long) (MAX_SIZE * StorageBudgetManager.HIGH_WATERMARK));
+        mStorageBudget.check();
+        verify(mDatabaseManager, never()).beginTransaction();
+        verify(mDatabaseManager, never()).delete(anyString(), anyString(), any(String[].class));
+        assertTrue(mStorageBudget.getEvictedLogCounts().isEmpty());
+    }
+
+    @Test
+    public void checkWithoutMaxSize() {
+        when(mDatabaseManager.getMaxSize()).thenReturn(-1L);
+        mStorageBudget.check();
+        verify(mDatabaseManager, never()).getUsedSize();
+    }
+
+    @Test
+    public void checkOverHighWatermark() {
+
+        /* Over high watermark, then low watermark is reached after 1 deletion of 3 rows. */
+        when(mDatabaseManager.getUsedSize()).thenReturn(MAX_SIZE, MAX_SIZE, (long) (MAX_SIZE * StorageBudgetManager.LOW_WATERMARK));
+        when(mDatabaseManager.getRowCount()).thenReturn(10L);
+        Cursor cursor = mock(Cursor.class);
+        when(cursor.moveToNext()).thenReturn(true, true, true, false);
+        when(cursor.getString(1)).thenReturn("a", "b", "a");
+        when(cursor.getInt(2)).thenReturn(0, 1, 0);
+        when(cursor.getLong(0)).thenReturn(42L);
+        mockEvictedRows(cursor);
+        mStorageBudget.check();
+
+        /* 25% of 10 rows to delete. */
+        verify(mDatabaseManager).getCursor(any(SQLiteQueryBuilder.class), any(String[].class), isNull(String[].class), anyString(), eq("3"));
+        verify(mDatabaseManager).delete(eq(TABLE), contains("LIMIT 3"), isNull(String[].class));
+        verify(mDatabaseManager).endTransaction();
+        verify(cursor).close();
+        verify(mListener).onLargePayloadEvicted("b", 42L);
+        Map<String, Long> counts = mStorageBudget.getEvictedLogCounts();
+        assertEquals(2, counts.size());
+        assertEquals(Long.valueOf(2), counts.get("a"));
+        assertEquals(Long.valueOf(1), counts.get("b"));
+
+        /* Counts add up. */
+        when(mDatabaseManager.getUsedSize()).thenReturn(MAX_SIZE, (long) (MAX_SIZE * StorageBudgetManager.LOW_WATERMARK));
+        when(cursor.moveToNext()).thenReturn(true, false);
+        when(cursor.getString(1)).thenReturn("a");
+        when(cursor.getInt(2)).thenReturn(0);
+        assertEquals(3, mStorageBudget.evict(null, (long) (MAX_SIZE * StorageBudgetManager.LOW_WATERMARK)));
+        assertEquals(Long.valueOf(3), mStorageBudget.getEvictedLogCounts().get("a"));
+    }
+
+    @Test
+    public void evictGroup() {
+        when(mDatabaseManager.getUsedSize()).thenReturn(MAX_SIZE, 0L);
+        when(mDatabaseManager.getRowCount()).thenReturn(10L);
+        mockEvictedRows(mock(Cursor.class));
+        assertEquals(3, mStorageBudget.evict("a", 0));
+        verify(mDatabaseManager).delete(eq(TABLE), contains("LIMIT 10"), eq(new String[]{"a"}));
+    }
+
+    @Test
+    public void evictStopsAfterMaxPasses() {
+        when(mDatabaseManager.getUsedSize()).thenReturn(MAX_SIZE);
+        when(mDatabaseManager.getRowCount()).thenReturn(10L);
+        mockEvictedRows(mock(Cursor.class));
+        assertEquals(9, mStorageBudget.evict(null, 0));
+        verify(mDatabaseManager, times(3)).delete(eq(TABLE), anyString(), isNull(String[].class));
+    }
+
+    @Test
+    public void evictNothingDeleted() {
+        when(mDatabaseManager.getUsedSize()).thenReturn(MAX_SIZE);
+        when(mDatabaseManager.getRowCount()).thenReturn(0L);
+        assertEquals(0, mStorageBudget.evict(null, 0));
+        verify(mDatabaseManager, never()).delete(anyString(), anyString(), any(String[].class));
+        verify(mDatabaseManager).endTransaction();
+    }
+
+    @Test
+    public void evictFailsToCommit() {
+        when(mDatabaseManager.getUsedSize()).thenReturn(MAX_SIZE, 0L);
+        when(mDatabaseManager.getRowCount()).thenReturn(10L);
+        Cursor cursor = mock(Cursor.class);
+        when(cursor.moveToNext()).thenReturn(true, false);
+        when(cursor.getString(1)).thenReturn("a");
+        when(cursor.getInt(2)).thenReturn(1);
+        mockEvictedRows(cursor);
+        when(mDatabaseManager.endTransaction()).thenReturn(false);
+        assertEquals(0, mStorageBudget.evict(null, 0));
+        verify(mListener, never()).onLargePayloadEvicted(anyString(), anyLong());
+        assertTrue(mStorageBudget.getEvictedLogCounts().isEmpty());
+    }
+
+    @Test
+    public void evictFailsToRead() {
+        when(mDatabaseManager.getUsedSize()).thenReturn(MAX_SIZE);
+        when(mDatabaseManager.getRowCount()).thenReturn(10L);
+        when(mDatabaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), any(String[].class), anyString(), anyString())).thenThrow(new RuntimeException());
+        assertEquals(0, mStorageBudget.evict(null, 0));
+        verify(mDatabaseManager).endTransaction();
+    }
+
+    @Test
+    public void quotaScheduledWhenSetThenWhenExceeded() {
+        mStorageBudget.check();
+        mStorageBudget.setQuota("a", null, 1000);
+        verify(mExecutor).execute(any(Runnable.class));
+
+        /* Writes schedule until the quota is measured. */
+        mockUsage(200);
+        mStorageBudget.check();
+        mStorageBudget.onLogStored("b", null, 900);
+        mStorageBudget.onLogStored("a", "key", 700);
+        verify(mExecutor).execute(any(Runnable.class));
+        mStorageBudget.onLogStored("a", null, 101);
+        verify(mExecutor, times(2)).execute(any(Runnable.class));
+
+        /* Quota of a target of the group. */
+        mStorageBudget.setQuota("b", "key", 100);
+        mockUsage(50);
+        mStorageBudget.check();
+        mStorageBudget.onLogStored("b", "other", 200);
+        mStorageBudget.onLogStored("b", null, 200);
+        verify(mExecutor, times(2)).execute(any(Runnable.class));
+        mStorageBudget.onLogStored("b", "key", 51);
+        verify(mExecutor, times(3)).execute(any(Runnable.class));
+
+        /* Removed quotas no longer schedule. */
+        mStorageBudget.setQuota("a", null, 0);
+        mStorageBudget.setQuota("b", "key", 0);
+        mStorageBudget.check();
+        mStorageBudget.onLogStored("a", null, 500);
+        mStorageBudget.onLogStored("b", "key", 500);
+        verify(mExecutor, times(3)).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void checkOverQuota() {
+        mStorageBudget.setQuota("a", "key", 1000);
+
+        /* 10 logs using 2000 bytes, then 750 bytes after deleting 13. */
+        Cursor usage = mock(Cursor.class);
+        when(usage.moveToNext()).thenReturn(true);
+        when(usage.getLong(0)).thenReturn(2000L, 2000L, 750L);
+        when(usage.getLong(1)).thenReturn(10L);
+        when(mDatabaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), any(String[].class), anyString())).thenReturn(usage);
+        Cursor cursor = mock(Cursor.class);
+        when(cursor.moveToNext()).thenReturn(true, false);
+        when(cursor.getString(1)).thenReturn("a");
+        mockEvictedRows(cursor);
+        when(mDatabaseManager.getUsedSize()).thenReturn(0L);
+        mStorageBudget.check();
+
+        /* Quota eviction selects the target of the group, database size is under the watermark. */
+        verify(mDatabaseManager).getCursor(any(SQLiteQueryBuilder.class), any(String[].class), eq(new String[]{"a", "key"}), anyString(), eq("7"));
+        verify(mDatabaseManager).delete(eq(TABLE), contains("target_key = ?"), eq(new String[]{"a", "key"}));
+        verify(mDatabaseManager).delete(anyString(), anyString(), any(String[].class));
+        assertEquals(Long.valueOf(1), mStorageBudget.getQuotaEvictedLogCounts().get("a"));
+        assertTrue(mStorageBudget.getEvictedLogCounts().isEmpty());
+
+        /* Next write under quota after eviction does not schedule. */
+        mStorageBudget.onLogStored("a", "key", 100);
+        verify(mExecutor).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void checkQuotaFailsToMeasure() {
+        mStorageBudget.setQuota("a", null, 1000);
+        when(mDatabaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), any(String[].class), anyString())).thenThrow(new RuntimeException());
+        mStorageBudget.check();
+        verify(mDatabaseManager, never()).beginTransaction();
+
+        /* Considered empty until next check. */
+        mStorageBudget.onLogStored("a", null, 100);
+        verify(mExecutor).execute(any(Runnable.class));
+    }
+
+    private void mockUsage(long size) {
+        Cursor usage = mock(Cursor.class);
+        when(usage.moveToNext()).thenReturn(true);
+        when(usage.getLong(0)).thenReturn(size);
+        when(mDatabaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), any(String[].class), anyString())).thenReturn(usage);
+    }
+}
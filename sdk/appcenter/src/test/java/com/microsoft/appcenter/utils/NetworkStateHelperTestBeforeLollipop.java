@@ -148,4 +148,46 @@ public class NetworkStateHelperTestBeforeLollipop extends AbstractNetworkStateHe
         verify(mConnectivityManager, never()).unregisterNetworkCallback(any(ConnectivityManager.NetworkCallback.class));
         verify(mConnectivityManager, never()).registerNetworkCallback(any(NetworkRequest.class), any(ConnectivityManager.NetworkCallback.class));
     }
+
+    @Test
+    @SuppressWarnings({"deprecation", "RedundantSuppression"})
+    public void networkType() {
+        NetworkStateHelper helper = new NetworkStateHelper(mContext);
+
+        /* No active network. */
+        assertEquals(NetworkStateHelper.TRANSPORT_NONE, helper.getNetworkTransport());
+        assertFalse(helper.isNetworkRoaming());
+        NetworkInfo networkInfo = mock(NetworkInfo.class);
+        when(mConnectivityManager.getActiveNetworkInfo()).thenReturn(networkInfo);
+        assertEquals(NetworkStateHelper.TRANSPORT_NONE, helper.getNetworkTransport());
+
+        /* Check types. */
+        when(networkInfo.isConnected()).thenReturn(true);
+        when(networkInfo.getType()).thenReturn(ConnectivityManager.TYPE_WIFI);
+        assertEquals(NetworkStateHelper.TRANSPORT_WIFI, helper.getNetworkTransport());
+        when(networkInfo.getType()).thenReturn(ConnectivityManager.TYPE_MOBILE);
+        assertEquals(NetworkStateHelper.TRANSPORT_CELLULAR, helper.getNetworkTransport());
+        when(networkInfo.getType()).thenReturn(ConnectivityManager.TYPE_ETHERNET);
+        assertEquals(NetworkStateHelper.TRANSPORT_ETHERNET, helper.getNetworkTransport());
+        when(networkInfo.getType()).thenReturn(ConnectivityManager.TYPE_BLUETOOTH);
+        assertEquals(NetworkStateHelper.TRANSPORT_OTHER, helper.getNetworkTransport());
+
+        /* Metered and roaming. */
+        when(mConnectivityManager.getAllNetworkInfo()).thenReturn(new NetworkInfo[] { networkInfo });
+        assertTrue(helper.isNetworkUnmetered());
+        when(mConnectivityManager.isActiveNetworkMetered()).thenReturn(true);
+        assertTrue(helper.isNetworkMetered());
+        assertFalse(helper.isNetworkUnmetered());
+        when(mConnectivityManager.isActiveNetworkMetered()).thenReturn(false);
+        when(networkInfo.isRoaming()).thenReturn(true);
+        assertTrue(helper.isNetworkRoaming());
+        assertFalse(helper.isNetworkUnmetered());
+
+        /* Permission denied. */
+        when(mConnectivityManager.getActiveNetworkInfo()).thenThrow(new SecurityException());
+        when(mConnectivityManager.isActiveNetworkMetered()).thenThrow(new SecurityException());
+        assertEquals(NetworkStateHelper.TRANSPORT_OTHER, helper.getNetworkTransport());
+        assertFalse(helper.isNetworkMetered());
+        assertFalse(helper.isNetworkRoaming());
+    }
 }
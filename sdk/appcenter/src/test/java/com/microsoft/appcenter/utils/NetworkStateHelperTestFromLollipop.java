@@ -22,6 +22,7 @@ import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
@@ -35,7 +36,7 @@ import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.whenNew;
 
-@PrepareForTest(NetworkStateHelper.class)
+@PrepareForTest({NetworkStateHelper.class, NetworkCapabilities.class})
 public class NetworkStateHelperTestFromLollipop extends AbstractNetworkStateHelperTest {
 
     @Before
@@ -176,4 +177,95 @@ public class NetworkStateHelperTestFromLollipop extends AbstractNetworkStateHelp
         verify(builder).addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
         verify(builder, never()).addCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
     }
+
+    @Test
+    public void networkTypeFromAndroidM() throws Exception {
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.M);
+        NetworkStateHelper helper = new NetworkStateHelper(mContext);
+
+        /* No default network. */
+        assertEquals(NetworkStateHelper.TRANSPORT_NONE, helper.getNetworkTransport());
+        assertFalse(helper.isNetworkMetered());
+        assertFalse(helper.isNetworkRoaming());
+
+        /* Wi-Fi. */
+        Network network = mock(Network.class);
+        NetworkCapabilities capabilities = mock(NetworkCapabilities.class);
+        when(mConnectivityManager.getActiveNetwork()).thenReturn(network);
+        when(mConnectivityManager.getNetworkCapabilities(network)).thenReturn(capabilities);
+        when(capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)).thenReturn(true);
+        when(capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED)).thenReturn(true);
+        assertEquals(NetworkStateHelper.TRANSPORT_WIFI, helper.getNetworkTransport());
+        assertFalse(helper.isNetworkMetered());
+
+        /* Cellular. */
+        when(capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)).thenReturn(false);
+        when(capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)).thenReturn(true);
+        when(capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED)).thenReturn(false);
+        assertEquals(NetworkStateHelper.TRANSPORT_CELLULAR, helper.getNetworkTransport());
+        assertTrue(helper.isNetworkMetered());
+
+        /* Ethernet and others. */
+        when(capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)).thenReturn(false);
+        when(capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)).thenReturn(true);
+        assertEquals(NetworkStateHelper.TRANSPORT_ETHERNET, helper.getNetworkTransport());
+        when(capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)).thenReturn(false);
+        assertEquals(NetworkStateHelper.TRANSPORT_OTHER, helper.getNetworkTransport());
+
+        /* Roaming capability is used from Android P. */
+        assertFalse(helper.isNetworkRoaming());
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.P);
+        assertTrue(helper.isNetworkRoaming());
+        when(capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_ROAMING)).thenReturn(true);
+        assertFalse(helper.isNetworkRoaming());
+
+        /* Permission denied. */
+        when(mConnectivityManager.getActiveNetwork()).thenThrow(new SecurityException());
+        assertEquals(NetworkStateHelper.TRANSPORT_OTHER, helper.getNetworkTransport());
+        assertFalse(helper.isNetworkMetered());
+        assertFalse(helper.isNetworkRoaming());
+        assertFalse(helper.isNetworkUnmetered());
+    }
+
+    @Test
+    @SuppressWarnings({"deprecation", "RedundantSuppression"})
+    public void listenNetworkType() throws Exception {
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.M);
+        NetworkStateHelper helper = new NetworkStateHelper(mContext);
+        ArgumentCaptor<ConnectivityManager.NetworkCallback> callback = ArgumentCaptor.forClass(ConnectivityManager.NetworkCallback.class);
+        verify(mConnectivityManager).registerNetworkCallback(any(NetworkRequest.class), callback.capture());
+        NetworkStateHelper.NetworkTypeListener listener = mock(NetworkStateHelper.NetworkTypeListener.class);
+        helper.addNetworkTypeListener(listener);
+
+        /* Connect to Wi-Fi. */
+        NetworkInfo networkInfo = mock(NetworkInfo.class);
+        when(networkInfo.isConnected()).thenReturn(true);
+        Network network = mock(Network.class);
+        NetworkCapabilities capabilities = mock(NetworkCapabilities.class);
+        when(mConnectivityManager.getAllNetworks()).thenReturn(new Network[] { network });
+        when(mConnectivityManager.getNetworkInfo(network)).thenReturn(networkInfo);
+        when(mConnectivityManager.getActiveNetwork()).thenReturn(network);
+        when(mConnectivityManager.getNetworkCapabilities(network)).thenReturn(capabilities);
+        when(capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED)).thenReturn(true);
+        callback.getValue().onAvailable(network);
+        verify(listener).onNetworkTypeUpdated(true);
+        assertTrue(helper.isNetworkUnmetered());
+
+        /* Same network type does not notify again. */
+        callback.getValue().onCapabilitiesChanged(network, capabilities);
+        verify(listener).onNetworkTypeUpdated(true);
+
+        /* Network becomes metered, for example a hotspot. */
+        when(capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED)).thenReturn(false);
+        callback.getValue().onCapabilitiesChanged(network, capabilities);
+        verify(listener).onNetworkTypeUpdated(false);
+        assertFalse(helper.isNetworkUnmetered());
+
+        /* No more calls once removed. */
+        helper.removeNetworkTypeListener(listener);
+        when(capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED)).thenReturn(true);
+        callback.getValue().onCapabilitiesChanged(network, capabilities);
+        verifyNoMoreInteractions(listener);
+        helper.close();
+    }
 }
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class StringUtilsTest {
+
+    @Test
+    public void init() {
+        new StringUtils();
+    }
+
+    @Test
+    public void utf8Length() throws Exception {
+        String[] values = {"", "abc", "\u00e9t\u00e9", "\u20ac", "\ud83d\ude00", "a\ud83db", "\ude00\ud83d", "{\"name\":\"\u65e5\u672c\"}"};
+        for (String value : values) {
+
+            //noinspection CharsetObjectCanBeUsed
+            assertEquals(value, value.getBytes("UTF-8").length, StringUtils.getUtf8Length(value));
+        }
+    }
+}
@@ -377,8 +377,10 @@ public class CryptoTest {
         assertNull(decryptedData.getNewEncryptedData());
 
         /* But encrypt will use another cert. */
+        assertEquals(0, cryptoUtils.getKeyRotationCount());
         encrypted = cryptoUtils.encrypt("anything");
         assertEquals(CIPHER_RSA + "/" + RSA_KEY_SIZE + ALGORITHM_DATA_SEPARATOR + "anything", encrypted);
+        assertEquals(1, cryptoUtils.getKeyRotationCount());
 
         /* Verify another cert was created. */
         ArgumentCaptor<String> alias = ArgumentCaptor.forClass(String.class);
@@ -408,6 +410,7 @@ public class CryptoTest {
         cryptoUtils = new CryptoUtils(mContext, mCryptoFactory, apiLevel);
         encrypted = cryptoUtils.encrypt("anything");
         assertEquals(CIPHER_RSA + "/" + RSA_KEY_SIZE + ALGORITHM_DATA_SEPARATOR + "anything", encrypted);
+        assertEquals(0, cryptoUtils.getKeyRotationCount());
 
         /* Check alias0 no more used and that we used second alias to encrypt that value. */
         verify(mKeyStore, times(alias0count)).getEntry(alias0, null);
@@ -417,6 +420,7 @@ public class CryptoTest {
         doThrow(new CertificateExpiredException()).doNothing().when(mRsaCert).checkValidity();
         encrypted = cryptoUtils.encrypt("anything");
         assertEquals(CIPHER_RSA + "/" + RSA_KEY_SIZE + ALGORITHM_DATA_SEPARATOR + "anything", encrypted);
+        assertEquals(1, cryptoUtils.getKeyRotationCount());
 
         /* Verify another cert was created with reusing first alias name, deleting old one. */
         alias = ArgumentCaptor.forClass(String.class);
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.utils.storage;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompressionUtilsTest {
+
+    @Test
+    public void init() {
+        new CompressionUtils();
+    }
+
+    @Test
+    public void deflateAndInflate() throws DataFormatException {
+        byte[] data = new byte[20000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + i % 7);
+        }
+        Deflater deflater = new Deflater();
+        Inflater inflater = new Inflater();
+
+        /* Reuse instances. */
+        for (int i = 0; i < 2; i++) {
+            byte[] compressed = CompressionUtils.deflate(deflater, data, (byte) 1, (byte) 2);
+            assertEquals(1, compressed[0]);
+            assertEquals(2, compressed[1]);
+            assertTrue(compressed.length < data.length / 10);
+            assertArrayEquals(data, CompressionUtils.inflate(inflater, compressed, 2));
+        }
+
+        /* Empty data and no prefix. */
+        assertArrayEquals(new byte[0], CompressionUtils.inflate(inflater, CompressionUtils.deflate(deflater, new byte[0]), 0));
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void inflateInvalidData() throws DataFormatException {
+        CompressionUtils.inflate(new Inflater(), new byte[]{1, 2, 3, 4}, 0);
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void inflateTruncatedData() throws DataFormatException {
+        byte[] compressed = CompressionUtils.deflate(new Deflater(), "Some text to compress, some text to compress.".getBytes());
+        CompressionUtils.inflate(new Inflater(), Arrays.copyOf(compressed, compressed.length / 2), 0);
+    }
+}
@@ -8,11 +8,13 @@ package com.microsoft.appcenter.utils.storage;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDiskIOException;
 import android.database.sqlite.SQLiteFullException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.utils.AppCenterLog;
@@ -20,6 +22,7 @@ import com.microsoft.appcenter.utils.AppCenterLog;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.internal.stubbing.answers.Returns;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
@@ -27,14 +30,22 @@ import org.powermock.modules.junit4.PowerMockRunner;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
 import static org.mockito.Matchers.refEq;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
@@ -42,7 +53,7 @@ import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 
 @SuppressWarnings("unused")
 @RunWith(PowerMockRunner.class)
-@PrepareForTest({SQLiteUtils.class, AppCenterLog.class})
+@PrepareForTest({SQLiteUtils.class, AppCenterLog.class, DatabaseUtils.class, SQLiteStatement.class})
 public class DatabaseManagerTest {
 
     private static DatabaseManager getDatabaseManagerMock() {
@@ -101,6 +112,23 @@ public class DatabaseManagerTest {
         AppCenterLog.error(eq(AppCenter.LOG_TAG), anyString(), any(RuntimeException.class));
     }
 
+    @Test
+    public void updateFailed() {
+        DatabaseManager databaseManagerMock = getDatabaseManagerMock();
+        assertEquals(0, databaseManagerMock.update(new ContentValues(), null, null));
+        verifyStatic();
+        AppCenterLog.error(eq(AppCenter.LOG_TAG), anyString(), any(RuntimeException.class));
+    }
+
+    @Test
+    public void transactionFailed() {
+        DatabaseManager databaseManagerMock = getDatabaseManagerMock();
+        assertFalse(databaseManagerMock.beginTransaction());
+        assertFalse(databaseManagerMock.endTransaction());
+        verifyStatic(times(2));
+        AppCenterLog.error(eq(AppCenter.LOG_TAG), anyString(), any(RuntimeException.class));
+    }
+
     @Test
     public void clearFailed() {
         DatabaseManager databaseManagerMock = getDatabaseManagerMock();
@@ -144,6 +172,75 @@ public class DatabaseManagerTest {
         AppCenterLog.error(eq(AppCenter.LOG_TAG), anyString(), any(RuntimeException.class));
     }
 
+    @Test
+    public void getMaxSizeIsCached() {
+        DatabaseManager databaseManager = spy(new DatabaseManager(null, "database", "table", 1, null, null));
+        SQLiteDatabase database = mock(SQLiteDatabase.class);
+        when(database.getMaximumSize()).thenReturn(2048L * 1024);
+        when(database.setMaximumSize(anyLong())).thenReturn(1024L * 1024);
+        when(database.getPageSize()).thenReturn(4096L);
+        doReturn(database).when(databaseManager).getDatabase();
+
+        /* Default size is read once. */
+        assertEquals(2048 * 1024, databaseManager.getMaxSize());
+        assertEquals(2048 * 1024, databaseManager.getMaxSize());
+        verify(database).getMaximumSize();
+
+        /* Setting a size replaces it. */
+        assertTrue(databaseManager.setMaxSize(1024 * 1024));
+        assertEquals(1024 * 1024, databaseManager.getMaxSize());
+        verify(database).getMaximumSize();
+    }
+
+    @Test
+    public void setMaxSizeWithWriteAheadLogging() {
+        mockStatic(DatabaseUtils.class);
+        DatabaseManager databaseManager = spy(new DatabaseManager(null, "database", "table", 1, null, null));
+        databaseManager.setWriteAheadLoggingEnabled(true);
+        SQLiteDatabase database = mock(SQLiteDatabase.class);
+        when(database.setMaximumSize(anyLong())).thenReturn(1024L * 1024);
+        when(database.getPageSize()).thenReturn(4096L);
+        doReturn(database).when(databaseManager).getDatabase();
+        assertTrue(databaseManager.setMaxSize(1024 * 1024));
+
+        /* Set on the connection running transactions, with a checkpoint every 10% of the maximum size. */
+        InOrder order = inOrder(database);
+        order.verify(database).beginTransaction();
+        order.verify(database).setMaximumSize(1024 * 1024);
+        order.verify(database).setTransactionSuccessful();
+        order.verify(database).endTransaction();
+        verifyStatic();
+        DatabaseUtils.longForQuery(database, "PRAGMA wal_autocheckpoint = 25", null);
+        verifyStatic();
+        DatabaseUtils.longForQuery(database, "PRAGMA journal_size_limit = 102400", null);
+
+        /* Maximum size is known without asking a connection. */
+        assertEquals(1024 * 1024, databaseManager.getMaxSize());
+        verify(database, never()).getMaximumSize();
+    }
+
+    @Test
+    public void setMaxSizeWithWriteAheadLoggingFailed() {
+        DatabaseManager databaseManager = spy(new DatabaseManager(null, "database", "table", 1, null, null));
+        databaseManager.setWriteAheadLoggingEnabled(true);
+        SQLiteDatabase database = mock(SQLiteDatabase.class);
+        when(database.setMaximumSize(anyLong())).thenThrow(new RuntimeException());
+        doReturn(database).when(databaseManager).getDatabase();
+        assertFalse(databaseManager.setMaxSize(1024 * 1024));
+        verify(database).endTransaction();
+        verify(database, never()).setTransactionSuccessful();
+        verifyStatic();
+        AppCenterLog.error(eq(AppCenter.LOG_TAG), anyString(), any(RuntimeException.class));
+    }
+
+    @Test
+    public void getUsedSizeFailed() {
+        DatabaseManager databaseManagerMock = getDatabaseManagerMock();
+        assertEquals(-1, databaseManagerMock.getUsedSize());
+        verifyStatic();
+        AppCenterLog.error(eq(AppCenter.LOG_TAG), anyString(), any(RuntimeException.class));
+    }
+
     @Test
     public void getDatabaseFailedThenCleanupFailedThenRetrySucceeded() {
 
@@ -284,4 +381,90 @@ public class DatabaseManagerTest {
         /* When we put an entry, it will fail to query and thus not replacing. */
         assertEquals(-1, databaseManager.replace("table", mock(ContentValues.class), "someId"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void compileStatementCachedUntilClosed() {
+        DatabaseManager databaseManager = spy(new DatabaseManager(null, "database", "table", 1, null, null));
+        SQLiteDatabase database = mock(SQLiteDatabase.class);
+        SQLiteStatement statement = mock(SQLiteStatement.class);
+        SQLiteStatement otherStatement = mock(SQLiteStatement.class);
+        when(database.compileStatement("SQL")).thenReturn(statement).thenReturn(otherStatement);
+        doReturn(database).when(databaseManager).getDatabase();
+
+        /* Compiled once. */
+        assertSame(statement, databaseManager.compileStatement("SQL"));
+        assertSame(statement, databaseManager.compileStatement("SQL"));
+        verify(database).compileStatement("SQL");
+
+        /* Closing the database closes statements, next call compiles again. */
+        databaseManager.close();
+        verify(statement).close();
+        assertSame(otherStatement, databaseManager.compileStatement("SQL"));
+
+        /* A new database instance does not use statements of the previous one. */
+        SQLiteDatabase newDatabase = mock(SQLiteDatabase.class);
+        SQLiteStatement newStatement = mock(SQLiteStatement.class);
+        when(newDatabase.compileStatement("SQL")).thenReturn(newStatement);
+        doReturn(newDatabase).when(databaseManager).getDatabase();
+        assertNotSame(otherStatement, databaseManager.compileStatement("SQL"));
+        verify(otherStatement).close();
+    }
+
+    @Test
+    public void putStatementDeletesLowestPriorityWhenFull() {
+        DatabaseManager databaseManager = spy(new DatabaseManager(null, "database", "table", 1, null, null));
+        SQLiteDatabase database = mock(SQLiteDatabase.class);
+        SQLiteStatement deleteStatement = mock(SQLiteStatement.class);
+        when(database.compileStatement("DELETE FROM `table` WHERE oid = ?")).thenReturn(deleteStatement);
+        doReturn(database).when(databaseManager).getDatabase();
+
+        /* Mock the select cursor we are using to find logs to evict. */
+        mockStatic(SQLiteUtils.class);
+        Cursor cursor = mock(Cursor.class);
+        when(cursor.moveToNext()).thenReturn(true).thenReturn(false);
+        when(cursor.getLong(0)).thenReturn(3L);
+        SQLiteQueryBuilder sqLiteQueryBuilder = mock(SQLiteQueryBuilder.class, new Returns(cursor));
+        when(SQLiteUtils.newSQLiteQueryBuilder()).thenReturn(sqLiteQueryBuilder);
+
+        /* Full once, inserted after deleting 1 log. */
+        SQLiteStatement insertStatement = mock(SQLiteStatement.class);
+        when(insertStatement.executeInsert()).thenThrow(new SQLiteFullException()).thenReturn(5L);
+        assertEquals(5L, databaseManager.put(insertStatement, "priority", 1));
+        verify(sqLiteQueryBuilder).appendWhere("priority <= ?");
+        verify(deleteStatement).bindLong(1, 3L);
+        verify(deleteStatement).executeUpdateDelete();
+        verify(cursor).close();
+
+        /* Not full anymore, yet failing. */
+        when(insertStatement.executeInsert()).thenThrow(new SQLiteDiskIOException());
+        assertEquals(-1L, databaseManager.put(insertStatement, "priority", 1));
+        verifyStatic();
+        AppCenterLog.error(eq(AppCenter.LOG_TAG), anyString(), any(SQLiteDiskIOException.class));
+    }
+
+    @Test
+    public void simpleQueryForLong() {
+        DatabaseManager databaseManager = spy(new DatabaseManager(null, "database", "table", 1, null, null));
+        SQLiteDatabase database = mock(SQLiteDatabase.class);
+        SQLiteStatement statement = mock(SQLiteStatement.class);
+        when(statement.simpleQueryForLong()).thenReturn(3L);
+        when(database.compileStatement("SELECT COUNT(*) FROM table WHERE a = ?")).thenReturn(statement);
+        doReturn(database).when(databaseManager).getDatabase();
+        assertEquals(3L, databaseManager.simpleQueryForLong("SELECT COUNT(*) FROM table WHERE a = ?", "b"));
+        InOrder order = inOrder(statement);
+        order.verify(statement).bindAllArgsAsStrings(new String[]{"b"});
+        order.verify(statement).simpleQueryForLong();
+        order.verify(statement).clearBindings();
+    }
+
+    @Test
+    public void moveToNextFailed() {
+        DatabaseManager databaseManager = new DatabaseManager(null, "database", "table", 1, null, null);
+        Cursor cursor = mock(Cursor.class);
+        when(cursor.moveToNext()).thenReturn(true).thenThrow(new SQLiteDiskIOException());
+        assertTrue(databaseManager.moveToNext(cursor));
+        assertFalse(databaseManager.moveToNext(cursor));
+        verifyStatic();
+        AppCenterLog.error(eq(AppCenter.LOG_TAG), anyString(), any(SQLiteDiskIOException.class));
+    }
+}